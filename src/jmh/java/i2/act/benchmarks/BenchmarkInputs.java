@@ -0,0 +1,88 @@
+package i2.act.benchmarks;
+
+import i2.act.grammargraph.generator.ProgramGenerator;
+import i2.act.peg.ast.Grammar;
+import i2.act.peg.ast.visitors.NameAnalysis;
+import i2.act.peg.parser.PEGParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// inputs of the benchmarks; the paths are relative to the project directory (which is the working
+// directory of './gradlew jmh')
+public final class BenchmarkInputs {
+
+  public static final String CALC_GRAMMAR = "example/calc_grammar.txt";
+  public static final String CALC_INPUT = "example/calc_input.txt";
+
+  public static final String INPUT_EXAMPLE = "example";
+  public static final String INPUT_GENERATED = "generated";
+
+  public static final long GENERATOR_SEED = 42;
+
+  private BenchmarkInputs() {
+    // intentionally left blank
+  }
+
+  public static final String readFile(final String fileName) {
+    try {
+      final byte[] bytes = Files.readAllBytes(Paths.get(fileName));
+      return new String(bytes);
+    } catch (final IOException exception) {
+      throw new RuntimeException("unable to read file", exception);
+    }
+  }
+
+  public static final Grammar readGrammar(final String fileName) {
+    final Grammar grammar = PEGParser.parse(readFile(fileName));
+    NameAnalysis.analyze(grammar);
+
+    return grammar;
+  }
+
+  // parses sizes like '1KB', '64KB', '1MB', or '100MB' (without suffix: bytes)
+  public static final int parseSize(final String size) {
+    final String normalized = size.trim().toUpperCase();
+
+    if (normalized.endsWith("KB")) {
+      return Integer.parseInt(normalized.substring(0, normalized.length() - 2)) << 10;
+    } else if (normalized.endsWith("MB")) {
+      return Integer.parseInt(normalized.substring(0, normalized.length() - 2)) << 20;
+    } else {
+      return Integer.parseInt(normalized);
+    }
+  }
+
+  public static final String calcProgram(final String input, final String size) {
+    if (INPUT_GENERATED.equals(input)) {
+      return generatedCalcProgram(size);
+    } else {
+      assert (INPUT_EXAMPLE.equals(input));
+      return calcProgram(size);
+    }
+  }
+
+  // repeats the statements of the calculator example until the input has (at least) the given
+  // size; since the input is a sequence of statements, the result is a valid program again
+  public static final String calcProgram(final String size) {
+    final int numberOfCharacters = parseSize(size);
+    final String statements = readFile(CALC_INPUT);
+
+    final StringBuilder builder = new StringBuilder(numberOfCharacters + statements.length());
+    while (builder.length() < numberOfCharacters) {
+      builder.append(statements);
+    }
+
+    return builder.toString();
+  }
+
+  // generates a random program for the calculator grammar (with a fixed seed)
+  public static final String generatedCalcProgram(final String size) {
+    final ProgramGenerator generator = new ProgramGenerator(readGrammar(CALC_GRAMMAR),
+        GENERATOR_SEED, ProgramGenerator.DEFAULT_MAX_DEPTH, parseSize(size));
+
+    return generator.generate();
+  }
+
+}
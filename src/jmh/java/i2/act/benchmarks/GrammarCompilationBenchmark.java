@@ -0,0 +1,57 @@
+package i2.act.benchmarks;
+
+import i2.act.packrat.Lexer;
+import i2.act.packrat.Parser;
+import i2.act.peg.ast.Grammar;
+import i2.act.peg.ast.visitors.NameAnalysis;
+import i2.act.peg.parser.PEGParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GrammarCompilationBenchmark {
+
+  private String grammarInput;
+  private Grammar grammar;
+
+  @Setup
+  public void setup() {
+    this.grammarInput = BenchmarkInputs.readFile(BenchmarkInputs.CALC_GRAMMAR);
+    this.grammar = BenchmarkInputs.readGrammar(BenchmarkInputs.CALC_GRAMMAR);
+  }
+
+  @Benchmark
+  public Grammar parseGrammar() {
+    final Grammar grammar = PEGParser.parse(this.grammarInput);
+    NameAnalysis.analyze(grammar);
+
+    return grammar;
+  }
+
+  @Benchmark
+  public Parser parserFromGrammar() {
+    return Parser.fromGrammar(this.grammar);
+  }
+
+  @Benchmark
+  public Lexer lexerForGrammar() {
+    return Lexer.forGrammar(this.grammar);
+  }
+
+}
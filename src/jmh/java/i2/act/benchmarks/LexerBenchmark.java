@@ -0,0 +1,80 @@
+package i2.act.benchmarks;
+
+import i2.act.packrat.Lexer;
+import i2.act.packrat.TokenStream;
+import i2.act.packrat.nfa.NFA;
+import i2.act.peg.ast.Grammar;
+import i2.act.peg.symbols.LexerSymbol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xss64m"})
+public class LexerBenchmark {
+
+  @Param({"1KB", "1MB"})
+  public String size;
+
+  // repeated statements from the calculator example or a randomly generated program
+  @Param({BenchmarkInputs.INPUT_EXAMPLE, BenchmarkInputs.INPUT_GENERATED})
+  public String input;
+
+  // a regular expression with loops, one with alternatives, and a literal string
+  @Param({"VAR_NAME", "NUM", "ASSIGN"})
+  public String tokenName;
+
+  private Lexer lexer;
+  private NFA nfa;
+
+  private char[] characters;
+
+  @Setup
+  public void setup() {
+    final Grammar grammar = BenchmarkInputs.readGrammar(BenchmarkInputs.CALC_GRAMMAR);
+
+    this.lexer = Lexer.forGrammar(grammar);
+    this.nfa = this.lexer.getNFA((LexerSymbol) grammar.getSymbol(this.tokenName));
+
+    this.characters = BenchmarkInputs.calcProgram(this.input, this.size).toCharArray();
+  }
+
+  @Benchmark
+  public TokenStream lex() {
+    return this.lexer.lex(this.characters);
+  }
+
+  @Benchmark
+  public void lexStreaming(final Blackhole blackhole) {
+    this.lexer.lex(this.characters, false, blackhole::consume);
+  }
+
+  // tries to match the token at every position of the input
+  @Benchmark
+  public int prefixMatch() {
+    int matchedCharacters = 0;
+
+    for (int offset = 0; offset < this.characters.length; ++offset) {
+      matchedCharacters += this.nfa.prefixMatch(this.characters, offset);
+    }
+
+    return matchedCharacters;
+  }
+
+}
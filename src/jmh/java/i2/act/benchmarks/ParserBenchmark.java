@@ -0,0 +1,69 @@
+package i2.act.benchmarks;
+
+import i2.act.packrat.Lexer;
+import i2.act.packrat.Parser;
+import i2.act.packrat.TokenStream;
+import i2.act.packrat.cst.Node;
+import i2.act.peg.ast.Grammar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xss64m"})
+public class ParserBenchmark {
+
+  @Param({"1KB", "1MB"})
+  public String size;
+
+  // repeated statements from the calculator example or a randomly generated program
+  @Param({BenchmarkInputs.INPUT_EXAMPLE, BenchmarkInputs.INPUT_GENERATED})
+  public String input;
+
+  // parsers optimized for parsing speed (see 'Parser.fromGrammar')
+  @Param({"false", "true"})
+  public boolean optimize;
+
+  private Parser parser;
+
+  private TokenStream tokens;
+
+  @Setup(Level.Trial)
+  public void setupTrial() {
+    final Grammar grammar = BenchmarkInputs.readGrammar(BenchmarkInputs.CALC_GRAMMAR);
+    final Lexer lexer = Lexer.forGrammar(grammar);
+
+    final String program = BenchmarkInputs.calcProgram(this.input, this.size);
+
+    this.parser = Parser.fromGrammar(grammar, Parser.DEFAULT_QUANTIFIER_NODES, this.optimize);
+    // the packrat memo belongs to a single parse invocation -> the tokens can be reused
+    this.tokens = lexer.lex(program);
+  }
+
+  @Benchmark
+  public Node<?> parse() {
+    return this.parser.parse(this.tokens);
+  }
+
+  @Benchmark
+  public boolean recognize() {
+    return this.parser.recognize(this.tokens);
+  }
+
+}
@@ -0,0 +1,106 @@
+package i2.act.benchmarks;
+
+import i2.act.grammargraph.GrammarGraph;
+import i2.act.grammargraph.GrammarGraphEdge;
+import i2.act.grammargraph.GrammarGraphNode;
+import i2.act.grammargraph.GrammarGraphNode.Choice;
+import i2.act.grammargraph.GrammarGraphNode.Sequence;
+import i2.act.grammargraph.properties.PropertyComputation;
+import i2.act.peg.symbols.LexerSymbol;
+import i2.act.util.Pair;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PropertyComputationBenchmark {
+
+  // computes the lexer symbols that are reachable from each node of the grammar graph
+  private static final class ReachableLexerSymbols
+      extends PropertyComputation<Set<LexerSymbol>> {
+
+    public ReachableLexerSymbols() {
+      super(PropertyComputation.Direction.BACKWARDS);
+    }
+
+    @Override
+    protected final Set<LexerSymbol> init(final Choice node, final GrammarGraph grammarGraph) {
+      final Set<LexerSymbol> init = new HashSet<>();
+
+      if (node.hasGrammarSymbol() && (node.getGrammarSymbol() instanceof LexerSymbol)) {
+        init.add((LexerSymbol) node.getGrammarSymbol());
+      }
+
+      return init;
+    }
+
+    @Override
+    protected final Set<LexerSymbol> init(final Sequence node, final GrammarGraph grammarGraph) {
+      return new HashSet<>();
+    }
+
+    @Override
+    protected final Set<LexerSymbol> transfer(final Choice node, final Set<LexerSymbol> in) {
+      return in;
+    }
+
+    @Override
+    protected final Set<LexerSymbol> transfer(final Sequence node, final Set<LexerSymbol> in) {
+      return in;
+    }
+
+    @Override
+    protected final Set<LexerSymbol> confluence(final Choice node,
+        final Iterable<Pair<GrammarGraphEdge<?, ?>, Set<LexerSymbol>>> inSets) {
+      return union(init(node, null), inSets);
+    }
+
+    @Override
+    protected final Set<LexerSymbol> confluence(final Sequence node,
+        final Iterable<Pair<GrammarGraphEdge<?, ?>, Set<LexerSymbol>>> inSets) {
+      return union(new HashSet<>(), inSets);
+    }
+
+    private static final Set<LexerSymbol> union(final Set<LexerSymbol> union,
+        final Iterable<Pair<GrammarGraphEdge<?, ?>, Set<LexerSymbol>>> inSets) {
+      for (final Pair<GrammarGraphEdge<?, ?>, Set<LexerSymbol>> inSet : inSets) {
+        union.addAll(inSet.getSecond());
+      }
+
+      return union;
+    }
+
+  }
+
+  private GrammarGraph grammarGraph;
+
+  @Setup
+  public void setup() {
+    this.grammarGraph =
+        GrammarGraph.fromGrammar(BenchmarkInputs.readGrammar(BenchmarkInputs.CALC_GRAMMAR));
+  }
+
+  @Benchmark
+  public Map<GrammarGraphNode<?, ?>, Set<LexerSymbol>> compute() {
+    return new ReachableLexerSymbols().compute(this.grammarGraph);
+  }
+
+}
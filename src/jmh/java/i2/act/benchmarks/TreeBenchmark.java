@@ -0,0 +1,122 @@
+package i2.act.benchmarks;
+
+import i2.act.packrat.Lexer;
+import i2.act.packrat.Parser;
+import i2.act.packrat.cst.Node;
+import i2.act.packrat.cst.binary.BinaryTree;
+import i2.act.packrat.cst.binary.BinaryTreeWriter;
+import i2.act.packrat.cst.visitors.PrettyPrinter;
+import i2.act.peg.ast.Grammar;
+import i2.act.util.SafeWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xss64m"})
+public class TreeBenchmark {
+
+  // discards everything that is written to it (so that only the pretty printer is measured)
+  private static final class NullWriter extends Writer {
+
+    @Override
+    public final void write(final char[] buffer, final int offset, final int length) {
+      // intentionally left blank
+    }
+
+    @Override
+    public final void flush() {
+      // intentionally left blank
+    }
+
+    @Override
+    public final void close() {
+      // intentionally left blank
+    }
+
+  }
+
+  @Param({"1KB", "1MB"})
+  public String size;
+
+  // repeated statements from the calculator example or a randomly generated program
+  @Param({BenchmarkInputs.INPUT_EXAMPLE, BenchmarkInputs.INPUT_GENERATED})
+  public String input;
+
+  private Grammar grammar;
+
+  private Node<?> syntaxTree;
+  private ByteBuffer serializedTree;
+
+  // compactification modifies the tree -> each invocation works on a fresh copy
+  private Node<?> syntaxTreeCopy;
+
+  private SafeWriter writer;
+
+  @Setup(Level.Trial)
+  public void setupTrial() {
+    this.grammar = BenchmarkInputs.readGrammar(BenchmarkInputs.CALC_GRAMMAR);
+
+    final Lexer lexer = Lexer.forGrammar(this.grammar);
+    final Parser parser = Parser.fromGrammar(this.grammar);
+
+    final String program = BenchmarkInputs.calcProgram(this.input, this.size);
+
+    this.syntaxTree = parser.parse(lexer.lex(program));
+    this.serializedTree =
+        ByteBuffer.wrap(BinaryTreeWriter.toBytes(this.syntaxTree, this.grammar));
+    this.writer = SafeWriter.fromBufferedWriter(new BufferedWriter(new NullWriter()));
+  }
+
+  @Setup(Level.Invocation)
+  public void setupInvocation() {
+    this.syntaxTreeCopy = this.syntaxTree.cloneTree();
+  }
+
+  @Benchmark
+  public Node<?> compactify() {
+    this.syntaxTreeCopy.compactify();
+    return this.syntaxTreeCopy;
+  }
+
+  @Benchmark
+  public Node<?> cloneTree() {
+    return this.syntaxTree.cloneTree();
+  }
+
+  @Benchmark
+  public void prettyPrint() {
+    PrettyPrinter.print(this.syntaxTree, this.writer);
+    this.writer.flush();
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return BinaryTreeWriter.toBytes(this.syntaxTree, this.grammar);
+  }
+
+  @Benchmark
+  public Node<?> deserialize() {
+    return BinaryTree.wrap(this.serializedTree, this.grammar).toNode();
+  }
+
+}
@@ -32,6 +32,7 @@ public final class GrammarGraph implements Iterable<GrammarGraphNode<?, ?>> {
   private final Choice rootNode;
 
   private final Map<Symbol<?>, Choice> grammarNodes;
+  private final Map<String, Symbol<?>> symbolsByName;
   private final List<GrammarGraphNode<?, ?>> allNodes;
 
   private GrammarGraph(final Grammar grammar, final Symbol<?> rootSymbol,
@@ -40,10 +41,16 @@ public final class GrammarGraph implements Iterable<GrammarGraphNode<?, ?>> {
     this.rootNode = rootNode;
 
     this.grammarNodes = new HashMap<Symbol<?>, Choice>();
+    this.symbolsByName = new HashMap<String, Symbol<?>>();
     this.allNodes = new ArrayList<GrammarGraphNode<?, ?>>();
 
-    this.grammarNodes.put(rootSymbol, rootNode);
-    this.allNodes.add(rootNode);
+    addGrammarNode(rootSymbol, rootNode);
+  }
+
+  private final void addGrammarNode(final Symbol<?> symbol, final Choice grammarNode) {
+    this.grammarNodes.put(symbol, grammarNode);
+    this.symbolsByName.put(symbol.getName(), symbol);
+    this.allNodes.add(grammarNode);
   }
 
   public final Grammar getGrammar() {
@@ -202,16 +209,7 @@ public final class GrammarGraph implements Iterable<GrammarGraphNode<?, ?>> {
   }
 
   public final Symbol<?> getSymbol(final String name) {
-    for (final Choice grammarNode : this.grammarNodes.values()) {
-      assert (grammarNode.hasGrammarSymbol());
-      final Symbol<?> symbol = grammarNode.getGrammarSymbol();
-
-      if (symbol.getName().equals(name)) {
-        return symbol;
-      }
-    }
-
-    return null;
+    return this.symbolsByName.get(name);
   }
 
   // ===============================================================================================
@@ -224,33 +222,23 @@ public final class GrammarGraph implements Iterable<GrammarGraphNode<?, ?>> {
 
     // (1) add nodes for all productions
     {
+      final ParserProduction rootProduction = grammar.getRootProduction();
+
       for (final Production<?, ?> production : grammar.getProductions()) {
-        if (production != grammar.getRootProduction()) {
+        if (production != rootProduction) {
           final Symbol<?> productionSymbol = production.getSymbol();
-          final Choice choice = new Choice(productionSymbol);
-
-          grammarGraph.grammarNodes.put(productionSymbol, choice);
-          grammarGraph.allNodes.add(choice);
+          grammarGraph.addGrammarNode(productionSymbol, new Choice(productionSymbol));
         }
       }
 
       // add node for implicitly defined EOF
       final Symbol<?> eofSymbol = LexerSymbol.EOF;
-      final Choice eofNode = new Choice(eofSymbol);
-
-      grammarGraph.grammarNodes.put(eofSymbol, eofNode);
-      grammarGraph.allNodes.add(eofNode);
+      grammarGraph.addGrammarNode(eofSymbol, new Choice(eofSymbol));
     }
 
     // (2) add edges
     {
-      for (final Production<?, ?> production : grammar.getProductions()) {
-        if (!(production instanceof ParserProduction)) {
-          continue;
-        }
-
-        final ParserProduction parserProduction = (ParserProduction) production;
-
+      for (final ParserProduction parserProduction : grammar.getParserProductions()) {
         final Choice productionNode =
             grammarGraph.grammarNodes.get(parserProduction.getSymbol());
         assert (productionNode != null);
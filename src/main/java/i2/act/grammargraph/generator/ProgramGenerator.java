@@ -0,0 +1,290 @@
+package i2.act.grammargraph.generator;
+
+import i2.act.grammargraph.GrammarGraph;
+import i2.act.grammargraph.GrammarGraphEdge.Alternative;
+import i2.act.grammargraph.GrammarGraphEdge.Element;
+import i2.act.grammargraph.GrammarGraphNode;
+import i2.act.grammargraph.GrammarGraphNode.Choice;
+import i2.act.grammargraph.GrammarGraphNode.Sequence;
+import i2.act.grammargraph.properties.MinimumHeightComputation;
+import i2.act.packrat.Lexer;
+import i2.act.peg.ast.Grammar;
+import i2.act.peg.symbols.LexerSymbol;
+import i2.act.peg.symbols.Symbol;
+import i2.act.util.SafeWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// generates random programs by walking the grammar graph of a grammar:
+//
+// - alternatives are chosen randomly according to their weights
+// - an optional element is taken with a probability of w/(w+1) and a repeated element is repeated
+//   again with a probability of w/(w+1) (where w is the weight of the quantifier)
+// - repeated elements in the root production are repeated until the output reaches the target size
+//   (if any), which makes it possible to generate programs of (almost) arbitrary size
+// - once the maximum depth would be exceeded or the target size has been reached, the generator
+//   takes the shortest way out (i.e., chooses alternatives that lead to the smallest subtrees and
+//   does not take any optional elements)
+//
+// tokens are synthesized from the NFAs of the lexer and are separated by skipped tokens (if the
+// grammar defines a skipped token that matches a space or a newline)
+//
+// NOTE: the generator treats the grammar like a context-free grammar, i.e., programs for PEGs that
+// rely on ordered choice or on greedy quantifiers to resolve ambiguities might be rejected by the
+// parser
+public final class ProgramGenerator {
+
+  public static final int DEFAULT_MAX_DEPTH = 64;
+
+  public static final long NO_TARGET_SIZE = -1;
+
+  private static final int MAX_LINE_LENGTH = 100;
+
+  private final Choice rootNode;
+
+  private final Map<GrammarGraphNode<?, ?>, Integer> minimumHeights;
+
+  private final SplittableRandom random;
+  private final TokenGenerator tokenGenerator;
+
+  private final int maxDepth;
+  private final long targetSize;
+
+  private final String tokenSeparator;
+  private final String lineSeparator;
+
+  // state of the current generation
+  private SafeWriter writer;
+  private long size;
+  private int lineLength;
+
+  public ProgramGenerator(final Grammar grammar, final long seed) {
+    this(grammar, seed, DEFAULT_MAX_DEPTH, NO_TARGET_SIZE);
+  }
+
+  public ProgramGenerator(final Grammar grammar, final long seed, final int maxDepth,
+      final long targetSize) {
+    final GrammarGraph grammarGraph = GrammarGraph.fromGrammar(grammar);
+    final Lexer lexer = Lexer.forGrammar(grammar);
+
+    this.rootNode = grammarGraph.getRootNode();
+    this.minimumHeights = MinimumHeightComputation.computeMinimumHeights(grammarGraph);
+
+    if (getMinimumHeight(this.rootNode) == MinimumHeightComputation.INFINITE) {
+      throw new RuntimeException("grammar does not derive any finite program");
+    }
+
+    this.random = new SplittableRandom(seed);
+    this.tokenGenerator = new TokenGenerator(grammar, lexer, this.random);
+
+    this.maxDepth = maxDepth;
+    this.targetSize = targetSize;
+
+    this.tokenSeparator = findSeparator(grammar, lexer, " ");
+    this.lineSeparator = findSeparator(grammar, lexer, "\n");
+  }
+
+  private static final String findSeparator(final Grammar grammar, final Lexer lexer,
+      final String separator) {
+    for (final LexerSymbol lexerSymbol : grammar.getLexerSymbols()) {
+      if (lexerSymbol.isSkippedToken() && lexer.getNFA(lexerSymbol).matches(separator)) {
+        return separator;
+      }
+    }
+
+    return null;
+  }
+
+  public final String generate() {
+    final StringWriter stringWriter = new StringWriter();
+    final BufferedWriter bufferedWriter = new BufferedWriter(stringWriter);
+
+    final SafeWriter writer = SafeWriter.fromBufferedWriter(bufferedWriter);
+    generate(writer);
+    writer.flush();
+
+    final String program = stringWriter.toString();
+
+    try {
+      bufferedWriter.close();
+    } catch (final IOException exception) {
+      // intentionally left blank
+    }
+
+    return program;
+  }
+
+  // writes a random program to the given writer and returns the number of written characters
+  public final long generate(final SafeWriter writer) {
+    this.writer = writer;
+    this.size = 0;
+    this.lineLength = 0;
+
+    generate(this.rootNode, 0, true);
+
+    if (this.lineSeparator != null && this.size > 0) {
+      write(this.lineSeparator);
+    }
+
+    this.writer = null;
+
+    return this.size;
+  }
+
+  private final void generate(final Choice choice, final int depth, final boolean isRoot) {
+    if (choice.isLeaf()) {
+      final Symbol<?> symbol = choice.getGrammarSymbol();
+      assert (symbol instanceof LexerSymbol);
+
+      if (symbol != LexerSymbol.EOF) {
+        writeToken(this.tokenGenerator.generate((LexerSymbol) symbol));
+      }
+
+      return;
+    }
+
+    final Alternative alternative = chooseAlternative(choice, depth);
+    generate(alternative.getTarget(), depth + 1, isRoot);
+  }
+
+  private final void generate(final Sequence sequence, final int depth, final boolean isRoot) {
+    for (final Element element : sequence.getSuccessorEdges()) {
+      final Choice target = element.getTarget();
+
+      switch (element.getQuantifier()) {
+        case QUANT_NONE: {
+          generate(target, depth, false);
+          break;
+        }
+        case QUANT_OPTIONAL: {
+          if (repeat(element, depth, false)) {
+            generate(target, depth, false);
+          }
+          break;
+        }
+        case QUANT_STAR: {
+          while (repeat(element, depth, isRoot)) {
+            generate(target, depth, false);
+          }
+          break;
+        }
+        default: {
+          assert (element.getQuantifier() == Element.Quantifier.QUANT_PLUS);
+          do {
+            generate(target, depth, false);
+          } while (repeat(element, depth, isRoot));
+          break;
+        }
+      }
+    }
+  }
+
+  private final Alternative chooseAlternative(final Choice choice, final int depth) {
+    final List<Alternative> candidates = new ArrayList<>();
+
+    if (!targetSizeReached()) {
+      for (final Alternative alternative : choice.getSuccessorEdges()) {
+        if (fitsIntoDepth(alternative.getTarget(), depth + 1)) {
+          candidates.add(alternative);
+        }
+      }
+    }
+
+    if (candidates.isEmpty()) {
+      // take the shortest way out
+      int minimumHeight = MinimumHeightComputation.INFINITE;
+
+      for (final Alternative alternative : choice.getSuccessorEdges()) {
+        final int height = getMinimumHeight(alternative.getTarget());
+
+        if (height < minimumHeight) {
+          minimumHeight = height;
+          candidates.clear();
+        }
+
+        if (height == minimumHeight) {
+          candidates.add(alternative);
+        }
+      }
+
+      return candidates.get(this.random.nextInt(candidates.size()));
+    }
+
+    int totalWeight = 0;
+    for (final Alternative candidate : candidates) {
+      totalWeight += candidate.getWeight();
+    }
+
+    if (totalWeight <= 0) {
+      return candidates.get(this.random.nextInt(candidates.size()));
+    }
+
+    int remainingWeight = this.random.nextInt(totalWeight);
+    for (final Alternative candidate : candidates) {
+      remainingWeight -= candidate.getWeight();
+
+      if (remainingWeight < 0) {
+        return candidate;
+      }
+    }
+
+    assert (false) : "unreachable";
+    return null;
+  }
+
+  private final boolean repeat(final Element element, final int depth, final boolean isRoot) {
+    if (targetSizeReached() || !fitsIntoDepth(element.getTarget(), depth)) {
+      return false;
+    }
+
+    if (isRoot && this.targetSize != NO_TARGET_SIZE) {
+      return true;
+    }
+
+    final int weight = element.getWeight();
+    return this.random.nextInt(weight + 1) < weight;
+  }
+
+  private final boolean fitsIntoDepth(final GrammarGraphNode<?, ?> node, final int depth) {
+    final int minimumHeight = getMinimumHeight(node);
+    return minimumHeight != MinimumHeightComputation.INFINITE
+        && minimumHeight <= this.maxDepth - depth;
+  }
+
+  private final int getMinimumHeight(final GrammarGraphNode<?, ?> node) {
+    assert (this.minimumHeights.containsKey(node));
+    return this.minimumHeights.get(node);
+  }
+
+  private final boolean targetSizeReached() {
+    return this.targetSize != NO_TARGET_SIZE && this.size >= this.targetSize;
+  }
+
+  private final void writeToken(final String token) {
+    if (this.size > 0) {
+      if (this.lineSeparator != null
+          && this.lineLength + token.length() + 1 > MAX_LINE_LENGTH) {
+        write(this.lineSeparator);
+        this.lineLength = 0;
+      } else if (this.tokenSeparator != null) {
+        write(this.tokenSeparator);
+      }
+    }
+
+    write(token);
+  }
+
+  private final void write(final String string) {
+    this.writer.write(string);
+
+    this.size += string.length();
+    this.lineLength += string.length();
+  }
+
+}
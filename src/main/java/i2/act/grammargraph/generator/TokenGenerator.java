@@ -0,0 +1,372 @@
+package i2.act.grammargraph.generator;
+
+import i2.act.packrat.Lexer;
+import i2.act.packrat.nfa.CharacterSet;
+import i2.act.packrat.nfa.NFA;
+import i2.act.packrat.nfa.NFAState;
+import i2.act.packrat.nfa.Transition;
+import i2.act.peg.ast.CharacterRange;
+import i2.act.peg.ast.Grammar;
+import i2.act.peg.ast.Group;
+import i2.act.peg.ast.Range;
+import i2.act.peg.ast.SingleCharacter;
+import i2.act.peg.symbols.LexerSymbol;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+
+// synthesizes token texts via random walks through the NFAs of a lexer; a synthesized text is only
+// returned if the lexer would lex it as a single token of the requested kind (e.g., an identifier
+// must not be lexed as a keyword)
+public final class TokenGenerator {
+
+  public static final int DEFAULT_MAX_LENGTH = 16;
+
+  private static final int MAX_ATTEMPTS = 64;
+
+  private static final char MIN_INVERTED_CHARACTER = ' ';
+  private static final char MAX_INVERTED_CHARACTER = '~';
+
+  // array-based representation of an NFA, in which each state is annotated with the length of a
+  // shortest path to an accepting state (or -1 if no accepting state is reachable from it)
+  private static final class WalkInfo {
+
+    public final NFA nfa;
+
+    public final int[][] targets;
+    public final CharacterSet[][] characters; // null for epsilon transitions
+    public final boolean[] accepting;
+    public final int[] distances;
+
+    public WalkInfo(final NFA nfa) {
+      this.nfa = nfa;
+
+      final List<NFAState> states = new ArrayList<>();
+      final Map<NFAState, Integer> stateIndexes = new IdentityHashMap<>();
+      {
+        final Queue<NFAState> worklist = new ArrayDeque<>();
+
+        stateIndexes.put(nfa.getStartState(), 0);
+        states.add(nfa.getStartState());
+        worklist.add(nfa.getStartState());
+
+        while (!worklist.isEmpty()) {
+          final NFAState state = worklist.remove();
+
+          for (final Transition transition : state) {
+            final NFAState toState = transition.getTo();
+
+            if (!stateIndexes.containsKey(toState)) {
+              stateIndexes.put(toState, states.size());
+              states.add(toState);
+              worklist.add(toState);
+            }
+          }
+        }
+      }
+
+      final int numberOfStates = states.size();
+
+      this.targets = new int[numberOfStates][];
+      this.characters = new CharacterSet[numberOfStates][];
+      this.accepting = new boolean[numberOfStates];
+
+      for (int index = 0; index < numberOfStates; ++index) {
+        final NFAState state = states.get(index);
+        final List<Transition> transitions = state.getTransitions();
+
+        this.targets[index] = new int[transitions.size()];
+        this.characters[index] = new CharacterSet[transitions.size()];
+        this.accepting[index] = nfa.getAcceptingStates().contains(state);
+
+        for (int transitionIndex = 0; transitionIndex < transitions.size(); ++transitionIndex) {
+          final Transition transition = transitions.get(transitionIndex);
+
+          this.targets[index][transitionIndex] = stateIndexes.get(transition.getTo());
+          this.characters[index][transitionIndex] =
+              (transition.isEpsilonTransition()) ? null : transition.getCharacters();
+        }
+      }
+
+      this.distances = computeDistances(this.targets, this.accepting);
+    }
+
+    // backwards breadth-first search from the accepting states
+    private static final int[] computeDistances(final int[][] targets,
+        final boolean[] accepting) {
+      final int numberOfStates = targets.length;
+
+      final List<List<Integer>> predecessors = new ArrayList<>(numberOfStates);
+      for (int index = 0; index < numberOfStates; ++index) {
+        predecessors.add(new ArrayList<Integer>());
+      }
+
+      for (int index = 0; index < numberOfStates; ++index) {
+        for (final int target : targets[index]) {
+          predecessors.get(target).add(index);
+        }
+      }
+
+      final int[] distances = new int[numberOfStates];
+      Arrays.fill(distances, -1);
+
+      final Queue<Integer> worklist = new ArrayDeque<>();
+
+      for (int index = 0; index < numberOfStates; ++index) {
+        if (accepting[index]) {
+          distances[index] = 0;
+          worklist.add(index);
+        }
+      }
+
+      while (!worklist.isEmpty()) {
+        final int state = worklist.remove();
+
+        for (final int predecessor : predecessors.get(state)) {
+          if (distances[predecessor] == -1) {
+            distances[predecessor] = distances[state] + 1;
+            worklist.add(predecessor);
+          }
+        }
+      }
+
+      return distances;
+    }
+
+  }
+
+  private final Lexer lexer;
+  private final List<LexerSymbol> tokenSymbols; // in declaration order
+
+  private final SplittableRandom random;
+  private final int maxLength;
+
+  private final Map<LexerSymbol, WalkInfo> walkInfos;
+
+  // literal tokens are always generated the same way -> only check them once
+  private final Map<LexerSymbol, String> literalTokens;
+
+  public TokenGenerator(final Grammar grammar, final Lexer lexer,
+      final SplittableRandom random) {
+    this(grammar, lexer, random, DEFAULT_MAX_LENGTH);
+  }
+
+  public TokenGenerator(final Grammar grammar, final Lexer lexer, final SplittableRandom random,
+      final int maxLength) {
+    this.lexer = lexer;
+    this.tokenSymbols = grammar.getLexerSymbols();
+
+    this.random = random;
+    this.maxLength = maxLength;
+
+    this.walkInfos = new HashMap<>();
+    this.literalTokens = new HashMap<>();
+  }
+
+  public final String generate(final LexerSymbol tokenSymbol) {
+    if (this.literalTokens.containsKey(tokenSymbol)) {
+      return this.literalTokens.get(tokenSymbol);
+    }
+
+    final WalkInfo walkInfo = getWalkInfo(tokenSymbol);
+
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; ++attempt) {
+      final String text;
+      {
+        if (walkInfo.nfa.hasLiteralString()) {
+          text = walkInfo.nfa.getLiteralString();
+        } else {
+          text = randomWalk(walkInfo);
+        }
+      }
+
+      if (text != null && lexesAs(text, tokenSymbol)) {
+        if (walkInfo.nfa.hasLiteralString()) {
+          this.literalTokens.put(tokenSymbol, text);
+        }
+
+        return text;
+      }
+    }
+
+    throw new RuntimeException(
+        String.format("unable to generate a valid text for token '%s'", tokenSymbol));
+  }
+
+  // checks if the lexer would lex a text that has been derived from the given token's NFA as a
+  // single token of this kind, i.e., if no token definition that precedes the given one in the
+  // grammar matches the text as well
+  private final boolean lexesAs(final String text, final LexerSymbol tokenSymbol) {
+    if (text.isEmpty()) {
+      return false;
+    }
+
+    final char[] characters = text.toCharArray();
+
+    for (final LexerSymbol otherSymbol : this.tokenSymbols) {
+      if (otherSymbol == tokenSymbol) {
+        // the text has been derived from the token's NFA, i.e., the NFA matches the whole text
+        return true;
+      }
+
+      final int matchLength = this.lexer.getNFA(otherSymbol).prefixMatch(characters, 0);
+
+      if (matchLength == characters.length) {
+        return false;
+      }
+    }
+
+    return false;
+  }
+
+  private final WalkInfo getWalkInfo(final LexerSymbol tokenSymbol) {
+    WalkInfo walkInfo = this.walkInfos.get(tokenSymbol);
+
+    if (walkInfo == null) {
+      walkInfo = new WalkInfo(this.lexer.getNFA(tokenSymbol));
+      this.walkInfos.put(tokenSymbol, walkInfo);
+    }
+
+    return walkInfo;
+  }
+
+  // walks randomly through the NFA until an accepting state is reached (and the walk randomly
+  // stops there); once the maximum length is exceeded, the walk follows a shortest path to an
+  // accepting state
+  private final String randomWalk(final WalkInfo walkInfo) {
+    final StringBuilder builder = new StringBuilder();
+
+    int state = 0;
+    int steps = 0;
+
+    while (true) {
+      final boolean isAccepting = walkInfo.accepting[state];
+      final boolean exceeded = (steps++ > this.maxLength);
+
+      if (isAccepting && (exceeded || this.random.nextBoolean())) {
+        return builder.toString();
+      }
+
+      final int transition = chooseTransition(state, walkInfo, exceeded);
+
+      if (transition == -1) {
+        return (isAccepting) ? builder.toString() : null;
+      }
+
+      final CharacterSet characters = walkInfo.characters[state][transition];
+
+      if (characters != null) {
+        final Character character = chooseCharacter(characters);
+
+        if (character == null) {
+          return null;
+        }
+
+        builder.append((char) character);
+      }
+
+      state = walkInfo.targets[state][transition];
+    }
+  }
+
+  // returns the index of a random transition (or only of the transitions on a shortest path to an
+  // accepting state), or -1 if no accepting state can be reached from the given state
+  private final int chooseTransition(final int state, final WalkInfo walkInfo,
+      final boolean shortest) {
+    final int[] targets = walkInfo.targets[state];
+
+    int minimumDistance = Integer.MAX_VALUE;
+    int numberOfCandidates = 0;
+
+    for (final int target : targets) {
+      final int distance = walkInfo.distances[target];
+
+      if (distance == -1) {
+        continue;
+      }
+
+      if (shortest && distance < minimumDistance) {
+        minimumDistance = distance;
+        numberOfCandidates = 0;
+      }
+
+      if (!shortest || distance == minimumDistance) {
+        ++numberOfCandidates;
+      }
+    }
+
+    if (numberOfCandidates == 0) {
+      return -1;
+    }
+
+    int chosenCandidate = this.random.nextInt(numberOfCandidates);
+
+    for (int transition = 0; transition < targets.length; ++transition) {
+      final int distance = walkInfo.distances[targets[transition]];
+
+      if (distance != -1 && (!shortest || distance == minimumDistance)) {
+        if (chosenCandidate-- == 0) {
+          return transition;
+        }
+      }
+    }
+
+    assert (false) : "unreachable";
+    return -1;
+  }
+
+  private final Character chooseCharacter(final CharacterSet characters) {
+    if (characters instanceof CharacterSet.SingleCharacter) {
+      return ((CharacterSet.SingleCharacter) characters).getCharacter();
+    }
+
+    assert (characters instanceof CharacterSet.CharacterGroup);
+    final Group group = ((CharacterSet.CharacterGroup) characters).getGroup();
+
+    if (group.isInverted()) {
+      // choose a printable ASCII character that is not excluded by the group
+      for (int attempt = 0; attempt < MAX_ATTEMPTS; ++attempt) {
+        final char character = (char) (MIN_INVERTED_CHARACTER
+            + this.random.nextInt(MAX_INVERTED_CHARACTER - MIN_INVERTED_CHARACTER + 1));
+
+        if (characters.matches(character)) {
+          return character;
+        }
+      }
+
+      return null;
+    }
+
+    final List<Range> ranges = group.getRanges();
+
+    if (ranges.isEmpty()) {
+      return null;
+    }
+
+    final Range range = ranges.get(this.random.nextInt(ranges.size()));
+
+    if (range instanceof SingleCharacter) {
+      return ((SingleCharacter) range).getValue();
+    } else {
+      assert (range instanceof CharacterRange);
+      final CharacterRange characterRange = (CharacterRange) range;
+
+      final char lowerCharacter = characterRange.getLowerCharacter().getValue();
+      final char upperCharacter = characterRange.getUpperCharacter().getValue();
+
+      if (upperCharacter < lowerCharacter) {
+        return null;
+      }
+
+      return (char) (lowerCharacter + this.random.nextInt(upperCharacter - lowerCharacter + 1));
+    }
+  }
+
+}
@@ -0,0 +1,71 @@
+package i2.act.grammargraph.hazards;
+
+import i2.act.peg.symbols.ParserSymbol;
+
+public final class Hazard {
+
+  public static enum Kind {
+
+    // an ordered choice whose alternatives may start with the same token (i.e., the parser may
+    // have to backtrack); measure: number of alternatives that are tried for the worst token
+    OVERLAPPING_ALTERNATIVES("overlapping-alternatives"),
+
+    // a chain of productions that derive a single other production; measure: length of the chain
+    UNIT_CHAIN("unit-chain"),
+
+    // a repetition of an expression that may match the empty word; measure: number of such
+    // repetitions in the production
+    NULLABLE_REPETITION("nullable-repetition"),
+
+    // a production that may invoke itself without consuming a token; measure: number of
+    // productions on the cycle
+    LEFT_RECURSION("left-recursion"),
+
+    // a production whose memoized results are never looked up again; measure: number of use
+    // sites of the production
+    UNREUSED_MEMO("unreused-memo");
+
+    public final String name;
+
+    private Kind(final String name) {
+      this.name = name;
+    }
+
+  }
+
+  private final Kind kind;
+  private final ParserSymbol production;
+  private final int measure;
+  private final String details;
+
+  public Hazard(final Kind kind, final ParserSymbol production, final int measure,
+      final String details) {
+    this.kind = kind;
+    this.production = production;
+    this.measure = measure;
+    this.details = details;
+  }
+
+  public final Kind getKind() {
+    return this.kind;
+  }
+
+  public final ParserSymbol getProduction() {
+    return this.production;
+  }
+
+  public final int getMeasure() {
+    return this.measure;
+  }
+
+  public final String getDetails() {
+    return this.details;
+  }
+
+  @Override
+  public final String toString() {
+    return String.format("%s\t%s\t%d\t%s",
+        this.kind.name, this.production.getName(), this.measure, this.details);
+  }
+
+}
@@ -0,0 +1,554 @@
+package i2.act.grammargraph.hazards;
+
+import i2.act.grammargraph.GrammarGraph;
+import i2.act.grammargraph.GrammarGraphEdge.Alternative;
+import i2.act.grammargraph.GrammarGraphEdge.Element;
+import i2.act.grammargraph.GrammarGraphNode;
+import i2.act.grammargraph.GrammarGraphNode.Choice;
+import i2.act.grammargraph.GrammarGraphNode.Sequence;
+import i2.act.grammargraph.properties.FirstSetComputation;
+import i2.act.grammargraph.properties.MinimumHeightComputation;
+import i2.act.grammargraph.properties.NullableComputation;
+import i2.act.peg.ast.ParserProduction;
+import i2.act.peg.symbols.LexerSymbol;
+import i2.act.peg.symbols.ParserSymbol;
+import i2.act.peg.symbols.Symbol;
+import i2.act.util.graph.Kosaraju;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+// statically determines the parts of a grammar that are likely to make the packrat parser slow
+// (see 'Hazard.Kind'); the analysis is based on the same first sets that the parser uses for its
+// look-ahead checks, i.e., alternatives whose first sets do not contain the current token are not
+// considered to be applied
+//
+// left recursion is reported as 'direct' if the production only invokes itself (which is handled by
+// the seed growing of the parser) and as 'indirect' if the cycle contains further productions
+// (which the parser does not support)
+public final class HazardAnalysis {
+
+  public static final int MINIMUM_UNIT_CHAIN_LENGTH = 3;
+
+  private final GrammarGraph grammarGraph;
+
+  private final Map<GrammarGraphNode<?, ?>, Boolean> nullable;
+  private final Map<GrammarGraphNode<?, ?>, Set<LexerSymbol>> first;
+
+  // the nodes of the parser productions (in the order of the grammar) and their IDs
+  private final List<Choice> productions;
+  private final Map<Symbol<?>, Integer> ids;
+
+  // the nodes of the right-hand side of each production (excluding the nodes of other productions)
+  private final List<List<GrammarGraphNode<?, ?>>> bodies;
+
+  private final List<Hazard> hazards;
+
+  private HazardAnalysis(final GrammarGraph grammarGraph) {
+    this.grammarGraph = grammarGraph;
+
+    this.nullable = NullableComputation.computeNullable(grammarGraph);
+    this.first = FirstSetComputation.computeFirstSets(grammarGraph, this.nullable);
+
+    final Map<Symbol<?>, Choice> productionNodes = new HashMap<>();
+    for (final GrammarGraphNode<?, ?> node : grammarGraph) {
+      if (isProduction(node)) {
+        productionNodes.put(((Choice) node).getGrammarSymbol(), (Choice) node);
+      }
+    }
+
+    this.productions = new ArrayList<>();
+    this.ids = new HashMap<>();
+
+    for (final ParserProduction production : grammarGraph.getGrammar().getParserProductions()) {
+      final Choice productionNode = productionNodes.get(production.getSymbol());
+      assert (productionNode != null);
+
+      this.ids.put(production.getSymbol(), this.productions.size());
+      this.productions.add(productionNode);
+    }
+
+    this.bodies = new ArrayList<>();
+    for (final Choice production : this.productions) {
+      final List<GrammarGraphNode<?, ?>> body = new ArrayList<>();
+      collectBody(production, body);
+
+      this.bodies.add(body);
+    }
+
+    this.hazards = new ArrayList<>();
+  }
+
+  public static final HazardReport analyze(final GrammarGraph grammarGraph) {
+    return (new HazardAnalysis(grammarGraph)).analyze();
+  }
+
+  private final HazardReport analyze() {
+    final int[] backtracking = findOverlappingAlternatives();
+    findUnitChains();
+    findNullableRepetitions();
+    final boolean[] leftRecursive = findLeftRecursion();
+    findUnreusedMemoEntries(leftRecursive);
+
+    final int backtrackingWidth = backtracking[0];
+    final String backtrackingDetails;
+    final ParserSymbol backtrackingProduction;
+    {
+      if (backtrackingWidth > 1) {
+        backtrackingProduction = getSymbol(backtracking[1]);
+        backtrackingDetails = this.hazards.get(backtracking[2]).getDetails();
+      } else {
+        backtrackingProduction = getSymbol(this.ids.get(this.grammarGraph.getRootNode()
+            .getGrammarSymbol()));
+        backtrackingDetails = "-";
+      }
+    }
+
+    return new HazardReport(this.hazards, backtrackingWidth, backtrackingProduction,
+        backtrackingDetails);
+  }
+
+  // ===============================================================================================
+
+  private final boolean isProduction(final GrammarGraphNode<?, ?> node) {
+    if (!(node instanceof Choice)) {
+      return false;
+    }
+
+    // implicit quantifier symbols do not have a production
+    final Symbol<?> symbol = ((Choice) node).getGrammarSymbol();
+    return (symbol instanceof ParserSymbol) && symbol.getProduction() != null;
+  }
+
+  // nodes of parenthesized expressions in the right-hand side of a production
+  private final boolean isAnonymous(final Choice node) {
+    return !isProduction(node) && !(node.getGrammarSymbol() instanceof LexerSymbol);
+  }
+
+  private final ParserSymbol getSymbol(final int id) {
+    return (ParserSymbol) this.productions.get(id).getGrammarSymbol();
+  }
+
+  private final String getName(final Choice node) {
+    if (node.hasGrammarSymbol()) {
+      return node.getGrammarSymbol().getName();
+    } else {
+      return "(...)";
+    }
+  }
+
+  private final boolean isNullable(final GrammarGraphNode<?, ?> node) {
+    return this.nullable.get(node);
+  }
+
+  private static final boolean isRepetition(final Element element) {
+    return element.getQuantifier() == Element.Quantifier.QUANT_STAR
+        || element.getQuantifier() == Element.Quantifier.QUANT_PLUS;
+  }
+
+  private final void collectBody(final Choice choice, final List<GrammarGraphNode<?, ?>> body) {
+    body.add(choice);
+
+    for (final Alternative alternative : choice.getSuccessorEdges()) {
+      final Sequence sequence = alternative.getTarget();
+      body.add(sequence);
+
+      for (final Element element : sequence.getSuccessorEdges()) {
+        if (isAnonymous(element.getTarget())) {
+          collectBody(element.getTarget(), body);
+        }
+      }
+    }
+  }
+
+  private final List<LexerSymbol> sortedFirst(final GrammarGraphNode<?, ?> node) {
+    final List<LexerSymbol> first = new ArrayList<>(this.first.get(node));
+    first.sort(Comparator.comparingInt(Symbol::getId));
+
+    return first;
+  }
+
+  // ===============================================================================================
+
+  // reports each choice in which more than one alternative may be applied for the same token;
+  // returns the worst-case backtracking width of the grammar, the ID of the production that
+  // contains the corresponding choice and the index of its hazard
+  private final int[] findOverlappingAlternatives() {
+    final int[] backtracking = { 1, -1, -1 };
+
+    for (int id = 0; id < this.productions.size(); ++id) {
+      for (final GrammarGraphNode<?, ?> node : this.bodies.get(id)) {
+        if (!(node instanceof Choice) || node.numberOfSuccessors() < 2) {
+          continue;
+        }
+
+        final List<Alternative> alternatives = ((Choice) node).getSuccessorEdges();
+
+        // a nullable alternative always succeeds -> succeeding alternatives are never applied
+        int numberOfApplicableAlternatives = alternatives.size();
+        final Set<LexerSymbol> tokens = new LinkedHashSet<>();
+
+        for (int index = 0; index < alternatives.size(); ++index) {
+          final Sequence alternative = alternatives.get(index).getTarget();
+          tokens.addAll(sortedFirst(alternative));
+
+          if (isNullable(alternative)) {
+            numberOfApplicableAlternatives = index + 1;
+            break;
+          }
+        }
+
+        int width = 0;
+        String details = null;
+
+        for (final LexerSymbol token : tokens) {
+          final StringJoiner appliedAlternatives = new StringJoiner(",");
+          int numberOfAppliedAlternatives = 0;
+
+          for (int index = 0; index < numberOfApplicableAlternatives; ++index) {
+            if (this.first.get(alternatives.get(index).getTarget()).contains(token)) {
+              appliedAlternatives.add(String.valueOf(index + 1));
+              ++numberOfAppliedAlternatives;
+            }
+          }
+
+          if (numberOfAppliedAlternatives > width) {
+            width = numberOfAppliedAlternatives;
+            details = String.format("token=%s alternatives=%s",
+                token.getName(), appliedAlternatives);
+          }
+        }
+
+        if (width > 1) {
+          if (width > backtracking[0]) {
+            backtracking[0] = width;
+            backtracking[1] = id;
+            backtracking[2] = this.hazards.size();
+          }
+
+          this.hazards.add(
+              new Hazard(Hazard.Kind.OVERLAPPING_ALTERNATIVES, getSymbol(id), width, details));
+        }
+      }
+    }
+
+    return backtracking;
+  }
+
+  // ===============================================================================================
+
+  // reports each maximal chain of at least MINIMUM_UNIT_CHAIN_LENGTH productions in which each
+  // production may derive the next one (and nothing else), e.g., the precedence levels of an
+  // expression grammar; the parser has to descend the whole chain for each operand
+  private final void findUnitChains() {
+    final int numberOfProductions = this.productions.size();
+
+    final int[][] unitTargets = new int[numberOfProductions][];
+    final boolean[] isUnitTarget = new boolean[numberOfProductions];
+
+    for (int id = 0; id < numberOfProductions; ++id) {
+      final Set<Integer> targets = new LinkedHashSet<>();
+      collectUnitTargets(this.productions.get(id), targets);
+
+      unitTargets[id] = toArray(targets);
+      for (final int target : unitTargets[id]) {
+        isUnitTarget[target] = true;
+      }
+    }
+
+    final int[] components = Kosaraju.computeComponents(unitTargets);
+
+    // unit targets are in higher components than their users -> compute their chains first
+    final List<Integer> order = new ArrayList<>();
+    for (int id = 0; id < numberOfProductions; ++id) {
+      order.add(id);
+    }
+    order.sort((first, second) -> Integer.compare(components[second], components[first]));
+
+    final int[] chainLengths = new int[numberOfProductions];
+    final int[] chainSuccessors = new int[numberOfProductions];
+
+    for (final int id : order) {
+      chainLengths[id] = 1;
+      chainSuccessors[id] = -1;
+
+      for (final int target : unitTargets[id]) {
+        // unit cycles are reported as left recursion
+        if (components[target] != components[id] && chainLengths[target] >= chainLengths[id]) {
+          chainLengths[id] = chainLengths[target] + 1;
+          chainSuccessors[id] = target;
+        }
+      }
+    }
+
+    for (int id = 0; id < numberOfProductions; ++id) {
+      if (isUnitTarget[id] || chainLengths[id] < MINIMUM_UNIT_CHAIN_LENGTH) {
+        continue;
+      }
+
+      final StringJoiner chain = new StringJoiner(">");
+      for (int link = id; link != -1; link = chainSuccessors[link]) {
+        chain.add(getSymbol(link).getName());
+      }
+
+      this.hazards.add(new Hazard(
+          Hazard.Kind.UNIT_CHAIN, getSymbol(id), chainLengths[id], chain.toString()));
+    }
+  }
+
+  // an alternative derives a single production if it contains exactly one element that has to
+  // consume a token and if this element is the production itself or a parenthesized expression
+  // that derives a single production
+  private final void collectUnitTargets(final Choice choice, final Set<Integer> targets) {
+    for (final Alternative alternative : choice.getSuccessorEdges()) {
+      Element mandatoryElement = null;
+      int numberOfMandatoryElements = 0;
+
+      for (final Element element : alternative.getTarget().getSuccessorEdges()) {
+        if (MinimumHeightComputation.isMandatory(element) && !isNullable(element.getTarget())) {
+          mandatoryElement = element;
+          ++numberOfMandatoryElements;
+        }
+      }
+
+      if (numberOfMandatoryElements != 1
+          || mandatoryElement.getQuantifier() != Element.Quantifier.QUANT_NONE) {
+        continue;
+      }
+
+      final Choice target = mandatoryElement.getTarget();
+
+      if (isProduction(target)) {
+        targets.add(this.ids.get(target.getGrammarSymbol()));
+      } else if (isAnonymous(target)) {
+        collectUnitTargets(target, targets);
+      }
+    }
+  }
+
+  // ===============================================================================================
+
+  // reports each production that repeats an expression that may match the empty word; the
+  // repetition stops as soon as the expression does not consume a token, but the expression is
+  // still applied once more than necessary
+  private final void findNullableRepetitions() {
+    for (int id = 0; id < this.productions.size(); ++id) {
+      final StringJoiner repeatedExpressions = new StringJoiner(",");
+      int numberOfRepetitions = 0;
+
+      for (final GrammarGraphNode<?, ?> node : this.bodies.get(id)) {
+        if (!(node instanceof Sequence)) {
+          continue;
+        }
+
+        for (final Element element : ((Sequence) node).getSuccessorEdges()) {
+          if (isRepetition(element) && isNullable(element.getTarget())) {
+            repeatedExpressions.add(getName(element.getTarget()));
+            ++numberOfRepetitions;
+          }
+        }
+      }
+
+      if (numberOfRepetitions > 0) {
+        this.hazards.add(new Hazard(Hazard.Kind.NULLABLE_REPETITION, getSymbol(id),
+            numberOfRepetitions, repeatedExpressions.toString()));
+      }
+    }
+  }
+
+  // ===============================================================================================
+
+  // reports each production that may invoke itself at the position at which it has been invoked;
+  // returns which productions are left-recursive
+  private final boolean[] findLeftRecursion() {
+    final int numberOfProductions = this.productions.size();
+
+    final int[][] leadingProductions = new int[numberOfProductions][];
+    final boolean[] directlyLeftRecursive = new boolean[numberOfProductions];
+
+    for (int id = 0; id < numberOfProductions; ++id) {
+      final Set<Integer> leading = new LinkedHashSet<>();
+      collectLeadingProductions(this.productions.get(id), leading);
+
+      leadingProductions[id] = toArray(leading);
+      directlyLeftRecursive[id] = leading.contains(id);
+    }
+
+    final int[] components = Kosaraju.computeComponents(leadingProductions);
+
+    final List<List<Integer>> componentMembers = new ArrayList<>();
+    for (int id = 0; id < numberOfProductions; ++id) {
+      while (componentMembers.size() <= components[id]) {
+        componentMembers.add(new ArrayList<>());
+      }
+      componentMembers.get(components[id]).add(id);
+    }
+
+    final boolean[] leftRecursive = new boolean[numberOfProductions];
+
+    for (int id = 0; id < numberOfProductions; ++id) {
+      final List<Integer> cycle = componentMembers.get(components[id]);
+
+      if (cycle.size() > 1) {
+        leftRecursive[id] = true;
+
+        // each cycle is only reported for its first production
+        if (cycle.get(0) != id) {
+          continue;
+        }
+
+        final StringJoiner members = new StringJoiner(",");
+        for (final int member : cycle) {
+          members.add(getSymbol(member).getName());
+        }
+
+        this.hazards.add(new Hazard(Hazard.Kind.LEFT_RECURSION, getSymbol(id), cycle.size(),
+            String.format("indirect:%s", members)));
+      } else if (directlyLeftRecursive[id]) {
+        leftRecursive[id] = true;
+        this.hazards.add(new Hazard(Hazard.Kind.LEFT_RECURSION, getSymbol(id), 1, "direct"));
+      }
+    }
+
+    return leftRecursive;
+  }
+
+  // collects the productions that may be invoked before the first token is consumed
+  private final void collectLeadingProductions(final Choice choice, final Set<Integer> leading) {
+    for (final Alternative alternative : choice.getSuccessorEdges()) {
+      for (final Element element : alternative.getTarget().getSuccessorEdges()) {
+        final Choice target = element.getTarget();
+
+        if (isProduction(target)) {
+          leading.add(this.ids.get(target.getGrammarSymbol()));
+        } else if (isAnonymous(target)) {
+          collectLeadingProductions(target, leading);
+        }
+
+        if (MinimumHeightComputation.isMandatory(element) && !isNullable(target)) {
+          break;
+        }
+      }
+    }
+  }
+
+  // ===============================================================================================
+
+  // reports each production whose memoized results can not be looked up again: the production
+  // has a single use site that is not repeated and the production that contains the use site is
+  // either applied at most once in total or the use site is at its very beginning (i.e., each
+  // application of the production corresponds to a distinct, memoized application of its user)
+  private final void findUnreusedMemoEntries(final boolean[] leftRecursive) {
+    final int numberOfProductions = this.productions.size();
+
+    final List<List<Integer>> references = new ArrayList<>();
+    for (int id = 0; id < numberOfProductions; ++id) {
+      references.add(new ArrayList<>());
+    }
+
+    final int[] numberOfUseSites = new int[numberOfProductions];
+    final int[] users = new int[numberOfProductions];
+    final boolean[] leadingUseSite = new boolean[numberOfProductions];
+    final boolean[] repeatedUseSite = new boolean[numberOfProductions];
+
+    for (int id = 0; id < numberOfProductions; ++id) {
+      collectUseSites(this.productions.get(id), id, true, false, references.get(id),
+          numberOfUseSites, users, leadingUseSite, repeatedUseSite);
+    }
+
+    final int[][] referencesArray = new int[numberOfProductions][];
+    for (int id = 0; id < numberOfProductions; ++id) {
+      referencesArray[id] = toArray(references.get(id));
+    }
+
+    final int[] components = Kosaraju.computeComponents(referencesArray);
+
+    // used productions are in higher components than their users -> decide the users first
+    final List<Integer> order = new ArrayList<>();
+    for (int id = 0; id < numberOfProductions; ++id) {
+      order.add(id);
+    }
+    order.sort((first, second) -> Integer.compare(components[first], components[second]));
+
+    final int rootId = this.ids.get(this.grammarGraph.getRootNode().getGrammarSymbol());
+
+    // productions that are applied at most once per parse
+    final boolean[] appliedOnce = new boolean[numberOfProductions];
+
+    for (final int id : order) {
+      if (id == rootId) {
+        appliedOnce[id] = (numberOfUseSites[id] == 0);
+        continue;
+      }
+
+      if (numberOfUseSites[id] != 1 || repeatedUseSite[id] || leftRecursive[id]) {
+        continue;
+      }
+
+      final int user = users[id];
+
+      if (components[user] == components[id] || leftRecursive[user]) {
+        continue;
+      }
+
+      appliedOnce[id] = appliedOnce[user];
+
+      if (appliedOnce[user] || leadingUseSite[id]) {
+        this.hazards.add(new Hazard(Hazard.Kind.UNREUSED_MEMO, getSymbol(id), 1,
+            String.format("user=%s", getSymbol(user).getName())));
+      }
+    }
+  }
+
+  private final void collectUseSites(final Choice choice, final int user, final boolean leading,
+      final boolean repeated, final List<Integer> references, final int[] numberOfUseSites,
+      final int[] users, final boolean[] leadingUseSite, final boolean[] repeatedUseSite) {
+    for (final Alternative alternative : choice.getSuccessorEdges()) {
+      final List<Element> elements = alternative.getTarget().getSuccessorEdges();
+
+      for (int index = 0; index < elements.size(); ++index) {
+        final Element element = elements.get(index);
+        final Choice target = element.getTarget();
+
+        final boolean elementLeading = leading && (index == 0);
+        final boolean elementRepeated = repeated || isRepetition(element);
+
+        if (isProduction(target)) {
+          final int id = this.ids.get(target.getGrammarSymbol());
+
+          references.add(id);
+          ++numberOfUseSites[id];
+          users[id] = user;
+          leadingUseSite[id] = elementLeading;
+          repeatedUseSite[id] = elementRepeated;
+        } else if (isAnonymous(target)) {
+          collectUseSites(target, user, elementLeading, elementRepeated, references,
+              numberOfUseSites, users, leadingUseSite, repeatedUseSite);
+        }
+      }
+    }
+  }
+
+  // ===============================================================================================
+
+  private static final int[] toArray(final Iterable<Integer> integers) {
+    final List<Integer> list = new ArrayList<>();
+    for (final int integer : integers) {
+      list.add(integer);
+    }
+
+    final int[] array = new int[list.size()];
+    for (int index = 0; index < array.length; ++index) {
+      array[index] = list.get(index);
+    }
+
+    return array;
+  }
+
+}
@@ -0,0 +1,53 @@
+package i2.act.grammargraph.hazards;
+
+import i2.act.peg.symbols.ParserSymbol;
+import i2.act.util.SafeWriter;
+
+import java.util.Collections;
+import java.util.List;
+
+// the result of a 'HazardAnalysis'
+//
+// the report is printed with one tab-separated line per hazard ('<kind> <production> <measure>
+// <details>'), followed by a line with the worst-case backtracking width of the grammar
+// ('backtracking-width <production> <width> <details>')
+public final class HazardReport {
+
+  private final List<Hazard> hazards;
+
+  private final int backtrackingWidth;
+  private final ParserSymbol backtrackingProduction;
+  private final String backtrackingDetails;
+
+  public HazardReport(final List<Hazard> hazards, final int backtrackingWidth,
+      final ParserSymbol backtrackingProduction, final String backtrackingDetails) {
+    this.hazards = hazards;
+    this.backtrackingWidth = backtrackingWidth;
+    this.backtrackingProduction = backtrackingProduction;
+    this.backtrackingDetails = backtrackingDetails;
+  }
+
+  public final List<Hazard> getHazards() {
+    return Collections.unmodifiableList(this.hazards);
+  }
+
+  // the maximum number of alternatives of a single ordered choice that are applied at the same
+  // position (a width of 1 means that the grammar never backtracks)
+  public final int getBacktrackingWidth() {
+    return this.backtrackingWidth;
+  }
+
+  public final ParserSymbol getBacktrackingProduction() {
+    return this.backtrackingProduction;
+  }
+
+  public final void print(final SafeWriter writer) {
+    for (final Hazard hazard : this.hazards) {
+      writer.write("%s\n", hazard);
+    }
+
+    writer.write("backtracking-width\t%s\t%d\t%s\n", this.backtrackingProduction.getName(),
+        this.backtrackingWidth, this.backtrackingDetails);
+  }
+
+}
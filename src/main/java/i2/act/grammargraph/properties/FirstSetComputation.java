@@ -0,0 +1,100 @@
+package i2.act.grammargraph.properties;
+
+import i2.act.grammargraph.GrammarGraph;
+import i2.act.grammargraph.GrammarGraphEdge;
+import i2.act.grammargraph.GrammarGraphEdge.Element;
+import i2.act.grammargraph.GrammarGraphNode;
+import i2.act.grammargraph.GrammarGraphNode.Choice;
+import i2.act.grammargraph.GrammarGraphNode.Sequence;
+import i2.act.peg.symbols.LexerSymbol;
+import i2.act.util.Pair;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// computes for each node of a grammar graph the token symbols that a match of the node may start
+// with (like the first sets that the packrat parser uses for its look-ahead checks); the first
+// sets do not contain a marker for the empty word, see 'NullableComputation' instead
+public final class FirstSetComputation extends PropertyComputation<Set<LexerSymbol>> {
+
+  private final Map<GrammarGraphNode<?, ?>, Boolean> nullable;
+
+  private FirstSetComputation(final Map<GrammarGraphNode<?, ?>, Boolean> nullable) {
+    super(PropertyComputation.Direction.BACKWARDS);
+    this.nullable = nullable;
+  }
+
+  public static final Map<GrammarGraphNode<?, ?>, Set<LexerSymbol>> computeFirstSets(
+      final GrammarGraph grammarGraph) {
+    return computeFirstSets(grammarGraph, NullableComputation.computeNullable(grammarGraph));
+  }
+
+  public static final Map<GrammarGraphNode<?, ?>, Set<LexerSymbol>> computeFirstSets(
+      final GrammarGraph grammarGraph, final Map<GrammarGraphNode<?, ?>, Boolean> nullable) {
+    return new FirstSetComputation(nullable).compute(grammarGraph);
+  }
+
+  @Override
+  protected final boolean hasThreadSafeTransferFunctions() {
+    return true;
+  }
+
+  @Override
+  protected final Set<LexerSymbol> init(final Choice node, final GrammarGraph grammarGraph) {
+    if (node.isLeaf() && node.getGrammarSymbol() instanceof LexerSymbol) {
+      return Collections.singleton((LexerSymbol) node.getGrammarSymbol());
+    } else {
+      return Collections.emptySet();
+    }
+  }
+
+  @Override
+  protected final Set<LexerSymbol> init(final Sequence node, final GrammarGraph grammarGraph) {
+    return Collections.emptySet();
+  }
+
+  @Override
+  protected final Set<LexerSymbol> transfer(final Choice node, final Set<LexerSymbol> in) {
+    return in;
+  }
+
+  @Override
+  protected final Set<LexerSymbol> transfer(final Sequence node, final Set<LexerSymbol> in) {
+    return in;
+  }
+
+  @Override
+  protected final Set<LexerSymbol> confluence(final Choice node,
+      final Iterable<Pair<GrammarGraphEdge<?, ?>, Set<LexerSymbol>>> inSets) {
+    final Set<LexerSymbol> firstSet = new HashSet<>();
+
+    for (final Pair<GrammarGraphEdge<?, ?>, Set<LexerSymbol>> inSet : inSets) {
+      firstSet.addAll(inSet.getSecond());
+    }
+
+    return firstSet;
+  }
+
+  @Override
+  protected final Set<LexerSymbol> confluence(final Sequence node,
+      final Iterable<Pair<GrammarGraphEdge<?, ?>, Set<LexerSymbol>>> inSets) {
+    final Set<LexerSymbol> firstSet = new HashSet<>();
+
+    for (final Pair<GrammarGraphEdge<?, ?>, Set<LexerSymbol>> inSet : inSets) {
+      firstSet.addAll(inSet.getSecond());
+
+      final Element element = (Element) inSet.getFirst();
+
+      // the elements are passed in order -> stop at the first element that consumes a token
+      if (MinimumHeightComputation.isMandatory(element)
+          && !this.nullable.get(element.getTarget())) {
+        break;
+      }
+    }
+
+    return firstSet;
+  }
+
+}
@@ -0,0 +1,107 @@
+package i2.act.grammargraph.properties;
+
+import i2.act.grammargraph.GrammarGraph;
+import i2.act.grammargraph.GrammarGraphEdge;
+import i2.act.grammargraph.GrammarGraphEdge.Element;
+import i2.act.grammargraph.GrammarGraphNode;
+import i2.act.grammargraph.GrammarGraphNode.Choice;
+import i2.act.grammargraph.GrammarGraphNode.Sequence;
+import i2.act.util.Pair;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// computes for each node of a grammar graph the minimum number of (non-leaf) choices that a
+// derivation starting at this node has to pass on any path (i.e., the height of the smallest
+// syntax tree that can be derived from the node); nodes that cannot derive any finite tree keep the
+// value INFINITE
+public final class MinimumHeightComputation extends PropertyComputation<Integer> {
+
+  public static final int INFINITE = Integer.MAX_VALUE;
+
+  private MinimumHeightComputation() {
+    super(PropertyComputation.Direction.BACKWARDS);
+  }
+
+  public static final Map<GrammarGraphNode<?, ?>, Integer> computeMinimumHeights(
+      final GrammarGraph grammarGraph) {
+    return new MinimumHeightComputation().compute(grammarGraph);
+  }
+
+  public static final Map<GrammarGraphNode<?, ?>, Integer> computeMinimumHeights(
+      final GrammarGraph grammarGraph, final ForkJoinPool pool) {
+    return new MinimumHeightComputation().compute(grammarGraph, pool);
+  }
+
+  @Override
+  protected final boolean hasThreadSafeTransferFunctions() {
+    return true;
+  }
+
+  @Override
+  protected final Integer init(final Choice node, final GrammarGraph grammarGraph) {
+    if (node.isLeaf()) {
+      return 0;
+    } else {
+      return INFINITE;
+    }
+  }
+
+  @Override
+  protected final Integer init(final Sequence node, final GrammarGraph grammarGraph) {
+    if (node.isLeaf()) {
+      return 0;
+    } else {
+      return INFINITE;
+    }
+  }
+
+  @Override
+  protected final Integer transfer(final Choice node, final Integer in) {
+    return in;
+  }
+
+  @Override
+  protected final Integer transfer(final Sequence node, final Integer in) {
+    return in;
+  }
+
+  @Override
+  protected final Integer confluence(final Choice node,
+      final Iterable<Pair<GrammarGraphEdge<?, ?>, Integer>> inSets) {
+    int minimumHeight = INFINITE;
+
+    for (final Pair<GrammarGraphEdge<?, ?>, Integer> inSet : inSets) {
+      minimumHeight = Math.min(minimumHeight, inSet.getSecond());
+    }
+
+    if (minimumHeight == INFINITE) {
+      return INFINITE;
+    }
+
+    return minimumHeight + 1;
+  }
+
+  @Override
+  protected final Integer confluence(final Sequence node,
+      final Iterable<Pair<GrammarGraphEdge<?, ?>, Integer>> inSets) {
+    int minimumHeight = 0;
+
+    for (final Pair<GrammarGraphEdge<?, ?>, Integer> inSet : inSets) {
+      final Element element = (Element) inSet.getFirst();
+
+      if (isMandatory(element)) {
+        minimumHeight = Math.max(minimumHeight, inSet.getSecond());
+      }
+    }
+
+    return minimumHeight;
+  }
+
+  public static final boolean isMandatory(final Element element) {
+    final Element.Quantifier quantifier = element.getQuantifier();
+    return quantifier == Element.Quantifier.QUANT_NONE
+        || quantifier == Element.Quantifier.QUANT_PLUS;
+  }
+
+}
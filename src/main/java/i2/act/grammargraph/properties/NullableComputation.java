@@ -0,0 +1,79 @@
+package i2.act.grammargraph.properties;
+
+import i2.act.grammargraph.GrammarGraph;
+import i2.act.grammargraph.GrammarGraphEdge;
+import i2.act.grammargraph.GrammarGraphEdge.Element;
+import i2.act.grammargraph.GrammarGraphNode;
+import i2.act.grammargraph.GrammarGraphNode.Choice;
+import i2.act.grammargraph.GrammarGraphNode.Sequence;
+import i2.act.util.Pair;
+
+import java.util.Map;
+
+// computes for each node of a grammar graph whether it may derive the empty word (i.e., whether
+// the corresponding parser may succeed without consuming a token)
+public final class NullableComputation extends PropertyComputation<Boolean> {
+
+  private NullableComputation() {
+    super(PropertyComputation.Direction.BACKWARDS);
+  }
+
+  public static final Map<GrammarGraphNode<?, ?>, Boolean> computeNullable(
+      final GrammarGraph grammarGraph) {
+    return new NullableComputation().compute(grammarGraph);
+  }
+
+  @Override
+  protected final boolean hasThreadSafeTransferFunctions() {
+    return true;
+  }
+
+  @Override
+  protected final Boolean init(final Choice node, final GrammarGraph grammarGraph) {
+    // leaf choices are tokens
+    return false;
+  }
+
+  @Override
+  protected final Boolean init(final Sequence node, final GrammarGraph grammarGraph) {
+    // leaf sequences are empty alternatives
+    return node.isLeaf();
+  }
+
+  @Override
+  protected final Boolean transfer(final Choice node, final Boolean in) {
+    return in;
+  }
+
+  @Override
+  protected final Boolean transfer(final Sequence node, final Boolean in) {
+    return in;
+  }
+
+  @Override
+  protected final Boolean confluence(final Choice node,
+      final Iterable<Pair<GrammarGraphEdge<?, ?>, Boolean>> inSets) {
+    for (final Pair<GrammarGraphEdge<?, ?>, Boolean> inSet : inSets) {
+      if (inSet.getSecond()) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  @Override
+  protected final Boolean confluence(final Sequence node,
+      final Iterable<Pair<GrammarGraphEdge<?, ?>, Boolean>> inSets) {
+    for (final Pair<GrammarGraphEdge<?, ?>, Boolean> inSet : inSets) {
+      final Element element = (Element) inSet.getFirst();
+
+      if (MinimumHeightComputation.isMandatory(element) && !inSet.getSecond()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+}
@@ -7,8 +7,12 @@ import i2.act.grammargraph.GrammarGraphNode.Choice;
 import i2.act.grammargraph.GrammarGraphNode.Sequence;
 import i2.act.peg.symbols.Symbol;
 import i2.act.util.Pair;
+import i2.act.util.graph.Kosaraju;
 
 import java.util.*;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.stream.Collectors;
 
 public abstract class PropertyComputation<P> {
@@ -66,6 +70,13 @@ public abstract class PropertyComputation<P> {
     }
   }
 
+  // subclasses whose 'transfer' and 'confluence' functions may be called concurrently for nodes of
+  // different strongly connected components (e.g., because they neither have side effects nor
+  // mutate their inputs) should return 'true' to allow a parallel evaluation
+  protected boolean hasThreadSafeTransferFunctions() {
+    return false;
+  }
+
   private final Iterable<? extends GrammarGraphEdge<?, ?>> getInEdges(
       final GrammarGraphNode<?, ?> node) {
     if (this.direction == Direction.FORWARDS) {
@@ -85,21 +96,6 @@ public abstract class PropertyComputation<P> {
     }
   }
 
-  private final Iterable<Pair<GrammarGraphEdge<?, ?>, P>> getInSets(
-      final GrammarGraphNode<?, ?> node, final Map<GrammarGraphNode<?, ?>, P> properties) {
-    final List<Pair<GrammarGraphEdge<?, ?>, P>> inSets = new ArrayList<>();
-
-    final Iterable<? extends GrammarGraphEdge<?, ?>> inEdges = getInEdges(node);
-    for (final GrammarGraphEdge<?, ?> inEdge : inEdges) {
-      final GrammarGraphNode<?, ?> inNode = getInNode(inEdge);
-
-      assert (properties.containsKey(inNode)) : "missing properties";
-      inSets.add(new Pair<>(inEdge, properties.get(inNode)));
-    }
-
-    return inSets;
-  }
-
   private final Iterable<? extends GrammarGraphEdge<?, ?>> getOutEdges(
       final GrammarGraphNode<?, ?> node) {
     if (this.direction == Direction.FORWARDS) {
@@ -119,16 +115,6 @@ public abstract class PropertyComputation<P> {
     }
   }
 
-  protected P handle(final GrammarGraphNode<?, ?> node,
-      final Map<GrammarGraphNode<?, ?>, P> properties) {
-    final Iterable<Pair<GrammarGraphEdge<?, ?>, P>> inSets = getInSets(node, properties);
-
-    final P in = confluence(node, inSets);
-    final P out = transfer(node, in);
-
-    return out;
-  }
-
   protected final Map<Symbol<?>, P> filter(final Map<GrammarGraphNode<?, ?>, P> result) {
     return result.entrySet().stream()
         .filter(e -> (e.getKey() instanceof Choice)
@@ -138,49 +124,350 @@ public abstract class PropertyComputation<P> {
   }
 
   public final Map<GrammarGraphNode<?, ?>, P> compute(final GrammarGraph grammarGraph) {
-    final Map<GrammarGraphNode<?, ?>, P> properties = new HashMap<>();
+    final Evaluation evaluation = new Evaluation(grammarGraph);
 
-    // initialize with empty sets
-    for (final GrammarGraphNode<?, ?> node : grammarGraph) {
-      final P init = init(node, grammarGraph);
-      properties.put(node, init);
+    for (int component = 0; component < evaluation.numberOfComponents(); ++component) {
+      evaluation.solveComponent(component);
     }
 
-    // fix point computation
-    final Queue<GrammarGraphNode<?, ?>> worklist = new LinkedList<>();
+    return evaluation.getProperties();
+  }
 
-    for (final GrammarGraphNode<?, ?> node : grammarGraph) {
-      // if a node does not have any "in nodes", its value cannot change after initialization
-      // => only add nodes to worklist that have at least one "in node"
-      // (this should handle unreachable nodes correctly)
-      if (getInEdges(node).iterator().hasNext()) {
-        worklist.add(node);
-      }
+  // solves independent strongly connected components concurrently on the given pool; a component is
+  // scheduled as soon as all components it depends on are solved, and the fix point of each
+  // component is computed by a single thread
+  //
+  // if the transfer functions are not thread-safe, the computation is done sequentially
+  public final Map<GrammarGraphNode<?, ?>, P> compute(final GrammarGraph grammarGraph,
+      final ForkJoinPool pool) {
+    if (!hasThreadSafeTransferFunctions()) {
+      return compute(grammarGraph);
     }
 
-    while (!worklist.isEmpty()) {
-      final GrammarGraphNode<?, ?> node = worklist.remove();
+    final Evaluation evaluation = new Evaluation(grammarGraph);
+    pool.invoke(evaluation.new ParallelSolver());
 
-      final P out = handle(node, Collections.unmodifiableMap(properties));
+    return evaluation.getProperties();
+  }
 
-      if (out == null) {
-        continue;
+  // ===============================================================================================
+
+  // the state of a fix point computation on a grammar graph
+  //
+  // nodes are identified by dense IDs and the properties are stored in an array; the strongly
+  // connected components of the graph (with edges in the direction of the data flow) are solved one
+  // after another in topological order, so that the properties of the "in nodes" of a component are
+  // final before the component is solved
+  private final class Evaluation {
+
+    private final GrammarGraphNode<?, ?>[] nodes;
+
+    // indexed by node ID
+    private final GrammarGraphEdge<?, ?>[][] inEdges;
+    private final int[][] inNodes;
+    private final int[][] outNodes;
+    private final Object[] properties;
+
+    // the members of each component (in topological order of the components)
+    private final int[][] components;
+
+    // node ID -> component of the node and index of the node in its component
+    private final int[] componentOfNode;
+    private final int[] indexInComponent;
+
+    public Evaluation(final GrammarGraph grammarGraph) {
+      final Map<GrammarGraphNode<?, ?>, Integer> ids = new IdentityHashMap<>();
+      final List<GrammarGraphNode<?, ?>> nodes = new ArrayList<>();
+      {
+        for (final GrammarGraphNode<?, ?> node : grammarGraph) {
+          ids.put(node, nodes.size());
+          nodes.add(node);
+        }
       }
 
-      if (!out.equals(properties.get(node))) {
-        properties.put(node, out);
+      final int numberOfNodes = nodes.size();
+
+      this.nodes = nodes.toArray(new GrammarGraphNode<?, ?>[numberOfNodes]);
+      this.inEdges = new GrammarGraphEdge<?, ?>[numberOfNodes][];
+      this.inNodes = new int[numberOfNodes][];
+      this.outNodes = new int[numberOfNodes][];
+      this.properties = new Object[numberOfNodes];
+
+      for (int id = 0; id < numberOfNodes; ++id) {
+        final GrammarGraphNode<?, ?> node = this.nodes[id];
+
+        final List<GrammarGraphEdge<?, ?>> nodeInEdges = new ArrayList<>();
+        for (final GrammarGraphEdge<?, ?> inEdge : getInEdges(node)) {
+          nodeInEdges.add(inEdge);
+        }
+
+        this.inEdges[id] = nodeInEdges.toArray(new GrammarGraphEdge<?, ?>[nodeInEdges.size()]);
+        this.inNodes[id] = new int[nodeInEdges.size()];
+        for (int index = 0; index < nodeInEdges.size(); ++index) {
+          this.inNodes[id][index] = ids.get(getInNode(nodeInEdges.get(index)));
+        }
 
+        final List<Integer> nodeOutNodes = new ArrayList<>();
         for (final GrammarGraphEdge<?, ?> outEdge : getOutEdges(node)) {
-          final GrammarGraphNode<?, ?> outNode = getOutNode(outEdge);
+          nodeOutNodes.add(ids.get(getOutNode(outEdge)));
+        }
+
+        this.outNodes[id] = toArray(nodeOutNodes);
+      }
+
+      // compute strongly connected components of the data flow
+      this.componentOfNode = Kosaraju.computeComponents(this.outNodes);
+      this.indexInComponent = new int[numberOfNodes];
+      {
+        int numberOfComponents = 0;
+        for (final int component : this.componentOfNode) {
+          numberOfComponents = Math.max(numberOfComponents, component + 1);
+        }
+
+        final int[] componentSizes = new int[numberOfComponents];
+        for (int id = 0; id < numberOfNodes; ++id) {
+          this.indexInComponent[id] = componentSizes[this.componentOfNode[id]]++;
+        }
+
+        this.components = new int[numberOfComponents][];
+        for (int component = 0; component < numberOfComponents; ++component) {
+          this.components[component] = new int[componentSizes[component]];
+        }
+
+        for (int id = 0; id < numberOfNodes; ++id) {
+          this.components[this.componentOfNode[id]][this.indexInComponent[id]] = id;
+        }
+      }
+
+      // initialize
+      for (int id = 0; id < numberOfNodes; ++id) {
+        this.properties[id] = init(this.nodes[id], grammarGraph);
+      }
+    }
+
+    public final int numberOfComponents() {
+      return this.components.length;
+    }
+
+    // computes the fix point for the nodes of a component; the properties of all nodes of
+    // preceding components have to be final
+    public final void solveComponent(final int component) {
+      final int[] members = this.components[component];
+
+      // worklist of indexes into 'members' (as a ring buffer) and the members on the worklist
+      final int[] worklist = new int[members.length];
+      final BitSet onWorklist = new BitSet(members.length);
+
+      int head = 0;
+      int size = 0;
+
+      for (int index = 0; index < members.length; ++index) {
+        // if a node does not have any "in nodes", its value cannot change after initialization
+        // => only add nodes to worklist that have at least one "in node"
+        // (this should handle unreachable nodes correctly)
+        if (this.inNodes[members[index]].length > 0) {
+          worklist[(head + size++) % members.length] = index;
+          onWorklist.set(index);
+        }
+      }
+
+      while (size > 0) {
+        final int index = worklist[head];
+        head = (head + 1) % members.length;
+        --size;
+        onWorklist.clear(index);
+
+        final int id = members[index];
+        final P out = evaluate(id);
+
+        if (out == null || out.equals(this.properties[id])) {
+          continue;
+        }
+
+        this.properties[id] = out;
+
+        for (final int outNode : this.outNodes[id]) {
+          // nodes of succeeding components are evaluated once this component is solved
+          if (this.componentOfNode[outNode] != component) {
+            continue;
+          }
+
+          final int outIndex = this.indexInComponent[outNode];
+
+          if (!onWorklist.get(outIndex)) {
+            worklist[(head + size++) % members.length] = outIndex;
+            onWorklist.set(outIndex);
+          }
+        }
+      }
+    }
+
+    // returns for each component the (distinct) components that depend on it
+    private final int[][] computeDependentComponents() {
+      final int[][] dependentComponents = new int[this.components.length][];
+
+      final BitSet dependents = new BitSet(this.components.length);
+      for (int component = 0; component < this.components.length; ++component) {
+        dependents.clear();
+
+        for (final int id : this.components[component]) {
+          for (final int outNode : this.outNodes[id]) {
+            if (this.componentOfNode[outNode] != component) {
+              dependents.set(this.componentOfNode[outNode]);
+            }
+          }
+        }
 
-          if (!worklist.contains(outNode)) {
-            worklist.add(outNode);
+        dependentComponents[component] = dependents.stream().toArray();
+      }
+
+      return dependentComponents;
+    }
+
+    private final P evaluate(final int id) {
+      final GrammarGraphNode<?, ?> node = this.nodes[id];
+
+      final P in = confluence(node, new InSets(id));
+      final P out = transfer(node, in);
+
+      return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private final P getProperty(final int id) {
+      return (P) this.properties[id];
+    }
+
+    public final Map<GrammarGraphNode<?, ?>, P> getProperties() {
+      final Map<GrammarGraphNode<?, ?>, P> properties = new HashMap<>();
+
+      for (int id = 0; id < this.nodes.length; ++id) {
+        properties.put(this.nodes[id], getProperty(id));
+      }
+
+      return properties;
+    }
+
+    // schedules the components on a fork/join pool: each component counts the components it still
+    // waits for, and the task that solves the last of them forks the task for the component
+    //
+    // all component tasks have the solver as their completer, i.e., the solver completes once the
+    // tasks of all components have completed
+    private final class ParallelSolver extends CountedCompleter<Void> {
+
+      private final int[][] dependentComponents;
+      private final AtomicIntegerArray pendingDependencies;
+
+      public ParallelSolver() {
+        this.dependentComponents = computeDependentComponents();
+        this.pendingDependencies = new AtomicIntegerArray(numberOfComponents());
+
+        for (final int[] dependents : this.dependentComponents) {
+          for (final int dependent : dependents) {
+            this.pendingDependencies.incrementAndGet(dependent);
+          }
+        }
+      }
+
+      @Override
+      public final void compute() {
+        // determine the independent components before any task is started (running tasks already
+        // decrement the counters of their dependent components)
+        final BitSet independentComponents = new BitSet(numberOfComponents());
+        for (int component = 0; component < numberOfComponents(); ++component) {
+          if (this.pendingDependencies.get(component) == 0) {
+            independentComponents.set(component);
+          }
+        }
+
+        independentComponents.stream().forEach(this::schedule);
+
+        tryComplete();
+      }
+
+      private final void schedule(final int component) {
+        addToPendingCount(1);
+        new ComponentTask(this, component).fork();
+      }
+
+      private final class ComponentTask extends CountedCompleter<Void> {
+
+        private final int component;
+
+        public ComponentTask(final ParallelSolver solver, final int component) {
+          super(solver);
+          this.component = component;
+        }
+
+        @Override
+        public final void compute() {
+          solveComponent(this.component);
+
+          // the decrement publishes the properties of this component to the task that schedules
+          // the dependent component
+          for (final int dependent : ParallelSolver.this.dependentComponents[this.component]) {
+            if (ParallelSolver.this.pendingDependencies.decrementAndGet(dependent) == 0) {
+              schedule(dependent);
+            }
           }
+
+          tryComplete();
         }
+
+      }
+
+    }
+
+    // the in sets of a node (the pairs are only created during iteration)
+    private final class InSets implements Iterable<Pair<GrammarGraphEdge<?, ?>, P>> {
+
+      private final int id;
+
+      public InSets(final int id) {
+        this.id = id;
+      }
+
+      @Override
+      public final Iterator<Pair<GrammarGraphEdge<?, ?>, P>> iterator() {
+        return new Iterator<Pair<GrammarGraphEdge<?, ?>, P>>() {
+
+          private int index;
+
+          @Override
+          public final boolean hasNext() {
+            return this.index < Evaluation.this.inNodes[InSets.this.id].length;
+          }
+
+          @Override
+          public final Pair<GrammarGraphEdge<?, ?>, P> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+
+            final int id = InSets.this.id;
+
+            final GrammarGraphEdge<?, ?> inEdge = Evaluation.this.inEdges[id][this.index];
+            final int inNode = Evaluation.this.inNodes[id][this.index];
+            ++this.index;
+
+            return new Pair<>(inEdge, getProperty(inNode));
+          }
+
+        };
       }
+
+    }
+
+  }
+
+  private static final int[] toArray(final List<Integer> list) {
+    final int[] array = new int[list.size()];
+
+    for (int index = 0; index < array.length; ++index) {
+      array[index] = list.get(index);
     }
 
-    return properties;
+    return array;
   }
 
 }
@@ -0,0 +1,128 @@
+package i2.act.packrat;
+
+import i2.act.peg.ast.Alternatives;
+import i2.act.peg.ast.Atom;
+import i2.act.peg.ast.Grammar;
+import i2.act.peg.ast.ParserIdentifier;
+import i2.act.peg.ast.ParserProduction;
+import i2.act.peg.ast.Sequence;
+import i2.act.peg.symbols.ParserSymbol;
+import i2.act.util.graph.Kosaraju;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// determines the parser productions that are inlined into the parsers of the productions that use
+// them (see 'Parser.fromGrammar'), i.e., that are applied without a memoizing 'ParserReference'
+//
+// a production is inlined if it is not recursive, if it does not contain quantifiers and if its
+// right-hand side contains at most MAXIMUM_SIZE identifiers (the identifiers of inlined productions
+// count with their own size); thus, an inlined production always does a bounded amount of work,
+// even though its results are not memoized
+final class InliningAnalysis {
+
+  public static final int MAXIMUM_SIZE = 4;
+
+  public static final Set<ParserSymbol> analyze(final Grammar grammar) {
+    final List<ParserProduction> productions = grammar.getParserProductions();
+    final int numberOfProductions = productions.size();
+
+    final Map<ParserSymbol, Integer> ids = new HashMap<>();
+    for (int id = 0; id < numberOfProductions; ++id) {
+      ids.put(productions.get(id).getSymbol(), id);
+    }
+
+    // 'references[p]' contains the productions that are used in production p (i.e., the edges
+    // lead from users to used productions)
+    final int[][] references = new int[numberOfProductions][];
+    final int[] numberOfIdentifiers = new int[numberOfProductions];
+    final boolean[] hasQuantifier = new boolean[numberOfProductions];
+    final boolean[] selfRecursive = new boolean[numberOfProductions];
+
+    for (int id = 0; id < numberOfProductions; ++id) {
+      final List<Integer> usedProductions = new ArrayList<>();
+      final List<Atom> identifiers = new ArrayList<>();
+
+      hasQuantifier[id] =
+          collectIdentifiers(productions.get(id).getRightHandSide(), identifiers);
+      numberOfIdentifiers[id] = identifiers.size();
+
+      for (final Atom identifier : identifiers) {
+        if (identifier instanceof ParserIdentifier) {
+          final Integer usedProduction = ids.get(((ParserIdentifier) identifier).getSymbol());
+          assert (usedProduction != null);
+
+          usedProductions.add(usedProduction);
+          selfRecursive[id] |= (usedProduction == id);
+        }
+      }
+
+      references[id] = new int[usedProductions.size()];
+      for (int index = 0; index < references[id].length; ++index) {
+        references[id][index] = usedProductions.get(index);
+      }
+    }
+
+    final int[] components = Kosaraju.computeComponents(references);
+
+    final int[] componentSizes = new int[numberOfProductions];
+    for (final int component : components) {
+      ++componentSizes[component];
+    }
+
+    // used productions are in higher components than their users -> decide them first
+    final List<Integer> order = new ArrayList<>();
+    for (int id = 0; id < numberOfProductions; ++id) {
+      order.add(id);
+    }
+    order.sort((first, second) -> Integer.compare(components[second], components[first]));
+
+    final int[] sizes = new int[numberOfProductions];
+    final boolean[] inlined = new boolean[numberOfProductions];
+    final Set<ParserSymbol> inlinedSymbols = new HashSet<>();
+
+    for (final int id : order) {
+      if (componentSizes[components[id]] > 1 || selfRecursive[id] || hasQuantifier[id]) {
+        continue;
+      }
+
+      int size = numberOfIdentifiers[id] - references[id].length;
+      for (final int usedProduction : references[id]) {
+        size += (inlined[usedProduction]) ? (sizes[usedProduction]) : (1);
+      }
+
+      if (size <= MAXIMUM_SIZE) {
+        sizes[id] = size;
+        inlined[id] = true;
+        inlinedSymbols.add(productions.get(id).getSymbol());
+      }
+    }
+
+    return inlinedSymbols;
+  }
+
+  // collects the identifiers in the given alternatives; returns true if the alternatives contain
+  // any quantifier
+  private static final boolean collectIdentifiers(final Alternatives alternatives,
+      final List<Atom> identifiers) {
+    boolean hasQuantifier = alternatives.hasQuantifier();
+
+    for (final Sequence sequence : alternatives) {
+      for (final Atom element : sequence) {
+        if (element instanceof Alternatives) {
+          hasQuantifier |= collectIdentifiers((Alternatives) element, identifiers);
+        } else {
+          hasQuantifier |= element.hasQuantifier();
+          identifiers.add(element);
+        }
+      }
+    }
+
+    return hasQuantifier;
+  }
+
+}
@@ -1,5 +1,6 @@
 package i2.act.packrat;
 
+import i2.act.packrat.nfa.CharacterClasses;
 import i2.act.packrat.nfa.NFA;
 import i2.act.peg.ast.Grammar;
 import i2.act.peg.ast.LexerProduction;
@@ -10,25 +11,36 @@ import i2.act.peg.info.SourcePosition;
 import i2.act.peg.symbols.LexerSymbol;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public final class Lexer {
 
   private static final class TokenDefinition {
 
+    public final int index; // position in the order of declaration
+
     public final LexerSymbol tokenSymbol;
     public final NFA nfa;
 
-    public TokenDefinition(final LexerSymbol tokenSymbol, final NFA nfa) {
+    public final TokenScanner scanner; // 'null' if the token has no specialized scanner
+
+    public TokenDefinition(final int index, final LexerSymbol tokenSymbol, final NFA nfa,
+        final TokenScanner scanner) {
+      this.index = index;
       this.tokenSymbol = tokenSymbol;
       this.nfa = nfa;
+      this.scanner = scanner;
     }
 
   }
 
   public static final Lexer forGrammar(final Grammar grammar) {
-    final LinkedHashMap<LexerSymbol, TokenDefinition> tokenDefinitions = new LinkedHashMap<>();
+    final LinkedHashMap<LexerSymbol, NFA> nfas = new LinkedHashMap<>();
+    final Map<LexerSymbol, TokenScanner> scanners = new HashMap<>();
 
     for (final Production production : grammar) {
       if (production instanceof LexerProduction) {
@@ -38,12 +50,25 @@ public final class Lexer {
         final RegularExpression regularExpression = lexerProduction.getRegularExpression();
         final NFA nfa = NFA.fromRegularExpression(regularExpression);
 
-        final TokenDefinition tokenDefinition = new TokenDefinition(tokenSymbol, nfa);
-        tokenDefinitions.put(tokenSymbol, tokenDefinition);
+        nfas.put(tokenSymbol, nfa);
+
+        if (!nfa.hasLiteralString()) {
+          scanners.put(tokenSymbol, TokenScanner.forRegularExpression(regularExpression));
+        }
       }
     }
 
-    return new Lexer(tokenDefinitions);
+    // the character classes are shared by all token definitions
+    final CharacterClasses characterClasses = CharacterClasses.forNFAs(nfas.values());
+
+    final LinkedHashMap<LexerSymbol, TokenDefinition> tokenDefinitions = new LinkedHashMap<>();
+    for (final Map.Entry<LexerSymbol, NFA> entry : nfas.entrySet()) {
+      final TokenDefinition tokenDefinition = new TokenDefinition(tokenDefinitions.size(),
+          entry.getKey(), entry.getValue(), scanners.get(entry.getKey()));
+      tokenDefinitions.put(entry.getKey(), tokenDefinition);
+    }
+
+    return new Lexer(tokenDefinitions, characterClasses);
   }
 
 
@@ -52,8 +77,62 @@ public final class Lexer {
 
   private final LinkedHashMap<LexerSymbol, TokenDefinition> tokenDefinitions;
 
-  private Lexer(final LinkedHashMap<LexerSymbol, TokenDefinition> tokenDefinitions) {
+  private final CharacterClasses characterClasses;
+
+  // token definitions with a literal string are matched with a trie (the value of a literal is the
+  // index of its token definition), all others with their NFA
+  private final TokenDefinition[] definitionsByIndex;
+  private final LiteralTrie literals;
+
+  // character class -> token definitions (without literal string) whose NFA may match a token
+  // starting with a character of this class (in the order of declaration)
+  private final TokenDefinition[][] candidateDefinitions;
+
+  private Lexer(final LinkedHashMap<LexerSymbol, TokenDefinition> tokenDefinitions,
+      final CharacterClasses characterClasses) {
     this.tokenDefinitions = tokenDefinitions;
+    this.characterClasses = characterClasses;
+
+    this.definitionsByIndex = tokenDefinitions.values().toArray(new TokenDefinition[0]);
+
+    final int numberOfClasses = characterClasses.numberOfClasses();
+
+    final List<String> literalStrings = new ArrayList<>();
+    final List<List<TokenDefinition>> candidateDefinitions = new ArrayList<>();
+    {
+      for (int classId = 0; classId < numberOfClasses; ++classId) {
+        candidateDefinitions.add(new ArrayList<TokenDefinition>());
+      }
+
+      for (final TokenDefinition tokenDefinition : this.definitionsByIndex) {
+        if (tokenDefinition.nfa.hasLiteralString()) {
+          literalStrings.add(tokenDefinition.nfa.getLiteralString());
+        } else {
+          literalStrings.add(null);
+
+          final boolean[] firstCharacterClasses =
+              tokenDefinition.nfa.getFirstCharacterClasses(characterClasses);
+
+          for (int classId = 0; classId < numberOfClasses; ++classId) {
+            if (firstCharacterClasses[classId]) {
+              candidateDefinitions.get(classId).add(tokenDefinition);
+            }
+          }
+        }
+      }
+    }
+
+    this.literals = new LiteralTrie(literalStrings);
+
+    this.candidateDefinitions = new TokenDefinition[numberOfClasses][];
+    for (int classId = 0; classId < numberOfClasses; ++classId) {
+      this.candidateDefinitions[classId] =
+          candidateDefinitions.get(classId).toArray(new TokenDefinition[0]);
+    }
+  }
+
+  public final CharacterClasses getCharacterClasses() {
+    return this.characterClasses;
   }
 
   public final NFA getNFA(final LexerSymbol lexerSymbol) {
@@ -75,9 +154,17 @@ public final class Lexer {
 
   public final TokenStream lex(final char[] input, final boolean includeSkippedTokens) {
     final List<Token> tokens = new ArrayList<>();
+    lex(input, includeSkippedTokens, tokens::add);
 
-    int line = 1;
-    int column = 1;
+    return new TokenStream(tokens);
+  }
+
+  // passes the tokens to the given consumer as soon as they are lexed (i.e., without materializing
+  // the whole token stream)
+  public final void lex(final char[] input, final boolean includeSkippedTokens,
+      final Consumer<Token> consumer) {
+    // the tokens only store offsets, line and column numbers are computed on demand
+    final LineIndex lineIndex = LineIndex.forInput(input);
 
     List<Token> skippedTokensBefore = new ArrayList<>();
 
@@ -86,10 +173,28 @@ public final class Lexer {
       int longestMatch = 0;
       TokenDefinition longestMatchDefinition = null;
 
-      for (final TokenDefinition tokenDefinition : this.tokenDefinitions.values()) {
-        final int prefixMatch = tokenDefinition.nfa.prefixMatch(input, index);
+      final int longestLiteral = this.literals.longestMatch(input, index);
+      if (longestLiteral != LiteralTrie.NO_VALUE) {
+        longestMatchDefinition = this.definitionsByIndex[longestLiteral];
+        longestMatch = longestMatchDefinition.nfa.getLiteralString().length();
+      }
+
+      final int characterClass = this.characterClasses.classOf(input[index]);
 
-        if (prefixMatch > longestMatch) {
+      for (final TokenDefinition tokenDefinition : this.candidateDefinitions[characterClass]) {
+        final int prefixMatch;
+        {
+          if (tokenDefinition.scanner != null) {
+            prefixMatch = tokenDefinition.scanner.prefixMatch(input, index);
+          } else {
+            // the candidates are known to match the first character
+            prefixMatch = tokenDefinition.nfa.prefixMatch(input, index, false);
+          }
+        }
+
+        // longest match wins, ties are broken by the order of declaration
+        if (prefixMatch > longestMatch || (prefixMatch == longestMatch && prefixMatch > 0
+            && tokenDefinition.index < longestMatchDefinition.index)) {
           longestMatch = prefixMatch;
           longestMatchDefinition = tokenDefinition;
         }
@@ -97,29 +202,13 @@ public final class Lexer {
 
       if (longestMatch == 0) {
         // no NFA matched a prefix --> error
-        final SourcePosition position = new SourcePosition(index, line, column);
+        final SourcePosition position = lineIndex.getPosition(index);
         throw new InvalidInputException("no matching alternative", position);
       } else {
         assert (longestMatchDefinition != null);
 
         final int beginIndex = index;
-        final SourcePosition begin = new SourcePosition(index, line, column);
-
-        // advance indexes
-        {
-          for (int subIndex = 0; subIndex < longestMatch; ++subIndex) {
-            final char character = input[index + subIndex];
-
-            ++column;
-
-            if (character == '\n') {
-              ++line;
-              column = 1;
-            }
-          }
-
-          index += longestMatch;
-        }
+        index += longestMatch;
 
         // add token to token stream (if not skipped)
         final String value;
@@ -130,23 +219,22 @@ public final class Lexer {
             value = getSubString(input, beginIndex, longestMatch);
           }
         }
-        final SourcePosition end = new SourcePosition(index, line, column);
 
         final LexerSymbol tokenSymbol = longestMatchDefinition.tokenSymbol;
 
         if (!includeSkippedTokens && tokenSymbol.isSkippedToken()) {
-          final Token token = new Token(tokenSymbol, value, begin, end);
+          final Token token =
+              new Token(tokenSymbol, value, lineIndex, beginIndex, index, new ArrayList<Token>());
           skippedTokensBefore.add(token);
         } else {
-          final Token token = new Token(tokenSymbol, value, begin, end, skippedTokensBefore);
-          tokens.add(token);
+          final Token token =
+              new Token(tokenSymbol, value, lineIndex, beginIndex, index, skippedTokensBefore);
+          consumer.accept(token);
 
           skippedTokensBefore = new ArrayList<Token>();
         }
       }
     }
-
-    return new TokenStream(tokens);
   }
 
   private static final String getSubString(final char[] input, final int begin, final int size) {
@@ -0,0 +1,75 @@
+package i2.act.packrat;
+
+import i2.act.peg.info.SourcePosition;
+
+import java.util.Arrays;
+
+// maps character offsets of an input to line and column numbers
+//
+// the index only stores the offsets at which lines begin; the line of an offset is determined by a
+// binary search over these offsets, the column by its distance to the beginning of the line
+public final class LineIndex {
+
+  private final int[] lineBegins;
+  private final int numberOfLines;
+
+  private LineIndex(final int[] lineBegins, final int numberOfLines) {
+    this.lineBegins = lineBegins;
+    this.numberOfLines = numberOfLines;
+  }
+
+  public static final LineIndex forInput(final char[] input) {
+    int[] lineBegins = new int[64];
+    int numberOfLines = 1;
+
+    for (int offset = 0; offset < input.length; ++offset) {
+      if (input[offset] == '\n') {
+        if (numberOfLines == lineBegins.length) {
+          lineBegins = Arrays.copyOf(lineBegins, 2 * lineBegins.length);
+        }
+
+        lineBegins[numberOfLines++] = offset + 1;
+      }
+    }
+
+    return new LineIndex(lineBegins, numberOfLines);
+  }
+
+  public final int numberOfLines() {
+    return this.numberOfLines;
+  }
+
+  // returns the line of the given offset (starting with 1)
+  public final int getLine(final int offset) {
+    int low = 0;
+    int high = this.numberOfLines - 1;
+
+    // find the last line that begins at or before the offset
+    while (low < high) {
+      final int middle = (low + high + 1) >>> 1;
+
+      if (this.lineBegins[middle] <= offset) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+
+    return low + 1;
+  }
+
+  // returns the column of the given offset (starting with 1)
+  public final int getColumn(final int offset) {
+    return getColumn(offset, getLine(offset));
+  }
+
+  private final int getColumn(final int offset, final int line) {
+    return offset - this.lineBegins[line - 1] + 1;
+  }
+
+  public final SourcePosition getPosition(final int offset) {
+    final int line = getLine(offset);
+    return new SourcePosition(offset, line, getColumn(offset, line));
+  }
+
+}
@@ -0,0 +1,143 @@
+package i2.act.packrat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+// finds the longest literal that is a prefix of the input at a given offset in a single pass
+//
+// the trie is stored in flat arrays: the outgoing edges of node n are the entries
+// 'firstEdge[n]' to 'firstEdge[n + 1] - 1' of 'edgeCharacters' and 'edgeTargets' (sorted by
+// character); 'values[n]' holds the value of the literal that ends in node n (or NO_VALUE)
+final class LiteralTrie {
+
+  public static final int NO_VALUE = -1;
+
+  private static final class TrieNode {
+
+    public final TreeMap<Character, TrieNode> children = new TreeMap<>();
+    public int value = NO_VALUE;
+
+  }
+
+  private final int[] firstEdge;
+  private final char[] edgeCharacters;
+  private final int[] edgeTargets;
+  private final int[] values;
+
+  // the literal at index i is associated with value i; for duplicate literals, the first one wins
+  public LiteralTrie(final List<String> literals) {
+    final TrieNode root = new TrieNode();
+    {
+      for (int index = 0; index < literals.size(); ++index) {
+        final String literal = literals.get(index);
+
+        if (literal == null || literal.isEmpty()) {
+          continue;
+        }
+
+        TrieNode node = root;
+        for (int position = 0; position < literal.length(); ++position) {
+          final char character = literal.charAt(position);
+
+          TrieNode child = node.children.get(character);
+          if (child == null) {
+            child = new TrieNode();
+            node.children.put(character, child);
+          }
+
+          node = child;
+        }
+
+        if (node.value == NO_VALUE) {
+          node.value = index;
+        }
+      }
+    }
+
+    // flatten the trie in breadth-first order (the root becomes node 0)
+    final List<TrieNode> nodes = new ArrayList<>();
+    {
+      final Queue<TrieNode> worklist = new ArrayDeque<>();
+      worklist.add(root);
+
+      while (!worklist.isEmpty()) {
+        final TrieNode node = worklist.remove();
+        nodes.add(node);
+        worklist.addAll(node.children.values());
+      }
+    }
+
+    this.firstEdge = new int[nodes.size() + 1];
+    this.edgeCharacters = new char[nodes.size() - 1];
+    this.edgeTargets = new int[nodes.size() - 1];
+    this.values = new int[nodes.size()];
+
+    // children are numbered consecutively in breadth-first order
+    int nextTarget = 1;
+    int edgeIndex = 0;
+
+    for (int nodeIndex = 0; nodeIndex < nodes.size(); ++nodeIndex) {
+      final TrieNode node = nodes.get(nodeIndex);
+
+      this.firstEdge[nodeIndex] = edgeIndex;
+      this.values[nodeIndex] = node.value;
+
+      for (final Map.Entry<Character, TrieNode> child : node.children.entrySet()) {
+        this.edgeCharacters[edgeIndex] = child.getKey();
+        this.edgeTargets[edgeIndex] = nextTarget++;
+        ++edgeIndex;
+      }
+    }
+
+    this.firstEdge[nodes.size()] = edgeIndex;
+  }
+
+  public final boolean isEmpty() {
+    return this.edgeCharacters.length == 0;
+  }
+
+  // returns the value of the longest literal that starts at the given offset (or NO_VALUE)
+  public final int longestMatch(final char[] input, final int offset) {
+    int longestMatchValue = NO_VALUE;
+
+    int node = 0;
+    for (int index = offset; index < input.length; ++index) {
+      node = child(node, input[index]);
+
+      if (node < 0) {
+        break;
+      }
+
+      if (this.values[node] != NO_VALUE) {
+        longestMatchValue = this.values[node];
+      }
+    }
+
+    return longestMatchValue;
+  }
+
+  private final int child(final int node, final char character) {
+    int low = this.firstEdge[node];
+    int high = this.firstEdge[node + 1] - 1;
+
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final char middleCharacter = this.edgeCharacters[middle];
+
+      if (middleCharacter < character) {
+        low = middle + 1;
+      } else if (middleCharacter > character) {
+        high = middle - 1;
+      } else {
+        return this.edgeTargets[middle];
+      }
+    }
+
+    return -1;
+  }
+
+}
@@ -0,0 +1,321 @@
+package i2.act.packrat;
+
+import i2.act.peg.symbols.LexerSymbol;
+import i2.act.util.graph.Kosaraju;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// computes the first sets, the nullability and the follow sets of a set of parsers
+//
+// a parser depends on its operands, i.e., the parsers form a dependency graph; the strongly
+// connected components of this graph are solved one after another with a worklist: the first sets
+// and the nullability in topological order (operands before the parsers that use them), the follow
+// sets in reverse topological order (parsers before their operands); all sets are bit sets over the
+// token symbols
+final class LookAheadAnalysis {
+
+  private final Parser[] parsers;
+  private final Map<Parser, Integer> ids;
+
+  // indexed by parser ID; 'users[o]' contains the parsers that have o as operand, i.e., the edges
+  // of the dependency graph point in the direction of the first set computation
+  private final int[][] users;
+  private final BitSet[] firstSets;
+  private final boolean[] nullable;
+  private final BitSet[] followSets;
+
+  // the members of each component (in topological order of the components)
+  private final int[][] components;
+
+  // parser ID -> component of the parser and index of the parser in its component
+  private final int[] componentOfParser;
+  private final int[] indexInComponent;
+
+  // the token symbols and their bit indexes (the index of 'Parser.EMPTY' is 0)
+  private final List<LexerSymbol> symbols;
+  private final Map<LexerSymbol, Integer> symbolIndexes;
+
+  // worklist of the component that is currently solved
+  private int currentComponent;
+  private Worklist worklist;
+
+  private LookAheadAnalysis(final List<Parser> rootParsers) {
+    final List<Parser> parsers = new ArrayList<>();
+    this.ids = new IdentityHashMap<>();
+    {
+      // the operands of a parser are not necessarily contained in the given list
+      for (final Parser rootParser : rootParsers) {
+        addParser(rootParser, parsers);
+      }
+
+      for (int id = 0; id < parsers.size(); ++id) {
+        for (final Parser operand : parsers.get(id).getOperands()) {
+          addParser(operand, parsers);
+        }
+      }
+    }
+
+    final int numberOfParsers = parsers.size();
+
+    this.parsers = parsers.toArray(new Parser[numberOfParsers]);
+    this.firstSets = new BitSet[numberOfParsers];
+    this.nullable = new boolean[numberOfParsers];
+    this.followSets = new BitSet[numberOfParsers];
+
+    {
+      final List<List<Integer>> userLists = new ArrayList<>();
+      for (int id = 0; id < numberOfParsers; ++id) {
+        userLists.add(new ArrayList<>());
+      }
+
+      for (int id = 0; id < numberOfParsers; ++id) {
+        for (final Parser operand : this.parsers[id].getOperands()) {
+          userLists.get(this.ids.get(operand)).add(id);
+        }
+
+        this.firstSets[id] = new BitSet();
+        this.followSets[id] = new BitSet();
+      }
+
+      this.users = new int[numberOfParsers][];
+      for (int id = 0; id < numberOfParsers; ++id) {
+        final List<Integer> userList = userLists.get(id);
+
+        this.users[id] = new int[userList.size()];
+        for (int index = 0; index < this.users[id].length; ++index) {
+          this.users[id][index] = userList.get(index);
+        }
+      }
+    }
+
+    this.componentOfParser = Kosaraju.computeComponents(this.users);
+    this.indexInComponent = new int[numberOfParsers];
+    {
+      int numberOfComponents = 0;
+      for (final int component : this.componentOfParser) {
+        numberOfComponents = Math.max(numberOfComponents, component + 1);
+      }
+
+      final int[] componentSizes = new int[numberOfComponents];
+      for (int id = 0; id < numberOfParsers; ++id) {
+        this.indexInComponent[id] = componentSizes[this.componentOfParser[id]]++;
+      }
+
+      this.components = new int[numberOfComponents][];
+      for (int component = 0; component < numberOfComponents; ++component) {
+        this.components[component] = new int[componentSizes[component]];
+      }
+
+      for (int id = 0; id < numberOfParsers; ++id) {
+        this.components[this.componentOfParser[id]][this.indexInComponent[id]] = id;
+      }
+    }
+
+    this.symbols = new ArrayList<>();
+    this.symbolIndexes = new IdentityHashMap<>();
+    getSymbolIndex(Parser.EMPTY);
+  }
+
+  private final void addParser(final Parser parser, final List<Parser> parsers) {
+    if (!this.ids.containsKey(parser)) {
+      this.ids.put(parser, parsers.size());
+      parsers.add(parser);
+    }
+  }
+
+  // computes the first sets, nullability and follow sets of the given parsers (and their operands)
+  // and stores them in the parsers; the follow set of the start parser contains EOF
+  public static final void analyze(final List<Parser> parsers, final Parser startParser) {
+    final LookAheadAnalysis analysis = new LookAheadAnalysis(parsers);
+
+    for (int component = 0; component < analysis.components.length; ++component) {
+      analysis.solveFirstSets(component);
+    }
+
+    analysis.followSets[analysis.getId(startParser)].set(analysis.getSymbolIndex(LexerSymbol.EOF));
+
+    for (int component = analysis.components.length - 1; component >= 0; --component) {
+      analysis.solveFollowSets(component);
+    }
+
+    analysis.storeResults();
+  }
+
+  // ===============================================================================================
+
+  private final void solveFirstSets(final int component) {
+    startComponent(component);
+
+    while (!this.worklist.isEmpty()) {
+      final int id = this.worklist.remove();
+      final Parser parser = this.parsers[id];
+
+      final BitSet firstSet = this.firstSets[id];
+      final int oldCardinality = firstSet.cardinality();
+      final boolean oldNullable = this.nullable[id];
+
+      parser.computeFirst(this);
+      this.nullable[id] = oldNullable || parser.computeNullable(this);
+
+      if (firstSet.cardinality() == oldCardinality && this.nullable[id] == oldNullable) {
+        continue;
+      }
+
+      // users in succeeding components are evaluated once this component is solved
+      for (final int user : this.users[id]) {
+        if (this.componentOfParser[user] == component) {
+          this.worklist.add(user);
+        }
+      }
+    }
+  }
+
+  private final void solveFollowSets(final int component) {
+    startComponent(component);
+
+    while (!this.worklist.isEmpty()) {
+      final int id = this.worklist.remove();
+      this.parsers[id].computeFollow(this);
+    }
+  }
+
+  private final void startComponent(final int component) {
+    this.currentComponent = component;
+    this.worklist = new Worklist(this.components[component].length);
+
+    for (final int id : this.components[component]) {
+      this.worklist.add(id);
+    }
+  }
+
+  private final void storeResults() {
+    for (int id = 0; id < this.parsers.length; ++id) {
+      final Parser parser = this.parsers[id];
+
+      parser.first.clear();
+      addSymbols(this.firstSets[id], parser.first);
+
+      parser.nullable = this.nullable[id];
+
+      // the follow sets only contain proper token symbols
+      parser.follow.clear();
+      addSymbols(this.followSets[id], parser.follow);
+    }
+  }
+
+  private final void addSymbols(final BitSet bits, final Set<LexerSymbol> symbols) {
+    for (int index = bits.nextSetBit(0); index >= 0; index = bits.nextSetBit(index + 1)) {
+      symbols.add(this.symbols.get(index));
+    }
+  }
+
+  // ===============================================================================================
+  // operations for the combinators
+
+  public final void addToFirst(final Parser parser, final LexerSymbol symbol) {
+    this.firstSets[getId(parser)].set(getSymbolIndex(symbol));
+  }
+
+  public final void addToFirst(final Parser parser, final Parser operand) {
+    this.firstSets[getId(parser)].or(this.firstSets[getId(operand)]);
+  }
+
+  public final boolean firstContainsEmpty(final Parser parser) {
+    return this.firstSets[getId(parser)].get(getSymbolIndex(Parser.EMPTY));
+  }
+
+  public final boolean isNullable(final Parser parser) {
+    return this.nullable[getId(parser)];
+  }
+
+  // adds the follow set of 'parser' to the follow set of 'operand'
+  public final void addFollowToFollow(final Parser operand, final Parser parser) {
+    addToFollow(operand, this.followSets[getId(parser)]);
+  }
+
+  // adds the token symbols of the first set of 'parser' to the follow set of 'operand'
+  public final void addFirstToFollow(final Parser operand, final Parser parser) {
+    addToFollow(operand, this.firstSets[getId(parser)]);
+  }
+
+  private final void addToFollow(final Parser operand, final BitSet symbols) {
+    final int id = getId(operand);
+    final BitSet followSet = this.followSets[id];
+
+    final int oldCardinality = followSet.cardinality();
+    followSet.or(symbols);
+    followSet.clear(getSymbolIndex(Parser.EMPTY));
+
+    // operands in preceding components are evaluated once this component is solved
+    if (followSet.cardinality() != oldCardinality
+        && this.componentOfParser[id] == this.currentComponent) {
+      this.worklist.add(id);
+    }
+  }
+
+  private final int getId(final Parser parser) {
+    final Integer id = this.ids.get(parser);
+    assert (id != null);
+
+    return id;
+  }
+
+  private final int getSymbolIndex(final LexerSymbol symbol) {
+    Integer index = this.symbolIndexes.get(symbol);
+
+    if (index == null) {
+      index = this.symbols.size();
+      this.symbols.add(symbol);
+      this.symbolIndexes.put(symbol, index);
+    }
+
+    return index;
+  }
+
+  // ===============================================================================================
+
+  // ring buffer of parser IDs of the current component (each ID is contained at most once)
+  private final class Worklist {
+
+    private final int[] elements;
+    private final BitSet contained;
+
+    private int head;
+    private int size;
+
+    public Worklist(final int capacity) {
+      this.elements = new int[capacity];
+      this.contained = new BitSet(capacity);
+    }
+
+    public final boolean isEmpty() {
+      return this.size == 0;
+    }
+
+    public final void add(final int id) {
+      final int index = LookAheadAnalysis.this.indexInComponent[id];
+
+      if (!this.contained.get(index)) {
+        this.elements[(this.head + this.size++) % this.elements.length] = id;
+        this.contained.set(index);
+      }
+    }
+
+    public final int remove() {
+      final int id = this.elements[this.head];
+
+      this.head = (this.head + 1) % this.elements.length;
+      --this.size;
+      this.contained.clear(LookAheadAnalysis.this.indexInComponent[id]);
+
+      return id;
+    }
+
+  }
+
+}
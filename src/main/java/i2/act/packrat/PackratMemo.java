@@ -0,0 +1,90 @@
+package i2.act.packrat;
+
+import i2.act.packrat.Parser.ParserReference;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// the memoized parser results of a single parse invocation (see 'Parser.parse')
+//
+// the results are stored per token position, where all positions at or after the end of the token
+// stream share the entry of the EOF token; the memo is attached to the token stream while it is
+// parsed and dropped afterwards, i.e., the tokens (and thus the syntax trees) do not keep it alive
+final class PackratMemo {
+
+  private final Map<Parser, ParserResult>[] results;
+
+  // the seeds of the left-recursive invocations that are currently grown
+  private final Map<ParserReference, Map<Integer, ParserResult>> growing;
+
+  @SuppressWarnings("unchecked")
+  public PackratMemo(final int numberOfTokens) {
+    this.results = (Map<Parser, ParserResult>[]) new Map[numberOfTokens + 1];
+    this.growing = new HashMap<ParserReference, Map<Integer, ParserResult>>();
+  }
+
+  private final int index(final int position) {
+    return Math.min(position, this.results.length - 1);
+  }
+
+  // returns 'null' if there is no result of the parser at the given position
+  public final ParserResult get(final int position, final Parser parser) {
+    final Map<Parser, ParserResult> results = this.results[index(position)];
+
+    if (results == null) {
+      return null;
+    }
+
+    return results.get(parser);
+  }
+
+  public final void put(final int position, final Parser parser, final ParserResult result) {
+    final int index = index(position);
+
+    Map<Parser, ParserResult> results = this.results[index];
+
+    if (results == null) {
+      results = new HashMap<Parser, ParserResult>();
+      this.results[index] = results;
+    }
+
+    results.put(parser, result);
+  }
+
+  public final Set<Parser> getParsers(final int position) {
+    final Map<Parser, ParserResult> results = this.results[index(position)];
+
+    if (results == null) {
+      return Collections.emptySet();
+    }
+
+    return results.keySet();
+  }
+
+  // returns the last position at which a parser has failed (or -1 if no parser has failed)
+  public final int getLastFailurePosition() {
+    for (int index = this.results.length - 1; index >= 0; --index) {
+      final Map<Parser, ParserResult> results = this.results[index];
+
+      if (results != null && results.containsValue(ParserFailure.PARSER_FAILURE)) {
+        return index;
+      }
+    }
+
+    return -1;
+  }
+
+  public final Map<Integer, ParserResult> getGrowing(final ParserReference parser) {
+    Map<Integer, ParserResult> growing = this.growing.get(parser);
+
+    if (growing == null) {
+      growing = new HashMap<Integer, ParserResult>();
+      this.growing.put(parser, growing);
+    }
+
+    return growing;
+  }
+
+}
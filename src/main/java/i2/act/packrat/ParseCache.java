@@ -0,0 +1,555 @@
+package i2.act.packrat;
+
+import i2.act.packrat.cst.Node;
+import i2.act.packrat.cst.binary.BinaryTree;
+import i2.act.packrat.cst.binary.BinaryTreeWriter;
+import i2.act.peg.ast.Grammar;
+import i2.act.peg.ast.visitors.PrettyPrinter;
+import i2.act.peg.info.SourcePosition;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+// persistent cache of parse outcomes (and, if they are small enough, of the resulting syntax trees)
+// that is keyed by the fingerprint of a compiled grammar and the
+// content of the input
+//
+// the cache is stored in a directory that contains an append-only log of entries and a lock file;
+// lookups take a shared lock and insertions an exclusive lock on the lock file, which makes it
+// safe to use the same cache from several processes at the same time. Each entry is protected by a
+// checksum, i.e., incomplete entries (e.g., of a crashed process) are ignored and overwritten.
+//
+// once the log would exceed the maximum size, it is compacted: the most recently added entries
+// that fit into half of the maximum size are copied to a new log, which atomically replaces the
+// old one (each log has a random id in its header, which tells the other processes to re-read it)
+//
+// NOTE: within one process, each cache directory should only be opened once
+public final class ParseCache {
+
+  public static final long DEFAULT_MAX_SIZE = 64L << 20;
+
+  private static final String LOG_FILE_NAME = "entries";
+  private static final String TEMPORARY_LOG_FILE_NAME = "entries.tmp";
+  private static final String LOCK_FILE_NAME = "lock";
+
+  // increase if the fingerprints, the format of the entries, or the results of lexing and parsing
+  // with a given grammar change
+  private static final int FORMAT_VERSION = 3;
+
+  private static final long MAGIC = 0x6a5045474361636cL; // "jPEGCacl"
+
+  private static final int HEADER_SIZE = 16; // magic + log id
+  private static final int KEY_SIZE = 32; // SHA-256
+  private static final int ENTRY_HEADER_SIZE = 8 + KEY_SIZE; // length + checksum + key
+
+  private static final byte KIND_SUCCESS = 0;
+  private static final byte KIND_FAILURE = 1;
+  private static final byte KIND_SYNTAX_TREE = 2;
+
+  // larger syntax trees would displace too many other entries
+  private static final int MAX_SYNTAX_TREE_FRACTION = 8;
+
+  // ===============================================================================================
+
+  public static final class Outcome {
+
+    private final ParsingFailedException failure;
+    private final ByteBuffer syntaxTree;
+
+    private Outcome(final ParsingFailedException failure, final ByteBuffer syntaxTree) {
+      this.failure = failure;
+      this.syntaxTree = syntaxTree;
+    }
+
+    public final boolean isSuccess() {
+      return this.failure == null;
+    }
+
+    public final ParsingFailedException getFailure() {
+      return this.failure;
+    }
+
+    public final boolean hasSyntaxTree() {
+      return this.syntaxTree != null;
+    }
+
+    // returns the (not compactified) syntax tree of a successful parse, or null if it has not been
+    // cached
+    public final Node<?> getSyntaxTree(final Grammar grammar) {
+      if (this.syntaxTree == null) {
+        return null;
+      }
+
+      return BinaryTree.wrap(this.syntaxTree, grammar).toNode();
+    }
+
+  }
+
+  private static final Outcome SUCCESS = new Outcome(null, null);
+
+  // ===============================================================================================
+
+  private final Path logFile;
+  private final Path temporaryLogFile;
+  private final FileChannel lockChannel;
+
+  private final long maxSize;
+
+  // index of the entries of the log with the given id (up to the given end of the log)
+  private final Map<ByteBuffer, Long> index;
+  private long logId;
+  private long logEnd;
+
+  private ParseCache(final Path directory, final long maxSize) throws IOException {
+    Files.createDirectories(directory);
+
+    this.logFile = directory.resolve(LOG_FILE_NAME);
+    this.temporaryLogFile = directory.resolve(TEMPORARY_LOG_FILE_NAME);
+    this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE_NAME),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    this.maxSize = maxSize;
+
+    this.index = new HashMap<>();
+    this.logId = 0;
+    this.logEnd = -1;
+  }
+
+  public static final ParseCache open(final String directoryName) {
+    return open(directoryName, DEFAULT_MAX_SIZE);
+  }
+
+  public static final ParseCache open(final String directoryName, final long maxSize) {
+    if (maxSize < 2 * HEADER_SIZE) {
+      throw new RuntimeException("maximum cache size is too small");
+    }
+
+    try {
+      return new ParseCache(Paths.get(directoryName), maxSize);
+    } catch (final IOException exception) {
+      throw new RuntimeException("unable to open parse cache", exception);
+    }
+  }
+
+  // the fingerprint of a grammar covers everything that influences the outcome of a parse (i.e.,
+  // the pretty-printed grammar, whether quantifier nodes are created, and whether the parser is
+  // optimized, which may report other expected tokens in error messages)
+  public static final String fingerprint(final Grammar grammar, final boolean quantifierNodes,
+      final boolean optimize) {
+    final String description = String.format("%d:%b:%b:%s",
+        FORMAT_VERSION, quantifierNodes, optimize, PrettyPrinter.prettyPrint(grammar));
+
+    final byte[] hash = sha256(description.getBytes(StandardCharsets.UTF_8));
+
+    final StringBuilder builder = new StringBuilder();
+    for (final byte hashByte : hash) {
+      builder.append(String.format("%02x", hashByte));
+    }
+
+    return builder.toString();
+  }
+
+  // ===============================================================================================
+
+  // parses the input unless the cache already knows the outcome (i.e., a parse error or the
+  // resulting syntax tree), and caches the outcome of the parse
+  public final Node<?> parse(final Grammar grammar, final String fingerprint, final String input,
+      final Lexer lexer, final Parser parser) {
+    final Outcome cachedOutcome = lookup(fingerprint, input);
+
+    if (cachedOutcome != null) {
+      if (!cachedOutcome.isSuccess()) {
+        throw cachedOutcome.getFailure();
+      }
+
+      if (cachedOutcome.hasSyntaxTree()) {
+        return cachedOutcome.getSyntaxTree(grammar);
+      }
+    }
+
+    final Node<?> syntaxTree;
+    try {
+      syntaxTree = parser.parse(lexer.lex(input));
+    } catch (final ParsingFailedException exception) {
+      storeFailure(fingerprint, input, exception);
+      throw exception;
+    }
+
+    if (cachedOutcome == null) {
+      storeSuccess(fingerprint, input, syntaxTree, grammar);
+    }
+
+    return syntaxTree;
+  }
+
+  // returns the cached outcome of parsing the given input, or null if the outcome is not known
+  public final Outcome lookup(final String fingerprint, final String input) {
+    return lookup(key(fingerprint, input));
+  }
+
+  private final synchronized Outcome lookup(final ByteBuffer key) {
+    try (final FileLock lock = this.lockChannel.lock(0, Long.MAX_VALUE, true)) {
+      if (!Files.exists(this.logFile)) {
+        return null;
+      }
+
+      try (final FileChannel logChannel = FileChannel.open(this.logFile, StandardOpenOption.READ)) {
+        updateIndex(logChannel, false);
+
+        final Long entryOffset = this.index.get(key);
+
+        if (entryOffset == null) {
+          return null;
+        }
+
+        return readOutcome(logChannel, entryOffset);
+      }
+    } catch (final IOException exception) {
+      throw new RuntimeException("unable to read from parse cache", exception);
+    }
+  }
+
+  public final void storeSuccess(final String fingerprint, final String input) {
+    store(key(fingerprint, input), new byte[] { KIND_SUCCESS });
+  }
+
+  // stores the syntax tree along with the outcome (unless the tree is too large); the syntax tree
+  // must not have been compactified (or modified otherwise) yet
+  public final void storeSuccess(final String fingerprint, final String input,
+      final Node<?> syntaxTree, final Grammar grammar) {
+    final byte[] serializedTree = BinaryTreeWriter.toBytes(syntaxTree, grammar);
+
+    if (serializedTree.length > this.maxSize / MAX_SYNTAX_TREE_FRACTION) {
+      storeSuccess(fingerprint, input);
+      return;
+    }
+
+    final byte[] payload = new byte[1 + serializedTree.length];
+    payload[0] = KIND_SYNTAX_TREE;
+    System.arraycopy(serializedTree, 0, payload, 1, serializedTree.length);
+
+    store(key(fingerprint, input), payload);
+  }
+
+  public final void storeFailure(final String fingerprint, final String input,
+      final ParsingFailedException failure) {
+    final SourcePosition position = failure.getPosition();
+    final byte[] reason = failure.getReason().getBytes(StandardCharsets.UTF_8);
+
+    final ByteBuffer payload = ByteBuffer.allocate(1 + 4 * 4 + reason.length);
+    payload.put(KIND_FAILURE);
+    payload.putInt(position.offset);
+    payload.putInt(position.line);
+    payload.putInt(position.column);
+    payload.putInt(reason.length);
+    payload.put(reason);
+
+    store(key(fingerprint, input), payload.array());
+  }
+
+  private final synchronized void store(final ByteBuffer key, final byte[] payload) {
+    final int entrySize = ENTRY_HEADER_SIZE + payload.length;
+
+    if (HEADER_SIZE + entrySize > this.maxSize) {
+      // would never fit into the cache
+      return;
+    }
+
+    try (final FileLock lock = this.lockChannel.lock()) {
+      FileChannel logChannel = openLogForWriting();
+
+      try {
+        updateIndex(logChannel, true);
+
+        if (this.index.containsKey(key)) {
+          // already added by another process
+          return;
+        }
+
+        if (this.logEnd + entrySize > this.maxSize) {
+          compact(logChannel, this.maxSize / 2 - entrySize);
+
+          logChannel.close();
+          logChannel = openLogForWriting();
+
+          updateIndex(logChannel, true);
+        }
+
+        final CRC32 checksum = new CRC32();
+        checksum.update(key.array());
+        checksum.update(payload);
+
+        final ByteBuffer entry = ByteBuffer.allocate(entrySize);
+        entry.putInt(payload.length);
+        entry.putInt((int) checksum.getValue());
+        entry.put(key.array());
+        entry.put(payload);
+        ((Buffer) entry).flip();
+
+        // drop incomplete entries of crashed processes
+        logChannel.truncate(this.logEnd);
+
+        writeFully(logChannel, entry, this.logEnd);
+
+        this.index.put(key, this.logEnd);
+        this.logEnd += entrySize;
+      } finally {
+        logChannel.close();
+      }
+    } catch (final IOException exception) {
+      throw new RuntimeException("unable to write to parse cache", exception);
+    }
+  }
+
+  private final FileChannel openLogForWriting() throws IOException {
+    return FileChannel.open(this.logFile,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  // ===============================================================================================
+
+  // reads the entries that have been added to the log since the last update (or the whole log if it
+  // has been replaced in the meantime); a missing or broken header is replaced by a new one if the
+  // log has been opened for writing
+  private final void updateIndex(final FileChannel logChannel, final boolean writable)
+      throws IOException {
+    final long size = logChannel.size();
+
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    if (size < HEADER_SIZE || readFully(logChannel, header, 0) != HEADER_SIZE
+        || header.getLong(0) != MAGIC) {
+      this.index.clear();
+      this.logId = ThreadLocalRandom.current().nextLong();
+      this.logEnd = HEADER_SIZE;
+
+      if (writable) {
+        ((Buffer) header).clear();
+        header.putLong(MAGIC);
+        header.putLong(this.logId);
+        ((Buffer) header).flip();
+
+        logChannel.truncate(0);
+        writeFully(logChannel, header, 0);
+      }
+
+      return;
+    }
+
+    final long logId = header.getLong(8);
+
+    if (logId != this.logId || this.logEnd < HEADER_SIZE || this.logEnd > size) {
+      this.index.clear();
+      this.logId = logId;
+      this.logEnd = HEADER_SIZE;
+    }
+
+    if (this.logEnd == size) {
+      return;
+    }
+
+    final MappedByteBuffer entries =
+        logChannel.map(FileChannel.MapMode.READ_ONLY, this.logEnd, size - this.logEnd);
+
+    // end of the last complete entry (relative to the previous end of the log)
+    int entriesEnd = 0;
+
+    while (entries.remaining() >= ENTRY_HEADER_SIZE) {
+      final int payloadLength = entries.getInt();
+      final int expectedChecksum = entries.getInt();
+
+      if (payloadLength <= 0 || payloadLength > entries.remaining() - KEY_SIZE) {
+        break;
+      }
+
+      final byte[] key = new byte[KEY_SIZE];
+      entries.get(key);
+
+      final byte[] payload = new byte[payloadLength];
+      entries.get(payload);
+
+      final CRC32 checksum = new CRC32();
+      checksum.update(key);
+      checksum.update(payload);
+
+      if ((int) checksum.getValue() != expectedChecksum) {
+        break;
+      }
+
+      this.index.put(ByteBuffer.wrap(key), this.logEnd + entriesEnd);
+      entriesEnd = entries.position();
+    }
+
+    this.logEnd += entriesEnd;
+  }
+
+  // copies the most recent entries that fit into the given size to a new log, which then replaces
+  // the current one
+  private final void compact(final FileChannel logChannel, final long retainedSize)
+      throws IOException {
+    final List<Long> entryOffsets = new ArrayList<>(this.index.values());
+    Collections.sort(entryOffsets, Collections.reverseOrder());
+
+    final List<Long> retainedOffsets = new ArrayList<>();
+    long size = 0;
+
+    for (final long entryOffset : entryOffsets) {
+      final long entrySize = ENTRY_HEADER_SIZE + readInt(logChannel, entryOffset);
+
+      if (size + entrySize > retainedSize) {
+        break;
+      }
+
+      retainedOffsets.add(entryOffset);
+      size += entrySize;
+    }
+
+    Collections.reverse(retainedOffsets);
+
+    final long newLogId = ThreadLocalRandom.current().nextLong();
+
+    try (final FileChannel newLogChannel = FileChannel.open(this.temporaryLogFile,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE)) {
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putLong(MAGIC);
+      header.putLong(newLogId);
+      ((Buffer) header).flip();
+
+      writeFully(newLogChannel, header, 0);
+
+      long position = HEADER_SIZE;
+      for (final long entryOffset : retainedOffsets) {
+        final long entrySize = ENTRY_HEADER_SIZE + readInt(logChannel, entryOffset);
+
+        long transferred = 0;
+        while (transferred < entrySize) {
+          transferred += logChannel.transferTo(entryOffset + transferred,
+              entrySize - transferred, newLogChannel.position(position + transferred));
+        }
+
+        position += entrySize;
+      }
+
+      newLogChannel.force(true);
+    }
+
+    Files.move(this.temporaryLogFile, this.logFile,
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    // the new log is read again by the next operation
+    this.index.clear();
+    this.logId = newLogId;
+    this.logEnd = -1;
+  }
+
+  private final Outcome readOutcome(final FileChannel logChannel, final long entryOffset)
+      throws IOException {
+    final int payloadLength = readInt(logChannel, entryOffset);
+
+    final ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+    readFully(logChannel, payload, entryOffset + ENTRY_HEADER_SIZE);
+    ((Buffer) payload).flip();
+
+    final byte kind = payload.get();
+
+    if (kind == KIND_SUCCESS) {
+      return SUCCESS;
+    }
+
+    if (kind == KIND_SYNTAX_TREE) {
+      return new Outcome(null, payload.slice());
+    }
+
+    assert (kind == KIND_FAILURE);
+
+    final int offset = payload.getInt();
+    final int line = payload.getInt();
+    final int column = payload.getInt();
+
+    final byte[] reason = new byte[payload.getInt()];
+    payload.get(reason);
+
+    final SourcePosition position = new SourcePosition(offset, line, column);
+    return new Outcome(
+        new ParsingFailedException(position, new String(reason, StandardCharsets.UTF_8)), null);
+  }
+
+  // ===============================================================================================
+
+  private static final ByteBuffer key(final String fingerprint, final String input) {
+    final byte[] fingerprintBytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+    final byte[] inputBytes = input.getBytes(StandardCharsets.UTF_8);
+
+    final MessageDigest digest = newDigest();
+    digest.update(fingerprintBytes);
+    digest.update((byte) 0);
+    digest.update(inputBytes);
+
+    return ByteBuffer.wrap(digest.digest());
+  }
+
+  private static final byte[] sha256(final byte[] bytes) {
+    return newDigest().digest(bytes);
+  }
+
+  private static final MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException exception) {
+      throw new RuntimeException("SHA-256 is not available", exception);
+    }
+  }
+
+  private static final int readInt(final FileChannel channel, final long position)
+      throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(4);
+    readFully(channel, buffer, position);
+    return buffer.getInt(0);
+  }
+
+  private static final int readFully(final FileChannel channel, final ByteBuffer buffer,
+      final long position) throws IOException {
+    int read = 0;
+
+    while (buffer.hasRemaining()) {
+      final int bytes = channel.read(buffer, position + read);
+
+      if (bytes < 0) {
+        break;
+      }
+
+      read += bytes;
+    }
+
+    return read;
+  }
+
+  private static final void writeFully(final FileChannel channel, final ByteBuffer buffer,
+      final long position) throws IOException {
+    long written = 0;
+
+    while (buffer.hasRemaining()) {
+      written += channel.write(buffer, position + written);
+    }
+  }
+
+}
@@ -8,25 +8,51 @@ import i2.act.peg.ast.visitors.BaseASTVisitor;
 import i2.act.peg.symbols.LexerSymbol;
 import i2.act.peg.symbols.ParserSymbol;
 import i2.act.peg.symbols.Symbol;
+import i2.act.peg.transformations.LeftFactorAlternatives;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
 public abstract class Parser {
 
-  private static final LexerSymbol EMPTY = new LexerSymbol("EMPTY", false, null);
+  static final LexerSymbol EMPTY = new LexerSymbol("EMPTY", false, null);
 
+  private static final Parser[] NO_OPERANDS = new Parser[0];
+
+  // the look-ahead sets are computed by 'LookAheadAnalysis' (see 'fromGrammar')
   protected final Set<LexerSymbol> first;
+  protected boolean nullable;
+  protected final Set<LexerSymbol> follow;
 
   public Parser() {
     this.first = new HashSet<LexerSymbol>();
+    this.follow = new HashSet<LexerSymbol>();
+  }
+
+  // returns true if the parser may succeed without consuming a token
+  public final boolean isNullable() {
+    return this.nullable;
+  }
+
+  // returns the token symbols that may follow a match of the parser
+  public final Set<LexerSymbol> getFollow() {
+    return Collections.unmodifiableSet(this.follow);
   }
 
   public final Node<?> parse(final TokenStream tokens) {
-    final ParserResult result = parse(tokens, 0, null, 0, true);
+    final ParserResult result;
+    {
+      final PackratMemo memo = attachMemo(tokens);
+
+      try {
+        result = parse(tokens, 0, null, 0, true);
 
-    if (result instanceof ParserFailure) {
-      throw constructException(tokens);
+        if (result instanceof ParserFailure) {
+          throw constructException(tokens, memo);
+        }
+      } finally {
+        tokens.memo = null;
+      }
     }
 
     final ParserSuccess success = (ParserSuccess) result;
@@ -36,55 +62,82 @@ public abstract class Parser {
     } else {
       final Node<?> rootNode = success.syntaxTrees.get(0);
       rootNode.setParentReferences();
+      rootNode.assignIds();
 
       return rootNode;
     }
   }
-  
+
+  // only checks if the token stream can be parsed, i.e., does not build a syntax tree
+  public final boolean recognize(final TokenStream tokens) {
+    attachMemo(tokens);
+
+    try {
+      return !(parse(tokens, 0, null, 0, false) instanceof ParserFailure);
+    } finally {
+      tokens.memo = null;
+    }
+  }
+
+  // each invocation of 'parse' and 'recognize' uses a fresh memo that is dropped when the
+  // invocation returns -> the same token stream may be parsed again (e.g., with another start
+  // symbol), but not by two invocations at the same time
+  private static final PackratMemo attachMemo(final TokenStream tokens) {
+    if (tokens.memo != null) {
+      throw new RuntimeException("token stream is already being parsed");
+    }
+
+    final PackratMemo memo = new PackratMemo(tokens.numberOfTokens());
+    tokens.memo = memo;
+
+    return memo;
+  }
+
   protected final ParserResult parse(final TokenStream tokens, final int position,
       final ParserReference parentRule, final int parentPosition,
       final boolean buildSyntaxTree) {
-    final Token token = tokens.at(position);
+    final PackratMemo memo = tokens.memo;
 
-    if (parentRule == this && ((ParserReference) this).growing.containsKey(position)) {
+    if (parentRule == this && memo.getGrowing((ParserReference) this).containsKey(position)) {
       // during recursive invocation
-      final ParserResult result = ((ParserReference) this).growing.get(position);
+      final ParserResult result = memo.getGrowing((ParserReference) this).get(position);
       return result;
     } else if (parentRule == this && position == parentPosition) {
       // first left-recursive invocation
-      final ParserReference parser = (ParserReference) this;
+      final Map<Integer, ParserResult> growing = memo.getGrowing((ParserReference) this);
 
-      parser.growing.put(position, ParserFailure.PARSER_FAILURE);
+      growing.put(position, ParserFailure.PARSER_FAILURE);
       ParserResult previousResult = ParserFailure.PARSER_FAILURE;
 
       while (true) {
         final ParserResult parserResult =
             apply(tokens, position, parentRule, parentPosition, buildSyntaxTree);
 
-        final ParserResult seed = parser.growing.get(position);
+        final ParserResult seed = growing.get(position);
 
         if ((parserResult == ParserFailure.PARSER_FAILURE)
             || ((seed instanceof ParserSuccess)
                 && ((ParserSuccess) parserResult).position <= ((ParserSuccess) seed).position)) {
-          parser.growing.remove(position);
+          growing.remove(position);
 
-          token.packratCache.put(this, previousResult);
+          memo.put(position, this, previousResult);
           return previousResult;
         }
 
-        parser.growing.put(position, parserResult);
+        growing.put(position, parserResult);
         previousResult = seed;
       }
     } else {
       // non-left recursive call
-      if (token.packratCache.containsKey(this)) {
-        final ParserResult cachedResult = token.packratCache.get(this);
+      final ParserResult cachedResult = memo.get(position, this);
+
+      if (cachedResult != null) {
         return cachedResult;
       }
 
-      if (!matchesFirst(token, this.first)) {
+      if (!matchesFirst(tokens.at(position), this.first)) {
         final ParserResult result = ParserFailure.PARSER_FAILURE;
-        token.packratCache.put(this, result);
+        memo.put(position, this, result);
 
         return result;
       }
@@ -93,37 +146,24 @@ public abstract class Parser {
           apply(tokens, position, parentRule, parentPosition, buildSyntaxTree);
 
       if (this instanceof ParserReference) {
-        token.packratCache.put(this, parserResult);
+        memo.put(position, this, parserResult);
       }
 
       return parserResult;
     }
   }
 
-  private final ParsingFailedException constructException(final TokenStream tokenStream) {
-    Token lastErrorToken = null;
-    {
-      if (tokenStream.EOF.hasParserFailure()) {
-        lastErrorToken = tokenStream.EOF;
-      } else {
-        final List<Token> tokens = tokenStream.getTokens();
-        for (int index = tokens.size() - 1; index >= 0; --index) {
-          final Token token = tokens.get(index);
+  private final ParsingFailedException constructException(final TokenStream tokenStream,
+      final PackratMemo memo) {
+    final int lastErrorPosition = memo.getLastFailurePosition();
+    assert (lastErrorPosition >= 0);
 
-          if (token.hasParserFailure()) {
-            lastErrorToken = token;
-            break;
-          }
-        }
-      }
-    }
-
-    assert (lastErrorToken != null);
+    final Token lastErrorToken = tokenStream.at(lastErrorPosition);
 
     boolean allExpectedSymbolsKnown = true;
     final Set<LexerSymbol> expectedSymbols = new HashSet<>();
     {
-      for (final Parser parser : lastErrorToken.packratCache.keySet()) {
+      for (final Parser parser : memo.getParsers(lastErrorPosition)) {
         if (parser.first.isEmpty()) {
           allExpectedSymbolsKnown = false;
           break;
@@ -165,7 +205,18 @@ public abstract class Parser {
   protected abstract ParserResult apply(final TokenStream tokens, final int position,
       final ParserReference parentRule, final int parentPosition, final boolean buildSyntaxTree);
 
-  protected abstract boolean computeFirst();
+  protected abstract Parser[] getOperands();
+
+  // adds the first set of the parser (as computed from the first sets of its operands) to the
+  // analysis; the pseudo symbol EMPTY is contained in the first sets of parsers that may succeed
+  // without consuming a token (i.e., no look-ahead check is done for them)
+  protected abstract void computeFirst(final LookAheadAnalysis analysis);
+
+  protected abstract boolean computeNullable(final LookAheadAnalysis analysis);
+
+  // passes the follow set of the parser (and the first sets of succeeding operands) on to the
+  // follow sets of its operands
+  protected abstract void computeFollow(final LookAheadAnalysis analysis);
 
 
   //------------------------------------------------------------------------------------------------
@@ -177,11 +228,8 @@ public abstract class Parser {
 
     private Parser parser; 
 
-    protected final Map<Integer, ParserResult> growing;
-
     public ParserReference(final ParserSymbol symbol) {
       this.symbol = symbol;
-      this.growing = new HashMap<Integer, ParserResult>();
     }
 
     public final boolean hasReference() {
@@ -224,13 +272,24 @@ public abstract class Parser {
     }
 
     @Override
-    protected final boolean computeFirst() {
+    protected final Parser[] getOperands() {
       assert (this.parser != null);
+      return new Parser[] { this.parser };
+    }
 
-      final boolean change = this.parser.computeFirst();
-      this.first.addAll(this.parser.first);
+    @Override
+    protected final void computeFirst(final LookAheadAnalysis analysis) {
+      analysis.addToFirst(this, this.parser);
+    }
 
-      return change;
+    @Override
+    protected final boolean computeNullable(final LookAheadAnalysis analysis) {
+      return analysis.isNullable(this.parser);
+    }
+
+    @Override
+    protected final void computeFollow(final LookAheadAnalysis analysis) {
+      analysis.addFollowToFollow(this.parser, this);
     }
 
     @Override
@@ -240,6 +299,77 @@ public abstract class Parser {
 
   }
 
+  // applies the parser of a production without memoizing its results (see 'InliningAnalysis');
+  // creates the same node as a 'ParserReference'
+  private static final class InlinedProduction extends Parser {
+
+    private final ParserSymbol symbol;
+
+    private Parser parser;
+
+    public InlinedProduction(final ParserSymbol symbol) {
+      this.symbol = symbol;
+    }
+
+    public final void setReference(final Parser parser) {
+      this.parser = parser;
+    }
+
+    @Override
+    public final ParserResult apply(final TokenStream tokens, final int position,
+        final ParserReference parentRule, final int parentPosition, final boolean buildSyntaxTree) {
+      assert (this.parser != null);
+
+      // the production is not recursive, i.e., the parent rule can not be reached from here and
+      // its left recursion detection is not affected
+      final ParserResult parserResult =
+          this.parser.parse(tokens, position, parentRule, parentPosition, buildSyntaxTree);
+
+      if (parserResult instanceof ParserFailure) {
+        return ParserFailure.PARSER_FAILURE;
+      }
+
+      assert (parserResult instanceof ParserSuccess);
+      final ParserSuccess parserSuccess = (ParserSuccess) parserResult;
+
+      if (buildSyntaxTree && !parserSuccess.syntaxTrees.isEmpty()) {
+        final Node<?> node = new NonTerminalNode(this.symbol, parserSuccess.syntaxTrees);
+        node.addAnnotations(this.symbol.getProduction().getAnnotations());
+
+        return new ParserSuccess(parserSuccess.position, node);
+      } else {
+        return parserSuccess;
+      }
+    }
+
+    @Override
+    protected final Parser[] getOperands() {
+      assert (this.parser != null);
+      return new Parser[] { this.parser };
+    }
+
+    @Override
+    protected final void computeFirst(final LookAheadAnalysis analysis) {
+      analysis.addToFirst(this, this.parser);
+    }
+
+    @Override
+    protected final boolean computeNullable(final LookAheadAnalysis analysis) {
+      return analysis.isNullable(this.parser);
+    }
+
+    @Override
+    protected final void computeFollow(final LookAheadAnalysis analysis) {
+      analysis.addFollowToFollow(this.parser, this);
+    }
+
+    @Override
+    public final String toString() {
+      return String.format("inline(%s)", this.symbol);
+    }
+
+  }
+
   //------------------------------------------------------------------------------------------------
 
   public static final boolean DEFAULT_QUANTIFIER_NODES = true;
@@ -254,40 +384,109 @@ public abstract class Parser {
         final Token token = tokens.at(position);
 
         if (token.getTokenSymbol() == tokenSymbol) {
-          if (buildSyntaxTree) {
-            final TerminalNode node = new TerminalNode(token);
-            if (token.getTokenSymbol().getProduction() != null) {
-              node.addAnnotations(token.getTokenSymbol().getProduction().getAnnotations());
-            }
+          return matchToken(token, position, buildSyntaxTree);
+        }
 
-            return new ParserSuccess(position + 1, node);
-          } else {
-            return new ParserSuccess(position + 1);
-          }
+        return ParserFailure.PARSER_FAILURE;
+      }
+
+      @Override
+      protected final Parser[] getOperands() {
+        return NO_OPERANDS;
+      }
+
+      @Override
+      protected final void computeFirst(final LookAheadAnalysis analysis) {
+        analysis.addToFirst(this, tokenSymbol);
+      }
+
+      @Override
+      protected final boolean computeNullable(final LookAheadAnalysis analysis) {
+        return false;
+      }
+
+      @Override
+      protected final void computeFollow(final LookAheadAnalysis analysis) {
+        // nothing to do here (no operands)
+      }
+
+      @Override
+      public final String toString() {
+        return String.format("token(%s)", tokenSymbol);
+      }
+
+    };
+  }
+
+  // matches any of the given token symbols (i.e., like alternatives of single tokens)
+  public static final Parser tokenSet(final LexerSymbol... tokenSymbols) {
+    final Set<LexerSymbol> tokenSymbolSet = new HashSet<>(Arrays.asList(tokenSymbols));
+
+    return new Parser() {
+
+      @Override
+      public final ParserResult apply(final TokenStream tokens, final int position,
+          final ParserReference parentRule, final int parentPosition,
+          final boolean buildSyntaxTree) {
+        final Token token = tokens.at(position);
+
+        if (tokenSymbolSet.contains(token.getTokenSymbol())) {
+          return matchToken(token, position, buildSyntaxTree);
         }
 
         return ParserFailure.PARSER_FAILURE;
       }
 
       @Override
-      protected final boolean computeFirst() {
-        if (this.first.isEmpty()) {
-          this.first.add(tokenSymbol);
+      protected final Parser[] getOperands() {
+        return NO_OPERANDS;
+      }
 
-          return true;
-        } else {
-          return false;
+      @Override
+      protected final void computeFirst(final LookAheadAnalysis analysis) {
+        for (final LexerSymbol tokenSymbol : tokenSymbols) {
+          analysis.addToFirst(this, tokenSymbol);
         }
       }
 
+      @Override
+      protected final boolean computeNullable(final LookAheadAnalysis analysis) {
+        return false;
+      }
+
+      @Override
+      protected final void computeFollow(final LookAheadAnalysis analysis) {
+        // nothing to do here (no operands)
+      }
+
       @Override
       public final String toString() {
-        return String.format("token(%s)", tokenSymbol);
+        return Arrays.stream(tokenSymbols)
+            .map(LexerSymbol::toString)
+            .collect(Collectors.joining(", ", "token_set(", ")"));
       }
 
     };
   }
 
+  private static final ParserResult matchToken(final Token token, final int position,
+      final boolean buildSyntaxTree) {
+    if (buildSyntaxTree) {
+      return new ParserSuccess(position + 1, createTerminalNode(token));
+    } else {
+      return new ParserSuccess(position + 1);
+    }
+  }
+
+  static final TerminalNode createTerminalNode(final Token token) {
+    final TerminalNode node = new TerminalNode(token);
+    if (token.getTokenSymbol().getProduction() != null) {
+      node.addAnnotations(token.getTokenSymbol().getProduction().getAnnotations());
+    }
+
+    return node;
+  }
+
   public static final Parser sequence(final Parser... elements) {
     return new Parser() {
 
@@ -327,25 +526,56 @@ public abstract class Parser {
       }
 
       @Override
-      protected final boolean computeFirst() {
-        final Set<LexerSymbol> newFirst = new HashSet<>();
+      protected final Parser[] getOperands() {
+        return elements;
+      }
 
+      @Override
+      protected final void computeFirst(final LookAheadAnalysis analysis) {
         if (elements.length == 0) {
-          newFirst.add(EMPTY);
+          analysis.addToFirst(this, EMPTY);
         } else {
           for (final Parser element : elements) {
-            newFirst.addAll(element.first);
+            analysis.addToFirst(this, element);
 
-            if (!element.first.contains(EMPTY)) {
+            if (!analysis.firstContainsEmpty(element)) {
               break;
             }
           }
         }
+      }
+
+      @Override
+      protected final boolean computeNullable(final LookAheadAnalysis analysis) {
+        for (final Parser element : elements) {
+          if (!analysis.isNullable(element)) {
+            return false;
+          }
+        }
+
+        return true;
+      }
+
+      @Override
+      protected final void computeFollow(final LookAheadAnalysis analysis) {
+        for (int index = 0; index < elements.length; ++index) {
+          final Parser element = elements[index];
+
+          int nextIndex = index + 1;
+          while (nextIndex < elements.length) {
+            analysis.addFirstToFollow(element, elements[nextIndex]);
+
+            if (!analysis.isNullable(elements[nextIndex])) {
+              break;
+            }
 
-        final boolean change = !newFirst.equals(this.first);
-        this.first.addAll(newFirst);
+            ++nextIndex;
+          }
 
-        return change;
+          if (nextIndex == elements.length) {
+            analysis.addFollowToFollow(element, this);
+          }
+        }
       }
 
       @Override
@@ -386,17 +616,33 @@ public abstract class Parser {
       }
 
       @Override
-      protected final boolean computeFirst() {
-        final Set<LexerSymbol> newFirst = new HashSet<>();
+      protected final Parser[] getOperands() {
+        return alternatives;
+      }
 
+      @Override
+      protected final void computeFirst(final LookAheadAnalysis analysis) {
         for (final Parser alternative : alternatives) {
-          newFirst.addAll(alternative.first);
+          analysis.addToFirst(this, alternative);
         }
+      }
 
-        final boolean change = !newFirst.equals(this.first);
-        this.first.addAll(newFirst);
+      @Override
+      protected final boolean computeNullable(final LookAheadAnalysis analysis) {
+        for (final Parser alternative : alternatives) {
+          if (analysis.isNullable(alternative)) {
+            return true;
+          }
+        }
+
+        return false;
+      }
 
-        return change;
+      @Override
+      protected final void computeFollow(final LookAheadAnalysis analysis) {
+        for (final Parser alternative : alternatives) {
+          analysis.addFollowToFollow(alternative, this);
+        }
       }
 
       @Override
@@ -464,16 +710,24 @@ public abstract class Parser {
       }
 
       @Override
-      protected final boolean computeFirst() {
-        final Set<LexerSymbol> newFirst = new HashSet<>();
+      protected final Parser[] getOperands() {
+        return new Parser[] { parser };
+      }
 
-        newFirst.addAll(parser.first);
-        newFirst.add(EMPTY);
+      @Override
+      protected final void computeFirst(final LookAheadAnalysis analysis) {
+        analysis.addToFirst(this, parser);
+        analysis.addToFirst(this, EMPTY);
+      }
 
-        final boolean change = !newFirst.equals(this.first);
-        this.first.addAll(newFirst);
+      @Override
+      protected final boolean computeNullable(final LookAheadAnalysis analysis) {
+        return true;
+      }
 
-        return change;
+      @Override
+      protected final void computeFollow(final LookAheadAnalysis analysis) {
+        analysis.addFollowToFollow(parser, this);
       }
 
       @Override
@@ -563,16 +817,26 @@ public abstract class Parser {
       }
 
       @Override
-      protected final boolean computeFirst() {
-        final Set<LexerSymbol> newFirst = new HashSet<>();
+      protected final Parser[] getOperands() {
+        return new Parser[] { parser };
+      }
 
-        newFirst.addAll(parser.first);
-        newFirst.add(EMPTY);
+      @Override
+      protected final void computeFirst(final LookAheadAnalysis analysis) {
+        analysis.addToFirst(this, parser);
+        analysis.addToFirst(this, EMPTY);
+      }
 
-        final boolean change = !newFirst.equals(this.first);
-        this.first.addAll(newFirst);
+      @Override
+      protected final boolean computeNullable(final LookAheadAnalysis analysis) {
+        return true;
+      }
 
-        return change;
+      @Override
+      protected final void computeFollow(final LookAheadAnalysis analysis) {
+        analysis.addFollowToFollow(parser, this);
+        // the parser may be applied repeatedly
+        analysis.addFirstToFollow(parser, parser);
       }
 
       @Override
@@ -638,15 +902,8 @@ public abstract class Parser {
         }
 
         // remaining elements
-        final ParserResult remainingResult;
-        {
-          if (remainingParser.first.isEmpty()) {
-            remainingParser.computeFirst();
-          }
-
-          remainingResult = remainingParser.parse(
-              tokens, firstSuccess.position, parentRule, parentPosition, buildSyntaxTree);
-        }
+        final ParserResult remainingResult = remainingParser.parse(
+            tokens, firstSuccess.position, parentRule, parentPosition, buildSyntaxTree);
 
         assert (remainingResult instanceof ParserSuccess);
         final ParserSuccess remainingSuccess = (ParserSuccess) remainingResult;
@@ -676,13 +933,26 @@ public abstract class Parser {
       }
 
       @Override
-      protected final boolean computeFirst() {
-        if (this.first.equals(parser.first)) {
-          return false;
-        }
+      protected final Parser[] getOperands() {
+        // the look-ahead sets of the parser for the remaining elements are computed as well
+        return new Parser[] { parser, remainingParser };
+      }
 
-        this.first.addAll(parser.first);
-        return true;
+      @Override
+      protected final void computeFirst(final LookAheadAnalysis analysis) {
+        analysis.addToFirst(this, parser);
+      }
+
+      @Override
+      protected final boolean computeNullable(final LookAheadAnalysis analysis) {
+        return analysis.isNullable(parser);
+      }
+
+      @Override
+      protected final void computeFollow(final LookAheadAnalysis analysis) {
+        analysis.addFirstToFollow(parser, parser);
+        analysis.addFollowToFollow(parser, this);
+        analysis.addFollowToFollow(remainingParser, this);
       }
 
       @Override
@@ -709,9 +979,31 @@ public abstract class Parser {
 
   public static final Parser fromGrammar(final Grammar grammar, final ParserSymbol startSymbol,
       final boolean quantifierNodes) {
+    return fromGrammar(grammar, startSymbol, quantifierNodes, false);
+  }
+
+  public static final Parser fromGrammar(final Grammar grammar, final boolean quantifierNodes,
+      final boolean optimize) {
+    return fromGrammar(grammar, grammar.getRootProduction().getSymbol(), quantifierNodes, optimize);
+  }
+
+  // if 'optimize' is set, the parsers are optimized for parsing speed without changing the
+  // resulting syntax trees:
+  // - small non-recursive productions are inlined into their users (see 'InliningAnalysis')
+  // - common prefixes of alternatives are factored out (see 'LeftFactorAlternatives')
+  // - consecutive alternatives that consist of a single token are matched at once
+  // - productions that only consist of tokens are matched by a deterministic automaton (see
+  //   'TokenAutomaton')
+  // NOTE: the look-ahead is checked at different places, i.e., the messages of parsing failures may
+  // list other expected token symbols
+  public static final Parser fromGrammar(final Grammar grammar, final ParserSymbol startSymbol,
+      final boolean quantifierNodes, final boolean optimize) {
     final Map<Symbol, Parser> symbolParsers = new HashMap<>();
     final List<Parser> allParsers = new ArrayList<>();
 
+    // parsers of inlined productions (used instead of the parser references of these productions)
+    final Map<ParserSymbol, InlinedProduction> inlinedParsers = new HashMap<>();
+
     // implicitly defined EOF production
     {
       final Parser eofParser = token(LexerSymbol.EOF);
@@ -743,6 +1035,15 @@ public abstract class Parser {
           allParsers.add(parserReference);
         }
       }
+
+      if (optimize) {
+        for (final ParserSymbol inlinedSymbol : InliningAnalysis.analyze(grammar)) {
+          final InlinedProduction inlinedParser = new InlinedProduction(inlinedSymbol);
+
+          inlinedParsers.put(inlinedSymbol, inlinedParser);
+          allParsers.add(inlinedParser);
+        }
+      }
     }
 
     grammar.accept(new BaseASTVisitor<Void, Parser>() {
@@ -750,7 +1051,21 @@ public abstract class Parser {
       @Override
       public final Parser visit(final ParserProduction parserProduction, final Void parameter) {
         final Alternatives rightHandSide = parserProduction.getRightHandSide();
-        final Parser parser = rightHandSide.accept(this, parameter);
+        final Parser parser;
+        {
+          final TokenAutomaton automaton = (optimize)
+              ? TokenAutomaton.compile(rightHandSide, quantifierNodes)
+              : null;
+
+          if (automaton != null) {
+            parser = automaton;
+
+            allParsers.add(automaton);
+            allParsers.addAll(automaton.getExpectations());
+          } else {
+            parser = rightHandSide.accept(this, parameter);
+          }
+        }
 
         final Symbol symbol = parserProduction.getSymbol();
         assert (symbol != null);
@@ -759,6 +1074,10 @@ public abstract class Parser {
         assert (parserReference instanceof ParserReference);
         ((ParserReference) parserReference).setReference(parser);
 
+        if (inlinedParsers.containsKey(symbol)) {
+          inlinedParsers.get(symbol).setReference(parser);
+        }
+
         return parser;
       }
 
@@ -773,7 +1092,9 @@ public abstract class Parser {
         final Symbol symbol = parserIdentifier.getSymbol();
         assert (symbol != null);
 
-        final Parser symbolParser = symbolParsers.get(symbol);
+        final Parser symbolParser = (inlinedParsers.containsKey(symbol))
+            ? inlinedParsers.get(symbol)
+            : symbolParsers.get(symbol);
         assert (symbolParser != null);
 
         final Symbol<?> quantifiedSymbol = symbol;
@@ -804,17 +1125,22 @@ public abstract class Parser {
 
       @Override
       public final Parser visit(final Alternatives alternatives, final Void parameter) {
-        final int numberOfAlternatives = alternatives.getNumberOfAlternatives();
-        final Parser[] alternativeParsers = new Parser[numberOfAlternatives]; 
+        final Parser alternativeParser;
 
-        int index = 0;
-        for (final Sequence alternative : alternatives) {
-          final Parser alternativeParser = alternative.accept(this, parameter);
-          alternativeParsers[index++] = alternativeParser;
-        }
+        if (optimize) {
+          alternativeParser = optimizeAlternatives(alternatives, parameter);
+        } else {
+          final int numberOfAlternatives = alternatives.getNumberOfAlternatives();
+          final Parser[] alternativeParsers = new Parser[numberOfAlternatives]; 
 
-        final Parser alternativeParser = alternatives(alternativeParsers);
-        allParsers.add(alternativeParser);
+          int index = 0;
+          for (final Sequence alternative : alternatives) {
+            alternativeParsers[index++] = alternative.accept(this, parameter);
+          }
+
+          alternativeParser = alternatives(alternativeParsers);
+          allParsers.add(alternativeParser);
+        }
 
         final Symbol<?> quantifiedSymbol = (alternatives.hasQuantifier())
             ? getQuantifiedSymbol(alternatives)
@@ -844,31 +1170,64 @@ public abstract class Parser {
         return sequenceParser;
       }
 
-      private final Symbol<?> getQuantifiedSymbol(final Alternatives alternatives) {
-        if (alternatives.hasImplicitQuantifierSymbol()) {
-          return alternatives.getImplicitQuantifierSymbol();
+      private final Parser optimizeAlternatives(final Alternatives alternatives,
+          final Void parameter) {
+        final List<Parser> alternativeParsers = new ArrayList<>();
+        final List<LexerSymbol> tokenSymbols = new ArrayList<>();
+
+        for (final Sequence alternative : LeftFactorAlternatives.factor(
+            alternatives.getAlternatives())) {
+          if (isSingleToken(alternative)) {
+            tokenSymbols.add(((LexerIdentifier) alternative.getElement(0)).getSymbol());
+          } else {
+            addTokenSet(tokenSymbols, alternativeParsers);
+            alternativeParsers.add(alternative.accept(this, parameter));
+          }
         }
 
-        if (alternatives.getNumberOfAlternatives() > 1) {
-          assert (!alternatives.hasQuantifier());
-          return null;
+        addTokenSet(tokenSymbols, alternativeParsers);
+
+        // the parser of a single alternative is not wrapped since 'alternatives' would return
+        // its result as it is anyway
+        if (alternativeParsers.size() == 1) {
+          return alternativeParsers.get(0);
         }
 
-        final Sequence singleSequence = alternatives.getAlternative(0);
-        return getQuantifiedSymbol(singleSequence);
+        final Parser alternativeParser =
+            alternatives(alternativeParsers.toArray(new Parser[alternativeParsers.size()]));
+        allParsers.add(alternativeParser);
+
+        return alternativeParser;
       }
 
-      private final Symbol<?> getQuantifiedSymbol(final Sequence sequence) {
-        assert (sequence.getNumberOfElements() == 1);
+      private final boolean isSingleToken(final Sequence sequence) {
+        return sequence.getNumberOfElements() == 1
+            && sequence.getElement(0) instanceof LexerIdentifier
+            && !sequence.getElement(0).hasQuantifier();
+      }
+
+      // adds a parser for the collected token symbols (if any) and clears them; the order of the
+      // token symbols does not matter since a token only has one token symbol
+      private final void addTokenSet(final List<LexerSymbol> tokenSymbols,
+          final List<Parser> alternativeParsers) {
+        if (tokenSymbols.isEmpty()) {
+          return;
+        }
 
-        final Atom singleElement = sequence.getElement(0);
+        final Parser tokenParser;
 
-        if (singleElement instanceof Identifier<?>) {
-          return ((Identifier<?>) singleElement).getSymbol();
+        if (tokenSymbols.size() == 1) {
+          tokenParser = symbolParsers.get(tokenSymbols.get(0));
         } else {
-          assert (singleElement instanceof Alternatives);
-          return getQuantifiedSymbol((Alternatives) singleElement);
+          tokenParser =
+              tokenSet(tokenSymbols.toArray(new LexerSymbol[tokenSymbols.size()]));
+          allParsers.add(tokenParser);
         }
+
+        assert (tokenParser != null);
+        alternativeParsers.add(tokenParser);
+
+        tokenSymbols.clear();
       }
 
       private int quantifiedSymbolCounter = 0;
@@ -897,17 +1256,11 @@ public abstract class Parser {
 
     }, null);
 
-    // compute first sets
-    {
-      boolean change = true;
-      while (change) {
-        change = false;
+    assert (symbolParsers.containsKey(startSymbol));
+    final Parser startParser = symbolParsers.get(startSymbol);
 
-        for (final Parser parser : allParsers) {
-          change |= parser.computeFirst();
-        }
-      }
-    }
+    // compute first sets, nullability and follow sets
+    LookAheadAnalysis.analyze(allParsers, startParser);
 
     // print first sets for testing
     if (false) {
@@ -919,8 +1272,35 @@ public abstract class Parser {
       }
     }
 
-    assert (symbolParsers.containsKey(startSymbol));
-    return symbolParsers.get(startSymbol);
+    return startParser;
+  }
+
+  // returns the symbol that is expected for the items of the given quantified alternatives
+  static final Symbol<?> getQuantifiedSymbol(final Alternatives alternatives) {
+    if (alternatives.hasImplicitQuantifierSymbol()) {
+      return alternatives.getImplicitQuantifierSymbol();
+    }
+
+    if (alternatives.getNumberOfAlternatives() > 1) {
+      assert (!alternatives.hasQuantifier());
+      return null;
+    }
+
+    final Sequence singleSequence = alternatives.getAlternative(0);
+    return getQuantifiedSymbol(singleSequence);
+  }
+
+  private static final Symbol<?> getQuantifiedSymbol(final Sequence sequence) {
+    assert (sequence.getNumberOfElements() == 1);
+
+    final Atom singleElement = sequence.getElement(0);
+
+    if (singleElement instanceof Identifier<?>) {
+      return ((Identifier<?>) singleElement).getSymbol();
+    } else {
+      assert (singleElement instanceof Alternatives);
+      return getQuantifiedSymbol((Alternatives) singleElement);
+    }
   }
 
 }
@@ -5,14 +5,21 @@ import i2.act.peg.info.SourcePosition;
 public final class ParsingFailedException extends RuntimeException {
 
   private final SourcePosition position;
+  private final String reason;
 
-  public ParsingFailedException(final SourcePosition position, final String message) {
-    super(String.format("parsing failed at %s: %s", position, message));
+  public ParsingFailedException(final SourcePosition position, final String reason) {
+    super(String.format("parsing failed at %s: %s", position, reason));
     this.position = position;
+    this.reason = reason;
   }
 
   public final SourcePosition getPosition() {
     return this.position;
   }
 
+  // the message without the position
+  public final String getReason() {
+    return this.reason;
+  }
+
 }
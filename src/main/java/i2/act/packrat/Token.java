@@ -16,12 +16,16 @@ public final class Token {
   private final LexerSymbol tokenSymbol;
   private final String value;
 
+  // either the positions are given explicitly or they are computed on demand from the offsets and
+  // the line index of the input (in the latter case, 'begin' and 'end' are 'null')
   private final SourcePosition begin;
   private final SourcePosition end;
 
-  private final List<Token> skippedTokensBefore;
+  private final LineIndex lineIndex;
+  private final int beginOffset;
+  private final int endOffset;
 
-  public final Map<Parser, ParserResult> packratCache;
+  private final List<Token> skippedTokensBefore;
 
   public Token(final LexerSymbol tokenSymbol, final String value) {
     this(tokenSymbol, value, SourcePosition.UNKNOWN, SourcePosition.UNKNOWN);
@@ -40,9 +44,26 @@ public final class Token {
     this.begin = begin;
     this.end = end;
 
+    this.lineIndex = null;
+    this.beginOffset = begin.offset;
+    this.endOffset = end.offset;
+
     this.skippedTokensBefore = skippedTokensBefore;
+  }
+
+  public Token(final LexerSymbol tokenSymbol, final String value, final LineIndex lineIndex,
+      final int beginOffset, final int endOffset, final List<Token> skippedTokensBefore) {
+    this.tokenSymbol = tokenSymbol;
+    this.value = value;
 
-    this.packratCache = new HashMap<Parser, ParserResult>();
+    this.begin = null;
+    this.end = null;
+
+    this.lineIndex = lineIndex;
+    this.beginOffset = beginOffset;
+    this.endOffset = endOffset;
+
+    this.skippedTokensBefore = skippedTokensBefore;
   }
 
   public final LexerSymbol getTokenSymbol() {
@@ -88,33 +109,48 @@ public final class Token {
   }
 
   public final SourcePosition getBegin() {
+    if (this.begin == null) {
+      return this.lineIndex.getPosition(this.beginOffset);
+    }
+
     return this.begin;
   }
 
   public final SourcePosition getEnd() {
+    if (this.end == null) {
+      return this.lineIndex.getPosition(this.endOffset);
+    }
+
     return this.end;
   }
 
-  public final List<Token> getSkippedTokensBefore() {
-    return Collections.unmodifiableList(this.skippedTokensBefore);
+  public final int getBeginOffset() {
+    return this.beginOffset;
   }
 
-  public final boolean hasParserFailure() {
-    for (final ParserResult result : this.packratCache.values()) {
-      if (result instanceof ParserFailure) {
-        return true;
-      }
-    }
+  public final int getEndOffset() {
+    return this.endOffset;
+  }
 
-    return false;
+  public final List<Token> getSkippedTokensBefore() {
+    return Collections.unmodifiableList(this.skippedTokensBefore);
   }
 
   @Override
   public final Token clone() {
+    if (this.begin == null) {
+      return new Token(this.tokenSymbol, this.value, this.lineIndex, this.beginOffset,
+          this.endOffset, cloneSkippedTokensBefore());
+    }
+
     return clone(this.begin, this.end);
   }
 
   public final Token clone(final SourcePosition begin, final SourcePosition end) {
+    return new Token(this.tokenSymbol, this.value, begin, end, cloneSkippedTokensBefore());
+  }
+
+  private final List<Token> cloneSkippedTokensBefore() {
     final List<Token> skippedTokensBefore = new ArrayList<>();
     {
       for (final Token skippedToken : this.skippedTokensBefore) {
@@ -122,13 +158,13 @@ public final class Token {
       }
     }
 
-    return new Token(this.tokenSymbol, this.value, begin, end, skippedTokensBefore);
+    return skippedTokensBefore;
   }
 
   @Override
   public final String toString() {
     return String.format("<%s, '%s', %s>",
-        (this.tokenSymbol == null) ? "null" : this.tokenSymbol.getName(), this.value, this.begin);
+        (this.tokenSymbol == null) ? "null" : this.tokenSymbol.getName(), this.value, getBegin());
   }
 
 }
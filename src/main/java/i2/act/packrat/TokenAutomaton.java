@@ -0,0 +1,593 @@
+package i2.act.packrat;
+
+import i2.act.packrat.cst.Node;
+import i2.act.packrat.cst.NonTerminalNode;
+import i2.act.peg.ast.Alternatives;
+import i2.act.peg.ast.Atom;
+import i2.act.peg.ast.LexerIdentifier;
+import i2.act.peg.ast.Quantifier;
+import i2.act.peg.ast.Sequence;
+import i2.act.peg.symbols.LexerSymbol;
+import i2.act.peg.symbols.ParserSymbol;
+import i2.act.peg.symbols.Symbol;
+import i2.act.peg.transformations.LeftFactorAlternatives;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// matches the right-hand side of a production that only consists of tokens (i.e., that does not
+// use other productions) with a deterministic finite automaton over the token symbols instead of
+// the parser combinators; the automaton passes over the tokens once and records the states that it
+// has passed, which suffices to rebuild the same syntax trees as the combinators (including the
+// nodes of quantifiers and their items)
+//
+// the states of the automaton are the occurrences of tokens in the right-hand side plus a start
+// state (i.e., it is the Glushkov automaton of the right-hand side); a right-hand side is only
+// compiled (see 'compile') if the automaton is deterministic and if
+// - only the last alternative of a choice may match the empty word
+// - quantified expressions that may be repeated do not match the empty word
+// for such right-hand sides, a failing expression can not be matched differently by the PEG, i.e.,
+// the production matches up to the last position at which the automaton has been in an accepting
+// state before it got stuck
+final class TokenAutomaton extends Parser {
+
+  private static final int START_STATE = 0;
+  private static final int NO_STATE = -1;
+
+  private static final int INITIAL_PATH_LENGTH = 16;
+
+  private final Expression expression;
+  private final boolean quantifierNodes;
+
+  // the transitions of each state: on the token symbol 'transitionSymbols[s][i]' the automaton
+  // moves from state s to state 'transitionTargets[s][i]'
+  private final LexerSymbol[][] transitionSymbols;
+  private final int[][] transitionTargets;
+  private final boolean[] accepting;
+
+  // for each non-accepting state, a parser whose first set contains the token symbols that are
+  // expected in the state; if the automaton gets stuck in the state, a failure of this parser is
+  // recorded at the current token (for the messages of parsing failures)
+  private final Parser[] expectations;
+
+  private TokenAutomaton(final Expression expression, final boolean quantifierNodes,
+      final LexerSymbol[][] transitionSymbols, final int[][] transitionTargets,
+      final boolean[] accepting) {
+    this.expression = expression;
+    this.quantifierNodes = quantifierNodes;
+    this.transitionSymbols = transitionSymbols;
+    this.transitionTargets = transitionTargets;
+    this.accepting = accepting;
+
+    final int numberOfStates = accepting.length;
+    this.expectations = new Parser[numberOfStates];
+
+    for (int state = 0; state < numberOfStates; ++state) {
+      if (accepting[state]) {
+        continue;
+      }
+
+      // the states of all token occurrences that are not at the end have successors
+      assert (transitionSymbols[state].length > 0);
+
+      if (transitionSymbols[state].length == 1) {
+        this.expectations[state] = token(transitionSymbols[state][0]);
+      } else {
+        this.expectations[state] = tokenSet(transitionSymbols[state]);
+      }
+    }
+  }
+
+  // returns the automaton for the given right-hand side or null if the right-hand side does not
+  // only consist of tokens or if it does not have the properties listed above
+  public static final TokenAutomaton compile(final Alternatives rightHandSide,
+      final boolean quantifierNodes) {
+    final Compiler compiler = new Compiler();
+    final Expression expression = compiler.compile(rightHandSide);
+
+    if (expression == null) {
+      return null;
+    }
+
+    final int numberOfPositions = compiler.positionSymbols.size();
+
+    // state 0 is the start state, state p + 1 belongs to the token occurrence at position p
+    final LexerSymbol[][] transitionSymbols = new LexerSymbol[numberOfPositions + 1][];
+    final int[][] transitionTargets = new int[numberOfPositions + 1][];
+    final boolean[] accepting = new boolean[numberOfPositions + 1];
+
+    for (int state = 0; state <= numberOfPositions; ++state) {
+      final BitSet successors = (state == START_STATE)
+          ? expression.first
+          : compiler.follow.get(state - 1);
+
+      transitionSymbols[state] = new LexerSymbol[successors.cardinality()];
+      transitionTargets[state] = new int[successors.cardinality()];
+
+      final Set<LexerSymbol> symbols = new HashSet<>();
+
+      int index = 0;
+      for (int position = successors.nextSetBit(0); position >= 0;
+          position = successors.nextSetBit(position + 1)) {
+        final LexerSymbol symbol = compiler.positionSymbols.get(position);
+
+        if (!symbols.add(symbol)) {
+          // not deterministic
+          return null;
+        }
+
+        transitionSymbols[state][index] = symbol;
+        transitionTargets[state][index] = position + 1;
+        ++index;
+      }
+
+      accepting[state] = (state == START_STATE)
+          ? expression.nullable
+          : expression.last.get(state - 1);
+    }
+
+    return new TokenAutomaton(
+        expression, quantifierNodes, transitionSymbols, transitionTargets, accepting);
+  }
+
+  public final List<Parser> getExpectations() {
+    final List<Parser> expectations = new ArrayList<>();
+
+    for (final Parser expectation : this.expectations) {
+      if (expectation != null) {
+        expectations.add(expectation);
+      }
+    }
+
+    return expectations;
+  }
+
+  private final int getTransition(final int state, final LexerSymbol symbol) {
+    final LexerSymbol[] symbols = this.transitionSymbols[state];
+
+    for (int index = 0; index < symbols.length; ++index) {
+      if (symbols[index] == symbol) {
+        return this.transitionTargets[state][index];
+      }
+    }
+
+    return NO_STATE;
+  }
+
+  @Override
+  public final ParserResult apply(final TokenStream tokens, final int position,
+      final ParserReference parentRule, final int parentPosition, final boolean buildSyntaxTree) {
+    // the positions of the token occurrences that have been passed (only if a tree is built)
+    int[] path = (buildSyntaxTree) ? (new int[INITIAL_PATH_LENGTH]) : (null);
+
+    int state = START_STATE;
+    int currentPosition = position;
+    int endPosition = (this.accepting[state]) ? (position) : (-1);
+
+    while (true) {
+      final Token token = tokens.at(currentPosition);
+      final int nextState = getTransition(state, token.getTokenSymbol());
+
+      if (nextState == NO_STATE) {
+        if (!this.accepting[state]) {
+          tokens.memo.put(currentPosition, this.expectations[state], ParserFailure.PARSER_FAILURE);
+        }
+
+        break;
+      }
+
+      if (buildSyntaxTree) {
+        final int pathIndex = currentPosition - position;
+
+        if (pathIndex == path.length) {
+          path = Arrays.copyOf(path, 2 * path.length);
+        }
+
+        path[pathIndex] = nextState - 1;
+      }
+
+      state = nextState;
+      ++currentPosition;
+
+      if (this.accepting[state]) {
+        endPosition = currentPosition;
+      }
+    }
+
+    if (endPosition < 0) {
+      return ParserFailure.PARSER_FAILURE;
+    }
+
+    if (!buildSyntaxTree) {
+      return new ParserSuccess(endPosition);
+    }
+
+    final TreeBuilder builder = new TreeBuilder(tokens, position, path, endPosition - position);
+
+    final List<Node<?>> syntaxTrees = new ArrayList<>();
+    this.expression.build(builder, syntaxTrees);
+
+    assert (builder.cursor == builder.length);
+
+    return new ParserSuccess(endPosition, syntaxTrees);
+  }
+
+  @Override
+  protected final Parser[] getOperands() {
+    return new Parser[0];
+  }
+
+  @Override
+  protected final void computeFirst(final LookAheadAnalysis analysis) {
+    for (final LexerSymbol symbol : this.transitionSymbols[START_STATE]) {
+      analysis.addToFirst(this, symbol);
+    }
+
+    if (this.accepting[START_STATE]) {
+      analysis.addToFirst(this, EMPTY);
+    }
+  }
+
+  @Override
+  protected final boolean computeNullable(final LookAheadAnalysis analysis) {
+    return this.accepting[START_STATE];
+  }
+
+  @Override
+  protected final void computeFollow(final LookAheadAnalysis analysis) {
+    // nothing to do here (no operands)
+  }
+
+  @Override
+  public final String toString() {
+    return String.format("automaton(%d states)", this.accepting.length);
+  }
+
+  // ===============================================================================================
+
+  // rebuilds the syntax trees from the positions that the automaton has passed
+  private final class TreeBuilder {
+
+    private final TokenStream tokens;
+    private final int position;
+
+    private final int[] path;
+    private final int length;
+
+    private int cursor;
+
+    public TreeBuilder(final TokenStream tokens, final int position, final int[] path,
+        final int length) {
+      this.tokens = tokens;
+      this.position = position;
+      this.path = path;
+      this.length = length;
+    }
+
+    // returns true if the next matched token belongs to the given expression
+    public final boolean startsWith(final Expression expression) {
+      return this.cursor < this.length && expression.first.get(this.path[this.cursor]);
+    }
+
+    public final Token nextToken() {
+      return this.tokens.at(this.position + this.cursor++);
+    }
+
+    public final boolean quantifierNodes() {
+      return TokenAutomaton.this.quantifierNodes;
+    }
+
+  }
+
+  // ===============================================================================================
+
+  private abstract static class Expression {
+
+    protected final BitSet first;
+    protected final BitSet last;
+    protected final boolean nullable;
+
+    public Expression(final BitSet first, final BitSet last, final boolean nullable) {
+      this.first = first;
+      this.last = last;
+      this.nullable = nullable;
+    }
+
+    // adds the syntax trees of the expression's match to the given list
+    public abstract void build(final TreeBuilder builder, final List<Node<?>> syntaxTrees);
+
+  }
+
+  private static final class TokenExpression extends Expression {
+
+    public TokenExpression(final int position) {
+      super(singleton(position), singleton(position), false);
+    }
+
+    private static final BitSet singleton(final int position) {
+      final BitSet positions = new BitSet();
+      positions.set(position);
+
+      return positions;
+    }
+
+    @Override
+    public final void build(final TreeBuilder builder, final List<Node<?>> syntaxTrees) {
+      syntaxTrees.add(createTerminalNode(builder.nextToken()));
+    }
+
+  }
+
+  private static final class SequenceExpression extends Expression {
+
+    private final Expression[] elements;
+
+    public SequenceExpression(final Expression[] elements, final BitSet first, final BitSet last,
+        final boolean nullable) {
+      super(first, last, nullable);
+      this.elements = elements;
+    }
+
+    @Override
+    public final void build(final TreeBuilder builder, final List<Node<?>> syntaxTrees) {
+      for (final Expression element : this.elements) {
+        element.build(builder, syntaxTrees);
+      }
+    }
+
+  }
+
+  private static final class ChoiceExpression extends Expression {
+
+    private final Expression[] alternatives;
+
+    public ChoiceExpression(final Expression[] alternatives, final BitSet first,
+        final BitSet last, final boolean nullable) {
+      super(first, last, nullable);
+      this.alternatives = alternatives;
+    }
+
+    @Override
+    public final void build(final TreeBuilder builder, final List<Node<?>> syntaxTrees) {
+      for (final Expression alternative : this.alternatives) {
+        if (builder.startsWith(alternative)) {
+          alternative.build(builder, syntaxTrees);
+          return;
+        }
+      }
+
+      // only the last alternative may match the empty word
+      final Expression lastAlternative = this.alternatives[this.alternatives.length - 1];
+      assert (lastAlternative.nullable);
+
+      lastAlternative.build(builder, syntaxTrees);
+    }
+
+  }
+
+  private static final class QuantifiedExpression extends Expression {
+
+    private final Expression expression;
+    private final Quantifier.Kind quantifier;
+    private final Symbol<?> quantifiedSymbol;
+
+    public QuantifiedExpression(final Expression expression, final Quantifier.Kind quantifier,
+        final Symbol<?> quantifiedSymbol) {
+      super(expression.first, expression.last,
+          quantifier != Quantifier.Kind.QUANT_PLUS || expression.nullable);
+      this.expression = expression;
+      this.quantifier = quantifier;
+      this.quantifiedSymbol = quantifiedSymbol;
+    }
+
+    // builds the same nodes as the parsers returned by 'optional', 'many' and 'manyOne'
+    @Override
+    public final void build(final TreeBuilder builder, final List<Node<?>> syntaxTrees) {
+      final List<Node<?>> items = new ArrayList<>();
+
+      while (builder.startsWith(this.expression)) {
+        if (builder.quantifierNodes()) {
+          final List<Node<?>> itemTrees = new ArrayList<>();
+          this.expression.build(builder, itemTrees);
+
+          final NonTerminalNode itemNode = new NonTerminalNode(ParserSymbol.LIST_ITEM, itemTrees);
+
+          if (this.quantifiedSymbol != null) {
+            itemNode.setExpectedSymbol(this.quantifiedSymbol);
+          }
+
+          items.add(itemNode);
+        } else {
+          this.expression.build(builder, items);
+        }
+
+        if (this.quantifier == Quantifier.Kind.QUANT_OPTIONAL) {
+          break;
+        }
+      }
+
+      // the automaton is deterministic -> a repeated expression has matched at least once
+      assert (this.quantifier != Quantifier.Kind.QUANT_PLUS || !items.isEmpty());
+
+      if (items.isEmpty()) {
+        return;
+      }
+
+      if (builder.quantifierNodes()) {
+        final ParserSymbol quantifierSymbol;
+        {
+          switch (this.quantifier) {
+            case QUANT_OPTIONAL: {
+              quantifierSymbol = ParserSymbol.OPTIONAL;
+              break;
+            }
+            case QUANT_STAR: {
+              quantifierSymbol = ParserSymbol.STAR;
+              break;
+            }
+            default: {
+              assert (this.quantifier == Quantifier.Kind.QUANT_PLUS);
+              quantifierSymbol = ParserSymbol.PLUS;
+              break;
+            }
+          }
+        }
+
+        syntaxTrees.add(new NonTerminalNode(quantifierSymbol, items));
+      } else {
+        syntaxTrees.addAll(items);
+      }
+    }
+
+  }
+
+  // ===============================================================================================
+
+  // translates a right-hand side into expressions and computes the follow positions of the token
+  // occurrences
+  private static final class Compiler {
+
+    private final List<LexerSymbol> positionSymbols;
+    private final List<BitSet> follow;
+
+    public Compiler() {
+      this.positionSymbols = new ArrayList<>();
+      this.follow = new ArrayList<>();
+    }
+
+    private final void addFollow(final BitSet positions, final BitSet followingPositions) {
+      for (int position = positions.nextSetBit(0); position >= 0;
+          position = positions.nextSetBit(position + 1)) {
+        this.follow.get(position).or(followingPositions);
+      }
+    }
+
+    public final Expression compile(final Alternatives alternatives) {
+      // common prefixes of alternatives are factored out (as for the parsers in optimized mode)
+      // since the automaton would not be deterministic otherwise
+      final List<Sequence> factoredAlternatives =
+          LeftFactorAlternatives.factor(alternatives.getAlternatives());
+
+      final Expression[] alternativeExpressions = new Expression[factoredAlternatives.size()];
+
+      final BitSet first = new BitSet();
+      final BitSet last = new BitSet();
+      boolean nullable = false;
+
+      for (int index = 0; index < alternativeExpressions.length; ++index) {
+        final Expression alternative = compile(factoredAlternatives.get(index));
+
+        if (alternative == null) {
+          return null;
+        }
+
+        // the alternatives after an alternative that matches the empty word are never applied
+        if (nullable) {
+          return null;
+        }
+
+        first.or(alternative.first);
+        last.or(alternative.last);
+        nullable |= alternative.nullable;
+
+        alternativeExpressions[index] = alternative;
+      }
+
+      final Expression choice = (alternativeExpressions.length == 1)
+          ? alternativeExpressions[0]
+          : new ChoiceExpression(alternativeExpressions, first, last, nullable);
+
+      if (!alternatives.hasQuantifier()) {
+        return choice;
+      }
+
+      return quantify(choice, alternatives.getQuantifier(),
+          Parser.getQuantifiedSymbol(alternatives));
+    }
+
+    private final Expression compile(final Sequence sequence) {
+      final Expression[] elements = new Expression[sequence.getNumberOfElements()];
+
+      final BitSet first = new BitSet();
+      BitSet last = new BitSet();
+      boolean nullable = true;
+
+      for (int index = 0; index < elements.length; ++index) {
+        final Expression element = compile(sequence.getElement(index));
+
+        if (element == null) {
+          return null;
+        }
+
+        addFollow(last, element.first);
+
+        if (nullable) {
+          first.or(element.first);
+        }
+
+        if (element.nullable) {
+          last.or(element.last);
+        } else {
+          last = (BitSet) element.last.clone();
+        }
+
+        nullable &= element.nullable;
+
+        elements[index] = element;
+      }
+
+      if (elements.length == 1) {
+        return elements[0];
+      }
+
+      return new SequenceExpression(elements, first, last, nullable);
+    }
+
+    private final Expression compile(final Atom element) {
+      if (element instanceof Alternatives) {
+        return compile((Alternatives) element);
+      }
+
+      if (!(element instanceof LexerIdentifier)) {
+        // uses another production
+        return null;
+      }
+
+      final LexerIdentifier identifier = (LexerIdentifier) element;
+
+      final int position = this.positionSymbols.size();
+      this.positionSymbols.add(identifier.getSymbol());
+      this.follow.add(new BitSet());
+
+      final Expression token = new TokenExpression(position);
+
+      if (!identifier.hasQuantifier()) {
+        return token;
+      }
+
+      return quantify(token, identifier.getQuantifier(), identifier.getSymbol());
+    }
+
+    private final Expression quantify(final Expression expression, final Quantifier quantifier,
+        final Symbol<?> quantifiedSymbol) {
+      final Quantifier.Kind kind = quantifier.getKind();
+
+      if (kind != Quantifier.Kind.QUANT_OPTIONAL) {
+        // a repetition of an expression that matches the empty word stops after the empty match
+        if (expression.nullable) {
+          return null;
+        }
+
+        addFollow(expression.last, expression.first);
+      }
+
+      return new QuantifiedExpression(expression, kind, quantifiedSymbol);
+    }
+
+  }
+
+}
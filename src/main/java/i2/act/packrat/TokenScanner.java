@@ -0,0 +1,470 @@
+package i2.act.packrat;
+
+import i2.act.packrat.nfa.CharacterSet;
+import i2.act.peg.ast.Alternatives;
+import i2.act.peg.ast.Atom;
+import i2.act.peg.ast.Group;
+import i2.act.peg.ast.Literal;
+import i2.act.peg.ast.Quantifier;
+import i2.act.peg.ast.RegularExpression;
+import i2.act.peg.ast.Sequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// specialized matchers for common shapes of (skipped) tokens, e.g., whitespace and comments
+//
+// a scanner returns exactly the same prefix match as the NFA of the regular expression it has been
+// created for, but does not simulate the NFA
+abstract class TokenScanner {
+
+  // returns the length of the longest prefix of the input (starting at the given offset) that is
+  // matched by the token (0 if there is none)
+  public abstract int prefixMatch(final char[] input, final int offset);
+
+  // returns a scanner for the given regular expression or 'null' if it does not have a supported
+  // shape
+  public static final TokenScanner forRegularExpression(
+      final RegularExpression regularExpression) {
+    final Alternatives alternatives = regularExpression.getAlternatives();
+
+    if (alternatives.getNumberOfAlternatives() != 1 || alternatives.getQuantifier() != null) {
+      return null;
+    }
+
+    final List<Atom> elements = alternatives.getAlternative(0).getElements();
+
+    final TokenScanner prefixedRun = PrefixedRun.forElements(elements);
+    if (prefixedRun != null) {
+      return prefixedRun;
+    }
+
+    return BlockComment.forElements(elements);
+  }
+
+  // ===============================================================================================
+
+  // a literal prefix (possibly empty), followed by a run of characters from a character set
+  // (possibly followed by a single terminating character that is not in the set), e.g.:
+  //
+  //   ( ' ' | '\n' | '\r' | '\t' )+
+  //   '//' [^\n]*
+  //   '#' [^\n]* '\n'
+  static final class PrefixedRun extends TokenScanner {
+
+    private static final int NO_TERMINATOR = -1;
+
+    private final String prefix;
+    private final CharacterMatcher run;
+    private final int minimumRunLength;
+    private final int terminator;
+
+    private PrefixedRun(final String prefix, final CharacterMatcher run,
+        final int minimumRunLength, final int terminator) {
+      this.prefix = prefix;
+      this.run = run;
+      this.minimumRunLength = minimumRunLength;
+      this.terminator = terminator;
+    }
+
+    private static final PrefixedRun forElements(final List<Atom> elements) {
+      int position = 0;
+
+      final String prefix;
+      {
+        if (elements.size() > 1 && isPlainLiteral(elements.get(0))) {
+          prefix = ((Literal) elements.get(0)).getValue();
+          ++position;
+        } else {
+          prefix = "";
+        }
+      }
+
+      if (position >= elements.size()) {
+        return null;
+      }
+
+      final Atom runElement = elements.get(position++);
+      final CharacterMatcher run = CharacterMatcher.forAtom(runElement);
+
+      if (run == null || runElement.getQuantifier() == null) {
+        return null;
+      }
+
+      final int minimumRunLength;
+      {
+        final Quantifier.Kind quantifierKind = runElement.getQuantifier().getKind();
+
+        if (quantifierKind == Quantifier.Kind.QUANT_STAR) {
+          minimumRunLength = 0;
+        } else if (quantifierKind == Quantifier.Kind.QUANT_PLUS) {
+          minimumRunLength = 1;
+        } else {
+          return null;
+        }
+      }
+
+      final int terminator;
+      {
+        if (position == elements.size()) {
+          terminator = NO_TERMINATOR;
+        } else if (position == elements.size() - 1 && isPlainLiteral(elements.get(position))
+            && ((Literal) elements.get(position)).getValue().length() == 1) {
+          terminator = ((Literal) elements.get(position)).getValue().charAt(0);
+
+          // otherwise, the run may contain the terminator and the longest match would end at the
+          // last occurrence of the terminator instead of the first one
+          if (run.matches((char) terminator)) {
+            return null;
+          }
+        } else {
+          return null;
+        }
+      }
+
+      return new PrefixedRun(prefix, run, minimumRunLength, terminator);
+    }
+
+    @Override
+    public final int prefixMatch(final char[] input, final int offset) {
+      final int prefixLength = this.prefix.length();
+
+      if (offset + prefixLength > input.length) {
+        return 0;
+      }
+
+      for (int index = 0; index < prefixLength; ++index) {
+        if (input[offset + index] != this.prefix.charAt(index)) {
+          return 0;
+        }
+      }
+
+      final int runBegin = offset + prefixLength;
+      final int runEnd = this.run.skip(input, runBegin);
+
+      if (runEnd - runBegin < this.minimumRunLength) {
+        return 0;
+      }
+
+      if (this.terminator == NO_TERMINATOR) {
+        return runEnd - offset;
+      }
+
+      if (runEnd < input.length && input[runEnd] == this.terminator) {
+        return runEnd + 1 - offset;
+      }
+
+      return 0;
+    }
+
+  }
+
+  // ===============================================================================================
+
+  // a block comment with an opening literal and a closing sequence of two different characters 'a'
+  // and 'b', written in the canonical form
+  //
+  //   opening ( [^a] | a+ [^ab] )* a+ b
+  //
+  // (e.g., '/*' ( [^*] | '*'+ [^*/] )* '*'+ '/'), which matches up to the first occurrence of "ab"
+  static final class BlockComment extends TokenScanner {
+
+    private final String opening;
+    private final char closingFirst;
+    private final char closingSecond;
+
+    private BlockComment(final String opening, final char closingFirst, final char closingSecond) {
+      this.opening = opening;
+      this.closingFirst = closingFirst;
+      this.closingSecond = closingSecond;
+    }
+
+    private static final BlockComment forElements(final List<Atom> elements) {
+      if (elements.size() != 4) {
+        return null;
+      }
+
+      final Atom opening = elements.get(0);
+      final Atom body = elements.get(1);
+      final Atom closingFirst = elements.get(2);
+      final Atom closingSecond = elements.get(3);
+
+      if (!isPlainLiteral(opening) || !isPlainLiteral(closingSecond)
+          || !(closingFirst instanceof Literal) || !(body instanceof Alternatives)) {
+        return null;
+      }
+
+      if (!isSingleCharacter((Literal) closingFirst, Quantifier.Kind.QUANT_PLUS)
+          || !isSingleCharacter((Literal) closingSecond, null)) {
+        return null;
+      }
+
+      final char first = ((Literal) closingFirst).getValue().charAt(0);
+      final char second = ((Literal) closingSecond).getValue().charAt(0);
+
+      if (first == second) {
+        return null;
+      }
+
+      // body: ( [^a] | a+ [^ab] )* (in any order of the alternatives)
+      final Alternatives bodyAlternatives = (Alternatives) body;
+
+      if (bodyAlternatives.getQuantifier() == null
+          || bodyAlternatives.getQuantifier().getKind() != Quantifier.Kind.QUANT_STAR
+          || bodyAlternatives.getNumberOfAlternatives() != 2) {
+        return null;
+      }
+
+      boolean foundOtherCharacter = false;
+      boolean foundClosingRun = false;
+
+      for (final Sequence alternative : bodyAlternatives) {
+        final List<Atom> alternativeElements = alternative.getElements();
+
+        if (alternativeElements.size() == 1
+            && isGroupOfAllExcept(alternativeElements.get(0), first)) {
+          foundOtherCharacter = true;
+        } else if (alternativeElements.size() == 2
+            && alternativeElements.get(0) instanceof Literal
+            && isSingleCharacter((Literal) alternativeElements.get(0), Quantifier.Kind.QUANT_PLUS)
+            && ((Literal) alternativeElements.get(0)).getValue().charAt(0) == first
+            && isGroupOfAllExcept(alternativeElements.get(1), first, second)) {
+          foundClosingRun = true;
+        }
+      }
+
+      if (!foundOtherCharacter || !foundClosingRun) {
+        return null;
+      }
+
+      return new BlockComment(((Literal) opening).getValue(), first, second);
+    }
+
+    @Override
+    public final int prefixMatch(final char[] input, final int offset) {
+      final int openingLength = this.opening.length();
+
+      if (offset + openingLength > input.length) {
+        return 0;
+      }
+
+      for (int index = 0; index < openingLength; ++index) {
+        if (input[offset + index] != this.opening.charAt(index)) {
+          return 0;
+        }
+      }
+
+      // search for the first occurrence of the closing characters after the opening; 'index' is
+      // the candidate position of the second closing character, which allows to skip two
+      // characters whenever the character at this position is not a closing character
+      int index = offset + openingLength + 1;
+
+      while (index < input.length) {
+        final char character = input[index];
+
+        if (character == this.closingSecond) {
+          if (input[index - 1] == this.closingFirst) {
+            return index + 1 - offset;
+          }
+
+          index += 2;
+        } else if (character == this.closingFirst) {
+          index += 1;
+        } else {
+          index += 2;
+        }
+      }
+
+      return 0;
+    }
+
+  }
+
+  // ===============================================================================================
+
+  // a set of characters (the union of single characters and character groups) with a bitmap for
+  // ASCII characters
+  static final class CharacterMatcher {
+
+    private final long asciiLow;
+    private final long asciiHigh;
+
+    // used for non-ASCII characters only
+    private final CharacterSet[] characterSets;
+
+    private CharacterMatcher(final List<CharacterSet> characterSets) {
+      long asciiLow = 0;
+      long asciiHigh = 0;
+      {
+        for (char character = 0; character < 128; ++character) {
+          for (final CharacterSet characterSet : characterSets) {
+            if (characterSet.matches(character)) {
+              if (character < 64) {
+                asciiLow |= 1L << character;
+              } else {
+                asciiHigh |= 1L << (character - 64);
+              }
+              break;
+            }
+          }
+        }
+      }
+
+      this.asciiLow = asciiLow;
+      this.asciiHigh = asciiHigh;
+      this.characterSets = characterSets.toArray(new CharacterSet[0]);
+    }
+
+    // returns a matcher for the characters matched by the given atom (ignoring its quantifier) or
+    // 'null' if the atom does not match exactly one character
+    public static final CharacterMatcher forAtom(final Atom atom) {
+      final List<CharacterSet> characterSets = new ArrayList<>();
+
+      if (!collectCharacterSets(atom, characterSets)) {
+        return null;
+      }
+
+      return new CharacterMatcher(characterSets);
+    }
+
+    private static final boolean collectCharacterSets(final Atom atom,
+        final List<CharacterSet> characterSets) {
+      if (atom instanceof Literal) {
+        final String value = ((Literal) atom).getValue();
+
+        if (value.length() != 1) {
+          return false;
+        }
+
+        characterSets.add(new CharacterSet.SingleCharacter(value.charAt(0)));
+        return true;
+      } else if (atom instanceof Group) {
+        characterSets.add(new CharacterSet.CharacterGroup((Group) atom));
+        return true;
+      } else if (atom instanceof Alternatives) {
+        for (final Sequence alternative : (Alternatives) atom) {
+          if (alternative.getNumberOfElements() != 1) {
+            return false;
+          }
+
+          final Atom element = alternative.getElement(0);
+
+          if (element.getQuantifier() != null || !collectCharacterSets(element, characterSets)) {
+            return false;
+          }
+        }
+
+        return true;
+      } else {
+        return false;
+      }
+    }
+
+    public final boolean matches(final char character) {
+      if (character < 64) {
+        return (this.asciiLow & (1L << character)) != 0;
+      } else if (character < 128) {
+        return (this.asciiHigh & (1L << (character - 64))) != 0;
+      }
+
+      for (final CharacterSet characterSet : this.characterSets) {
+        if (characterSet.matches(character)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    // returns the index of the first character (at or after the given index) that is not matched
+    public final int skip(final char[] input, final int beginIndex) {
+      final long asciiLow = this.asciiLow;
+      final long asciiHigh = this.asciiHigh;
+
+      int index = beginIndex;
+
+      while (index < input.length) {
+        final char character = input[index];
+
+        if (character < 64) {
+          if ((asciiLow & (1L << character)) == 0) {
+            break;
+          }
+        } else if (character < 128) {
+          if ((asciiHigh & (1L << (character - 64))) == 0) {
+            break;
+          }
+        } else if (!matches(character)) {
+          break;
+        }
+
+        ++index;
+      }
+
+      return index;
+    }
+
+  }
+
+  // ===============================================================================================
+
+  private static final boolean isPlainLiteral(final Atom atom) {
+    return atom instanceof Literal && atom.getQuantifier() == null
+        && !((Literal) atom).getValue().isEmpty();
+  }
+
+  private static final boolean isSingleCharacter(final Literal literal,
+      final Quantifier.Kind quantifierKind) {
+    if (literal.getValue().length() != 1) {
+      return false;
+    }
+
+    if (quantifierKind == null) {
+      return literal.getQuantifier() == null;
+    } else {
+      return literal.getQuantifier() != null
+          && literal.getQuantifier().getKind() == quantifierKind;
+    }
+  }
+
+  // checks if the atom is an unquantified group that matches all characters except the given ones
+  private static final boolean isGroupOfAllExcept(final Atom atom, final char... excluded) {
+    if (!(atom instanceof Group) || atom.getQuantifier() != null) {
+      return false;
+    }
+
+    final int[] expectedIntervals;
+    {
+      final char[] sortedExcluded = excluded.clone();
+      Arrays.sort(sortedExcluded);
+
+      final List<Integer> bounds = new ArrayList<>();
+      int nextLower = Character.MIN_VALUE;
+
+      for (final char excludedCharacter : sortedExcluded) {
+        if (excludedCharacter > nextLower) {
+          bounds.add(nextLower);
+          bounds.add(excludedCharacter - 1);
+        }
+
+        nextLower = excludedCharacter + 1;
+      }
+
+      if (nextLower <= Character.MAX_VALUE) {
+        bounds.add(nextLower);
+        bounds.add((int) Character.MAX_VALUE);
+      }
+
+      expectedIntervals = new int[bounds.size()];
+      for (int index = 0; index < expectedIntervals.length; ++index) {
+        expectedIntervals[index] = bounds.get(index);
+      }
+    }
+
+    final int[] intervals = new CharacterSet.CharacterGroup((Group) atom).getIntervals();
+
+    return Arrays.equals(intervals, expectedIntervals);
+  }
+
+}
@@ -13,6 +13,9 @@ public final class TokenStream implements Iterable<Token> {
 
   private final List<Token> tokens;
 
+  // the memo of the parse invocation that currently parses the token stream (see 'PackratMemo')
+  PackratMemo memo;
+
   public TokenStream(final List<Token> tokens) {
     this.tokens = tokens;
 
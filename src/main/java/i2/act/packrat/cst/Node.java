@@ -11,11 +11,13 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 public abstract class Node<S extends Symbol<?>> {
@@ -24,17 +26,67 @@ public abstract class Node<S extends Symbol<?>> {
 
   protected Symbol<?> expectedSymbol;
 
+  // pre-order id of the node (or -1 if no ids have been assigned yet); see 'assignIds()'
+  protected int id;
+
+  // cached structural hash (computed lazily; see 'structuralHash()')
+  private int structuralHash;
+  private boolean structuralHashValid;
+
   protected final List<Annotation> annotations;
 
   public Node(final Symbol<?> expectedSymbol) {
     this.expectedSymbol = expectedSymbol;
     this.annotations = new ArrayList<Annotation>();
+    this.id = -1;
   }
 
   public final Node<?> getParent() {
     return this.parent;
   }
 
+  public final int getId() {
+    return this.id;
+  }
+
+  public final boolean hasId() {
+    return this.id >= 0;
+  }
+
+  // assigns dense pre-order ids to all nodes of the subtree (starting with 0 for this node) and
+  // returns the number of assigned ids; cloned nodes keep the id of their original node
+  public final int assignIds() {
+    return assignIds(0);
+  }
+
+  private final int assignIds(final int firstId) {
+    this.id = firstId;
+
+    int nextId = firstId + 1;
+    for (final Node<?> child : getChildren()) {
+      nextId = child.assignIds(nextId);
+    }
+
+    return nextId;
+  }
+
+  // nodes without an id are not contained in any id set (e.g., nodes that have been added after the
+  // ids have been assigned)
+  protected final boolean isContainedIn(final BitSet ids) {
+    return hasId() && ids.get(this.id);
+  }
+
+  public static final BitSet toIdSet(final Collection<Node<?>> nodes) {
+    final BitSet ids = new BitSet();
+
+    for (final Node<?> node : nodes) {
+      assert (node.hasId());
+      ids.set(node.id);
+    }
+
+    return ids;
+  }
+
   public abstract int size();
 
   public abstract int numberOfTerminals();
@@ -102,6 +154,64 @@ public abstract class Node<S extends Symbol<?>> {
 
   public abstract String getText();
 
+  // hash over the symbols, the token texts and the structure of the subtree; the hash is cached and
+  // invalidated along the parent chain if the subtree is modified via 'replaceChild()', 'prune()',
+  // 'pruneTo()' or 'compactify()' (but not if the list of children is modified directly)
+  public final int structuralHash() {
+    if (!this.structuralHashValid) {
+      int hash = getSymbol().hashCode();
+      hash = 31 * hash + Objects.hashCode(getText());
+
+      for (final Node<?> child : getChildren()) {
+        hash = 31 * hash + child.structuralHash();
+      }
+
+      this.structuralHash = hash;
+      this.structuralHashValid = true;
+    }
+
+    return this.structuralHash;
+  }
+
+  protected final void invalidateStructuralHash() {
+    // if the hash of a node is valid, the hashes of all of its descendants are valid as well
+    // -> we can stop at the first node whose hash is already invalid
+    Node<?> node = this;
+    while (node != null && node.structuralHashValid) {
+      node.structuralHashValid = false;
+      node = node.parent;
+    }
+  }
+
+  public final boolean structurallyEquals(final Node<?> other) {
+    if (this == other) {
+      return true;
+    }
+
+    if (structuralHash() != other.structuralHash()) {
+      return false;
+    }
+
+    if (getSymbol() != other.getSymbol() || !Objects.equals(getText(), other.getText())) {
+      return false;
+    }
+
+    final List<Node<?>> children = getChildren();
+    final List<Node<?>> otherChildren = other.getChildren();
+
+    if (children.size() != otherChildren.size()) {
+      return false;
+    }
+
+    for (int index = 0; index < children.size(); ++index) {
+      if (!children.get(index).structurallyEquals(otherChildren.get(index))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
   public abstract void compactify();
 
   @SuppressWarnings("unchecked")
@@ -121,12 +231,27 @@ public abstract class Node<S extends Symbol<?>> {
   protected abstract Node<?> cloneTree(final Collection<Node<?>> subNodes,
       final Map<Node<?>, Node<?>> clonedSubNodes);
 
+  // returns the cloned tree and the clones of all nodes whose ids are contained in 'subNodes' (in
+  // pre-order)
+  public final Pair<Node<?>, List<Node<?>>> cloneTree(final BitSet subNodes) {
+    final List<Node<?>> clonedSubNodes = new ArrayList<>();
+    final Node<?> clonedTree = cloneTree(subNodes, clonedSubNodes);
+
+    return new Pair<Node<?>, List<Node<?>>>(clonedTree, clonedSubNodes);
+  }
+
+  protected abstract Node<?> cloneTree(final BitSet subNodes, final List<Node<?>> clonedSubNodes);
+
   public abstract Node<?> cloneNode();
 
   public abstract Node<?> pruneTo(final Set<Node<?>> keptNodes);
 
+  public abstract Node<?> pruneTo(final BitSet keptNodes);
+
   public abstract Node<?> prune(final Set<Node<?>> removedNodes);
 
+  public abstract Node<?> prune(final BitSet removedNodes);
+
   public final boolean containsNode(final Node<?> node) {
     Node<?> parentNode = node;
     while (parentNode != null) {
@@ -7,6 +7,7 @@ import i2.act.peg.symbols.Symbol;
 import i2.act.util.Pair;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -115,6 +116,8 @@ public final class NonTerminalNode extends Node<ParserSymbol> {
         newChild.parent = this;
         originalChild.parent = null;
 
+        invalidateStructuralHash();
+
         return;
       }
     }
@@ -159,6 +162,8 @@ public final class NonTerminalNode extends Node<ParserSymbol> {
 
           compactifiedChild.setExpectedSymbol(child.getSymbol());
           compactifiedChild.addAnnotations(child.getAnnotations());
+
+          invalidateStructuralHash();
         }
       }
 
@@ -225,6 +230,31 @@ public final class NonTerminalNode extends Node<ParserSymbol> {
     return clone;
   }
 
+  @Override
+  protected final Node<?> cloneTree(final BitSet subNodes, final List<Node<?>> clonedSubNodes) {
+    final boolean isSubNode = isContainedIn(subNodes);
+
+    // reserve slot to keep the cloned sub nodes in pre-order
+    final int subNodeIndex = clonedSubNodes.size();
+    if (isSubNode) {
+      clonedSubNodes.add(null);
+    }
+
+    final List<Node<?>> clonedChildren = new ArrayList<>(this.children.size());
+    for (final Node<?> child : this.children) {
+      final Node<?> clonedChild = child.cloneTree(subNodes, clonedSubNodes);
+      clonedChildren.add(clonedChild);
+    }
+
+    final NonTerminalNode clone = cloneNode(clonedChildren);
+
+    if (isSubNode) {
+      clonedSubNodes.set(subNodeIndex, clone);
+    }
+
+    return clone;
+  }
+
   @Override
   public final NonTerminalNode cloneNode() {
     return cloneNode(new ArrayList<Node<?>>());
@@ -233,6 +263,7 @@ public final class NonTerminalNode extends Node<ParserSymbol> {
   public final NonTerminalNode cloneNode(final List<Node<?>> children) {
     final NonTerminalNode clone = new NonTerminalNode(this.symbol, children);
     clone.setExpectedSymbol(this.expectedSymbol);
+    clone.id = this.id;
 
     for (final Node<?> child : children) {
       child.parent = clone;
@@ -260,6 +291,31 @@ public final class NonTerminalNode extends Node<ParserSymbol> {
       } else {
         childIterator.remove();
         child.parent = null;
+
+        invalidateStructuralHash();
+      }
+    }
+
+    return this;
+  }
+
+  @Override
+  public final Node<?> pruneTo(final BitSet keptNodes) {
+    if (!isContainedIn(keptNodes)) {
+      return null;
+    }
+
+    final Iterator<Node<?>> childIterator = this.children.iterator();
+    while (childIterator.hasNext()) {
+      final Node<?> child = childIterator.next();
+
+      if (child.isContainedIn(keptNodes)) {
+        child.pruneTo(keptNodes);
+      } else {
+        childIterator.remove();
+        child.parent = null;
+
+        invalidateStructuralHash();
       }
     }
 
@@ -279,6 +335,31 @@ public final class NonTerminalNode extends Node<ParserSymbol> {
       if (removedNodes.contains(child)) {
         childIterator.remove();
         child.parent = null;
+
+        invalidateStructuralHash();
+      } else {
+        child.prune(removedNodes);
+      }
+    }
+
+    return this;
+  }
+
+  @Override
+  public final Node<?> prune(final BitSet removedNodes) {
+    if (isContainedIn(removedNodes)) {
+      return null;
+    }
+
+    final Iterator<Node<?>> childIterator = this.children.iterator();
+    while (childIterator.hasNext()) {
+      final Node<?> child = childIterator.next();
+
+      if (child.isContainedIn(removedNodes)) {
+        childIterator.remove();
+        child.parent = null;
+
+        invalidateStructuralHash();
       } else {
         child.prune(removedNodes);
       }
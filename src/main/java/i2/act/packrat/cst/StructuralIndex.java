@@ -0,0 +1,174 @@
+package i2.act.packrat.cst;
+
+import i2.act.peg.symbols.Symbol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// hash-consing index over (sub-)trees: structurally identical subtrees are mapped to the same
+// canonical node, which makes equality checks between indexed subtrees a simple identity check
+// (NOTE: indexed trees must not be modified; otherwise, the index has to be rebuilt)
+public final class StructuralIndex {
+
+  private static final class Key {
+
+    private final Symbol<?> symbol;
+    private final String text;
+    private final Node<?>[] canonicalChildren;
+    private final int hash;
+
+    public Key(final Node<?> node, final Node<?>[] canonicalChildren) {
+      this.symbol = node.getSymbol();
+      this.text = node.getText();
+      this.canonicalChildren = canonicalChildren;
+      this.hash = node.structuralHash();
+    }
+
+    @Override
+    public final int hashCode() {
+      return this.hash;
+    }
+
+    @Override
+    public final boolean equals(final Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+
+      final Key otherKey = (Key) other;
+
+      if (this.hash != otherKey.hash
+          || this.symbol != otherKey.symbol
+          || !Objects.equals(this.text, otherKey.text)
+          || this.canonicalChildren.length != otherKey.canonicalChildren.length) {
+        return false;
+      }
+
+      // children are canonical nodes -> identity check suffices
+      for (int index = 0; index < this.canonicalChildren.length; ++index) {
+        if (this.canonicalChildren[index] != otherKey.canonicalChildren[index]) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+  }
+
+  // ===============================================================================================
+
+  private final Map<Key, Node<?>> canonicalNodes;
+  private final Map<Node<?>, Node<?>> canonicalNodeOf;
+  private final Map<Node<?>, List<Node<?>>> occurrences;
+
+  public StructuralIndex() {
+    this.canonicalNodes = new HashMap<Key, Node<?>>();
+    this.canonicalNodeOf = new IdentityHashMap<Node<?>, Node<?>>();
+    this.occurrences = new IdentityHashMap<Node<?>, List<Node<?>>>();
+  }
+
+  public final int size() {
+    return this.canonicalNodes.size();
+  }
+
+  // adds all subtrees of the given tree to the index and returns the canonical node of the tree
+  public final Node<?> add(final Node<?> tree) {
+    if (this.canonicalNodeOf.containsKey(tree)) {
+      return this.canonicalNodeOf.get(tree);
+    }
+
+    final List<Node<?>> children = tree.getChildren();
+    final Node<?>[] canonicalChildren = new Node<?>[children.size()];
+    {
+      int index = 0;
+      for (final Node<?> child : children) {
+        canonicalChildren[index++] = add(child);
+      }
+    }
+
+    final Key key = new Key(tree, canonicalChildren);
+
+    Node<?> canonicalNode = this.canonicalNodes.get(key);
+    if (canonicalNode == null) {
+      canonicalNode = tree;
+      this.canonicalNodes.put(key, canonicalNode);
+      this.occurrences.put(canonicalNode, new ArrayList<Node<?>>());
+    }
+
+    this.canonicalNodeOf.put(tree, canonicalNode);
+    this.occurrences.get(canonicalNode).add(tree);
+
+    return canonicalNode;
+  }
+
+  public final void addAll(final Iterable<Node<?>> trees) {
+    for (final Node<?> tree : trees) {
+      add(tree);
+    }
+  }
+
+  // returns the canonical node of a structurally identical subtree in the index (or null if the
+  // index does not contain such a subtree); does not modify the index
+  public final Node<?> lookup(final Node<?> tree) {
+    if (this.canonicalNodeOf.containsKey(tree)) {
+      return this.canonicalNodeOf.get(tree);
+    }
+
+    final List<Node<?>> children = tree.getChildren();
+    final Node<?>[] canonicalChildren = new Node<?>[children.size()];
+    {
+      int index = 0;
+      for (final Node<?> child : children) {
+        final Node<?> canonicalChild = lookup(child);
+
+        if (canonicalChild == null) {
+          return null;
+        }
+
+        canonicalChildren[index++] = canonicalChild;
+      }
+    }
+
+    return this.canonicalNodes.get(new Key(tree, canonicalChildren));
+  }
+
+  public final boolean contains(final Node<?> tree) {
+    return lookup(tree) != null;
+  }
+
+  public final boolean equivalent(final Node<?> one, final Node<?> two) {
+    final Node<?> canonicalOne = lookup(one);
+    return canonicalOne != null && canonicalOne == lookup(two);
+  }
+
+  // returns all indexed subtrees that are structurally identical to the given one
+  public final List<Node<?>> getOccurrences(final Node<?> tree) {
+    final Node<?> canonicalNode = lookup(tree);
+
+    if (canonicalNode == null) {
+      return Collections.emptyList();
+    }
+
+    return Collections.unmodifiableList(this.occurrences.get(canonicalNode));
+  }
+
+  // returns the groups of structurally identical subtrees that occur more than once
+  public final List<List<Node<?>>> getDuplicates() {
+    final List<List<Node<?>>> duplicates = new ArrayList<>();
+
+    for (final List<Node<?>> nodes : this.occurrences.values()) {
+      if (nodes.size() > 1) {
+        duplicates.add(Collections.unmodifiableList(nodes));
+      }
+    }
+
+    return duplicates;
+  }
+
+}
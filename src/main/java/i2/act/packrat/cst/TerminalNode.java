@@ -7,6 +7,7 @@ import i2.act.peg.symbols.LexerSymbol;
 import i2.act.peg.symbols.Symbol;
 import i2.act.util.Pair;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -116,10 +117,22 @@ public final class TerminalNode extends Node<LexerSymbol> {
     return clone;
   }
 
+  @Override
+  protected final Node<?> cloneTree(final BitSet subNodes, final List<Node<?>> clonedSubNodes) {
+    final TerminalNode clone = cloneNode();
+
+    if (isContainedIn(subNodes)) {
+      clonedSubNodes.add(clone);
+    }
+
+    return clone;
+  }
+
   @Override
   public final TerminalNode cloneNode() {
     final TerminalNode clone = new TerminalNode(this.token);
     clone.expectedSymbol = this.expectedSymbol;
+    clone.id = this.id;
 
     for (final Annotation annotation : this.annotations) {
       clone.annotations.add(annotation);
@@ -137,6 +150,15 @@ public final class TerminalNode extends Node<LexerSymbol> {
     }
   }
 
+  @Override
+  public final Node<?> pruneTo(final BitSet keptNodes) {
+    if (isContainedIn(keptNodes)) {
+      return this;
+    } else {
+      return null;
+    }
+  }
+
   @Override
   public final Node<?> prune(final Set<Node<?>> removedNodes) {
     if (removedNodes.contains(this)) {
@@ -146,6 +168,15 @@ public final class TerminalNode extends Node<LexerSymbol> {
     }
   }
 
+  @Override
+  public final Node<?> prune(final BitSet removedNodes) {
+    if (isContainedIn(removedNodes)) {
+      return null;
+    } else {
+      return this;
+    }
+  }
+
   @Override
   public final <P, R> R accept(final SyntaxTreeVisitor<P, R> visitor, final P parameter) {
     return visitor.visit(this, parameter);
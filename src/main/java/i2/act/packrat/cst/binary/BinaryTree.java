@@ -0,0 +1,438 @@
+package i2.act.packrat.cst.binary;
+
+import i2.act.packrat.Token;
+import i2.act.packrat.cst.Node;
+import i2.act.packrat.cst.NonTerminalNode;
+import i2.act.packrat.cst.TerminalNode;
+import i2.act.peg.ast.Alternatives;
+import i2.act.peg.ast.Annotation;
+import i2.act.peg.ast.Grammar;
+import i2.act.peg.ast.Production;
+import i2.act.peg.ast.visitors.BaseASTVisitor;
+import i2.act.peg.info.SourcePosition;
+import i2.act.peg.symbols.LexerSymbol;
+import i2.act.peg.symbols.ParserSymbol;
+import i2.act.peg.symbols.Symbol;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static i2.act.packrat.cst.binary.BinaryTreeFormat.*;
+
+// read-only view of a syntax tree in the binary format described in 'BinaryTreeFormat'
+//
+// the tree is not deserialized up front: the node views only read the records they need from the
+// underlying buffer (which is usually a memory-mapped file), and syntax tree nodes are only created
+// on request (see 'NodeView.toNode()')
+public final class BinaryTree {
+
+  public final class NodeView {
+
+    private final int index;
+
+    private NodeView(final int index) {
+      this.index = index;
+    }
+
+    public final int getIndex() {
+      return this.index;
+    }
+
+    public final BinaryTree getTree() {
+      return BinaryTree.this;
+    }
+
+    public final Symbol<?> getSymbol() {
+      return symbol(nodeField(this.index, NODE_SYMBOL));
+    }
+
+    public final Symbol<?> getExpectedSymbol() {
+      return symbol(nodeField(this.index, NODE_EXPECTED_SYMBOL));
+    }
+
+    public final boolean isTerminal() {
+      return nodeField(this.index, NODE_TOKEN) != NO_INDEX;
+    }
+
+    // number of nodes in the subtree
+    public final int size() {
+      return BinaryTree.this.subtreeSizes.get(this.index);
+    }
+
+    public final int numberOfChildren() {
+      return nodeField(this.index, NODE_NUMBER_OF_CHILDREN);
+    }
+
+    public final NodeView getChild(final int childIndex) {
+      if (childIndex < 0 || childIndex >= numberOfChildren()) {
+        return null;
+      }
+
+      int nodeIndex = this.index + 1;
+      for (int skippedChildren = 0; skippedChildren < childIndex; ++skippedChildren) {
+        nodeIndex += BinaryTree.this.subtreeSizes.get(nodeIndex);
+      }
+
+      return new NodeView(nodeIndex);
+    }
+
+    public final List<NodeView> getChildren() {
+      final int numberOfChildren = numberOfChildren();
+      final List<NodeView> children = new ArrayList<>(numberOfChildren);
+
+      int nodeIndex = this.index + 1;
+      for (int childIndex = 0; childIndex < numberOfChildren; ++childIndex) {
+        children.add(new NodeView(nodeIndex));
+        nodeIndex += BinaryTree.this.subtreeSizes.get(nodeIndex);
+      }
+
+      return children;
+    }
+
+    // returns the text of a terminal node (and an empty string for non-terminal nodes)
+    public final String getText() {
+      final int tokenIndex = nodeField(this.index, NODE_TOKEN);
+
+      if (tokenIndex == NO_INDEX) {
+        return "";
+      }
+
+      return text(tokenIndex);
+    }
+
+    // creates the token of a terminal node (or returns null for non-terminal nodes)
+    public final Token getToken() {
+      final int tokenIndex = nodeField(this.index, NODE_TOKEN);
+
+      if (tokenIndex == NO_INDEX) {
+        return null;
+      }
+
+      return token(tokenIndex);
+    }
+
+    public final List<Annotation> getAnnotations() {
+      return annotations(nodeField(this.index, NODE_ANNOTATIONS));
+    }
+
+    // creates syntax tree nodes for the whole subtree; like the trees created by the parser, the
+    // nodes get pre-order ids (i.e., for the root view, the ids are the node indexes of the format)
+    public final Node<?> toNode() {
+      final Node<?> node = createNode(this.index);
+      node.setParentReferences();
+      node.assignIds();
+
+      return node;
+    }
+
+    @Override
+    public final String toString() {
+      return String.format("%s@%d", getSymbol(), this.index);
+    }
+
+  }
+
+  // ===============================================================================================
+
+  private final int numberOfNodes;
+
+  private final IntBuffer nodes;
+  private final IntBuffer subtreeSizes;
+  private final IntBuffer tokens;
+  private final IntBuffer annotations;
+  private final ByteBuffer text;
+
+  private final Symbol<?>[] symbols;
+
+  // symbol -> annotations of its production
+  private final Map<Symbol<?>, List<Annotation>> productionAnnotations;
+
+  private BinaryTree(final ByteBuffer buffer, final Grammar grammar) {
+    final ByteBuffer data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    final int size = data.limit();
+
+    if (size < HEADER_SIZE + 4 * FOOTER_SIZE
+        || data.getInt(0) != MAGIC || data.getInt(size - 4) != MAGIC) {
+      throw new RuntimeException("not a binary syntax tree");
+    }
+
+    if (data.getInt(4) != VERSION) {
+      throw new RuntimeException(
+          String.format("unsupported version of binary syntax tree: %d", data.getInt(4)));
+    }
+
+    final IntBuffer footer = slice(data, size - 4 * FOOTER_SIZE, 4 * FOOTER_SIZE).asIntBuffer();
+
+    this.numberOfNodes = footer.get(FOOTER_NUMBER_OF_NODES);
+    final int numberOfTokens = footer.get(FOOTER_NUMBER_OF_TOKENS);
+    final int numberOfSymbols = footer.get(FOOTER_NUMBER_OF_SYMBOLS);
+
+    final int subtreeSizesOffset = footer.get(FOOTER_SUBTREE_SIZES_OFFSET);
+    final int tokensOffset = footer.get(FOOTER_TOKENS_OFFSET);
+    final int annotationsOffset = footer.get(FOOTER_ANNOTATIONS_OFFSET);
+    final int symbolsOffset = footer.get(FOOTER_SYMBOLS_OFFSET);
+    final int textOffset = footer.get(FOOTER_TEXT_OFFSET);
+
+    this.nodes =
+        slice(data, HEADER_SIZE, 4 * NODE_RECORD_SIZE * this.numberOfNodes).asIntBuffer();
+    this.subtreeSizes = slice(data, subtreeSizesOffset, 4 * this.numberOfNodes).asIntBuffer();
+    this.tokens = slice(data, tokensOffset, 4 * TOKEN_RECORD_SIZE * numberOfTokens).asIntBuffer();
+    this.annotations =
+        slice(data, annotationsOffset, symbolsOffset - annotationsOffset).asIntBuffer();
+    this.text = slice(data, textOffset, footer.get(FOOTER_TEXT_LENGTH));
+
+    this.symbols = readSymbols(data, symbolsOffset, numberOfSymbols, grammar);
+
+    this.productionAnnotations = new HashMap<>();
+    for (final Production<?, ?> production : grammar.getProductions()) {
+      this.productionAnnotations.put(production.getSymbol(), production.getAnnotations());
+    }
+  }
+
+  public static final BinaryTree wrap(final ByteBuffer buffer, final Grammar grammar) {
+    return new BinaryTree(buffer, grammar);
+  }
+
+  // maps the given file into memory; the mapping stays valid even if the file is closed
+  public static final BinaryTree open(final String fileName, final Grammar grammar) {
+    try (final FileChannel channel =
+        FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), grammar);
+    } catch (final IOException exception) {
+      throw new RuntimeException("unable to read syntax tree", exception);
+    }
+  }
+
+  public final int numberOfNodes() {
+    return this.numberOfNodes;
+  }
+
+  public final NodeView getRoot() {
+    return getNode(0);
+  }
+
+  public final NodeView getNode(final int index) {
+    if (index < 0 || index >= this.numberOfNodes) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+
+    return new NodeView(index);
+  }
+
+  // creates syntax tree nodes for the whole tree
+  public final Node<?> toNode() {
+    return getRoot().toNode();
+  }
+
+  // ===============================================================================================
+
+  private final Node<?> createNode(final int index) {
+    final int tokenIndex = nodeField(index, NODE_TOKEN);
+
+    final Node<?> node;
+    {
+      if (tokenIndex == NO_INDEX) {
+        final int numberOfChildren = nodeField(index, NODE_NUMBER_OF_CHILDREN);
+        final List<Node<?>> children = new ArrayList<>(numberOfChildren);
+
+        int childIndex = index + 1;
+        for (int child = 0; child < numberOfChildren; ++child) {
+          children.add(createNode(childIndex));
+          childIndex += this.subtreeSizes.get(childIndex);
+        }
+
+        node = new NonTerminalNode((ParserSymbol) symbol(nodeField(index, NODE_SYMBOL)), children);
+      } else {
+        node = new TerminalNode(token(tokenIndex));
+      }
+    }
+
+    node.setExpectedSymbol(symbol(nodeField(index, NODE_EXPECTED_SYMBOL)));
+    node.addAnnotations(annotations(nodeField(index, NODE_ANNOTATIONS)));
+
+    return node;
+  }
+
+  private final int nodeField(final int index, final int field) {
+    return this.nodes.get(NODE_RECORD_SIZE * index + field);
+  }
+
+  private final int tokenField(final int index, final int field) {
+    return this.tokens.get(TOKEN_RECORD_SIZE * index + field);
+  }
+
+  private final Symbol<?> symbol(final int symbolIndex) {
+    return (symbolIndex == NO_INDEX) ? null : this.symbols[symbolIndex];
+  }
+
+  private final String text(final int tokenIndex) {
+    final int length = tokenField(tokenIndex, TOKEN_TEXT_LENGTH);
+
+    if (length == NO_INDEX) {
+      return null;
+    }
+
+    final byte[] bytes = new byte[length];
+
+    final ByteBuffer textBuffer = this.text.duplicate();
+    ((Buffer) textBuffer).position(tokenField(tokenIndex, TOKEN_TEXT_OFFSET));
+    textBuffer.get(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private final Token token(final int tokenIndex) {
+    final int numberOfSkippedTokens = tokenField(tokenIndex, TOKEN_NUMBER_OF_SKIPPED_TOKENS);
+
+    final List<Token> skippedTokensBefore = new ArrayList<>(numberOfSkippedTokens);
+    for (int index = tokenIndex - numberOfSkippedTokens; index < tokenIndex; ++index) {
+      skippedTokensBefore.add(token(index));
+    }
+
+    final SourcePosition begin = position(tokenField(tokenIndex, TOKEN_BEGIN_OFFSET),
+        tokenField(tokenIndex, TOKEN_BEGIN_LINE), tokenField(tokenIndex, TOKEN_BEGIN_COLUMN));
+    final SourcePosition end = position(tokenField(tokenIndex, TOKEN_END_OFFSET),
+        tokenField(tokenIndex, TOKEN_END_LINE), tokenField(tokenIndex, TOKEN_END_COLUMN));
+
+    final LexerSymbol tokenSymbol = (LexerSymbol) symbol(tokenField(tokenIndex, TOKEN_SYMBOL));
+
+    return new Token(tokenSymbol, text(tokenIndex), begin, end, skippedTokensBefore);
+  }
+
+  private static final SourcePosition position(final int offset, final int line,
+      final int column) {
+    if (offset == SourcePosition.UNKNOWN.offset && line == SourcePosition.UNKNOWN.line
+        && column == SourcePosition.UNKNOWN.column) {
+      return SourcePosition.UNKNOWN;
+    }
+
+    return new SourcePosition(offset, line, column);
+  }
+
+  private final List<Annotation> annotations(final int annotationsIndex) {
+    if (annotationsIndex == NO_INDEX) {
+      return Collections.emptyList();
+    }
+
+    final int numberOfAnnotations = this.annotations.get(annotationsIndex);
+    final List<Annotation> nodeAnnotations = new ArrayList<>(numberOfAnnotations);
+
+    for (int index = 0; index < numberOfAnnotations; ++index) {
+      final int reference = annotationsIndex + 1 + 2 * index;
+
+      final Symbol<?> symbol = symbol(this.annotations.get(reference));
+      final int annotationIndex = this.annotations.get(reference + 1);
+
+      final List<Annotation> candidates = this.productionAnnotations.get(symbol);
+
+      if (candidates == null || annotationIndex >= candidates.size()) {
+        throw new RuntimeException(
+            String.format("annotation %d of '%s' does not exist", annotationIndex, symbol));
+      }
+
+      nodeAnnotations.add(candidates.get(annotationIndex));
+    }
+
+    return nodeAnnotations;
+  }
+
+  private static final Symbol<?>[] readSymbols(final ByteBuffer data, final int symbolsOffset,
+      final int numberOfSymbols, final Grammar grammar) {
+    final Map<String, Symbol<?>> grammarSymbols = new HashMap<>();
+    for (final Production<?, ?> production : grammar.getProductions()) {
+      if (production.getSymbol() != null) {
+        grammarSymbols.put(production.getSymbol().getName(), production.getSymbol());
+      }
+    }
+
+    // implicit quantifier symbols are not the symbols of any production
+    grammar.accept(new BaseASTVisitor<Void, Void>() {
+
+      @Override
+      public final Void visit(final Alternatives alternatives, final Void parameter) {
+        if (alternatives.hasImplicitQuantifierSymbol()) {
+          final ParserSymbol symbol = alternatives.getImplicitQuantifierSymbol();
+          grammarSymbols.put(symbol.getName(), symbol);
+        }
+
+        return super.visit(alternatives, parameter);
+      }
+
+    }, null);
+
+    final Symbol<?>[] symbols = new Symbol<?>[numberOfSymbols];
+
+    int offset = symbolsOffset;
+    for (int index = 0; index < numberOfSymbols; ++index) {
+      final int kind = data.getInt(offset);
+      final int nameLength = data.getInt(offset + 4);
+
+      final byte[] nameBytes = new byte[nameLength];
+      final ByteBuffer nameBuffer = data.duplicate();
+      ((Buffer) nameBuffer).position(offset + 8);
+      nameBuffer.get(nameBytes);
+
+      final String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+      symbols[index] = resolveSymbol(kind, name, grammarSymbols);
+
+      offset += 8 + ((nameLength + 3) & ~3);
+    }
+
+    return symbols;
+  }
+
+  private static final Symbol<?> resolveSymbol(final int kind, final String name,
+      final Map<String, Symbol<?>> grammarSymbols) {
+    switch (kind) {
+      case SYMBOL_KIND_EOF: {
+        return LexerSymbol.EOF;
+      }
+      case SYMBOL_KIND_OPTIONAL: {
+        return ParserSymbol.OPTIONAL;
+      }
+      case SYMBOL_KIND_STAR: {
+        return ParserSymbol.STAR;
+      }
+      case SYMBOL_KIND_PLUS: {
+        return ParserSymbol.PLUS;
+      }
+      case SYMBOL_KIND_LIST_ITEM: {
+        return ParserSymbol.LIST_ITEM;
+      }
+      default: {
+        final Symbol<?> symbol = grammarSymbols.get(name);
+
+        final boolean expectLexerSymbol = (kind == SYMBOL_KIND_LEXER);
+        if (symbol == null || (symbol instanceof LexerSymbol) != expectLexerSymbol) {
+          throw new RuntimeException(
+              String.format("symbol '%s' does not belong to the grammar", name));
+        }
+
+        return symbol;
+      }
+    }
+  }
+
+  private static final ByteBuffer slice(final ByteBuffer data, final int offset,
+      final int length) {
+    final ByteBuffer duplicate = data.duplicate();
+    ((Buffer) duplicate).position(offset);
+    ((Buffer) duplicate).limit(offset + length);
+
+    return duplicate.slice().order(ByteOrder.BIG_ENDIAN);
+  }
+
+}
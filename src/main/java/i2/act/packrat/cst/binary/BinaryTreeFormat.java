@@ -0,0 +1,78 @@
+package i2.act.packrat.cst.binary;
+
+// layout of a serialized syntax tree (all values are big-endian 32-bit integers unless noted
+// otherwise, all sections start at a multiple of 4):
+//
+//   header           MAGIC, VERSION
+//   nodes            one record per node (in pre-order):
+//                      symbol, expected symbol, number of children, token index (or -1 for
+//                      non-terminal nodes), annotations (offset into annotation section, or -1)
+//   subtree sizes    number of nodes in the subtree of each node (in pre-order)
+//   tokens           one record per token (the skipped tokens before a token directly precede it):
+//                      symbol, text offset, text length (in bytes, -1 for 'null'),
+//                      begin offset, begin line, begin column, end offset, end line, end column,
+//                      number of skipped tokens before
+//   annotations      lists of annotation references: length, then (symbol, index) pairs that refer
+//                      to the annotations of the production of a symbol
+//   symbols          one entry per symbol: kind, length of name (in bytes), name (UTF-8, padded)
+//   text             texts of all tokens (UTF-8)
+//   footer           see FOOTER_* below, followed by MAGIC
+//
+// symbol indexes of -1 stand for 'null'
+final class BinaryTreeFormat {
+
+  public static final int MAGIC = 0x6a504547; // "jPEG"
+  public static final int VERSION = 1;
+
+  public static final int HEADER_SIZE = 8;
+
+  public static final int NODE_RECORD_SIZE = 5;
+
+  public static final int NODE_SYMBOL = 0;
+  public static final int NODE_EXPECTED_SYMBOL = 1;
+  public static final int NODE_NUMBER_OF_CHILDREN = 2;
+  public static final int NODE_TOKEN = 3;
+  public static final int NODE_ANNOTATIONS = 4;
+
+  public static final int TOKEN_RECORD_SIZE = 10;
+
+  public static final int TOKEN_SYMBOL = 0;
+  public static final int TOKEN_TEXT_OFFSET = 1;
+  public static final int TOKEN_TEXT_LENGTH = 2;
+  public static final int TOKEN_BEGIN_OFFSET = 3;
+  public static final int TOKEN_BEGIN_LINE = 4;
+  public static final int TOKEN_BEGIN_COLUMN = 5;
+  public static final int TOKEN_END_OFFSET = 6;
+  public static final int TOKEN_END_LINE = 7;
+  public static final int TOKEN_END_COLUMN = 8;
+  public static final int TOKEN_NUMBER_OF_SKIPPED_TOKENS = 9;
+
+  public static final int SYMBOL_KIND_LEXER = 0;
+  public static final int SYMBOL_KIND_PARSER = 1;
+  public static final int SYMBOL_KIND_EOF = 2;
+  public static final int SYMBOL_KIND_OPTIONAL = 3;
+  public static final int SYMBOL_KIND_STAR = 4;
+  public static final int SYMBOL_KIND_PLUS = 5;
+  public static final int SYMBOL_KIND_LIST_ITEM = 6;
+
+  public static final int NO_INDEX = -1;
+
+  // footer: number of nodes, number of tokens, number of symbols, offsets (in bytes) of the
+  // sections after the node section, length of the text section, MAGIC
+  public static final int FOOTER_NUMBER_OF_NODES = 0;
+  public static final int FOOTER_NUMBER_OF_TOKENS = 1;
+  public static final int FOOTER_NUMBER_OF_SYMBOLS = 2;
+  public static final int FOOTER_SUBTREE_SIZES_OFFSET = 3;
+  public static final int FOOTER_TOKENS_OFFSET = 4;
+  public static final int FOOTER_ANNOTATIONS_OFFSET = 5;
+  public static final int FOOTER_SYMBOLS_OFFSET = 6;
+  public static final int FOOTER_TEXT_OFFSET = 7;
+  public static final int FOOTER_TEXT_LENGTH = 8;
+
+  public static final int FOOTER_SIZE = 10;
+
+  private BinaryTreeFormat() {
+    // intentionally left blank
+  }
+
+}
@@ -0,0 +1,321 @@
+package i2.act.packrat.cst.binary;
+
+import i2.act.packrat.Token;
+import i2.act.packrat.cst.Node;
+import i2.act.packrat.cst.TerminalNode;
+import i2.act.peg.ast.Annotation;
+import i2.act.peg.ast.Grammar;
+import i2.act.peg.ast.Production;
+import i2.act.peg.info.SourcePosition;
+import i2.act.peg.symbols.LexerSymbol;
+import i2.act.peg.symbols.ParserSymbol;
+import i2.act.peg.symbols.Symbol;
+import i2.act.util.Pair;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static i2.act.packrat.cst.binary.BinaryTreeFormat.*;
+
+// writes syntax trees in the binary format described in 'BinaryTreeFormat'
+//
+// the node records are written while the tree is traversed; only the (much smaller) remaining
+// sections are buffered until the traversal is complete
+//
+// annotations are stored as references to the annotations of the grammar's productions, i.e., a
+// tree can only be written if all of its annotations stem from the given grammar
+public final class BinaryTreeWriter {
+
+  private final DataOutputStream output;
+
+  // annotation -> (symbol of production, index in the production's list of annotations)
+  private final Map<Annotation, Pair<Symbol<?>, Integer>> annotationReferences;
+
+  private final Map<Symbol<?>, Integer> symbolIndexes;
+  private final List<Symbol<?>> symbols;
+
+  private int numberOfNodes;
+  private int[] subtreeSizes;
+
+  private int numberOfTokens;
+  private final ByteArrayOutputStream tokenBytes;
+  private final DataOutputStream tokens;
+
+  private final Map<List<Integer>, Integer> annotationLists;
+  private int annotationsLength;
+  private final ByteArrayOutputStream annotationBytes;
+  private final DataOutputStream annotations;
+
+  private final Map<String, Integer> textOffsets;
+  private final ByteArrayOutputStream text;
+
+  public BinaryTreeWriter(final Grammar grammar, final OutputStream outputStream) {
+    this.output = new DataOutputStream(new BufferedOutputStream(outputStream));
+
+    this.annotationReferences = new IdentityHashMap<>();
+    for (final Production<?, ?> production : grammar.getProductions()) {
+      final List<Annotation> productionAnnotations = production.getAnnotations();
+
+      for (int index = 0; index < productionAnnotations.size(); ++index) {
+        this.annotationReferences.put(productionAnnotations.get(index),
+            new Pair<Symbol<?>, Integer>(production.getSymbol(), index));
+      }
+    }
+
+    this.symbolIndexes = new IdentityHashMap<>();
+    this.symbols = new ArrayList<>();
+
+    this.subtreeSizes = new int[1024];
+
+    this.tokenBytes = new ByteArrayOutputStream();
+    this.tokens = new DataOutputStream(this.tokenBytes);
+
+    this.annotationLists = new HashMap<>();
+    this.annotationBytes = new ByteArrayOutputStream();
+    this.annotations = new DataOutputStream(this.annotationBytes);
+
+    this.textOffsets = new HashMap<>();
+    this.text = new ByteArrayOutputStream();
+  }
+
+  public static final void write(final Node<?> syntaxTree, final Grammar grammar,
+      final String fileName) {
+    try (final OutputStream outputStream = new FileOutputStream(fileName)) {
+      new BinaryTreeWriter(grammar, outputStream).write(syntaxTree);
+    } catch (final IOException exception) {
+      throw new RuntimeException("unable to write syntax tree", exception);
+    }
+  }
+
+  public static final byte[] toBytes(final Node<?> syntaxTree, final Grammar grammar) {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    new BinaryTreeWriter(grammar, outputStream).write(syntaxTree);
+
+    return outputStream.toByteArray();
+  }
+
+  // writes the tree and flushes (but does not close) the underlying output stream; a writer can
+  // only be used for a single tree
+  public final void write(final Node<?> syntaxTree) {
+    if (this.numberOfNodes != 0) {
+      throw new RuntimeException("writer has already been used");
+    }
+
+    try {
+      this.output.writeInt(MAGIC);
+      this.output.writeInt(VERSION);
+
+      writeNode(syntaxTree);
+
+      final int subtreeSizesOffset = this.output.size();
+      for (int index = 0; index < this.numberOfNodes; ++index) {
+        this.output.writeInt(this.subtreeSizes[index]);
+      }
+
+      final int tokensOffset = this.output.size();
+      this.tokenBytes.writeTo(this.output);
+
+      final int annotationsOffset = this.output.size();
+      this.annotationBytes.writeTo(this.output);
+
+      final int symbolsOffset = this.output.size();
+      for (final Symbol<?> symbol : this.symbols) {
+        final byte[] name = symbol.getName().getBytes(StandardCharsets.UTF_8);
+
+        this.output.writeInt(symbolKind(symbol));
+        this.output.writeInt(name.length);
+        this.output.write(name);
+        pad(name.length);
+      }
+
+      final int textOffset = this.output.size();
+      this.text.writeTo(this.output);
+      pad(this.text.size());
+
+      this.output.writeInt(this.numberOfNodes);
+      this.output.writeInt(this.numberOfTokens);
+      this.output.writeInt(this.symbols.size());
+      this.output.writeInt(subtreeSizesOffset);
+      this.output.writeInt(tokensOffset);
+      this.output.writeInt(annotationsOffset);
+      this.output.writeInt(symbolsOffset);
+      this.output.writeInt(textOffset);
+      this.output.writeInt(this.text.size());
+      this.output.writeInt(MAGIC);
+
+      this.output.flush();
+    } catch (final IOException exception) {
+      throw new RuntimeException("unable to write syntax tree", exception);
+    }
+  }
+
+  private final void writeNode(final Node<?> node) throws IOException {
+    final int nodeIndex = this.numberOfNodes++;
+
+    if (nodeIndex == this.subtreeSizes.length) {
+      this.subtreeSizes = Arrays.copyOf(this.subtreeSizes, 2 * this.subtreeSizes.length);
+    }
+
+    final int tokenIndex;
+    {
+      if (node instanceof TerminalNode) {
+        tokenIndex = writeToken(((TerminalNode) node).getToken());
+      } else {
+        tokenIndex = NO_INDEX;
+      }
+    }
+
+    final List<Node<?>> children = node.getChildren();
+
+    this.output.writeInt(symbolIndex(node.getSymbol()));
+    this.output.writeInt(symbolIndex(node.getExpectedSymbol()));
+    this.output.writeInt(children.size());
+    this.output.writeInt(tokenIndex);
+    this.output.writeInt(annotationsIndex(node.getAnnotations()));
+
+    for (final Node<?> child : children) {
+      writeNode(child);
+    }
+
+    this.subtreeSizes[nodeIndex] = this.numberOfNodes - nodeIndex;
+  }
+
+  // writes the skipped tokens before the given token and the token itself; returns the index of the
+  // token
+  private final int writeToken(final Token token) throws IOException {
+    final List<Token> skippedTokens = token.getSkippedTokensBefore();
+
+    for (final Token skippedToken : skippedTokens) {
+      writeToken(skippedToken, 0);
+    }
+
+    return writeToken(token, skippedTokens.size());
+  }
+
+  private final int writeToken(final Token token, final int numberOfSkippedTokens)
+      throws IOException {
+    final String value = token.getValue();
+
+    this.tokens.writeInt(symbolIndex(token.getTokenSymbol()));
+
+    if (value == null) {
+      this.tokens.writeInt(0);
+      this.tokens.writeInt(NO_INDEX);
+    } else {
+      Integer textOffset = this.textOffsets.get(value);
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+      if (textOffset == null) {
+        textOffset = this.text.size();
+        this.text.write(bytes);
+        this.textOffsets.put(value, textOffset);
+      }
+
+      this.tokens.writeInt(textOffset);
+      this.tokens.writeInt(bytes.length);
+    }
+
+    writePosition(token.getBegin());
+    writePosition(token.getEnd());
+
+    this.tokens.writeInt(numberOfSkippedTokens);
+
+    return this.numberOfTokens++;
+  }
+
+  private final void writePosition(final SourcePosition position) throws IOException {
+    this.tokens.writeInt(position.offset);
+    this.tokens.writeInt(position.line);
+    this.tokens.writeInt(position.column);
+  }
+
+  private final int annotationsIndex(final List<Annotation> nodeAnnotations) throws IOException {
+    if (nodeAnnotations.isEmpty()) {
+      return NO_INDEX;
+    }
+
+    final List<Integer> references = new ArrayList<>(2 * nodeAnnotations.size());
+    for (final Annotation annotation : nodeAnnotations) {
+      final Pair<Symbol<?>, Integer> reference = this.annotationReferences.get(annotation);
+
+      if (reference == null) {
+        throw new RuntimeException(
+            String.format("annotation '%s' does not belong to the grammar", annotation.getKey()));
+      }
+
+      references.add(symbolIndex(reference.getFirst()));
+      references.add(reference.getSecond());
+    }
+
+    final Integer knownIndex = this.annotationLists.get(references);
+
+    if (knownIndex != null) {
+      return knownIndex;
+    }
+
+    final int index = this.annotationsLength;
+
+    this.annotations.writeInt(nodeAnnotations.size());
+    for (final int reference : references) {
+      this.annotations.writeInt(reference);
+    }
+
+    this.annotationsLength += 1 + references.size();
+    this.annotationLists.put(references, index);
+
+    return index;
+  }
+
+  private final int symbolIndex(final Symbol<?> symbol) {
+    if (symbol == null) {
+      return NO_INDEX;
+    }
+
+    Integer index = this.symbolIndexes.get(symbol);
+
+    if (index == null) {
+      index = this.symbols.size();
+      this.symbols.add(symbol);
+      this.symbolIndexes.put(symbol, index);
+    }
+
+    return index;
+  }
+
+  private static final int symbolKind(final Symbol<?> symbol) {
+    if (symbol == LexerSymbol.EOF) {
+      return SYMBOL_KIND_EOF;
+    } else if (symbol == ParserSymbol.OPTIONAL) {
+      return SYMBOL_KIND_OPTIONAL;
+    } else if (symbol == ParserSymbol.STAR) {
+      return SYMBOL_KIND_STAR;
+    } else if (symbol == ParserSymbol.PLUS) {
+      return SYMBOL_KIND_PLUS;
+    } else if (symbol == ParserSymbol.LIST_ITEM) {
+      return SYMBOL_KIND_LIST_ITEM;
+    } else if (symbol instanceof LexerSymbol) {
+      return SYMBOL_KIND_LEXER;
+    } else {
+      assert (symbol instanceof ParserSymbol);
+      return SYMBOL_KIND_PARSER;
+    }
+  }
+
+  private final void pad(final int length) throws IOException {
+    for (int padding = length; padding % 4 != 0; ++padding) {
+      this.output.writeByte(0);
+    }
+  }
+
+}
@@ -1,17 +1,23 @@
 package i2.act.packrat.cst.metrics;
 
+import i2.act.packrat.Lexer;
+import i2.act.packrat.Token;
+import i2.act.packrat.TokenStream;
 import i2.act.packrat.cst.Node;
 import i2.act.packrat.cst.TerminalNode;
-import i2.act.packrat.cst.visitors.SyntaxTreeVisitor;
+import i2.act.packrat.cst.visitors.ParallelTreeTraversal;
 import i2.act.packrat.nfa.NFA;
 import i2.act.peg.ast.Grammar;
 import i2.act.peg.ast.LexerProduction;
 import i2.act.peg.symbols.LexerSymbol;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 public final class Halstead {
 
@@ -103,61 +109,128 @@ public final class Halstead {
 
   }
 
-  public static final Result compute(final Node<?> program, final Grammar grammar) {
-    final Set<LexerSymbol> operandSymbols = new HashSet<>();
-    final Set<LexerSymbol> operatorSymbols = new HashSet<>();
-    
+  // partial counts of a (sub-)tree or of a token stream
+  public static final class Counts {
+
+    private final Set<String> distinctOperands;
+    private final Set<LexerSymbol> distinctOperators;
+
+    private int numberOfOperands;
+    private int numberOfOperators;
+
+    public Counts() {
+      this.distinctOperands = new HashSet<String>();
+      this.distinctOperators = new HashSet<LexerSymbol>();
+    }
+
+    public final Counts merge(final Counts other) {
+      this.distinctOperands.addAll(other.distinctOperands);
+      this.distinctOperators.addAll(other.distinctOperators);
+
+      this.numberOfOperands += other.numberOfOperands;
+      this.numberOfOperators += other.numberOfOperators;
+
+      return this;
+    }
+
+    public final Result toResult() {
+      return new Result(this.distinctOperands.size(), this.distinctOperators.size(),
+          this.numberOfOperands, this.numberOfOperators);
+    }
+
+  }
+
+  // the operand/operator classification of a grammar only has to be computed once
+  private static final Map<Grammar, Halstead> instances =
+      Collections.synchronizedMap(new WeakHashMap<Grammar, Halstead>());
+
+  private final Set<LexerSymbol> operandSymbols;
+  private final Set<LexerSymbol> operatorSymbols;
+
+  private Halstead(final Grammar grammar) {
+    this.operandSymbols = new HashSet<>();
+    this.operatorSymbols = new HashSet<>();
+
     final List<LexerProduction> lexerProductions = grammar.getLexerProductions();
     for (final LexerProduction lexerProduction : lexerProductions) {
       final LexerSymbol symbol = lexerProduction.getSymbol();
       assert (symbol != null);
 
       if (isOperand(lexerProduction)) {
-        operandSymbols.add(symbol);
+        this.operandSymbols.add(symbol);
       } else {
         assert (isOperator(lexerProduction));
-        operatorSymbols.add(symbol);
+        this.operatorSymbols.add(symbol);
       }
     }
+  }
 
-    final Set<String> distinctOperands = new HashSet<>();
-    final Set<LexerSymbol> distinctOperators = new HashSet<>();
+  public static final Halstead forGrammar(final Grammar grammar) {
+    return instances.computeIfAbsent(grammar, Halstead::new);
+  }
 
-    final int[] numberOfOperandsContainer = {0};
-    final int[] numberOfOperatorsContainer = {0};
+  public static final Result compute(final Node<?> program, final Grammar grammar) {
+    return forGrammar(grammar).compute(program);
+  }
 
-    program.accept(new SyntaxTreeVisitor<Void, Void>() {
-      
-      @Override
-      public final Void visit(final TerminalNode terminalNode, final Void parameter) {
-        final LexerSymbol symbol = terminalNode.getSymbol();
-        assert (symbol != null);
+  // computes the metrics directly on the token stream, i.e., without parsing the program
+  public static final Result compute(final TokenStream tokens, final Grammar grammar) {
+    return forGrammar(grammar).compute(tokens);
+  }
 
-        if (operandSymbols.contains(symbol)) {
-          final String terminalValue = terminalNode.getToken().getValue();
+  public final Result compute(final Node<?> program) {
+    return count(program).toResult();
+  }
 
-          distinctOperands.add(terminalValue);
-          ++numberOfOperandsContainer[0];
-        } else if (operatorSymbols.contains(symbol)) {
-          distinctOperators.add(symbol);
-          ++numberOfOperatorsContainer[0];
-        }
+  public final Result compute(final TokenStream tokens) {
+    return count(tokens).toResult();
+  }
 
-        return null;
-      }
+  public final Counts count(final Node<?> program) {
+    final ParallelTreeTraversal<Counts> traversal = new ParallelTreeTraversal<Counts>(
+        Counts::new,
+        (node, counts) -> {
+          if (node instanceof TerminalNode) {
+            final TerminalNode terminalNode = (TerminalNode) node;
+            count(terminalNode.getSymbol(), terminalNode.getToken().getValue(), counts);
+          }
+        },
+        Counts::merge);
+
+    return traversal.traverse(program);
+  }
 
-    }, null);
+  public final Counts count(final TokenStream tokens) {
+    final Counts counts = new Counts();
 
-    final int numberOfDistinctOperands = distinctOperands.size();
-    final int numberOfDistinctOperators = distinctOperators.size();
-    
-    final int numberOfOperands = numberOfOperandsContainer[0];
-    final int numberOfOperators = numberOfOperatorsContainer[0];
+    for (final Token token : tokens) {
+      count(token.getTokenSymbol(), token.getValue(), counts);
+    }
+
+    return counts;
+  }
+
+  // lexes the program and counts the tokens on the fly, i.e., without materializing the token
+  // stream
+  public final Counts count(final String program, final Lexer lexer) {
+    final Counts counts = new Counts();
 
-    final Result result = new Result(numberOfDistinctOperands, numberOfDistinctOperators,
-        numberOfOperands, numberOfOperators);
+    lexer.lex(program.toCharArray(), false,
+        (token) -> count(token.getTokenSymbol(), token.getValue(), counts));
 
-    return result;
+    return counts;
+  }
+
+  private final void count(final LexerSymbol symbol, final String value, final Counts counts) {
+    assert (symbol != null);
+
+    if (this.operandSymbols.contains(symbol)) {
+      counts.distinctOperands.add(value);
+      ++counts.numberOfOperands;
+    } else if (this.operatorSymbols.contains(symbol)) {
+      counts.distinctOperators.add(symbol);
+      ++counts.numberOfOperators;
+    }
   }
 
   private static final boolean isOperand(final LexerProduction lexerProduction) {
@@ -0,0 +1,120 @@
+package i2.act.packrat.cst.visitors;
+
+import i2.act.packrat.cst.Node;
+import i2.act.peg.symbols.Symbol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+
+// runs several tree visitors in a single traversal of the syntax tree; for each visitor, the
+// visit methods are called exactly as if the visitor was run on its own (i.e., once a visitor has
+// handled a node, it does not descend into the node's subtree)
+public final class FusedTreeVisitor {
+
+  private static final int MAX_NUMBER_OF_VISITORS = Long.SIZE;
+
+  private final TreeVisitor.Order order;
+
+  private final List<TreeVisitor<Object, Object>> visitors;
+  private final List<Object> parameters;
+
+  public FusedTreeVisitor(final TreeVisitor.Order order) {
+    this.order = order;
+    this.visitors = new ArrayList<TreeVisitor<Object, Object>>();
+    this.parameters = new ArrayList<Object>();
+  }
+
+  public static final FusedTreeVisitor leftToRight() {
+    return new FusedTreeVisitor(TreeVisitor.Order.LEFT_TO_RIGHT);
+  }
+
+  public static final FusedTreeVisitor rightToLeft() {
+    return new FusedTreeVisitor(TreeVisitor.Order.RIGHT_TO_LEFT);
+  }
+
+  public final int numberOfVisitors() {
+    return this.visitors.size();
+  }
+
+  @SuppressWarnings("unchecked")
+  public final <P, R> FusedTreeVisitor add(final TreeVisitor<P, R> visitor, final P parameter) {
+    if (visitor.getOrder() != this.order) {
+      throw new RuntimeException("visitor order does not match order of fused visitor");
+    }
+
+    if (this.visitors.size() == MAX_NUMBER_OF_VISITORS) {
+      throw new RuntimeException(
+          String.format("cannot fuse more than %d visitors", MAX_NUMBER_OF_VISITORS));
+    }
+
+    this.visitors.add((TreeVisitor<Object, Object>) visitor);
+    this.parameters.add(parameter);
+
+    return this;
+  }
+
+  // returns the results of the visitors (in the order in which the visitors have been added)
+  public final List<Object> visit(final Node<?> syntaxTree) {
+    final int numberOfVisitors = this.visitors.size();
+
+    final Object[] results = new Object[numberOfVisitors];
+
+    final long allVisitors = (numberOfVisitors == MAX_NUMBER_OF_VISITORS)
+        ? -1L
+        : ((1L << numberOfVisitors) - 1);
+
+    handle(syntaxTree, allVisitors, results);
+
+    final List<Object> resultList = new ArrayList<>(numberOfVisitors);
+    for (final Object result : results) {
+      resultList.add(result);
+    }
+
+    return resultList;
+  }
+
+  private final void handle(final Node<?> node, final long activeVisitors, final Object[] results) {
+    final Symbol<?> symbol = node.getSymbol();
+    assert (symbol != null);
+
+    long remainingVisitors = activeVisitors;
+
+    long pendingVisitors = activeVisitors;
+    while (pendingVisitors != 0) {
+      final int index = Long.numberOfTrailingZeros(pendingVisitors);
+      pendingVisitors &= pendingVisitors - 1;
+
+      final TreeVisitor.Visit<Object, Object> visit = this.visitors.get(index).getVisit(symbol);
+
+      if (visit != null) {
+        results[index] = visit.visit(node, this.parameters.get(index));
+        remainingVisitors &= ~(1L << index);
+      } else {
+        // result of a node without visit method is the result of its last child (if any)
+        results[index] = null;
+      }
+    }
+
+    if (remainingVisitors == 0) {
+      return;
+    }
+
+    // visit children
+    final List<Node<?>> children = node.getChildren();
+
+    if (this.order == TreeVisitor.Order.LEFT_TO_RIGHT) {
+      for (final Node<?> child : children) {
+        handle(child, remainingVisitors, results);
+      }
+    } else {
+      assert (this.order == TreeVisitor.Order.RIGHT_TO_LEFT);
+      final ListIterator<Node<?>> listIterator = children.listIterator(children.size());
+      while (listIterator.hasPrevious()) {
+        final Node<?> child = listIterator.previous();
+        handle(child, remainingVisitors, results);
+      }
+    }
+  }
+
+}
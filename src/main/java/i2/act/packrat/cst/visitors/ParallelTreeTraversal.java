@@ -0,0 +1,262 @@
+package i2.act.packrat.cst.visitors;
+
+import i2.act.packrat.cst.Node;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// traverses a syntax tree in pre-order and accumulates a result; subtrees that are larger than a
+// given threshold are traversed by separate fork-join tasks, whose partial results are combined
+// with an associative merge function (in traversal order, i.e., the merge does not have to be
+// commutative)
+public final class ParallelTreeTraversal<R> {
+
+  public static interface Create<R> {
+
+    public R create();
+
+  }
+
+  public static interface Visit<R> {
+
+    public void visit(final Node<?> node, final R partialResult);
+
+  }
+
+  public static interface Merge<R> {
+
+    public R merge(final R one, final R two);
+
+  }
+
+  public static final int DEFAULT_THRESHOLD = 1 << 13;
+
+  // ===============================================================================================
+
+  private final Create<R> create;
+  private final Visit<R> visit;
+  private final Merge<R> merge;
+
+  private final int threshold;
+  private final ForkJoinPool pool;
+
+  public ParallelTreeTraversal(final Create<R> create, final Visit<R> visit,
+      final Merge<R> merge) {
+    this(create, visit, merge, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+  }
+
+  public ParallelTreeTraversal(final Create<R> create, final Visit<R> visit,
+      final Merge<R> merge, final int threshold, final ForkJoinPool pool) {
+    this.create = create;
+    this.visit = visit;
+    this.merge = merge;
+    this.threshold = threshold;
+    this.pool = pool;
+  }
+
+  public final R traverse(final Node<?> syntaxTree) {
+    final Map<Node<?>, Integer> sizes;
+    final int end;
+    {
+      if (syntaxTree.hasId()) {
+        sizes = null;
+        end = lastNode(syntaxTree).getId() + 1;
+      } else {
+        sizes = computeSizes(syntaxTree);
+        end = UNKNOWN;
+      }
+    }
+
+    final TraversalTask task = new TraversalTask(syntaxTree, end, sizes);
+
+    if (estimateSize(syntaxTree, end, sizes) <= this.threshold) {
+      // not worth the hand-off to the pool
+      return task.invoke();
+    } else {
+      return this.pool.invoke(task);
+    }
+  }
+
+  private static final int UNKNOWN = -1;
+
+  // estimates the size of a subtree in constant time: if the tree has pre-order ids, the subtree
+  // spans the ids from the id of its root up to 'end' (exclusive), which is the id of the next node
+  // after the subtree (if the tree has been pruned or compactified since the ids were assigned,
+  // this over-estimates the size, which is fine for our purposes); otherwise, the sizes have been
+  // computed in advance
+  //
+  // returns UNKNOWN if the ids are not consistent (e.g., due to replaced subtrees)
+  private static final int estimateSize(final Node<?> node, final int end,
+      final Map<Node<?>, Integer> sizes) {
+    if (sizes != null) {
+      return sizes.get(node);
+    }
+
+    if (!node.hasId() || end <= node.getId()) {
+      return UNKNOWN;
+    }
+
+    return end - node.getId();
+  }
+
+  private static final Node<?> lastNode(final Node<?> node) {
+    Node<?> lastNode = node;
+    while (lastNode.numberOfChildren() > 0) {
+      lastNode = lastNode.getChild(lastNode.numberOfChildren() - 1);
+    }
+
+    return lastNode;
+  }
+
+  // computes the sizes of all subtrees bottom-up (iteratively, since trees may be deep)
+  private static final Map<Node<?>, Integer> computeSizes(final Node<?> root) {
+    final Map<Node<?>, Integer> sizes = new IdentityHashMap<>();
+
+    final Deque<Node<?>> worklist = new ArrayDeque<>();
+    final List<Node<?>> preOrder = new ArrayList<>();
+
+    worklist.push(root);
+    while (!worklist.isEmpty()) {
+      final Node<?> node = worklist.pop();
+      preOrder.add(node);
+
+      for (final Node<?> child : node.getChildren()) {
+        worklist.push(child);
+      }
+    }
+
+    // children are added after their parents -> reverse order handles the children first
+    for (int index = preOrder.size() - 1; index >= 0; --index) {
+      final Node<?> node = preOrder.get(index);
+
+      int size = 1;
+      for (final Node<?> child : node.getChildren()) {
+        size += sizes.get(child);
+      }
+
+      sizes.put(node, size);
+    }
+
+    return sizes;
+  }
+
+  // -----------------------------------------------------------------------------------------------
+
+  private final class TraversalTask extends RecursiveTask<R> {
+
+    private final Node<?> root;
+
+    // see 'estimateSize'
+    private final int end;
+    private final Map<Node<?>, Integer> sizes;
+
+    // partial results in traversal order; forked sub tasks are stored at the same index in
+    // 'forkedTasks' (and the corresponding entry in 'partialResults' is null)
+    private final List<R> partialResults;
+    private final List<TraversalTask> forkedTasks;
+
+    private R currentResult;
+
+    public TraversalTask(final Node<?> root, final int end, final Map<Node<?>, Integer> sizes) {
+      this.root = root;
+      this.end = end;
+      this.sizes = sizes;
+      this.partialResults = new ArrayList<R>();
+      this.forkedTasks = new ArrayList<TraversalTask>();
+    }
+
+    @Override
+    protected final R compute() {
+      this.currentResult = ParallelTreeTraversal.this.create.create();
+      visitSubtree(this.root, this.end, false);
+      finishCurrentResult();
+
+      R result = null;
+
+      for (int index = 0; index < this.partialResults.size(); ++index) {
+        final R partialResult;
+        {
+          final TraversalTask forkedTask = this.forkedTasks.get(index);
+
+          if (forkedTask == null) {
+            partialResult = this.partialResults.get(index);
+          } else {
+            partialResult = forkedTask.join();
+          }
+        }
+
+        if (index == 0) {
+          result = partialResult;
+        } else {
+          result = ParallelTreeTraversal.this.merge.merge(result, partialResult);
+        }
+      }
+
+      return result;
+    }
+
+    private final void visitSubtree(final Node<?> node, final int end, final boolean sequential) {
+      ParallelTreeTraversal.this.visit.visit(node, this.currentResult);
+
+      final List<Node<?>> children = node.getChildren();
+      final int numberOfChildren = children.size();
+
+      for (int index = 0; index < numberOfChildren; ++index) {
+        final Node<?> child = children.get(index);
+
+        if (sequential || child.numberOfChildren() == 0) {
+          visitSubtree(child, UNKNOWN, sequential);
+          continue;
+        }
+
+        // the subtree of the child ends where the subtree of its next sibling starts
+        final int childEnd;
+        {
+          if (index + 1 < numberOfChildren && children.get(index + 1).hasId()) {
+            childEnd = children.get(index + 1).getId();
+          } else if (index + 1 < numberOfChildren) {
+            childEnd = UNKNOWN;
+          } else {
+            childEnd = end;
+          }
+        }
+
+        final int size = estimateSize(child, childEnd, this.sizes);
+
+        if (size == UNKNOWN) {
+          // descend without forking the whole subtree (its children may still be forked)
+          visitSubtree(child, childEnd, false);
+        } else if (size > ParallelTreeTraversal.this.threshold) {
+          fork(child, childEnd);
+        } else {
+          visitSubtree(child, UNKNOWN, true);
+        }
+      }
+    }
+
+    private final void fork(final Node<?> subtree, final int end) {
+      finishCurrentResult();
+
+      final TraversalTask task = new TraversalTask(subtree, end, this.sizes);
+      task.fork();
+
+      this.partialResults.add(null);
+      this.forkedTasks.add(task);
+
+      this.currentResult = ParallelTreeTraversal.this.create.create();
+    }
+
+    private final void finishCurrentResult() {
+      this.partialResults.add(this.currentResult);
+      this.forkedTasks.add(null);
+    }
+
+  }
+
+}
@@ -25,11 +25,23 @@ public final class TreeVisitor<P, R> extends SyntaxTreeVisitor<P, R> {
   // ===============================================================================================
 
   private final Order order;
-  private final Map<Symbol<?>, Visit<P, R>> visits;
+
+  // dispatch table indexed by symbol id (minus 'dispatchOffset'); symbol ids are only unique
+  // within a grammar -> the registered symbols are stored as well and compared on lookup
+  private Visit<P, R>[] dispatchTable;
+  private Symbol<?>[] dispatchSymbols;
+  private int dispatchOffset;
+
+  // visits of symbols that do not fit into the dispatch table, i.e., symbols without an id and
+  // symbols whose id is already used by a symbol of another grammar
+  private final Map<Symbol<?>, Visit<P, R>> otherVisits;
 
   public TreeVisitor(final Order order) {
     this.order = order;
-    this.visits = new HashMap<Symbol<?>, Visit<P, R>>();
+    this.dispatchTable = newDispatchTable(0);
+    this.dispatchSymbols = new Symbol<?>[0];
+    this.dispatchOffset = 0;
+    this.otherVisits = new HashMap<Symbol<?>, Visit<P, R>>();
   }
 
   public static final <P, R> TreeVisitor<P, R> leftToRight() {
@@ -50,11 +62,77 @@ public final class TreeVisitor<P, R> extends SyntaxTreeVisitor<P, R> {
     return TreeVisitor.<P, R>rightToLeft().add(symbol, visit);
   }
 
+  public final Order getOrder() {
+    return this.order;
+  }
+
   public final TreeVisitor<P, R> add(final Symbol<?> symbol, final Visit<P, R> visit) {
-    this.visits.put(symbol, visit);
+    if (!symbol.hasId() || !addToDispatchTable(symbol, visit)) {
+      this.otherVisits.put(symbol, visit);
+    }
+
     return this;
   }
 
+  // returns 'false' if the id of the symbol is already used by another symbol
+  private final boolean addToDispatchTable(final Symbol<?> symbol, final Visit<P, R> visit) {
+    final int symbolId = symbol.getId();
+
+    if (this.dispatchTable.length == 0) {
+      this.dispatchTable = newDispatchTable(1);
+      this.dispatchSymbols = new Symbol<?>[1];
+      this.dispatchOffset = symbolId;
+    } else if (symbolId < this.dispatchOffset
+        || symbolId >= this.dispatchOffset + this.dispatchTable.length) {
+      final int newOffset = Math.min(this.dispatchOffset, symbolId);
+      final int newEnd =
+          Math.max(this.dispatchOffset + this.dispatchTable.length, symbolId + 1);
+
+      final Visit<P, R>[] newDispatchTable = newDispatchTable(newEnd - newOffset);
+      System.arraycopy(this.dispatchTable, 0, newDispatchTable,
+          this.dispatchOffset - newOffset, this.dispatchTable.length);
+
+      final Symbol<?>[] newDispatchSymbols = new Symbol<?>[newEnd - newOffset];
+      System.arraycopy(this.dispatchSymbols, 0, newDispatchSymbols,
+          this.dispatchOffset - newOffset, this.dispatchSymbols.length);
+
+      this.dispatchTable = newDispatchTable;
+      this.dispatchSymbols = newDispatchSymbols;
+      this.dispatchOffset = newOffset;
+    }
+
+    final int index = symbolId - this.dispatchOffset;
+    final Symbol<?> registeredSymbol = this.dispatchSymbols[index];
+
+    if (registeredSymbol != null && registeredSymbol != symbol) {
+      return false;
+    }
+
+    this.dispatchTable[index] = visit;
+    this.dispatchSymbols[index] = symbol;
+
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private final Visit<P, R>[] newDispatchTable(final int size) {
+    return (Visit<P, R>[]) new Visit<?, ?>[size];
+  }
+
+  final Visit<P, R> getVisit(final Symbol<?> symbol) {
+    final int index = symbol.getId() - this.dispatchOffset;
+
+    if (index >= 0 && index < this.dispatchTable.length && this.dispatchSymbols[index] == symbol) {
+      return this.dispatchTable[index];
+    }
+
+    if (this.otherVisits.isEmpty()) {
+      return null;
+    }
+
+    return this.otherVisits.get(symbol);
+  }
+
   public final R visit(final Node<?> syntaxTree) {
     return handle(syntaxTree, null);
   }
@@ -77,8 +155,10 @@ public final class TreeVisitor<P, R> extends SyntaxTreeVisitor<P, R> {
     final Symbol<?> symbol = node.getSymbol();
     assert (symbol != null);
 
-    if (this.visits.containsKey(symbol)) {
-      return this.visits.get(symbol).visit(node, parameter);
+    final Visit<P, R> visit = getVisit(symbol);
+
+    if (visit != null) {
+      return visit.visit(node, parameter);
     } else {
       // visit children
       final List<Node<?>> children = node.getChildren();
@@ -0,0 +1,204 @@
+package i2.act.packrat.nfa;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+
+// partitions the characters into equivalence classes such that two characters of the same class are
+// matched by exactly the same character sets (of the given NFAs); hence, transition tables can be
+// indexed by class IDs instead of characters and a character set matches all characters of a class
+// iff it matches its representative
+public final class CharacterClasses {
+
+  private static final int ASCII_SIZE = 128;
+
+  // the classes of the ASCII characters
+  private final int[] asciiClasses;
+
+  // the remaining characters as intervals: interval i starts at 'intervalBegins[i]' and its
+  // characters belong to class 'intervalClasses[i]'
+  private final int[] intervalBegins;
+  private final int[] intervalClasses;
+
+  private final char[] representatives;
+
+  private CharacterClasses(final int[] intervalBegins, final int[] intervalClasses,
+      final char[] representatives) {
+    this.intervalBegins = intervalBegins;
+    this.intervalClasses = intervalClasses;
+    this.representatives = representatives;
+
+    this.asciiClasses = new int[ASCII_SIZE];
+    for (int character = 0; character < ASCII_SIZE; ++character) {
+      this.asciiClasses[character] = searchClassOf((char) character);
+    }
+  }
+
+  public static final CharacterClasses forNFAs(final Iterable<NFA> nfas) {
+    final Set<CharacterSet> characterSets = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    for (final NFA nfa : nfas) {
+      final Set<NFAState> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+      final Queue<NFAState> worklist = new ArrayDeque<>();
+
+      visited.add(nfa.getStartState());
+      worklist.add(nfa.getStartState());
+
+      while (!worklist.isEmpty()) {
+        final NFAState state = worklist.remove();
+
+        for (final Transition transition : state) {
+          if (!transition.isEpsilonTransition()) {
+            characterSets.add(transition.getCharacters());
+          }
+
+          if (visited.add(transition.getTo())) {
+            worklist.add(transition.getTo());
+          }
+        }
+      }
+    }
+
+    return forCharacterSets(characterSets);
+  }
+
+  public static final CharacterClasses forCharacterSets(
+      final Iterable<CharacterSet> characterSets) {
+    final List<int[]> intervals = new ArrayList<>();
+
+    // the characters at which the membership in one of the character sets may change
+    final TreeSet<Integer> boundaries = new TreeSet<>();
+    {
+      boundaries.add((int) Character.MIN_VALUE);
+
+      for (final CharacterSet characterSet : characterSets) {
+        final int[] setIntervals = characterSet.getIntervals();
+        intervals.add(setIntervals);
+
+        for (int index = 0; index < setIntervals.length; index += 2) {
+          boundaries.add(setIntervals[index]);
+
+          if (setIntervals[index + 1] < Character.MAX_VALUE) {
+            boundaries.add(setIntervals[index + 1] + 1);
+          }
+        }
+      }
+    }
+
+    // assign a class to each elementary interval: intervals that are contained in the same
+    // character sets belong to the same class
+    final int[] begins = new int[boundaries.size()];
+    final int[] classes = new int[boundaries.size()];
+    final List<Character> representatives = new ArrayList<>();
+    {
+      final Map<BitSet, Integer> classIds = new HashMap<>();
+
+      int index = 0;
+      for (final int begin : boundaries) {
+        final BitSet containingSets = new BitSet();
+        {
+          for (int setIndex = 0; setIndex < intervals.size(); ++setIndex) {
+            if (contains(intervals.get(setIndex), begin)) {
+              containingSets.set(setIndex);
+            }
+          }
+        }
+
+        Integer classId = classIds.get(containingSets);
+        if (classId == null) {
+          classId = representatives.size();
+          classIds.put(containingSets, classId);
+          representatives.add((char) begin);
+        }
+
+        begins[index] = begin;
+        classes[index] = classId;
+        ++index;
+      }
+    }
+
+    // merge neighboring intervals of the same class
+    int numberOfIntervals = 0;
+    for (int index = 0; index < begins.length; ++index) {
+      if (numberOfIntervals == 0 || classes[numberOfIntervals - 1] != classes[index]) {
+        begins[numberOfIntervals] = begins[index];
+        classes[numberOfIntervals] = classes[index];
+        ++numberOfIntervals;
+      }
+    }
+
+    final char[] representativesArray = new char[representatives.size()];
+    for (int classId = 0; classId < representativesArray.length; ++classId) {
+      representativesArray[classId] = representatives.get(classId);
+    }
+
+    return new CharacterClasses(Arrays.copyOf(begins, numberOfIntervals),
+        Arrays.copyOf(classes, numberOfIntervals), representativesArray);
+  }
+
+  private static final boolean contains(final int[] intervals, final int character) {
+    for (int index = 0; index < intervals.length; index += 2) {
+      if (intervals[index] <= character && character <= intervals[index + 1]) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  public final int numberOfClasses() {
+    return this.representatives.length;
+  }
+
+  public final int classOf(final char character) {
+    if (character < ASCII_SIZE) {
+      return this.asciiClasses[character];
+    }
+
+    return searchClassOf(character);
+  }
+
+  private final int searchClassOf(final char character) {
+    // binary search for the last interval that starts at or before the character
+    int low = 0;
+    int high = this.intervalBegins.length - 1;
+
+    while (low < high) {
+      final int middle = (low + high + 1) >>> 1;
+
+      if (this.intervalBegins[middle] <= character) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+
+    return this.intervalClasses[low];
+  }
+
+  // returns a character of the given class
+  public final char getRepresentative(final int classId) {
+    return this.representatives[classId];
+  }
+
+  // returns which classes are matched by the given character set
+  public final boolean[] matchingClasses(final CharacterSet characterSet) {
+    final boolean[] matchingClasses = new boolean[numberOfClasses()];
+
+    for (int classId = 0; classId < matchingClasses.length; ++classId) {
+      matchingClasses[classId] = characterSet.matches(this.representatives[classId]);
+    }
+
+    return matchingClasses;
+  }
+
+}
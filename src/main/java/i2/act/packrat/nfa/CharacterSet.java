@@ -1,9 +1,12 @@
 package i2.act.packrat.nfa;
 
+import i2.act.peg.ast.CharacterRange;
 import i2.act.peg.ast.Group;
 import i2.act.peg.ast.Range;
 import i2.act.peg.ast.visitors.PrettyPrinter;
 
+import java.util.Arrays;
+
 public interface CharacterSet {
 
   public static final class SingleCharacter implements CharacterSet {
@@ -23,6 +26,11 @@ public interface CharacterSet {
       return this.character == inputCharacter;
     }
 
+    @Override
+    public final int[] getIntervals() {
+      return new int[] { this.character, this.character };
+    }
+
     @Override
     public final String toString() {
       return String.valueOf(this.character);
@@ -34,8 +42,116 @@ public interface CharacterSet {
 
     private final Group group;
 
+    // the matched characters as sorted, disjoint and non-adjacent intervals (lower and upper bounds
+    // are inclusive); inverted groups are already resolved
+    private final int[] intervals;
+
+    // the matched ASCII characters (0-63 in 'asciiLow', 64-127 in 'asciiHigh')
+    private final long asciiLow;
+    private final long asciiHigh;
+
     public CharacterGroup(final Group group) {
       this.group = group;
+      this.intervals = computeIntervals(group);
+
+      long asciiLow = 0;
+      long asciiHigh = 0;
+      {
+        for (int index = 0; index < this.intervals.length; index += 2) {
+          final int upper = Math.min(this.intervals[index + 1], 127);
+
+          for (int character = this.intervals[index]; character <= upper; ++character) {
+            if (character < 64) {
+              asciiLow |= 1L << character;
+            } else {
+              asciiHigh |= 1L << (character - 64);
+            }
+          }
+        }
+      }
+
+      this.asciiLow = asciiLow;
+      this.asciiHigh = asciiHigh;
+    }
+
+    private static final int[] computeIntervals(final Group group) {
+      final int[] bounds = new int[2 * group.getRanges().size()];
+      int numberOfBounds = 0;
+      {
+        for (final Range range : group) {
+          final int lower;
+          final int upper;
+          {
+            // NOTE: 'SingleCharacter' is shadowed by the nested class of the same name
+            if (range instanceof CharacterRange) {
+              final CharacterRange characterRange = (CharacterRange) range;
+
+              lower = characterRange.getLowerCharacter().getValue();
+              upper = characterRange.getUpperCharacter().getValue();
+            } else {
+              assert (range instanceof i2.act.peg.ast.SingleCharacter);
+              lower = ((i2.act.peg.ast.SingleCharacter) range).getValue();
+              upper = lower;
+            }
+          }
+
+          if (lower <= upper) {
+            bounds[numberOfBounds++] = lower;
+            bounds[numberOfBounds++] = upper;
+          }
+        }
+      }
+
+      // sort intervals by lower bound (packed into longs to keep the bounds together)
+      final long[] packedIntervals = new long[numberOfBounds / 2];
+      for (int index = 0; index < packedIntervals.length; ++index) {
+        packedIntervals[index] = ((long) bounds[2 * index] << 32) | bounds[2 * index + 1];
+      }
+      Arrays.sort(packedIntervals);
+
+      // merge overlapping and adjacent intervals
+      final int[] merged = new int[numberOfBounds];
+      int numberOfMergedBounds = 0;
+      {
+        for (final long packedInterval : packedIntervals) {
+          final int lower = (int) (packedInterval >>> 32);
+          final int upper = (int) packedInterval;
+
+          if (numberOfMergedBounds > 0 && lower <= merged[numberOfMergedBounds - 1] + 1) {
+            merged[numberOfMergedBounds - 1] = Math.max(merged[numberOfMergedBounds - 1], upper);
+          } else {
+            merged[numberOfMergedBounds++] = lower;
+            merged[numberOfMergedBounds++] = upper;
+          }
+        }
+      }
+
+      if (!group.isInverted()) {
+        return Arrays.copyOf(merged, numberOfMergedBounds);
+      }
+
+      // complement with respect to the whole range of 'char'
+      final int[] complement = new int[numberOfMergedBounds + 2];
+      int numberOfComplementBounds = 0;
+      {
+        int nextLower = Character.MIN_VALUE;
+
+        for (int index = 0; index < numberOfMergedBounds; index += 2) {
+          if (merged[index] > nextLower) {
+            complement[numberOfComplementBounds++] = nextLower;
+            complement[numberOfComplementBounds++] = merged[index] - 1;
+          }
+
+          nextLower = merged[index + 1] + 1;
+        }
+
+        if (nextLower <= Character.MAX_VALUE) {
+          complement[numberOfComplementBounds++] = nextLower;
+          complement[numberOfComplementBounds++] = Character.MAX_VALUE;
+        }
+      }
+
+      return Arrays.copyOf(complement, numberOfComplementBounds);
     }
 
     public final Group getGroup() {
@@ -44,13 +160,36 @@ public interface CharacterSet {
 
     @Override
     public final boolean matches(final char inputCharacter) {
-      for (final Range range : this.group) {
-        if (range.inRange(inputCharacter)) {
-          return !this.group.isInverted();
+      if (inputCharacter < 64) {
+        return (this.asciiLow & (1L << inputCharacter)) != 0;
+      } else if (inputCharacter < 128) {
+        return (this.asciiHigh & (1L << (inputCharacter - 64))) != 0;
+      }
+
+      // binary search for the last interval that starts at or before the character
+      int low = 0;
+      int high = this.intervals.length / 2 - 1;
+
+      while (low <= high) {
+        final int middle = (low + high) >>> 1;
+
+        if (this.intervals[2 * middle] <= inputCharacter) {
+          if (inputCharacter <= this.intervals[2 * middle + 1]) {
+            return true;
+          }
+
+          low = middle + 1;
+        } else {
+          high = middle - 1;
         }
       }
 
-      return this.group.isInverted();
+      return false;
+    }
+
+    @Override
+    public final int[] getIntervals() {
+      return this.intervals.clone();
     }
 
     @Override
@@ -62,4 +201,8 @@ public interface CharacterSet {
 
   public boolean matches(final char character);
 
+  // returns the matched characters as sorted and disjoint intervals, i.e., as an array of the form
+  // [lower_1, upper_1, lower_2, upper_2, ...] with inclusive bounds
+  public int[] getIntervals();
+
 }
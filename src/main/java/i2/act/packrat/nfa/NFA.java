@@ -13,7 +13,7 @@ public final class NFA {
 
   private final String literalString;
 
-  private Set<CharacterSet> firstCharacters; // computed lazily
+  private volatile CharacterSet[] firstCharacters; // computed lazily
 
   private NFA(final NFAState startState) {
     this(startState, null);
@@ -108,6 +108,13 @@ public final class NFA {
   }
 
   public final int prefixMatch(final char[] input, final int offset) {
+    return prefixMatch(input, offset, true);
+  }
+
+  // if 'checkFirstCharacter' is false, the caller has to ensure that the first character of the
+  // input can start a match (e.g., by using 'getFirstCharacterClasses')
+  public final int prefixMatch(final char[] input, final int offset,
+      final boolean checkFirstCharacter) {
     if (this.literalString != null) {
       final int literalStringLength = this.literalString.length();
 
@@ -123,8 +130,7 @@ public final class NFA {
 
       return literalStringLength;
     } else {
-      final char firstChar = input[offset];
-      if (!matchesFirstCharacter(firstChar)) {
+      if (checkFirstCharacter && !matchesFirstCharacter(input[offset])) {
         return 0;
       }
 
@@ -227,28 +233,48 @@ public final class NFA {
     return false;
   }
 
-  private final Set<CharacterSet> getFirstCharacters() {
+  // returns which character classes may start a (non-empty) match of the NFA; the character classes
+  // have to be computed for (at least) the character sets of this NFA
+  public final boolean[] getFirstCharacterClasses(final CharacterClasses characterClasses) {
+    final boolean[] firstCharacterClasses = new boolean[characterClasses.numberOfClasses()];
+
+    for (final CharacterSet characterSet : getFirstCharacters()) {
+      final boolean[] matchingClasses = characterClasses.matchingClasses(characterSet);
+
+      for (int classId = 0; classId < firstCharacterClasses.length; ++classId) {
+        firstCharacterClasses[classId] |= matchingClasses[classId];
+      }
+    }
+
+    return firstCharacterClasses;
+  }
+
+  private final CharacterSet[] getFirstCharacters() {
     if (this.firstCharacters != null) {
       return this.firstCharacters;
     }
 
-    this.firstCharacters = new HashSet<CharacterSet>();
+    // NOTE: the set is only published once it is complete (the lexer may be used concurrently)
+    final Set<CharacterSet> firstCharacters = new HashSet<CharacterSet>();
 
     for (final Transition transition : this.startState) {
       if (!transition.isEpsilonTransition()) {
-        this.firstCharacters.add(transition.getCharacters());
+        firstCharacters.add(transition.getCharacters());
       }
     }
 
     for (final NFAState state : this.startState.epsilonClosure(this.acceptingStates)) {
       for (final Transition transition : state) {
         if (!transition.isEpsilonTransition()) {
-          this.firstCharacters.add(transition.getCharacters());
+          firstCharacters.add(transition.getCharacters());
         }
       }
     }
 
-    return this.firstCharacters;
+    final CharacterSet[] firstCharactersArray = firstCharacters.toArray(new CharacterSet[0]);
+
+    this.firstCharacters = firstCharactersArray;
+    return firstCharactersArray;
   }
 
 
@@ -272,12 +298,13 @@ public final class NFA {
       public final NFA visit(final Alternatives alternatives, final NFAState previousState) {
         if (alternatives.getNumberOfAlternatives() == 1) {
           final Sequence singleAlternative = alternatives.getAlternatives().get(0);
-          final NFA singleAlternativeNFA = singleAlternative.accept(this, previousState);
+          final NFA singleAlternativeNFA = singleAlternative.accept(this,
+              ownStartState(previousState, alternatives.getQuantifier()));
 
           return applyQuantifier(singleAlternativeNFA, alternatives.getQuantifier());
         }
 
-        final NFAState startState = (previousState == null) ? (new NFAState()) : (previousState);
+        final NFAState startState = ownStartState(previousState, alternatives.getQuantifier());
         final NFA nfa = new NFA(startState);
 
         for (final Sequence alternative : alternatives) {
@@ -342,7 +369,7 @@ public final class NFA {
 
       @Override
       public final NFA visit(final Group group, final NFAState previousState) {
-        final NFAState startState = (previousState == null) ? (new NFAState()) : (previousState);
+        final NFAState startState = ownStartState(previousState, group.getQuantifier());
         final NFA nfa = new NFA(startState);
 
         final NFAState acceptingState = new NFAState();
@@ -357,7 +384,7 @@ public final class NFA {
 
       @Override
       public final NFA visit(final Literal literal, final NFAState previousState) {
-        final NFAState startState = (previousState == null) ? (new NFAState()) : (previousState);
+        final NFAState startState = ownStartState(previousState, literal.getQuantifier());
         final NFA nfa = new NFA(startState, literal.getValue());
 
         NFAState acceptingState = startState;
@@ -376,6 +403,19 @@ public final class NFA {
         return applyQuantifier(nfa, literal.getQuantifier());
       }
 
+      // a quantifier adds epsilon transitions back to the start state of the quantified NFA, hence
+      // this NFA needs a start state of its own; otherwise, the loop would also lead back to the
+      // other transitions of the previous state (e.g., in "( 'b'+ 'c' )*", the loop of 'b'+ would
+      // lead back to the start of the group and thus skip the 'c')
+      private final NFAState ownStartState(final NFAState previousState,
+          final Quantifier quantifier) {
+        if (previousState == null || quantifier != null) {
+          return new NFAState();
+        }
+
+        return previousState;
+      }
+
       private final NFA applyQuantifier(final NFA baseNFA, final Quantifier quantifier) {
         if (quantifier == null) {
           return baseNFA;
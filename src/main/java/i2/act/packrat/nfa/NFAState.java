@@ -6,7 +6,7 @@ public final class NFAState implements Iterable<Transition> {
 
   private final List<Transition> transitions;
 
-  private Set<NFAState> epsilonClosure; // computed lazily
+  private volatile Set<NFAState> epsilonClosure; // computed lazily
 
   public NFAState() {
     this.transitions = new ArrayList<Transition>();
@@ -42,20 +42,26 @@ public final class NFAState implements Iterable<Transition> {
   }
 
   public final Set<NFAState> epsilonClosure(final Set<NFAState> acceptingStates) {
-    if (this.epsilonClosure == null) {
-      this.epsilonClosure = new HashSet<>();
-      epsilonClosure(this, new HashSet<NFAState>(), acceptingStates);
+    Set<NFAState> epsilonClosure = this.epsilonClosure;
+
+    if (epsilonClosure == null) {
+      // NOTE: the closure is only published once it is complete (the lexer may be used
+      // concurrently)
+      epsilonClosure = new HashSet<>();
+      epsilonClosure(this, new HashSet<NFAState>(), acceptingStates, epsilonClosure);
+
+      this.epsilonClosure = epsilonClosure;
     }
 
     // NOTE: using an unmodifiable set would be appropriate but this introduces unnecessary
     // overhead...
-    return this.epsilonClosure;
+    return epsilonClosure;
   }
 
-  private final void epsilonClosure(final NFAState state, final Set<NFAState> visited,
-      final Set<NFAState> acceptingStates) {
+  private static final void epsilonClosure(final NFAState state, final Set<NFAState> visited,
+      final Set<NFAState> acceptingStates, final Set<NFAState> epsilonClosure) {
     if (state.hasNonEpsilonTransition() || acceptingStates.contains(state)) {
-      this.epsilonClosure.add(state);
+      epsilonClosure.add(state);
     }
 
     visited.add(state);
@@ -65,7 +71,7 @@ public final class NFAState implements Iterable<Transition> {
         final NFAState toState = transition.getTo();
 
         if (!visited.contains(toState)) {
-          epsilonClosure(toState, visited, acceptingStates);
+          epsilonClosure(toState, visited, acceptingStates, epsilonClosure);
         }
       }
     }
@@ -8,14 +8,19 @@ import i2.act.peg.symbols.Symbol;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 public final class Grammar extends ASTNode implements Iterable<Production> {
 
   private final List<Production> productions;
 
+  // lazily built index of the productions; discarded whenever a production is added
+  private Index index;
+
   public Grammar(final SourcePosition position) {
     this(position, new ArrayList<Production>());
   }
@@ -27,10 +32,12 @@ public final class Grammar extends ASTNode implements Iterable<Production> {
 
   public final void addProduction(final Production production) {
     this.productions.add(production);
+    this.index = null;
   }
 
   public final void addRootProduction(final ParserProduction production) {
     this.productions.add(0, production);
+    this.index = null;
   }
 
   public final List<Production> getProductions() {
@@ -38,61 +45,63 @@ public final class Grammar extends ASTNode implements Iterable<Production> {
   }
 
   public final List<Symbol> getSymbols() {
-    return this.productions.stream()
-        .map(p -> p.getSymbol())
-        .collect(Collectors.toList());
+    return getIndex().symbols;
   }
 
   public final List<ParserProduction> getParserProductions() {
-    return this.productions.stream()
-        .filter(p -> (p instanceof ParserProduction))
-        .map(p -> (ParserProduction) p)
-        .collect(Collectors.toList());
+    return getIndex().parserProductions;
   }
 
   public final List<ParserSymbol> getParserSymbols() {
-    return this.productions.stream()
-        .filter(p -> (p instanceof ParserProduction))
-        .map(p -> ((ParserProduction) p).getSymbol())
-        .collect(Collectors.toList());
+    return getIndex().parserSymbols;
   }
 
   public final List<LexerProduction> getLexerProductions() {
-    return this.productions.stream()
-        .filter(p -> (p instanceof LexerProduction))
-        .map(p -> (LexerProduction) p)
-        .collect(Collectors.toList());
+    return getIndex().lexerProductions;
   }
 
   public final List<LexerSymbol> getLexerSymbols() {
-    return this.productions.stream()
-        .filter(p -> (p instanceof LexerProduction))
-        .map(p -> ((LexerProduction) p).getSymbol())
-        .collect(Collectors.toList());
+    return getIndex().lexerSymbols;
   }
 
   public final ParserProduction getRootProduction() {
-    for (final Production production : this.productions) {
-      if (production instanceof ParserProduction) {
-        return (ParserProduction) production;
-      }
-    }
-    return null;
+    return getIndex().rootProduction;
+  }
+
+  public final Production getProduction(final String name) {
+    return getIndex().productionsByName.get(name);
   }
 
   public final Symbol<?> getSymbol(final String name) {
-    for (final Production production : this.productions) {
-      final Symbol<?> symbol = production.getSymbol();
-      if (symbol == null) {
-        continue;
-      }
+    final Production production = getProduction(name);
 
-      if (symbol.getName().equals(name)) {
-        return symbol;
-      }
+    if (production == null) {
+      return null;
+    }
+
+    return production.getSymbol();
+  }
+
+  // returns the position of the symbol's production in the grammar (or -1 if the symbol is not
+  // defined by a production of the grammar), i.e., the symbols of a grammar have dense IDs
+  public final int getSymbolIndex(final Symbol<?> symbol) {
+    final Integer symbolIndex = getIndex().symbolIndexes.get(symbol);
+
+    if (symbolIndex == null) {
+      return -1;
+    }
+
+    return symbolIndex;
+  }
+
+  private final Index getIndex() {
+    // the symbols are only known after the name analysis
+    // -> an index of a grammar with unresolved symbols has to be rebuilt
+    if (this.index == null || !this.index.symbolsResolved) {
+      this.index = new Index(this.productions);
     }
 
-    return null;
+    return this.index;
   }
 
   @Override
@@ -118,4 +127,74 @@ public final class Grammar extends ASTNode implements Iterable<Production> {
     return visitor.visit(this, param);
   }
 
+  // ===============================================================================================
+
+  private static final class Index {
+
+    public final List<Symbol> symbols;
+    public final List<ParserProduction> parserProductions;
+    public final List<ParserSymbol> parserSymbols;
+    public final List<LexerProduction> lexerProductions;
+    public final List<LexerSymbol> lexerSymbols;
+
+    public final ParserProduction rootProduction;
+
+    public final Map<String, Production> productionsByName;
+    public final Map<Symbol<?>, Integer> symbolIndexes;
+
+    public final boolean symbolsResolved;
+
+    public Index(final List<Production> productions) {
+      final List<Symbol> symbols = new ArrayList<>();
+      final List<ParserProduction> parserProductions = new ArrayList<>();
+      final List<ParserSymbol> parserSymbols = new ArrayList<>();
+      final List<LexerProduction> lexerProductions = new ArrayList<>();
+      final List<LexerSymbol> lexerSymbols = new ArrayList<>();
+
+      this.productionsByName = new HashMap<>();
+      this.symbolIndexes = new IdentityHashMap<>();
+
+      boolean symbolsResolved = true;
+
+      for (final Production production : productions) {
+        final Symbol<?> symbol = production.getSymbol();
+
+        if (symbol == null) {
+          symbolsResolved = false;
+        } else {
+          this.symbolIndexes.putIfAbsent(symbol, symbols.size());
+        }
+
+        symbols.add(symbol);
+
+        // if a name is defined more than once, the first production wins
+        this.productionsByName.putIfAbsent(production.getLeftHandSide().getName(), production);
+
+        if (production instanceof ParserProduction) {
+          final ParserProduction parserProduction = (ParserProduction) production;
+
+          parserProductions.add(parserProduction);
+          parserSymbols.add(parserProduction.getSymbol());
+        } else {
+          assert (production instanceof LexerProduction);
+          final LexerProduction lexerProduction = (LexerProduction) production;
+
+          lexerProductions.add(lexerProduction);
+          lexerSymbols.add(lexerProduction.getSymbol());
+        }
+      }
+
+      this.symbols = Collections.unmodifiableList(symbols);
+      this.parserProductions = Collections.unmodifiableList(parserProductions);
+      this.parserSymbols = Collections.unmodifiableList(parserSymbols);
+      this.lexerProductions = Collections.unmodifiableList(lexerProductions);
+      this.lexerSymbols = Collections.unmodifiableList(lexerSymbols);
+
+      this.rootProduction = (parserProductions.isEmpty()) ? (null) : (parserProductions.get(0));
+
+      this.symbolsResolved = symbolsResolved;
+    }
+
+  }
+
 }
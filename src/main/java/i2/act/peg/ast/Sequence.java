@@ -63,7 +63,10 @@ public final class Sequence extends Expression implements Iterable<Atom>, Gramma
       }
     }
 
-    return new Sequence(this.position, elementsClone);
+    final Sequence clone = new Sequence(this.position, elementsClone);
+    clone.setWeight(this.weight);
+
+    return clone;
   }
 
   @Override
@@ -33,6 +33,10 @@ public final class NameAnalysis extends BaseASTVisitor<NameAnalysis.SymbolTable,
       this.symbols.put(name, symbol);
     }
 
+    public final void removeSymbol(final String name) {
+      this.symbols.remove(name);
+    }
+
     public final Symbol<?> lookupSymbol(final String name, final SourcePosition position) {
       if (!this.symbols.containsKey(name)) {
         throw new InvalidInputException(
@@ -49,7 +53,7 @@ public final class NameAnalysis extends BaseASTVisitor<NameAnalysis.SymbolTable,
   //------------------------------------------------------------------------------------------------
 
 
-  public static final void analyze(final Grammar grammar) {
+  public static final SymbolTable analyze(final Grammar grammar) {
     final NameAnalysis analysis = new NameAnalysis();
     final SymbolTable symbolTable = new SymbolTable();
 
@@ -57,6 +61,10 @@ public final class NameAnalysis extends BaseASTVisitor<NameAnalysis.SymbolTable,
 
     // add implicit quantifier symbols
     ImplicitQuantifierSymbolsVisitor.addImplicitQuantifierSymbols(grammar);
+
+    SymbolIdAssignment.assignIds(grammar);
+
+    return symbolTable;
   }
 
 
@@ -169,6 +169,10 @@ public final class PrettyPrinter extends BaseASTVisitor<SafeWriter, Void> {
 
   @Override
   public final Void visit(final Sequence sequence, final SafeWriter writer) {
+    if (sequence.getWeight() != 1) {
+      writer.write("<%d> ", sequence.getWeight());
+    }
+
     boolean first = true;
     for (final Atom element : sequence.getElements()) {
       if (first) {
@@ -177,10 +181,6 @@ public final class PrettyPrinter extends BaseASTVisitor<SafeWriter, Void> {
         writer.write(" ");
       }
 
-      if (sequence.getWeight() != 1) {
-        writer.write("<%d> ", sequence.getWeight());
-      }
-
       final boolean oldTopLevelAlternatives = this.topLevelAlternatives;
       this.topLevelAlternatives = false;
 
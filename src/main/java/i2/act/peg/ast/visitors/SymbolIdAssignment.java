@@ -0,0 +1,82 @@
+package i2.act.peg.ast.visitors;
+
+import i2.act.peg.ast.*;
+import i2.act.peg.symbols.Symbol;
+
+// assigns ids to the symbols of a grammar that do not have an id yet (see 'Symbol.getId()'); the
+// symbols are numbered in grammar order, starting after the largest id that is already used, such
+// that the ids of a grammar's symbols are dense
+public final class SymbolIdAssignment extends BaseASTVisitor<Void, Void> {
+
+  // returns the next free id of the grammar
+  public static final int assignIds(final Grammar grammar) {
+    return assignIds(grammar, Symbol.FIRST_GRAMMAR_ID);
+  }
+
+  // assigns ids to the symbols that are declared in the given node (i.e., a grammar or a
+  // production); returns the next free id
+  public static final int assignIds(final ASTNode node, final int firstId) {
+    final SymbolIdAssignment assignment = new SymbolIdAssignment(firstId);
+
+    // first visit: skip the ids that are already used
+    node.accept(assignment, null);
+
+    // second visit: assign the ids
+    assignment.assign = true;
+    node.accept(assignment, null);
+
+    return assignment.nextId;
+  }
+
+
+  //------------------------------------------------------------------------------------------------
+
+
+  private int nextId;
+  private boolean assign;
+
+  private SymbolIdAssignment(final int firstId) {
+    this.nextId = firstId;
+    this.assign = false;
+  }
+
+  @Override
+  public final Void visit(final ParserProduction parserProduction, final Void parameter) {
+    handle(parserProduction.getSymbol());
+    return super.visit(parserProduction, parameter);
+  }
+
+  @Override
+  public final Void visit(final LexerProduction lexerProduction, final Void parameter) {
+    handle(lexerProduction.getSymbol());
+
+    // regular expressions do not declare symbols
+    return null;
+  }
+
+  @Override
+  public final Void visit(final Alternatives alternatives, final Void parameter) {
+    super.visit(alternatives, parameter);
+
+    if (alternatives.hasImplicitQuantifierSymbol()) {
+      handle(alternatives.getImplicitQuantifierSymbol());
+    }
+
+    return null;
+  }
+
+  private final void handle(final Symbol<?> symbol) {
+    if (symbol == null) {
+      return;
+    }
+
+    if (this.assign) {
+      if (!symbol.hasId()) {
+        symbol.setId(this.nextId++);
+      }
+    } else if (symbol.hasId()) {
+      this.nextId = Math.max(this.nextId, symbol.getId() + 1);
+    }
+  }
+
+}
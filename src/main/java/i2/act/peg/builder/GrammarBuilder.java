@@ -2,6 +2,7 @@ package i2.act.peg.builder;
 
 import i2.act.peg.ast.*;
 import i2.act.peg.ast.visitors.ImplicitQuantifierSymbolsVisitor;
+import i2.act.peg.ast.visitors.SymbolIdAssignment;
 import i2.act.peg.info.SourcePosition;
 import i2.act.peg.parser.PEGParser;
 import i2.act.peg.symbols.LexerSymbol;
@@ -112,6 +113,8 @@ public final class GrammarBuilder {
     // add implicit quantifier symbols
     ImplicitQuantifierSymbolsVisitor.addImplicitQuantifierSymbols(grammar);
 
+    SymbolIdAssignment.assignIds(grammar);
+
     return grammar;
   }
 
@@ -0,0 +1,121 @@
+package i2.act.peg.main;
+
+import i2.act.grammargraph.generator.ProgramGenerator;
+import i2.act.peg.ast.Grammar;
+import i2.act.peg.ast.visitors.NameAnalysis;
+import i2.act.peg.parser.PEGParser;
+import i2.act.util.SafeWriter;
+import i2.act.util.options.ProgramArguments;
+import i2.act.util.options.ProgramArgumentsParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public final class GeneratorMain {
+
+  private static final ProgramArgumentsParser argumentsParser;
+
+  private static final String OPTION_GRAMMAR = "--grammar";
+  private static final String OPTION_OUTPUT = "--out";
+
+  private static final String OPTION_SEED = "--seed";
+  private static final String OPTION_SIZE = "--size";
+  private static final String OPTION_MAX_DEPTH = "--maxDepth";
+
+  static {
+    argumentsParser = new ProgramArgumentsParser();
+
+    argumentsParser.addOption(OPTION_GRAMMAR, true, true, "<file name of grammar>");
+    argumentsParser.addOption(OPTION_OUTPUT, false, true, "<file name of output program>");
+
+    argumentsParser.addOption(OPTION_SEED, false, true, "<seed>");
+    argumentsParser.addOption(OPTION_SIZE, false, true, "<target size (e.g., 100MB or 2GB)>");
+    argumentsParser.addOption(OPTION_MAX_DEPTH, false, true, "<maximum depth>");
+  }
+
+  private static final void usage() {
+    System.err.format("USAGE: java %s\n", GeneratorMain.class.getSimpleName());
+    System.err.println(argumentsParser.usage("  "));
+  }
+
+  private static final void abort(final String formatString, final Object... formatArguments) {
+    System.err.format(formatString + "\n", formatArguments);
+    usage();
+    System.exit(1);
+  }
+
+  public static final void main(final String[] args) {
+    ProgramArguments arguments = null;
+
+    try {
+      arguments = argumentsParser.parseArgs(args);
+    } catch (final Exception exception) {
+      abort("[!] %s", exception.getMessage());
+    }
+
+    assert (arguments != null);
+
+    final String fileNameGrammar = arguments.getOption(OPTION_GRAMMAR);
+    final String fileNameOutput = arguments.getOptionOr(OPTION_OUTPUT, "-");
+
+    final long seed = arguments.getLongOptionOr(OPTION_SEED, System.currentTimeMillis());
+    final int maxDepth =
+        arguments.getIntOptionOr(OPTION_MAX_DEPTH, ProgramGenerator.DEFAULT_MAX_DEPTH);
+
+    long targetSize = ProgramGenerator.NO_TARGET_SIZE;
+    if (arguments.hasOption(OPTION_SIZE)) {
+      try {
+        targetSize = parseSize(arguments.getOption(OPTION_SIZE));
+      } catch (final NumberFormatException exception) {
+        abort("[!] invalid size: '%s'", arguments.getOption(OPTION_SIZE));
+      }
+    }
+
+    final Grammar grammar = readGrammar(fileNameGrammar);
+
+    try {
+      final ProgramGenerator generator =
+          new ProgramGenerator(grammar, seed, maxDepth, targetSize);
+
+      final SafeWriter writer = SafeWriter.openFile(fileNameOutput);
+      generator.generate(writer);
+      writer.close();
+    } catch (final Exception exception) {
+      abort("[!] %s", exception.getMessage());
+    }
+  }
+
+  // parses sizes like '512', '64KB', '100MB', or '2GB'
+  private static final long parseSize(final String size) {
+    final String normalized = size.trim().toUpperCase();
+
+    final String[] suffixes = {"KB", "MB", "GB"};
+    for (int index = 0; index < suffixes.length; ++index) {
+      if (normalized.endsWith(suffixes[index])) {
+        final String number = normalized.substring(0, normalized.length() - 2);
+        return Long.parseLong(number.trim()) << (10 * (index + 1));
+      }
+    }
+
+    return Long.parseLong(normalized);
+  }
+
+  private static final Grammar readGrammar(final String grammarPath) {
+    final String grammarInput = readFile(grammarPath);
+    final Grammar grammar = PEGParser.parse(grammarInput);
+    NameAnalysis.analyze(grammar);
+
+    return grammar;
+  }
+
+  private static final String readFile(final String fileName) {
+    try {
+      byte[] bytes = Files.readAllBytes(Paths.get(fileName));
+      return new String(bytes);
+    } catch (final IOException exception) {
+      throw new RuntimeException("unable to read file", exception);
+    }
+  }
+
+}
@@ -1,6 +1,7 @@
 package i2.act.peg.main;
 
 import i2.act.packrat.Lexer;
+import i2.act.packrat.ParseCache;
 import i2.act.packrat.Parser;
 import i2.act.packrat.TokenStream;
 import i2.act.packrat.cst.Node;
@@ -13,7 +14,13 @@ import i2.act.util.options.ProgramArgumentsParser;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public final class HalsteadMain {
 
@@ -22,11 +29,28 @@ public final class HalsteadMain {
   private static final String OPTION_INPUT = "--in";
   private static final String OPTION_GRAMMAR = "--grammar";
 
+  private static final String OPTION_TOKENS_ONLY = "--tokensOnly";
+
+  private static final String OPTION_BATCH = "--batch";
+  private static final String OPTION_JOBS = "--jobs";
+
+  private static final String OPTION_CACHE = "--cache";
+  private static final String OPTION_CACHE_SIZE = "--cacheSize";
+
   static {
     argumentsParser = new ProgramArgumentsParser();
 
-    argumentsParser.addOption(OPTION_INPUT, true, true, "<file name of input program>");
+    argumentsParser.addOption(OPTION_INPUT, true, true,
+        "<file name of input program (or directory in batch mode)>");
     argumentsParser.addOption(OPTION_GRAMMAR, true, true, "<file name of grammar>");
+
+    argumentsParser.addOption(OPTION_TOKENS_ONLY, false);
+
+    argumentsParser.addOption(OPTION_BATCH, false);
+    argumentsParser.addOption(OPTION_JOBS, false, true, "<number of parallel jobs>");
+
+    argumentsParser.addOption(OPTION_CACHE, false, true, "<directory of parse cache>");
+    argumentsParser.addOption(OPTION_CACHE_SIZE, false, true, "<maximum cache size in MB>");
   }
 
   private static final void usage() {
@@ -55,24 +79,122 @@ public final class HalsteadMain {
     final String fileNameGrammar = arguments.getOption(OPTION_GRAMMAR);
 
     final Grammar grammar = readGrammar(fileNameGrammar);
+    final Halstead halstead = Halstead.forGrammar(grammar);
 
     final Lexer lexer = Lexer.forGrammar(grammar);
-    final Parser parser = Parser.fromGrammar(grammar, true);
+
+    // the metrics only depend on the tokens -> parsing is only required to reject invalid programs
+    final boolean tokensOnly = arguments.hasOption(OPTION_TOKENS_ONLY);
+
+    final ParseCache cache;
+    {
+      if (arguments.hasOption(OPTION_CACHE)) {
+        final long cacheSize =
+            arguments.getLongOptionOr(OPTION_CACHE_SIZE, ParseCache.DEFAULT_MAX_SIZE >> 20) << 20;
+        cache = ParseCache.open(arguments.getOption(OPTION_CACHE), cacheSize);
+      } else {
+        cache = null;
+      }
+    }
+
+    final String fingerprint =
+        (cache == null) ? null : ParseCache.fingerprint(grammar, true, false);
+
+    if (arguments.hasOption(OPTION_BATCH)) {
+      final int numberOfJobs =
+          arguments.getIntOptionOr(OPTION_JOBS, Runtime.getRuntime().availableProcessors());
+
+      if (numberOfJobs < 1) {
+        abort("[!] number of jobs must be positive");
+      }
+
+      final Halstead.Counts counts =
+          computeBatch(fileNameInput, grammar, halstead, lexer, tokensOnly, numberOfJobs,
+              cache, fingerprint);
+
+      System.out.println(counts.toResult());
+      return;
+    }
 
     try {
       final String input = readFile(fileNameInput);
 
-      final TokenStream tokens = lexer.lex(input);
+      final Halstead.Counts counts;
+      {
+        if (tokensOnly) {
+          counts = halstead.count(input, lexer);
+        } else {
+          final Parser parser = Parser.fromGrammar(grammar, true);
+          final Node<?> syntaxTree = parse(input, grammar, lexer, parser, cache, fingerprint);
 
-      final Node<?> syntaxTree = parser.parse(tokens);
+          counts = halstead.count(syntaxTree);
+        }
+      }
 
-      final Halstead.Result result = Halstead.compute(syntaxTree, grammar);
-      System.out.println(result);
+      System.out.println(counts.toResult());
     } catch (final Exception exception) {
       abort("[!] %s", exception.getMessage());
     }
   }
 
+  // computes the aggregated metrics of all files in the given directory (and its sub-directories);
+  // files that cannot be processed are reported and skipped
+  private static final Halstead.Counts computeBatch(final String directoryName,
+      final Grammar grammar, final Halstead halstead, final Lexer lexer, final boolean tokensOnly,
+      final int numberOfJobs, final ParseCache cache, final String fingerprint) {
+    final List<Path> fileNames;
+    try (final Stream<Path> paths = Files.walk(Paths.get(directoryName))) {
+      fileNames = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    } catch (final IOException exception) {
+      throw new RuntimeException("unable to read directory", exception);
+    }
+
+    // the lexer can be shared between threads but each thread needs its own parser
+    final ThreadLocal<Parser> parsers =
+        ThreadLocal.withInitial(() -> Parser.fromGrammar(grammar, true));
+
+    final ForkJoinPool pool = new ForkJoinPool(numberOfJobs);
+
+    try {
+      return pool.submit(() -> fileNames.parallelStream()
+          .map((fileName) -> {
+            try {
+              final String input = readFile(fileName.toString());
+
+              if (tokensOnly) {
+                return halstead.count(input, lexer);
+              } else {
+                final Node<?> syntaxTree =
+                    parse(input, grammar, lexer, parsers.get(), cache, fingerprint);
+
+                return halstead.count(syntaxTree);
+              }
+            } catch (final Exception exception) {
+              System.err.format("[!] %s: %s\n", fileName, exception.getMessage());
+              return new Halstead.Counts();
+            }
+          })
+          // NOTE: 'merge' modifies its receiver -> no shared identity element
+          .reduce(Halstead.Counts::merge)
+          .orElseGet(Halstead.Counts::new)).get();
+    } catch (final InterruptedException | ExecutionException exception) {
+      throw new RuntimeException("batch computation failed", exception);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // parses the input (consulting the parse cache, if any)
+  private static final Node<?> parse(final String input, final Grammar grammar, final Lexer lexer,
+      final Parser parser, final ParseCache cache, final String fingerprint) {
+    if (cache == null) {
+      final TokenStream tokens = lexer.lex(input);
+      return parser.parse(tokens);
+    } else {
+      return cache.parse(grammar, fingerprint, input, lexer, parser);
+    }
+  }
+
   private static final Grammar readGrammar(final String grammarPath) {
     final String grammarInput = readFile(grammarPath);
     final Grammar grammar = PEGParser.parse(grammarInput);
@@ -1,12 +1,17 @@
 package i2.act.peg.main;
 
 import i2.act.grammargraph.GrammarGraph;
+import i2.act.grammargraph.hazards.HazardAnalysis;
 import i2.act.packrat.Lexer;
+import i2.act.packrat.ParseCache;
 import i2.act.packrat.Parser;
+import i2.act.packrat.ParsingFailedException;
 import i2.act.packrat.TokenStream;
 import i2.act.packrat.cst.Node;
 import i2.act.packrat.cst.NonTerminalNode;
 import i2.act.packrat.cst.TerminalNode;
+import i2.act.packrat.cst.binary.BinaryTree;
+import i2.act.packrat.cst.binary.BinaryTreeWriter;
 import i2.act.packrat.cst.visitors.DotGenerator;
 import i2.act.packrat.cst.visitors.LaTeXGenerator;
 import i2.act.packrat.cst.visitors.PrettyPrinter;
@@ -33,42 +38,71 @@ public final class PEGMain {
 
   private static final String OPTION_OMIT_QUANTIFIERS = "--omitQuantifiers";
   private static final String OPTION_NO_COMPACTIFY = "--noCompactify";
+  private static final String OPTION_OPTIMIZE_PARSER = "--optimizeParser";
 
   private static final String OPTION_PRETTY_PRINT_IN = "--prettyPrintIn";
   private static final String OPTION_TO_DOT = "--toDot";
   private static final String OPTION_TO_LATEX = "--toLaTeX";
   private static final String OPTION_PRINT_GRAMMAR_GRAPH = "--printGG";
+  private static final String OPTION_ANALYZE_GRAMMAR = "--analyzeGrammar";
 
   private static final String OPTION_TREE_STATS = "--treeStats";
   private static final String OPTION_PARSER_STATS = "--parserStats";
 
   private static final String OPTION_HIGHLIGHT_ANNOTATIONS = "--annotations";
 
+  private static final String OPTION_SAVE_TREE = "--saveTree";
+  private static final String OPTION_LOAD_TREE = "--loadTree";
+
+  private static final String OPTION_CACHE = "--cache";
+  private static final String OPTION_CACHE_SIZE = "--cacheSize";
+
+  private static final String OPTION_SERVER = "--server";
+  private static final String OPTION_PORT = "--port";
+  private static final String OPTION_WORKERS = "--workers";
+  private static final String OPTION_GRAMMAR_CACHE_SIZE = "--grammarCacheSize";
+
   static {
     argumentsParser = new ProgramArgumentsParser();
 
-    argumentsParser.addOption(OPTION_INPUT, true, true, "<file name of input program>");
-    argumentsParser.addOption(OPTION_GRAMMAR, true, true, "<file name of grammar>");
+    // not required in server mode
+    argumentsParser.addOption(OPTION_INPUT, false, true, "<file name of input program>");
+    argumentsParser.addOption(OPTION_GRAMMAR, false, true, "<file name of grammar>");
 
     argumentsParser.addOption(OPTION_PRETTY_PRINT_GRAMMAR, false);
 
     argumentsParser.addOption(OPTION_OMIT_QUANTIFIERS, false);
     argumentsParser.addOption(OPTION_NO_COMPACTIFY, false);
+    argumentsParser.addOption(OPTION_OPTIMIZE_PARSER, false);
 
     argumentsParser.addOption(OPTION_PRETTY_PRINT_IN, false);
     argumentsParser.addOption(OPTION_TO_DOT, false);
     argumentsParser.addOption(OPTION_TO_LATEX, false);
     argumentsParser.addOption(OPTION_PRINT_GRAMMAR_GRAPH, false);
+    argumentsParser.addOption(OPTION_ANALYZE_GRAMMAR, false);
 
     argumentsParser.addOption(OPTION_TREE_STATS, false);
     argumentsParser.addOption(OPTION_PARSER_STATS, false);
 
     argumentsParser.addOption(OPTION_HIGHLIGHT_ANNOTATIONS, false);
+
+    argumentsParser.addOption(OPTION_SAVE_TREE, false, true, "<file name of binary tree>");
+    argumentsParser.addOption(OPTION_LOAD_TREE, false, true,
+        "<file name of binary tree (instead of input)>");
+
+    argumentsParser.addOption(OPTION_CACHE, false, true, "<directory of parse cache>");
+    argumentsParser.addOption(OPTION_CACHE_SIZE, false, true, "<maximum cache size in MB>");
+
+    argumentsParser.addOption(OPTION_SERVER, false);
+    argumentsParser.addOption(OPTION_PORT, false, true, "<TCP port (default: stdin/stdout)>");
+    argumentsParser.addOption(OPTION_WORKERS, false, true, "<number of workers>");
+    argumentsParser.addOption(OPTION_GRAMMAR_CACHE_SIZE, false, true,
+        "<maximum number of cached grammars>");
   }
 
   // ===============================================================================================
 
-  private static final class DotStyleAnnotations extends DotGenerator.BaseDotStyle {
+  static final class DotStyleAnnotations extends DotGenerator.BaseDotStyle {
 
     @Override
     public String styleNode(final Node<?> node) {
@@ -105,6 +139,21 @@ public final class PEGMain {
 
     assert (arguments != null);
 
+    if (arguments.hasOption(OPTION_SERVER)) {
+      serve(arguments);
+      return;
+    }
+
+    try {
+      // the grammar can be analyzed without an input
+      if (!arguments.hasOption(OPTION_LOAD_TREE) && !arguments.hasOption(OPTION_ANALYZE_GRAMMAR)) {
+        arguments.requireOption(OPTION_INPUT);
+      }
+      arguments.requireOption(OPTION_GRAMMAR);
+    } catch (final Exception exception) {
+      abort("[!] %s", exception.getMessage());
+    }
+
     final String fileNameInput = arguments.getOption(OPTION_INPUT);
     final String fileNameGrammar = arguments.getOption(OPTION_GRAMMAR);
 
@@ -119,8 +168,19 @@ public final class PEGMain {
       i2.act.peg.ast.visitors.PrettyPrinter.prettyPrint(grammar, SafeWriter.openStdOut());
     }
 
+    if (arguments.hasOption(OPTION_ANALYZE_GRAMMAR)) {
+      final SafeWriter writer = SafeWriter.openStdOut();
+      HazardAnalysis.analyze(GrammarGraph.fromGrammar(grammar)).print(writer);
+      writer.flush();
+
+      if (!arguments.hasOption(OPTION_INPUT) && !arguments.hasOption(OPTION_LOAD_TREE)) {
+        return;
+      }
+    }
+
     final Lexer lexer = Lexer.forGrammar(grammar);
-    final Parser parser = Parser.fromGrammar(grammar, quantifierNodes);
+    final Parser parser = Parser.fromGrammar(grammar, quantifierNodes,
+        arguments.hasOption(OPTION_OPTIMIZE_PARSER));
 
     if (arguments.hasOption(OPTION_PRINT_GRAMMAR_GRAPH)) {
       final GrammarGraph grammarGraph = GrammarGraph.fromGrammar(grammar);
@@ -128,29 +188,28 @@ public final class PEGMain {
     }
 
     try {
-      final String input = readFile(fileNameInput);
-
-      final long timeBeforeLexer = System.currentTimeMillis();
-      final TokenStream tokens = lexer.lex(input);
-      final long timeAfterLexer = System.currentTimeMillis();
-
-      final long timeBeforeParser = System.currentTimeMillis();
-      final Node<?> syntaxTree = parser.parse(tokens);
-      final long timeAfterParser = System.currentTimeMillis();
-
-      if (arguments.hasOption(OPTION_PARSER_STATS)) {
-        final long lexerTime = timeAfterLexer - timeBeforeLexer;
-        final long parserTime = timeAfterParser - timeAfterLexer;
+      final Node<?> syntaxTree;
+      {
+        if (arguments.hasOption(OPTION_LOAD_TREE)) {
+          syntaxTree = BinaryTree.open(arguments.getOption(OPTION_LOAD_TREE), grammar).toNode();
+        } else {
+          final String input = readFile(fileNameInput);
+          syntaxTree = parse(input, grammar, quantifierNodes, lexer, parser, arguments);
+        }
+      }
 
-        System.err.format("[i] time in lexer:  %6d ms\n", lexerTime);
-        System.err.format("[i] time in parser: %6d ms\n", parserTime);
-        System.err.format("[i] total time:     %6d ms\n", lexerTime + parserTime);
+      if (syntaxTree == null) {
+        return;
       }
 
       if (compactifyTree) {
         syntaxTree.compactify();
       }
 
+      if (arguments.hasOption(OPTION_SAVE_TREE)) {
+        BinaryTreeWriter.write(syntaxTree, grammar, arguments.getOption(OPTION_SAVE_TREE));
+      }
+
       if (arguments.hasOption(OPTION_PRETTY_PRINT_IN)) {
         PrettyPrinter.print(syntaxTree, SafeWriter.openStdOut());
       }
@@ -173,7 +232,108 @@ public final class PEGMain {
       }
 
       if (arguments.hasOption(OPTION_TREE_STATS)) {
-        printStats(syntaxTree);
+        final SafeWriter writer = SafeWriter.openStdErr();
+        printStats(syntaxTree, writer);
+        writer.flush();
+      }
+    } catch (final Exception exception) {
+      abort("[!] %s", exception.getMessage());
+    }
+  }
+
+  // lexes and parses the input (consulting the parse cache, if any); returns null if the cache
+  // already knows that the input is valid and no syntax tree is required
+  private static final Node<?> parse(final String input, final Grammar grammar,
+      final boolean quantifierNodes, final Lexer lexer, final Parser parser,
+      final ProgramArguments arguments) {
+    final ParseCache cache;
+    final String fingerprint;
+    final ParseCache.Outcome cachedOutcome;
+    {
+      if (arguments.hasOption(OPTION_CACHE)) {
+        final long cacheSize =
+            arguments.getLongOptionOr(OPTION_CACHE_SIZE, ParseCache.DEFAULT_MAX_SIZE >> 20) << 20;
+
+        cache = ParseCache.open(arguments.getOption(OPTION_CACHE), cacheSize);
+        fingerprint = ParseCache.fingerprint(grammar, quantifierNodes,
+            arguments.hasOption(OPTION_OPTIMIZE_PARSER));
+        cachedOutcome = cache.lookup(fingerprint, input);
+      } else {
+        cache = null;
+        fingerprint = null;
+        cachedOutcome = null;
+      }
+    }
+
+    if (cachedOutcome != null) {
+      if (!cachedOutcome.isSuccess()) {
+        throw cachedOutcome.getFailure();
+      }
+
+      final boolean requiresSyntaxTree = arguments.hasOption(OPTION_PRETTY_PRINT_IN)
+          || arguments.hasOption(OPTION_TO_DOT)
+          || arguments.hasOption(OPTION_TO_LATEX)
+          || arguments.hasOption(OPTION_TREE_STATS)
+          || arguments.hasOption(OPTION_SAVE_TREE);
+
+      if (!requiresSyntaxTree || cachedOutcome.hasSyntaxTree()) {
+        if (arguments.hasOption(OPTION_PARSER_STATS)) {
+          System.err.println("[i] parse outcome taken from cache");
+        }
+
+        return (requiresSyntaxTree) ? cachedOutcome.getSyntaxTree(grammar) : null;
+      }
+    }
+
+    final long timeBeforeLexer = System.currentTimeMillis();
+    final TokenStream tokens = lexer.lex(input);
+    final long timeAfterLexer = System.currentTimeMillis();
+
+    final Node<?> syntaxTree;
+    try {
+      syntaxTree = parser.parse(tokens);
+    } catch (final ParsingFailedException exception) {
+      if (cache != null) {
+        cache.storeFailure(fingerprint, input, exception);
+      }
+
+      throw exception;
+    }
+    final long timeAfterParser = System.currentTimeMillis();
+
+    if (cache != null && cachedOutcome == null) {
+      cache.storeSuccess(fingerprint, input, syntaxTree, grammar);
+    }
+
+    if (arguments.hasOption(OPTION_PARSER_STATS)) {
+      final long lexerTime = timeAfterLexer - timeBeforeLexer;
+      final long parserTime = timeAfterParser - timeAfterLexer;
+
+      final SafeWriter writer = SafeWriter.openStdErr();
+      printParserStats(lexerTime, parserTime, writer);
+      writer.flush();
+    }
+
+    return syntaxTree;
+  }
+
+  private static final void serve(final ProgramArguments arguments) {
+    final int numberOfWorkers =
+        arguments.getIntOptionOr(OPTION_WORKERS, Runtime.getRuntime().availableProcessors());
+    final int grammarCacheSize =
+        arguments.getIntOptionOr(OPTION_GRAMMAR_CACHE_SIZE, ParseServer.DEFAULT_GRAMMAR_CACHE_SIZE);
+
+    if (numberOfWorkers < 1 || grammarCacheSize < 1) {
+      abort("[!] number of workers and grammar cache size have to be positive");
+    }
+
+    final ParseServer server = new ParseServer(numberOfWorkers, grammarCacheSize);
+
+    try {
+      if (arguments.hasOption(OPTION_PORT)) {
+        server.serveTCP(arguments.getIntOption(OPTION_PORT));
+      } else {
+        server.serveStdIn();
       }
     } catch (final Exception exception) {
       abort("[!] %s", exception.getMessage());
@@ -197,7 +357,14 @@ public final class PEGMain {
     }
   }
 
-  private static final void printStats(final Node<?> syntaxTree) {
+  static final void printParserStats(final long lexerTime, final long parserTime,
+      final SafeWriter writer) {
+    writer.write("[i] time in lexer:  %6d ms\n", lexerTime);
+    writer.write("[i] time in parser: %6d ms\n", parserTime);
+    writer.write("[i] total time:     %6d ms\n", lexerTime + parserTime);
+  }
+
+  static final void printStats(final Node<?> syntaxTree, final SafeWriter writer) {
     final int[] terminalCounter = { 0 };
     final int[] nonTerminalCounter = { 0 };
     final int[] nonTerminalCounterAll = { 0 };
@@ -239,12 +406,12 @@ public final class PEGMain {
 
     }, null);
 
-    System.err.format("[i] number of     terminals:          %7d\n", terminalCounter[0]);
-    System.err.format("[i] number of non-terminals:          %7d\n", nonTerminalCounter[0]);
-    System.err.format("[i] number of non-terminals (w/ aux): %7d\n", nonTerminalCounterAll[0]);
-    System.err.format("[i] number of quantifiers:            %7d\n", quantifierCounter[0]);
-    System.err.format("[i] number of quantifiers w/ 1 item:  %7d\n", singleElementCounter[0]);
-    System.err.format("[i] number of list items:             %7d\n", itemCounter[0]);
+    writer.write("[i] number of     terminals:          %7d\n", terminalCounter[0]);
+    writer.write("[i] number of non-terminals:          %7d\n", nonTerminalCounter[0]);
+    writer.write("[i] number of non-terminals (w/ aux): %7d\n", nonTerminalCounterAll[0]);
+    writer.write("[i] number of quantifiers:            %7d\n", quantifierCounter[0]);
+    writer.write("[i] number of quantifiers w/ 1 item:  %7d\n", singleElementCounter[0]);
+    writer.write("[i] number of list items:             %7d\n", itemCounter[0]);
   }
 
 }
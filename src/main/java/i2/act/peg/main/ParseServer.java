@@ -0,0 +1,527 @@
+package i2.act.peg.main;
+
+import i2.act.packrat.Lexer;
+import i2.act.packrat.Parser;
+import i2.act.packrat.ParsingFailedException;
+import i2.act.packrat.TokenStream;
+import i2.act.packrat.cst.Node;
+import i2.act.packrat.cst.visitors.DotGenerator;
+import i2.act.packrat.cst.visitors.PrettyPrinter;
+import i2.act.peg.ast.Grammar;
+import i2.act.peg.ast.visitors.NameAnalysis;
+import i2.act.peg.error.InvalidInputException;
+import i2.act.peg.parser.PEGParser;
+import i2.act.util.SafeWriter;
+import i2.act.util.options.ProgramArguments;
+import i2.act.util.options.ProgramArgumentsParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// serves parse requests over a line-based protocol (either on stdin/stdout or on a TCP port that
+// is bound to the loopback interface)
+//
+// each request is a single line that consists of whitespace-separated options:
+//
+//   --grammar <file name> (--in <file name> | --text <escaped text>) [outputs...]
+//
+// an argument that contains whitespace (e.g., a file name with spaces) has to be enclosed in double
+// quotes; a quoted argument must not contain double quotes itself
+// where the outputs are '--prettyPrintIn', '--toDot' (optionally with '--annotations'),
+// '--treeStats', and '--parserStats'; '--omitQuantifiers' and '--noCompactify' have the same
+// meaning as for PEGMain. In an inline text, '\n', '\r', '\t', '\s' (space), and '\\' are escaped.
+//
+// each response consists of a header line '<status> <length>' followed by a body of <length> bytes
+// (UTF-8), where the status is one of
+//
+//   OK     the input has been parsed successfully (the body contains the requested outputs)
+//   FAIL   the input is not a valid program (the body contains the error message)
+//   ERROR  the request could not be processed (the body contains the error message)
+//
+// requests are processed in parallel by a pool of workers, but the responses for the requests of
+// one connection are sent in the order of the requests; compiled grammars are kept in a bounded
+// LRU cache and are re-compiled if the grammar file changes
+public final class ParseServer {
+
+  public static final int DEFAULT_GRAMMAR_CACHE_SIZE = 16;
+
+  public static final String STATUS_OK = "OK";
+  public static final String STATUS_FAIL = "FAIL";
+  public static final String STATUS_ERROR = "ERROR";
+
+  private static final long ENQUEUE_TIMEOUT_MILLIS = 100;
+
+  private static final ProgramArgumentsParser requestParser;
+
+  private static final String OPTION_GRAMMAR = "--grammar";
+  private static final String OPTION_INPUT = "--in";
+  private static final String OPTION_TEXT = "--text";
+
+  private static final String OPTION_OMIT_QUANTIFIERS = "--omitQuantifiers";
+  private static final String OPTION_NO_COMPACTIFY = "--noCompactify";
+
+  private static final String OPTION_PRETTY_PRINT_IN = "--prettyPrintIn";
+  private static final String OPTION_TO_DOT = "--toDot";
+  private static final String OPTION_HIGHLIGHT_ANNOTATIONS = "--annotations";
+  private static final String OPTION_TREE_STATS = "--treeStats";
+  private static final String OPTION_PARSER_STATS = "--parserStats";
+
+  static {
+    requestParser = new ProgramArgumentsParser();
+
+    requestParser.addOption(OPTION_GRAMMAR, true, true, "<file name of grammar>");
+    requestParser.addOption(OPTION_INPUT, false, true, "<file name of input program>");
+    requestParser.addOption(OPTION_TEXT, false, true, "<escaped input program>");
+
+    requestParser.addOption(OPTION_OMIT_QUANTIFIERS, false);
+    requestParser.addOption(OPTION_NO_COMPACTIFY, false);
+
+    requestParser.addOption(OPTION_PRETTY_PRINT_IN, false);
+    requestParser.addOption(OPTION_TO_DOT, false);
+    requestParser.addOption(OPTION_HIGHLIGHT_ANNOTATIONS, false);
+    requestParser.addOption(OPTION_TREE_STATS, false);
+    requestParser.addOption(OPTION_PARSER_STATS, false);
+  }
+
+  // ===============================================================================================
+
+  private static final class CompiledGrammar {
+
+    public final Grammar grammar;
+    public final boolean quantifierNodes;
+    public final long lastModified;
+
+    public final Lexer lexer;
+
+    // a parser must not be used by multiple threads at the same time -> pool of parsers
+    private final ConcurrentLinkedQueue<Parser> parsers;
+
+    public CompiledGrammar(final Grammar grammar, final boolean quantifierNodes,
+        final long lastModified) {
+      this.grammar = grammar;
+      this.quantifierNodes = quantifierNodes;
+      this.lastModified = lastModified;
+
+      this.lexer = Lexer.forGrammar(grammar);
+
+      this.parsers = new ConcurrentLinkedQueue<>();
+      this.parsers.add(Parser.fromGrammar(grammar, quantifierNodes));
+    }
+
+    public final Parser acquireParser() {
+      final Parser parser = this.parsers.poll();
+
+      if (parser == null) {
+        return Parser.fromGrammar(this.grammar, this.quantifierNodes);
+      } else {
+        return parser;
+      }
+    }
+
+    public final void releaseParser(final Parser parser) {
+      this.parsers.add(parser);
+    }
+
+  }
+
+  private static final class Response {
+
+    public final String status;
+    public final String body;
+
+    public Response(final String status, final String body) {
+      this.status = status;
+      this.body = body;
+    }
+
+  }
+
+  // ===============================================================================================
+
+  private final ExecutorService workers;
+  private final int numberOfWorkers;
+
+  private final Map<String, CompiledGrammar> grammarCache;
+
+  public ParseServer(final int numberOfWorkers, final int grammarCacheSize) {
+    this.workers = Executors.newFixedThreadPool(numberOfWorkers);
+    this.numberOfWorkers = numberOfWorkers;
+
+    this.grammarCache = new LinkedHashMap<String, CompiledGrammar>(16, 0.75f, true) {
+
+      @Override
+      protected final boolean removeEldestEntry(
+          final Map.Entry<String, CompiledGrammar> eldest) {
+        return size() > grammarCacheSize;
+      }
+
+    };
+  }
+
+  // serves the requests on stdin until stdin is closed
+  public final void serveStdIn() {
+    serve(System.in, System.out);
+    this.workers.shutdown();
+  }
+
+  // serves the connections on the given port (of the loopback interface) until the process is
+  // terminated
+  public final void serveTCP(final int port) {
+    try (final ServerSocket serverSocket =
+        new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+      System.err.format("[i] listening on %s\n", serverSocket.getLocalSocketAddress());
+
+      while (true) {
+        final Socket socket = serverSocket.accept();
+
+        final Thread connectionThread = new Thread(() -> {
+          try (final Socket connection = socket) {
+            serve(connection.getInputStream(), connection.getOutputStream());
+          } catch (final Exception exception) {
+            System.err.format("[!] %s\n", exception.getMessage());
+          }
+        });
+
+        connectionThread.setDaemon(true);
+        connectionThread.start();
+      }
+    } catch (final IOException exception) {
+      throw new RuntimeException("unable to serve TCP connections", exception);
+    } finally {
+      this.workers.shutdown();
+    }
+  }
+
+  // reads requests from the given input stream and writes the responses (in the order of the
+  // requests) to the given output stream; the requests themselves are processed by the workers
+  public final void serve(final InputStream inputStream, final OutputStream outputStream) {
+    final BlockingQueue<Future<Response>> pendingResponses =
+        new ArrayBlockingQueue<>(2 * this.numberOfWorkers);
+
+    final Future<Response> endOfRequests = CompletableFuture.completedFuture(null);
+
+    final Thread responseThread = new Thread(() -> {
+      try {
+        while (true) {
+          final Future<Response> pendingResponse = pendingResponses.take();
+
+          if (pendingResponse == endOfRequests) {
+            break;
+          }
+
+          writeResponse(pendingResponse.get(), outputStream);
+        }
+      } catch (final InterruptedException | ExecutionException | IOException exception) {
+        System.err.format("[!] %s\n", exception.getMessage());
+
+        // cancel the reader (which might be blocked reading the next request)
+        try {
+          inputStream.close();
+        } catch (final IOException closeException) {
+          // ignore, the reader stops at its next request anyway
+        }
+      }
+    });
+
+    responseThread.start();
+
+    try {
+      final BufferedReader reader =
+          new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+
+        final String request = line;
+        final Future<Response> pendingResponse = this.workers.submit(() -> handleRequest(request));
+
+        if (!enqueue(pendingResponses, pendingResponse, responseThread)) {
+          // the responses can no longer be written -> stop reading requests
+          pendingResponse.cancel(true);
+          break;
+        }
+      }
+    } catch (final IOException exception) {
+      System.err.format("[!] %s\n", exception.getMessage());
+    } catch (final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    } finally {
+      try {
+        enqueue(pendingResponses, endOfRequests, responseThread);
+        responseThread.join();
+      } catch (final InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+
+      for (final Future<Response> pendingResponse : pendingResponses) {
+        pendingResponse.cancel(true);
+      }
+    }
+  }
+
+  // adds the given pending response to the (bounded) queue; returns 'false' if the response thread
+  // has terminated, i.e., if it does not take any more responses from the queue
+  private static final boolean enqueue(final BlockingQueue<Future<Response>> pendingResponses,
+      final Future<Response> pendingResponse, final Thread responseThread)
+      throws InterruptedException {
+    while (!pendingResponses.offer(pendingResponse, ENQUEUE_TIMEOUT_MILLIS,
+        TimeUnit.MILLISECONDS)) {
+      if (!responseThread.isAlive()) {
+        return false;
+      }
+    }
+
+    return responseThread.isAlive();
+  }
+
+  private static final void writeResponse(final Response response,
+      final OutputStream outputStream) throws IOException {
+    final byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+    final byte[] header = String.format("%s %d\n", response.status, body.length)
+        .getBytes(StandardCharsets.UTF_8);
+
+    outputStream.write(header);
+    outputStream.write(body);
+    outputStream.flush();
+  }
+
+  // ===============================================================================================
+
+  private final Response handleRequest(final String request) {
+    final ProgramArguments arguments;
+    final CompiledGrammar compiledGrammar;
+    final String input;
+
+    try {
+      arguments = requestParser.parseArgs(splitRequest(request));
+
+      if (arguments.hasOption(OPTION_INPUT) == arguments.hasOption(OPTION_TEXT)) {
+        throw new RuntimeException(
+            String.format("expected either '%s' or '%s'", OPTION_INPUT, OPTION_TEXT));
+      }
+
+      final boolean quantifierNodes = !arguments.hasOption(OPTION_OMIT_QUANTIFIERS);
+      compiledGrammar = getCompiledGrammar(arguments.getOption(OPTION_GRAMMAR), quantifierNodes);
+
+      if (arguments.hasOption(OPTION_INPUT)) {
+        input = readFile(arguments.getOption(OPTION_INPUT));
+      } else {
+        input = unescape(arguments.getOption(OPTION_TEXT));
+      }
+    } catch (final Exception exception) {
+      return new Response(STATUS_ERROR, String.valueOf(exception.getMessage()));
+    }
+
+    final Parser parser = compiledGrammar.acquireParser();
+
+    try {
+      final long timeBeforeLexer = System.currentTimeMillis();
+      final TokenStream tokens = compiledGrammar.lexer.lex(input);
+      final long timeAfterLexer = System.currentTimeMillis();
+
+      final Node<?> syntaxTree = parser.parse(tokens);
+      final long timeAfterParser = System.currentTimeMillis();
+
+      if (!arguments.hasOption(OPTION_NO_COMPACTIFY)) {
+        syntaxTree.compactify();
+      }
+
+      final StringWriter stringWriter = new StringWriter();
+      final SafeWriter writer = SafeWriter.fromBufferedWriter(new BufferedWriter(stringWriter));
+
+      if (arguments.hasOption(OPTION_PRETTY_PRINT_IN)) {
+        PrettyPrinter.print(syntaxTree, writer);
+      }
+
+      if (arguments.hasOption(OPTION_TO_DOT)) {
+        final DotGenerator.DotStyle style;
+        {
+          if (arguments.hasOption(OPTION_HIGHLIGHT_ANNOTATIONS)) {
+            style = new PEGMain.DotStyleAnnotations();
+          } else {
+            style = DotGenerator.DEFAULT_DOT_STYLE;
+          }
+        }
+
+        DotGenerator.print(syntaxTree, writer, style);
+      }
+
+      if (arguments.hasOption(OPTION_TREE_STATS)) {
+        PEGMain.printStats(syntaxTree, writer);
+      }
+
+      if (arguments.hasOption(OPTION_PARSER_STATS)) {
+        PEGMain.printParserStats(timeAfterLexer - timeBeforeLexer,
+            timeAfterParser - timeAfterLexer, writer);
+      }
+
+      writer.flush();
+
+      return new Response(STATUS_OK, stringWriter.toString());
+    } catch (final ParsingFailedException | InvalidInputException exception) {
+      return new Response(STATUS_FAIL, exception.getMessage());
+    } catch (final Exception exception) {
+      return new Response(STATUS_ERROR, String.valueOf(exception.getMessage()));
+    } finally {
+      compiledGrammar.releaseParser(parser);
+    }
+  }
+
+  private final CompiledGrammar getCompiledGrammar(final String fileNameGrammar,
+      final boolean quantifierNodes) {
+    final File grammarFile = new File(fileNameGrammar).getAbsoluteFile();
+
+    if (!grammarFile.isFile()) {
+      throw new RuntimeException(String.format("grammar '%s' does not exist", fileNameGrammar));
+    }
+
+    final String key = String.format("%s:%b", grammarFile.getPath(), quantifierNodes);
+    final long lastModified = grammarFile.lastModified();
+
+    synchronized (this.grammarCache) {
+      final CompiledGrammar compiledGrammar = this.grammarCache.get(key);
+
+      if (compiledGrammar != null && compiledGrammar.lastModified == lastModified) {
+        return compiledGrammar;
+      }
+    }
+
+    // compile the grammar outside of the lock, so that requests for other grammars do not have to
+    // wait (a grammar might be compiled twice if it is requested concurrently, which is harmless)
+    final Grammar grammar = PEGParser.parse(readFile(grammarFile.getPath()));
+    NameAnalysis.analyze(grammar);
+
+    final CompiledGrammar compiledGrammar =
+        new CompiledGrammar(grammar, quantifierNodes, lastModified);
+
+    synchronized (this.grammarCache) {
+      this.grammarCache.put(key, compiledGrammar);
+    }
+
+    return compiledGrammar;
+  }
+
+  // splits a request into its whitespace-separated arguments, where an argument that is enclosed in
+  // double quotes may contain whitespace (the quotes are removed, there are no escape sequences)
+  private static final String[] splitRequest(final String request) {
+    final List<String> arguments = new ArrayList<>();
+
+    final StringBuilder argument = new StringBuilder();
+    boolean inArgument = false;
+    boolean quoted = false;
+
+    for (int index = 0; index < request.length(); ++index) {
+      final char character = request.charAt(index);
+
+      if (character == '"') {
+        quoted = !quoted;
+        inArgument = true;
+      } else if (!quoted && Character.isWhitespace(character)) {
+        if (inArgument) {
+          arguments.add(argument.toString());
+          argument.setLength(0);
+          inArgument = false;
+        }
+      } else {
+        argument.append(character);
+        inArgument = true;
+      }
+    }
+
+    if (quoted) {
+      throw new RuntimeException("unterminated quote in request");
+    }
+
+    if (inArgument) {
+      arguments.add(argument.toString());
+    }
+
+    return arguments.toArray(new String[arguments.size()]);
+  }
+
+  private static final String unescape(final String text) {
+    final StringBuilder builder = new StringBuilder(text.length());
+
+    for (int index = 0; index < text.length(); ++index) {
+      final char character = text.charAt(index);
+
+      if (character != '\\') {
+        builder.append(character);
+        continue;
+      }
+
+      if (++index == text.length()) {
+        throw new RuntimeException("incomplete escape sequence at end of text");
+      }
+
+      final char escapedCharacter = text.charAt(index);
+
+      switch (escapedCharacter) {
+        case 'n': {
+          builder.append('\n');
+          break;
+        }
+        case 'r': {
+          builder.append('\r');
+          break;
+        }
+        case 't': {
+          builder.append('\t');
+          break;
+        }
+        case 's': {
+          builder.append(' ');
+          break;
+        }
+        case '\\': {
+          builder.append('\\');
+          break;
+        }
+        default: {
+          throw new RuntimeException(
+              String.format("invalid escape sequence '\\%c'", escapedCharacter));
+        }
+      }
+    }
+
+    return builder.toString();
+  }
+
+  private static final String readFile(final String fileName) {
+    try {
+      byte[] bytes = Files.readAllBytes(Paths.get(fileName));
+      return new String(bytes);
+    } catch (final IOException exception) {
+      throw new RuntimeException("unable to read file", exception);
+    }
+  }
+
+}
@@ -6,6 +6,7 @@ import i2.act.peg.ast.visitors.PrettyPrinter;
 import i2.act.peg.parser.PEGParser;
 import i2.act.peg.transformations.GrammarTransformation;
 import i2.act.peg.transformations.GrammarTransformationFactory;
+import i2.act.peg.transformations.TransformationPipeline;
 import i2.act.util.SafeWriter;
 import i2.act.util.options.ProgramArguments;
 import i2.act.util.options.ProgramArgumentsParser;
@@ -66,10 +67,9 @@ public final class TransformationMain {
 
     final Grammar grammar = readGrammar(fileNameInput);
 
-    Grammar transformedGrammar = grammar;
-    for (final GrammarTransformation transformation : transformations) {
-      transformedGrammar = transformation.apply(transformedGrammar);
-    }
+    // the transformations are applied in a single pipeline, i.e., the grammar is only copied once
+    final TransformationPipeline pipeline = new TransformationPipeline(transformations);
+    final Grammar transformedGrammar = pipeline.apply(grammar);
 
     final SafeWriter outputWriter = SafeWriter.openFile(fileNameOutput);
     PrettyPrinter.prettyPrint(transformedGrammar, outputWriter);
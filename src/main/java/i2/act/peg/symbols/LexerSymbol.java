@@ -4,7 +4,7 @@ import i2.act.peg.ast.LexerProduction;
 
 public final class LexerSymbol extends Symbol<LexerProduction> {
 
-  public static final LexerSymbol EOF = new LexerSymbol("EOF", false, null);
+  public static final LexerSymbol EOF = new LexerSymbol("EOF", 0);
 
   //------------------------------------------------------------------------------------------------
 
@@ -20,6 +20,11 @@ public final class LexerSymbol extends Symbol<LexerProduction> {
     this.isSkippedToken = isSkippedToken;
   }
 
+  private LexerSymbol(final String name, final int reservedId) {
+    super(name, null, reservedId);
+    this.isSkippedToken = false;
+  }
+
   public final boolean isSkippedToken() {
     return this.isSkippedToken;
   }
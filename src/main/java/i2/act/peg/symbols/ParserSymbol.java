@@ -4,10 +4,10 @@ import i2.act.peg.ast.ParserProduction;
 
 public final class ParserSymbol extends Symbol<ParserProduction> {
 
-  public static final ParserSymbol OPTIONAL = new ParserSymbol("?", null);
-  public static final ParserSymbol STAR = new ParserSymbol("*", null);
-  public static final ParserSymbol PLUS = new ParserSymbol("+", null);
-  public static final ParserSymbol LIST_ITEM = new ParserSymbol("ITEM", null);
+  public static final ParserSymbol OPTIONAL = new ParserSymbol("?", 1);
+  public static final ParserSymbol STAR = new ParserSymbol("*", 2);
+  public static final ParserSymbol PLUS = new ParserSymbol("+", 3);
+  public static final ParserSymbol LIST_ITEM = new ParserSymbol("ITEM", 4);
 
   //------------------------------------------------------------------------------------------------
 
@@ -19,4 +19,8 @@ public final class ParserSymbol extends Symbol<ParserProduction> {
     super(name, production);
   }
 
+  private ParserSymbol(final String name, final int reservedId) {
+    super(name, null, reservedId);
+  }
+
 }
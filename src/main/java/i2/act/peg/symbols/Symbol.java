@@ -5,6 +5,15 @@ import i2.act.peg.builder.GrammarBuilderNode;
 
 public abstract class Symbol<P extends Production> implements GrammarBuilderNode {
 
+  // the ids below this bound are reserved for the symbols that are shared by all grammars (e.g.,
+  // 'LexerSymbol.EOF'); the symbols of a grammar get dense ids from this bound on when the grammar
+  // is analyzed (see 'SymbolIdAssignment')
+  public static final int FIRST_GRAMMAR_ID = 8;
+
+  public static final int NO_ID = -1;
+
+  private int id;
+
   protected final String name;
   protected P production;
 
@@ -13,10 +22,34 @@ public abstract class Symbol<P extends Production> implements GrammarBuilderNode
   }
 
   public Symbol(final String name, final P production) {
+    this.id = NO_ID;
+    this.name = name;
+    this.production = production;
+  }
+
+  protected Symbol(final String name, final P production, final int reservedId) {
+    assert (reservedId >= 0 && reservedId < FIRST_GRAMMAR_ID);
+
+    this.id = reservedId;
     this.name = name;
     this.production = production;
   }
 
+  public final boolean hasId() {
+    return this.id != NO_ID;
+  }
+
+  // the id is unique among the symbols of a grammar, but not among the symbols of different
+  // grammars
+  public final int getId() {
+    return this.id;
+  }
+
+  public final void setId(final int id) {
+    assert (id >= FIRST_GRAMMAR_ID);
+    this.id = id;
+  }
+
   public final String getName() {
     return this.name;
   }
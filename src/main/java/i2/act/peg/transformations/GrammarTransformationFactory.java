@@ -6,6 +6,8 @@ public enum GrammarTransformationFactory {
 
   HOIST_SUB_ALT(
       HoistSubAlternatives.class.getSimpleName(), () -> new HoistSubAlternatives()),
+  LEFT_FACTOR(
+      LeftFactorAlternatives.class.getSimpleName(), () -> new LeftFactorAlternatives()),
   REMOVE_CHAINS(
       RemoveChainProductions.class.getSimpleName(), () -> new RemoveChainProductions()),
   REMOVE_DEAD(
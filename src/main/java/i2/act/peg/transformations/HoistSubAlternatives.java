@@ -2,25 +2,21 @@ package i2.act.peg.transformations;
 
 import i2.act.peg.ast.*;
 import i2.act.peg.ast.visitors.BaseASTVisitor;
-import i2.act.peg.ast.visitors.NameAnalysis;
 import i2.act.peg.info.SourcePosition;
+import i2.act.peg.transformations.WorkingGrammar.Entry;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public final class HoistSubAlternatives implements GrammarTransformation {
+public final class HoistSubAlternatives implements InPlaceGrammarTransformation {
 
   public static final Grammar transform(final Grammar originalGrammar) {
     return (new HoistSubAlternatives()).apply(originalGrammar);
   }
 
   @Override
-  public final Grammar apply(final Grammar originalGrammar) {
-    final Grammar transformedGrammar = new Grammar(SourcePosition.UNKNOWN);
-
-    originalGrammar.accept(new BaseASTVisitor<Void, ASTNode>() {
-
-      private final List<Production> helperProductions = new ArrayList<>();
+  public final void rewrite(final WorkingGrammar grammar) {
+    final BaseASTVisitor<Void, ASTNode> visitor = new BaseASTVisitor<Void, ASTNode>() {
 
       private String currentProductionName = null;
       private int currentProductionCounter = 0;
@@ -31,29 +27,6 @@ public final class HoistSubAlternatives implements GrammarTransformation {
             String.format("unhandled node of class '%s'", node.getClass().getSimpleName()));
       }
 
-      @Override
-      public final Grammar visit(final Grammar grammar, final Void parameter) {
-        for (final Production production : grammar) {
-          final Production transformedProduction = (Production) production.accept(this, null);
-          transformedGrammar.addProduction(transformedProduction);
-
-          // add helper productions
-          for (final Production helperProduction : this.helperProductions) {
-            transformedGrammar.addProduction(helperProduction);
-          }
-          this.helperProductions.clear();
-        }
-
-        return transformedGrammar;
-      }
-
-      @Override
-      public final LexerProduction visit(final LexerProduction lexerProduction,
-          final Void parameter) {
-        // we do not have to do anything for lexer productions
-        return lexerProduction.clone(false);
-      }
-
       @Override
       public final ParserProduction visit(final ParserProduction parserProduction,
           final Void parameter) {
@@ -84,7 +57,7 @@ public final class HoistSubAlternatives implements GrammarTransformation {
         }
 
         final Alternatives transformedAlternatives = new Alternatives(
-            SourcePosition.UNKNOWN, null, transformedSequences);
+            SourcePosition.UNKNOWN, alternatives.getQuantifier(), transformedSequences);
 
         return transformedAlternatives;
       }
@@ -106,7 +79,11 @@ public final class HoistSubAlternatives implements GrammarTransformation {
           }
         }
 
-        return new Sequence(SourcePosition.UNKNOWN, transformedElements);
+        final Sequence transformedSequence =
+            new Sequence(SourcePosition.UNKNOWN, transformedElements);
+        transformedSequence.setWeight(sequence.getWeight());
+
+        return transformedSequence;
       }
 
       @Override
@@ -121,13 +98,14 @@ public final class HoistSubAlternatives implements GrammarTransformation {
         return parserIdentifier.clone(false);
       }
 
-    }, null);
-
-    // perform name analysis on transformed grammar to annotate all identifiers with symbols
-    // TODO should we keep the symbols of the original grammar?
-    NameAnalysis.analyze(transformedGrammar);
+    };
 
-    return transformedGrammar;
+    // productions without hoistable sub-alternatives are left as they are
+    for (final Entry entry : grammar.getEntries(WorkingGrammar.HOISTABLE_SUB_ALTERNATIVES)) {
+      final ParserProduction transformedProduction =
+          (ParserProduction) entry.getProduction().accept(visitor, null);
+      grammar.replaceProduction(entry, transformedProduction);
+    }
   }
 
 }
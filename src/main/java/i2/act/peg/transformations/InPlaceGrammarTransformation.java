@@ -0,0 +1,16 @@
+package i2.act.peg.transformations;
+
+import i2.act.peg.ast.Grammar;
+
+// a transformation that rewrites the productions of a working grammar in place (instead of
+// building a new grammar); when applied on its own, it runs as a single-step pipeline
+public interface InPlaceGrammarTransformation extends GrammarTransformation {
+
+  public void rewrite(final WorkingGrammar grammar);
+
+  @Override
+  public default Grammar apply(final Grammar originalGrammar) {
+    return (new TransformationPipeline(this)).apply(originalGrammar);
+  }
+
+}
@@ -0,0 +1,149 @@
+package i2.act.peg.transformations;
+
+import i2.act.peg.ast.*;
+import i2.act.peg.info.SourcePosition;
+import i2.act.peg.transformations.WorkingGrammar.Entry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// factors common prefixes out of consecutive alternatives, e.g., 'A B C | A B D' becomes
+// 'A B (C | D)'
+//
+// a parsing expression yields the same result whenever it is applied at the same position, i.e.,
+// if 'A B C' fails, the second alternative matches the same prefix again before it tries 'D'; the
+// factored alternatives only match the prefix once; since alternatives without quantifier do not
+// create nodes, the syntax trees are not changed
+//
+// an alternative that consists of the prefix only leaves an empty alternative behind, e.g.,
+// 'A B | A' becomes 'A (B | )'
+public final class LeftFactorAlternatives implements InPlaceGrammarTransformation {
+
+  public static final Grammar transform(final Grammar originalGrammar) {
+    return (new LeftFactorAlternatives()).apply(originalGrammar);
+  }
+
+  @Override
+  public final void rewrite(final WorkingGrammar grammar) {
+    for (final Entry entry : grammar.getEntries()) {
+      final ParserProduction production = entry.getProduction().clone(false);
+
+      if (factorNested(production.getRightHandSide())) {
+        grammar.replaceProduction(entry, production);
+      }
+    }
+  }
+
+  // factors the given alternatives and all alternatives nested in them in place; returns true if
+  // any alternatives have been factored
+  private static final boolean factorNested(final Alternatives alternatives) {
+    boolean factored = false;
+
+    for (final Sequence sequence : alternatives) {
+      for (final Atom element : sequence) {
+        if (element instanceof Alternatives) {
+          factored |= factorNested((Alternatives) element);
+        }
+      }
+    }
+
+    final List<Sequence> originalAlternatives = alternatives.getAlternatives();
+    final List<Sequence> factoredAlternatives = factor(originalAlternatives);
+
+    if (factoredAlternatives != originalAlternatives) {
+      alternatives.replaceAlternatives(factoredAlternatives);
+      factored = true;
+    }
+
+    return factored;
+  }
+
+  // returns the given alternatives with the common prefixes of consecutive alternatives factored
+  // out (alternatives nested in the elements are not factored); the elements are shared with the
+  // given alternatives; if nothing can be factored, the given list itself is returned
+  public static final List<Sequence> factor(final List<Sequence> alternatives) {
+    final int numberOfAlternatives = alternatives.size();
+
+    final List<Sequence> factoredAlternatives = new ArrayList<>();
+    boolean factored = false;
+
+    int index = 0;
+    while (index < numberOfAlternatives) {
+      final Sequence first = alternatives.get(index);
+
+      // the alternatives 'index' to 'end - 1' start with the same element
+      int end = index + 1;
+      while (end < numberOfAlternatives
+          && getCommonPrefixLength(first, alternatives.get(end)) > 0) {
+        ++end;
+      }
+
+      int prefixLength = first.getNumberOfElements();
+      for (int other = index + 1; other < end; ++other) {
+        prefixLength =
+            Math.min(prefixLength, getCommonPrefixLength(first, alternatives.get(other)));
+      }
+
+      if (end - index < 2) {
+        factoredAlternatives.add(first);
+        ++index;
+        continue;
+      }
+
+      final List<Sequence> remainders = new ArrayList<>();
+      for (int other = index; other < end; ++other) {
+        final Sequence alternative = alternatives.get(other);
+        final List<Atom> remainingElements = new ArrayList<>(
+            alternative.getElements().subList(prefixLength, alternative.getNumberOfElements()));
+
+        final Sequence remainder = new Sequence(SourcePosition.UNKNOWN, remainingElements);
+        remainder.setWeight(alternative.getWeight());
+
+        remainders.add(remainder);
+      }
+
+      final List<Atom> factoredElements =
+          new ArrayList<>(first.getElements().subList(0, prefixLength));
+      factoredElements.add(new Alternatives(SourcePosition.UNKNOWN, null,
+          new ArrayList<>(factor(remainders))));
+
+      factoredAlternatives.add(new Sequence(SourcePosition.UNKNOWN, factoredElements));
+      factored = true;
+
+      index = end;
+    }
+
+    return (factored) ? (factoredAlternatives) : (alternatives);
+  }
+
+  private static final int getCommonPrefixLength(final Sequence first, final Sequence second) {
+    final int maximumLength = Math.min(first.getNumberOfElements(), second.getNumberOfElements());
+
+    int length = 0;
+    while (length < maximumLength
+        && isSameElement(first.getElement(length), second.getElement(length))) {
+      ++length;
+    }
+
+    return length;
+  }
+
+  // only identifiers are compared (i.e., nested alternatives end a common prefix)
+  private static final boolean isSameElement(final Atom first, final Atom second) {
+    if (!(first instanceof Identifier<?>) || first.getClass() != second.getClass()) {
+      return false;
+    }
+
+    if (!((Identifier<?>) first).getName().equals(((Identifier<?>) second).getName())) {
+      return false;
+    }
+
+    if (first.hasQuantifier() != second.hasQuantifier()) {
+      return false;
+    }
+
+    return !first.hasQuantifier()
+        || first.getQuantifier().getKind() == second.getQuantifier().getKind();
+  }
+
+}
@@ -2,34 +2,32 @@ package i2.act.peg.transformations;
 
 import i2.act.peg.ast.*;
 import i2.act.peg.ast.visitors.BaseASTVisitor;
-import i2.act.peg.ast.visitors.NameAnalysis;
 import i2.act.peg.info.SourcePosition;
 import i2.act.peg.symbols.LexerSymbol;
 import i2.act.peg.symbols.ParserSymbol;
 import i2.act.peg.symbols.Symbol;
+import i2.act.peg.transformations.WorkingGrammar.Entry;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public final class RemoveChainProductions implements GrammarTransformation {
+public final class RemoveChainProductions implements InPlaceGrammarTransformation {
 
   public static final Grammar transform(final Grammar originalGrammar) {
     return (new RemoveChainProductions()).apply(originalGrammar);
   }
 
   @Override
-  public final Grammar apply(final Grammar originalGrammar) {
-    final Map<ParserSymbol, Symbol<?>> chainProductions = gatherChainProductions(originalGrammar);
+  public final void rewrite(final WorkingGrammar grammar) {
+    final Map<ParserSymbol, Symbol<?>> chainProductions = gatherChainProductions(grammar);
 
     if (chainProductions.isEmpty()) {
-      return originalGrammar;
+      return;
     }
 
-    final Grammar transformedGrammar = new Grammar(SourcePosition.UNKNOWN);
-
-    originalGrammar.accept(new BaseASTVisitor<Void, ASTNode>() {
+    final BaseASTVisitor<Void, ASTNode> visitor = new BaseASTVisitor<Void, ASTNode>() {
 
       @Override
       public final ASTNode epilog(final ASTNode node, final Void parameter) {
@@ -37,24 +35,6 @@ public final class RemoveChainProductions implements GrammarTransformation {
             String.format("unhandled node of class '%s'", node.getClass().getSimpleName()));
       }
 
-      @Override
-      public final Grammar visit(final Grammar grammar, final Void parameter) {
-        for (final Production production : grammar) {
-          final Production transformedProduction = (Production) production.accept(this, parameter);
-          transformedGrammar.addProduction(transformedProduction);
-        }
-
-        return transformedGrammar;
-      }
-
-      @Override
-      public final LexerProduction visit(final LexerProduction lexerProduction,
-          final Void parameter) {
-        // we do not have to do anything for lexer productions
-        final LexerProduction lexerProductionClone = lexerProduction.clone(false);
-        return lexerProductionClone;
-      }
-
       @Override
       public final ParserProduction visit(final ParserProduction parserProduction,
           final Void parameter) {
@@ -78,7 +58,8 @@ public final class RemoveChainProductions implements GrammarTransformation {
           }
         }
 
-        return new Alternatives(SourcePosition.UNKNOWN, null, transformedSequences);
+        return new Alternatives(
+            SourcePosition.UNKNOWN, alternatives.getQuantifier(), transformedSequences);
       }
 
       @Override
@@ -109,7 +90,11 @@ public final class RemoveChainProductions implements GrammarTransformation {
           }
         }
 
-        return new Sequence(SourcePosition.UNKNOWN, transformedElements);
+        final Sequence transformedSequence =
+            new Sequence(SourcePosition.UNKNOWN, transformedElements);
+        transformedSequence.setWeight(sequence.getWeight());
+
+        return transformedSequence;
       }
 
       @Override
@@ -124,29 +109,29 @@ public final class RemoveChainProductions implements GrammarTransformation {
         return parserIdentifier.clone(false);
       }
 
-    }, null);
+    };
 
-    // perform name analysis on transformed grammar to annotate all identifiers with symbols
-    // TODO should we keep the symbols of the original grammar?
-    NameAnalysis.analyze(transformedGrammar);
-
-    return transformedGrammar;
+    // only the productions that use chain productions are changed
+    for (final Entry entry : grammar.getEntries(0, chainProductions.keySet())) {
+      final ParserProduction transformedProduction =
+          (ParserProduction) entry.getProduction().accept(visitor, null);
+      grammar.replaceProduction(entry, transformedProduction);
+    }
   }
 
   private final Map<ParserSymbol, Symbol<?>> gatherChainProductions(
-      final Grammar originalGrammar) {
+      final WorkingGrammar grammar) {
     final Map<ParserSymbol, Symbol<?>> chainProductions = new HashMap<>();
 
-    for (final Production production : originalGrammar) {
-      if (production instanceof ParserProduction) {
-        final ParserProduction parserProduction = (ParserProduction) production;
-        final Alternatives rightHandSide = parserProduction.getRightHandSide();
+    // chain productions consist of a single alternative
+    for (final Entry entry : grammar.getEntries(WorkingGrammar.SINGLE_ALTERNATIVE)) {
+      final ParserProduction parserProduction = entry.getProduction();
+      final Alternatives rightHandSide = parserProduction.getRightHandSide();
 
-        final Symbol<?> chainSymbol = isChain(rightHandSide);
-        if (chainSymbol != null) {
-          final ParserSymbol parserSymbol = parserProduction.getSymbol();
-          chainProductions.put(parserSymbol, chainSymbol);
-        }
+      final Symbol<?> chainSymbol = isChain(rightHandSide);
+      if (chainSymbol != null) {
+        final ParserSymbol parserSymbol = parserProduction.getSymbol();
+        chainProductions.put(parserSymbol, chainSymbol);
       }
     }
 
@@ -4,169 +4,206 @@ import i2.act.peg.ast.*;
 import i2.act.peg.ast.visitors.BaseASTVisitor;
 import i2.act.peg.info.SourcePosition;
 import i2.act.peg.symbols.ParserSymbol;
+import i2.act.peg.transformations.WorkingGrammar.Entry;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public final class RemoveDuplicateProductions implements GrammarTransformation {
+public final class RemoveDuplicateProductions implements InPlaceGrammarTransformation {
 
   public static final Grammar transform(final Grammar originalGrammar) {
     return (new RemoveDuplicateProductions()).apply(originalGrammar);
   }
 
   @Override
-  public final Grammar apply(final Grammar originalGrammar) {
-    Grammar grammar = originalGrammar;
+  public final void rewrite(final WorkingGrammar grammar) {
+    final List<Entry> entries = grammar.getEntries();
 
-    while (true) {
-      final Map<ParserSymbol, ParserSymbol> duplicates =
-          findDuplicates(grammar.getProductions());
+    final List<ParserProduction> productions = new ArrayList<>();
+    for (final Entry entry : entries) {
+      productions.add(entry.getProduction());
+    }
 
-      if (duplicates.isEmpty()) {
-        return grammar;
+    final Map<ParserSymbol, ParserSymbol> duplicates = findDuplicates(productions);
+
+    if (duplicates.isEmpty()) {
+      return;
+    }
+
+    final BaseASTVisitor<Void, ASTNode> visitor = new BaseASTVisitor<Void, ASTNode>() {
+
+      @Override
+      public final ASTNode epilog(final ASTNode node, final Void parameter) {
+        throw new RuntimeException(
+            String.format("unhandled node of class '%s'", node.getClass().getSimpleName()));
       }
 
-      System.err.println(duplicates);
+      @Override
+      public final ParserProduction visit(final ParserProduction parserProduction,
+          final Void parameter) {
+        final ParserIdentifier leftHandSideClone = parserProduction.getLeftHandSide().clone(true);
+        final List<Annotation> annotationsClone = parserProduction.cloneAnnotations(true);
 
-      final Grammar transformedGrammar = new Grammar(SourcePosition.UNKNOWN);
+        final Alternatives rightHandSideClone =
+            (Alternatives) parserProduction.getRightHandSide().accept(this, parameter);
 
-      grammar.accept(new BaseASTVisitor<Void, ASTNode>() {
+        return new ParserProduction(SourcePosition.UNKNOWN, annotationsClone, leftHandSideClone,
+            rightHandSideClone);
+      }
 
-        @Override
-        public final ASTNode epilog(final ASTNode node, final Void parameter) {
-          throw new RuntimeException(
-              String.format("unhandled node of class '%s'", node.getClass().getSimpleName()));
+      @Override
+      public final Atom visit(final Alternatives alternatives, final Void parameter) {
+        final List<Sequence> transformedSequences = new ArrayList<>();
+        {
+          for (final Sequence sequence : alternatives.getAlternatives()) {
+            final Sequence transformedSequence = (Sequence) sequence.accept(this, parameter);
+            transformedSequences.add(transformedSequence);
+          }
         }
 
-        @Override
-        public final Grammar visit(final Grammar grammar, final Void parameter) {
-          for (final Production production : grammar) {
-            final Production transformedProduction =
-                (Production) production.accept(this, parameter);
+        final Alternatives transformedAlternatives = new Alternatives(
+            SourcePosition.UNKNOWN, alternatives.getQuantifier(), transformedSequences);
 
-            if (transformedProduction != null) {
-              transformedGrammar.addProduction(transformedProduction);
-            }
-          }
+        return transformedAlternatives;
+      }
 
-          return transformedGrammar;
+      @Override
+      public final Sequence visit(final Sequence sequence, final Void parameter) {
+        final List<Atom> transformedElements = new ArrayList<>();
+        for (final Atom element : sequence) {
+          final Atom transformedElement = (Atom) element.accept(this, parameter);
+          transformedElements.add(transformedElement);
         }
 
-        @Override
-        public final LexerProduction visit(final LexerProduction lexerProduction,
-            final Void parameter) {
-          // we do not have to do anything for lexer productions
-          final LexerProduction lexerProductionClone = lexerProduction.clone(true);
-          return lexerProductionClone;
-        }
+        final Sequence transformedSequence =
+            new Sequence(SourcePosition.UNKNOWN, transformedElements);
+        transformedSequence.setWeight(sequence.getWeight());
 
-        @Override
-        public final ParserProduction visit(final ParserProduction parserProduction,
-            final Void parameter) {
-          final ParserSymbol symbol = parserProduction.getSymbol();
-          assert (symbol != null);
+        return transformedSequence;
+      }
 
-          if (duplicates.containsKey(symbol)) {
-            // duplicate production -> do not copy
-            return null;
-          }
+      @Override
+      public final LexerIdentifier visit(final LexerIdentifier lexerIdentifier,
+          final Void parameter) {
+        return lexerIdentifier.clone(true);
+      }
+
+      @Override
+      public final ParserIdentifier visit(final ParserIdentifier parserIdentifier,
+          final Void parameter) {
+        final ParserSymbol symbol = parserIdentifier.getSymbol();
+        assert (symbol != null);
 
-          final ParserIdentifier leftHandSideClone = parserProduction.getLeftHandSide().clone(true);
-          final List<Annotation> annotationsClone = parserProduction.cloneAnnotations(true);
+        if (duplicates.containsKey(symbol)) {
+          final ParserSymbol newSymbol = duplicates.get(symbol);
 
-          final Alternatives rightHandSideClone =
-              (Alternatives) parserProduction.getRightHandSide().accept(this, parameter);
+          final ParserIdentifier newIdentifier = new ParserIdentifier(
+              SourcePosition.UNKNOWN, newSymbol.getName(), parserIdentifier.getQuantifier());
+          newIdentifier.setSymbol(newSymbol);
 
-          return new ParserProduction(SourcePosition.UNKNOWN, annotationsClone, leftHandSideClone,
-              rightHandSideClone);
+          return newIdentifier;
+        } else {
+          return parserIdentifier.clone(true);
         }
+      }
 
-        @Override
-        public final Atom visit(final Alternatives alternatives, final Void parameter) {
-          final List<Sequence> transformedSequences = new ArrayList<>();
-          {
-            for (final Sequence sequence : alternatives.getAlternatives()) {
-              final Sequence transformedSequence = (Sequence) sequence.accept(this, parameter);
-              transformedSequences.add(transformedSequence);
-            }
-          }
+    };
 
-          final Alternatives transformedAlternatives = new Alternatives(
-              SourcePosition.UNKNOWN, null, transformedSequences);
+    // the uses of the duplicates are replaced by their representatives
+    for (final Entry entry : grammar.getEntries(0, duplicates.keySet())) {
+      if (!duplicates.containsKey(entry.getSymbol())) {
+        final ParserProduction transformedProduction =
+            (ParserProduction) entry.getProduction().accept(visitor, null);
+        grammar.replaceProduction(entry, transformedProduction);
+      }
+    }
 
-          return transformedAlternatives;
-        }
+    for (final Entry entry : entries) {
+      if (duplicates.containsKey(entry.getSymbol())) {
+        grammar.removeProduction(entry);
+      }
+    }
+  }
 
-        @Override
-        public final Sequence visit(final Sequence sequence, final Void parameter) {
-          final List<Atom> transformedElements = new ArrayList<>();
-          for (final Atom element : sequence) {
-            final Atom transformedElement = (Atom) element.accept(this, parameter);
-            transformedElements.add(transformedElement);
-          }
+  // maps the symbol of each production that is equivalent to a preceding production to the symbol
+  // of the first equivalent production
+  //
+  // two productions are equivalent if their right-hand sides have the same structure and the parser
+  // symbols at corresponding positions are defined by equivalent productions (this includes
+  // mutually recursive productions); the equivalence classes are computed by partition refinement:
+  // initially, the productions are partitioned by the structure of their right-hand sides (ignoring
+  // which parser symbols are used), then classes are split until all parser symbols at
+  // corresponding positions belong to the same class
+  private static final Map<ParserSymbol, ParserSymbol> findDuplicates(
+      final List<ParserProduction> productions) {
+    final int numberOfProductions = productions.size();
 
-          return new Sequence(SourcePosition.UNKNOWN, transformedElements);
-        }
+    final Map<ParserSymbol, Integer> productionIndexes = new HashMap<>();
+    for (int index = 0; index < numberOfProductions; ++index) {
+      productionIndexes.put(productions.get(index).getSymbol(), index);
+    }
 
-        @Override
-        public final LexerIdentifier visit(final LexerIdentifier lexerIdentifier,
-            final Void parameter) {
-          return lexerIdentifier.clone(true);
-        }
+    // the indexes of the productions whose symbols are used in each production (in order)
+    final int[][] references = new int[numberOfProductions][];
 
-        @Override
-        public final ParserIdentifier visit(final ParserIdentifier parserIdentifier,
-            final Void parameter) {
-          final ParserSymbol symbol = parserIdentifier.getSymbol();
-          assert (symbol != null);
+    int[] classes = new int[numberOfProductions];
+    int numberOfClasses;
+    {
+      final Map<Signature, Integer> classIds = new HashMap<>();
 
-          if (duplicates.containsKey(symbol)) {
-            final ParserSymbol newSymbol = duplicates.get(symbol);
+      for (int index = 0; index < numberOfProductions; ++index) {
+        final StructureEncoder encoder = new StructureEncoder(productionIndexes);
+        productions.get(index).getRightHandSide().accept(encoder, null);
 
-            final ParserIdentifier newIdentifier = new ParserIdentifier(
-                SourcePosition.UNKNOWN, newSymbol.getName(), parserIdentifier.getQuantifier());
-            newIdentifier.setSymbol(newSymbol);
+        references[index] = toArray(encoder.references);
+        classes[index] = getClassId(new Signature(toArray(encoder.structure)), classIds);
+      }
 
-            return newIdentifier;
-          } else {
-            return parserIdentifier.clone(true);
-          }
-        }
+      numberOfClasses = classIds.size();
+    }
 
-      }, null);
+    // refine the classes until they are stable
+    while (true) {
+      final Map<Signature, Integer> classIds = new HashMap<>();
+      final int[] refinedClasses = new int[numberOfProductions];
 
-      grammar = transformedGrammar;
-    }
-  }
+      for (int index = 0; index < numberOfProductions; ++index) {
+        final int[] signature = new int[references[index].length + 1];
+        {
+          signature[0] = classes[index];
 
-  private static final Map<ParserSymbol, ParserSymbol> findDuplicates(
-      final List<Production> productions) {
-    final Map<ParserSymbol, ParserSymbol> duplicates = new HashMap<>();
+          for (int position = 0; position < references[index].length; ++position) {
+            signature[position + 1] = classes[references[index][position]];
+          }
+        }
 
-    for (int i = 0; i < productions.size(); ++i) {
-      if (!(productions.get(i) instanceof ParserProduction)) {
-        continue;
+        refinedClasses[index] = getClassId(new Signature(signature), classIds);
       }
 
-      final ParserProduction productionOne = (ParserProduction) productions.get(i);
-      final ParserSymbol symbolOne = productionOne.getSymbol();
+      classes = refinedClasses;
 
-      if (duplicates.containsKey(symbolOne)) {
-        continue;
+      // classes are only split -> no class has been split if the number of classes is unchanged
+      if (classIds.size() == numberOfClasses) {
+        break;
       }
 
-      for (int j = i + 1; j < productions.size(); ++j) {
-        if (!(productions.get(j) instanceof ParserProduction)) {
-          continue;
-        }
+      numberOfClasses = classIds.size();
+    }
+
+    final Map<ParserSymbol, ParserSymbol> duplicates = new HashMap<>();
+    {
+      final ParserSymbol[] firstSymbols = new ParserSymbol[numberOfClasses];
 
-        final ParserProduction productionTwo = (ParserProduction) productions.get(j);
+      for (int index = 0; index < numberOfProductions; ++index) {
+        final ParserSymbol symbol = productions.get(index).getSymbol();
 
-        if (matches(productionOne, productionTwo)) {
-          final ParserSymbol symbolTwo = productionTwo.getSymbol();
-          duplicates.put(symbolTwo, symbolOne);
+        if (firstSymbols[classes[index]] == null) {
+          firstSymbols[classes[index]] = symbol;
+        } else {
+          duplicates.put(symbol, firstSymbols[classes[index]]);
         }
       }
     }
@@ -174,104 +211,142 @@ public final class RemoveDuplicateProductions implements GrammarTransformation {
     return duplicates;
   }
 
-  private static final boolean matches(final ParserProduction productionOne,
-      final ParserProduction productionTwo) {
-    return productionOne.getRightHandSide().accept(new BaseASTVisitor<Expression, Boolean>() {
+  private static final int getClassId(final Signature signature,
+      final Map<Signature, Integer> classIds) {
+    final Integer classId = classIds.get(signature);
 
-      @Override
-      public final Boolean epilog(final ASTNode node, final Expression two) {
-        throw new RuntimeException(
-            String.format("unhandled node of class '%s'", node.getClass().getSimpleName()));
-      }
-      
-      @Override
-      public final Boolean visit(final Alternatives alternativesOne, final Expression two) {
-        if (!(two instanceof Alternatives)) {
-          return false;
-        }
+    if (classId != null) {
+      return classId;
+    }
 
-        final Alternatives alternativesTwo = (Alternatives) two;
+    final int newClassId = classIds.size();
+    classIds.put(signature, newClassId);
 
-        if (alternativesOne.getQuantifier() != alternativesTwo.getQuantifier()) {
-          return false;
-        }
+    return newClassId;
+  }
 
-        final List<Sequence> sequencesOne = alternativesOne.getAlternatives();
-        final List<Sequence> sequencesTwo = alternativesTwo.getAlternatives();
+  private static final int[] toArray(final List<Integer> list) {
+    final int[] array = new int[list.size()];
 
-        if (sequencesOne.size() != sequencesTwo.size()) {
-          return false;
-        }
+    for (int index = 0; index < array.length; ++index) {
+      array[index] = list.get(index);
+    }
 
-        for (int index = 0; index < sequencesOne.size(); ++index) {
-          final Sequence sequenceOne = sequencesOne.get(index);
-          final Sequence sequenceTwo = sequencesTwo.get(index);
+    return array;
+  }
 
-          if (!sequenceOne.accept(this, sequenceTwo)) {
-            return false;
-          }
-        }
+  private static final class Signature {
+
+    private final int[] values;
+    private final int hashCode;
+
+    public Signature(final int[] values) {
+      this.values = values;
+      this.hashCode = Arrays.hashCode(values);
+    }
+
+    @Override
+    public final int hashCode() {
+      return this.hashCode;
+    }
 
-        return true;
+    @Override
+    public final boolean equals(final Object other) {
+      if (!(other instanceof Signature)) {
+        return false;
       }
-      
-      @Override
-      public final Boolean visit(final Sequence sequenceOne, final Expression two) {
-        if (!(two instanceof Sequence)) {
-          return false;
-        }
 
-        final Sequence sequenceTwo = (Sequence) two;
+      final Signature otherSignature = (Signature) other;
+      return this.hashCode == otherSignature.hashCode
+          && Arrays.equals(this.values, otherSignature.values);
+    }
 
-        final List<Atom> elementsOne = sequenceOne.getElements();
-        final List<Atom> elementsTwo = sequenceTwo.getElements();
+  }
 
-        if (elementsOne.size() != elementsTwo.size()) {
-          return false;
-        }
+  // encodes the structure of a right-hand side as a sequence of integers; parser symbols are only
+  // encoded as placeholders (the used productions are collected separately as references)
+  private static final class StructureEncoder extends BaseASTVisitor<Void, Void> {
 
-        for (int index = 0; index < elementsOne.size(); ++index) {
-          final Atom elementOne = elementsOne.get(index);
-          final Atom elementTwo = elementsTwo.get(index);
+    private static final int ALTERNATIVES = 0;
+    private static final int SEQUENCE = 1;
+    private static final int PARSER_IDENTIFIER = 2;
+    private static final int LEXER_IDENTIFIER = 3;
 
-          if (!elementOne.accept(this, elementTwo)) {
-            return false;
-          }
-        }
+    private final Map<ParserSymbol, Integer> productionIndexes;
 
-        return true;
-      }
-      
-      @Override
-      public final Boolean visit(final ParserIdentifier identifierOne, final Expression two) {
-        if (!(two instanceof ParserIdentifier)) {
-          return false;
-        }
+    public final List<Integer> structure = new ArrayList<>();
+    public final List<Integer> references = new ArrayList<>();
+
+    public StructureEncoder(final Map<ParserSymbol, Integer> productionIndexes) {
+      this.productionIndexes = productionIndexes;
+    }
 
-        final ParserIdentifier identifierTwo = (ParserIdentifier) two;
-        return matches(identifierOne, identifierTwo);
+    @Override
+    protected final Void epilog(final ASTNode node, final Void parameter) {
+      throw new RuntimeException(
+          String.format("unhandled node of class '%s'", node.getClass().getSimpleName()));
+    }
+
+    @Override
+    public final Void visit(final Alternatives alternatives, final Void parameter) {
+      this.structure.add(ALTERNATIVES);
+      this.structure.add(alternatives.getNumberOfAlternatives());
+      encodeQuantifier(alternatives.getQuantifier());
+
+      for (final Sequence sequence : alternatives) {
+        sequence.accept(this, parameter);
       }
 
-      @Override
-      public final Boolean visit(final LexerIdentifier identifierOne, final Expression two) {
-        if (!(two instanceof LexerIdentifier)) {
-          return false;
-        }
+      return null;
+    }
 
-        final LexerIdentifier identifierTwo = (LexerIdentifier) two;
-        return matches(identifierOne, identifierTwo);
+    @Override
+    public final Void visit(final Sequence sequence, final Void parameter) {
+      this.structure.add(SEQUENCE);
+      this.structure.add(sequence.getWeight());
+      this.structure.add(sequence.getNumberOfElements());
+
+      for (final Atom element : sequence) {
+        element.accept(this, parameter);
       }
 
-      private final boolean matches(final Identifier<?> identifierOne,
-          final Identifier<?> identifierTwo) {
-        assert (identifierOne.getSymbol() != null);
-        assert (identifierTwo.getSymbol() != null);
+      return null;
+    }
+
+    @Override
+    public final Void visit(final ParserIdentifier parserIdentifier, final Void parameter) {
+      final ParserSymbol symbol = parserIdentifier.getSymbol();
+      assert (symbol != null && this.productionIndexes.containsKey(symbol));
+
+      this.structure.add(PARSER_IDENTIFIER);
+      encodeQuantifier(parserIdentifier.getQuantifier());
+
+      this.references.add(this.productionIndexes.get(symbol));
+
+      return null;
+    }
+
+    @Override
+    public final Void visit(final LexerIdentifier lexerIdentifier, final Void parameter) {
+      assert (lexerIdentifier.getSymbol() != null);
+
+      this.structure.add(LEXER_IDENTIFIER);
+      this.structure.add(lexerIdentifier.getSymbol().getId());
+      encodeQuantifier(lexerIdentifier.getQuantifier());
 
-        return (identifierOne.getQuantifier() == identifierTwo.getQuantifier())
-            && (identifierOne.getSymbol() == identifierTwo.getSymbol());
+      return null;
+    }
+
+    private final void encodeQuantifier(final Quantifier quantifier) {
+      if (quantifier == null) {
+        this.structure.add(-1);
+        this.structure.add(0);
+      } else {
+        this.structure.add(quantifier.getKind().ordinal());
+        this.structure.add(quantifier.getWeight());
       }
+    }
 
-    }, productionTwo.getRightHandSide());
   }
 
 }
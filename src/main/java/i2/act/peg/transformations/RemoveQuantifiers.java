@@ -2,10 +2,10 @@ package i2.act.peg.transformations;
 
 import i2.act.peg.ast.*;
 import i2.act.peg.ast.visitors.BaseASTVisitor;
-import i2.act.peg.ast.visitors.NameAnalysis;
 import i2.act.peg.ast.visitors.PrettyPrinter;
 import i2.act.peg.info.SourcePosition;
 import i2.act.peg.parser.PEGParser;
+import i2.act.peg.transformations.WorkingGrammar.Entry;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -14,19 +14,17 @@ import java.util.Set;
 
 // TODO left/right recursion?
 
-public final class RemoveQuantifiers implements GrammarTransformation {
+public final class RemoveQuantifiers implements InPlaceGrammarTransformation {
 
   public static final Grammar transform(final Grammar originalGrammar) {
     return (new RemoveQuantifiers()).apply(originalGrammar);
   }
 
   @Override
-  public final Grammar apply(final Grammar originalGrammar) {
-    final Grammar transformedGrammar = new Grammar(SourcePosition.UNKNOWN);
+  public final void rewrite(final WorkingGrammar grammar) {
+    final List<ParserProduction> helperProductions = new ArrayList<>();
 
-    originalGrammar.accept(new BaseASTVisitor<Void, ASTNode>() {
-
-      private final List<Production> helperProductions = new ArrayList<>();
+    final BaseASTVisitor<Void, ASTNode> visitor = new BaseASTVisitor<Void, ASTNode>() {
 
       private final Set<String> optional = new HashSet<>();
       private final Set<String> many = new HashSet<>();
@@ -41,30 +39,6 @@ public final class RemoveQuantifiers implements GrammarTransformation {
             String.format("unhandled node of class '%s'", node.getClass().getSimpleName()));
       }
 
-      @Override
-      public final Grammar visit(final Grammar grammar, final Void parameter) {
-        for (final Production production : grammar) {
-          final Production transformedProduction = (Production) production.accept(this, parameter);
-          transformedGrammar.addProduction(transformedProduction);
-
-          // add helper productions
-          for (final Production helperProduction : this.helperProductions) {
-            transformedGrammar.addProduction(helperProduction);
-          }
-          this.helperProductions.clear();
-        }
-
-        return transformedGrammar;
-      }
-
-      @Override
-      public final LexerProduction visit(final LexerProduction lexerProduction,
-          final Void parameter) {
-        // we do not have to do anything for lexer productions
-        final LexerProduction lexerProductionClone = lexerProduction.clone(false);
-        return lexerProductionClone;
-      }
-
       @Override
       public final ParserProduction visit(final ParserProduction parserProduction,
           final Void parameter) {
@@ -140,8 +114,9 @@ public final class RemoveQuantifiers implements GrammarTransformation {
             }
           }
 
-          final Production production = PEGParser.parseProduction(productionText);
-          this.helperProductions.add(production);
+          final ParserProduction production =
+              (ParserProduction) PEGParser.parseProduction(productionText);
+          helperProductions.add(production);
 
           final ParserIdentifier quantifierFreeIdentifier =
               new ParserIdentifier(SourcePosition.UNKNOWN, productionName);
@@ -160,7 +135,11 @@ public final class RemoveQuantifiers implements GrammarTransformation {
           transformedElements.add(transformedElement);
         }
 
-        return new Sequence(SourcePosition.UNKNOWN, transformedElements);
+        final Sequence transformedSequence =
+            new Sequence(SourcePosition.UNKNOWN, transformedElements);
+        transformedSequence.setWeight(sequence.getWeight());
+
+        return transformedSequence;
       }
 
       @Override
@@ -238,8 +217,9 @@ public final class RemoveQuantifiers implements GrammarTransformation {
         }
 
         if (!lookupSet.contains(transformedName)) {
-          final Production production = PEGParser.parseProduction(productionText);
-          this.helperProductions.add(production);
+          final ParserProduction production =
+              (ParserProduction) PEGParser.parseProduction(productionText);
+          helperProductions.add(production);
 
           lookupSet.add(transformedName);
         }
@@ -247,13 +227,22 @@ public final class RemoveQuantifiers implements GrammarTransformation {
         return new ParserIdentifier(SourcePosition.UNKNOWN, transformedName);
       }
 
-    }, null);
+    };
 
-    // perform name analysis on transformed grammar to annotate all identifiers with symbols
-    // TODO should we keep the symbols of the original grammar?
-    NameAnalysis.analyze(transformedGrammar);
+    // only productions that contain quantifiers are rewritten
+    for (final Entry entry : grammar.getEntries(WorkingGrammar.QUANTIFIED_ALTERNATIVES
+        | WorkingGrammar.QUANTIFIED_IDENTIFIERS)) {
+      final ParserProduction transformedProduction =
+          (ParserProduction) entry.getProduction().accept(visitor, null);
+      grammar.replaceProduction(entry, transformedProduction);
 
-    return transformedGrammar;
+      // add helper productions
+      Entry previousEntry = entry;
+      for (final ParserProduction helperProduction : helperProductions) {
+        previousEntry = grammar.insertProductionAfter(previousEntry, helperProduction);
+      }
+      helperProductions.clear();
+    }
   }
 
 }
@@ -2,25 +2,23 @@ package i2.act.peg.transformations;
 
 import i2.act.peg.ast.*;
 import i2.act.peg.ast.visitors.BaseASTVisitor;
-import i2.act.peg.ast.visitors.NameAnalysis;
 import i2.act.peg.info.SourcePosition;
+import i2.act.peg.transformations.WorkingGrammar.Entry;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public final class RemoveSubAlternatives implements GrammarTransformation {
+public final class RemoveSubAlternatives implements InPlaceGrammarTransformation {
 
   public static final Grammar transform(final Grammar originalGrammar) {
     return (new RemoveSubAlternatives()).apply(originalGrammar);
   }
 
   @Override
-  public final Grammar apply(final Grammar originalGrammar) {
-    final Grammar transformedGrammar = new Grammar(SourcePosition.UNKNOWN);
+  public final void rewrite(final WorkingGrammar grammar) {
+    final List<ParserProduction> helperProductions = new ArrayList<>();
 
-    originalGrammar.accept(new BaseASTVisitor<Boolean, ASTNode>() {
-
-      private final List<Production> helperProductions = new ArrayList<>();
+    final BaseASTVisitor<Boolean, ASTNode> visitor = new BaseASTVisitor<Boolean, ASTNode>() {
 
       private String currentProductionName = null;
       private int currentProductionCounter = 0;
@@ -31,29 +29,6 @@ public final class RemoveSubAlternatives implements GrammarTransformation {
             String.format("unhandled node of class '%s'", node.getClass().getSimpleName()));
       }
 
-      @Override
-      public final Grammar visit(final Grammar grammar, final Boolean topLevelAlternative) {
-        for (final Production production : grammar) {
-          final Production transformedProduction = (Production) production.accept(this, null);
-          transformedGrammar.addProduction(transformedProduction);
-
-          // add helper productions
-          for (final Production helperProduction : this.helperProductions) {
-            transformedGrammar.addProduction(helperProduction);
-          }
-          this.helperProductions.clear();
-        }
-
-        return transformedGrammar;
-      }
-
-      @Override
-      public final LexerProduction visit(final LexerProduction lexerProduction,
-          final Boolean topLevelAlternative) {
-        // we do not have to do anything for lexer productions
-        return lexerProduction.clone(false);
-      }
-
       @Override
       public final ParserProduction visit(final ParserProduction parserProduction,
           final Boolean topLevelAlternative) {
@@ -101,7 +76,7 @@ public final class RemoveSubAlternatives implements GrammarTransformation {
                 SourcePosition.UNKNOWN, new ArrayList<Annotation>(), altProductionIdentifier,
                 transformedAlternatives);
 
-            this.helperProductions.add(altProduction);
+            helperProductions.add(altProduction);
           }
 
           // replacement for sub-alternatives
@@ -123,7 +98,11 @@ public final class RemoveSubAlternatives implements GrammarTransformation {
           transformedElements.add(transformedElement);
         }
 
-        return new Sequence(SourcePosition.UNKNOWN, transformedElements);
+        final Sequence transformedSequence =
+            new Sequence(SourcePosition.UNKNOWN, transformedElements);
+        transformedSequence.setWeight(sequence.getWeight());
+
+        return transformedSequence;
       }
 
       @Override
@@ -138,13 +117,21 @@ public final class RemoveSubAlternatives implements GrammarTransformation {
         return parserIdentifier.clone(false);
       }
 
-    }, null);
+    };
 
-    // perform name analysis on transformed grammar to annotate all identifiers with symbols
-    // TODO should we keep the symbols of the original grammar?
-    NameAnalysis.analyze(transformedGrammar);
+    // productions without sub-alternatives are left as they are
+    for (final Entry entry : grammar.getEntries(WorkingGrammar.SUB_ALTERNATIVES)) {
+      final ParserProduction transformedProduction =
+          (ParserProduction) entry.getProduction().accept(visitor, null);
+      grammar.replaceProduction(entry, transformedProduction);
 
-    return transformedGrammar;
+      // add helper productions
+      Entry previousEntry = entry;
+      for (final ParserProduction helperProduction : helperProductions) {
+        previousEntry = grammar.insertProductionAfter(previousEntry, helperProduction);
+      }
+      helperProductions.clear();
+    }
   }
 
 }
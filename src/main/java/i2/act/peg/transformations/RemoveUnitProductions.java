@@ -2,32 +2,30 @@ package i2.act.peg.transformations;
 
 import i2.act.peg.ast.*;
 import i2.act.peg.ast.visitors.BaseASTVisitor;
-import i2.act.peg.ast.visitors.NameAnalysis;
 import i2.act.peg.info.SourcePosition;
 import i2.act.peg.symbols.ParserSymbol;
+import i2.act.peg.transformations.WorkingGrammar.Entry;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public final class RemoveUnitProductions implements GrammarTransformation {
+public final class RemoveUnitProductions implements InPlaceGrammarTransformation {
 
   public static final Grammar transform(final Grammar originalGrammar) {
     return (new RemoveUnitProductions()).apply(originalGrammar);
   }
 
   @Override
-  public final Grammar apply(final Grammar originalGrammar) {
-    final Map<ParserSymbol, Sequence> unitProductions = gatherUnitProductions(originalGrammar);
+  public final void rewrite(final WorkingGrammar grammar) {
+    final Map<ParserSymbol, Sequence> unitProductions = gatherUnitProductions(grammar);
 
     if (unitProductions.isEmpty()) {
-      return originalGrammar;
+      return;
     }
 
-    final Grammar transformedGrammar = new Grammar(SourcePosition.UNKNOWN);
-
-    originalGrammar.accept(new BaseASTVisitor<Void, ASTNode>() {
+    final BaseASTVisitor<Void, ASTNode> visitor = new BaseASTVisitor<Void, ASTNode>() {
 
       @Override
       public final ASTNode epilog(final ASTNode node, final Void parameter) {
@@ -35,24 +33,6 @@ public final class RemoveUnitProductions implements GrammarTransformation {
             String.format("unhandled node of class '%s'", node.getClass().getSimpleName()));
       }
 
-      @Override
-      public final Grammar visit(final Grammar grammar, final Void parameter) {
-        for (final Production production : grammar) {
-          final Production transformedProduction = (Production) production.accept(this, parameter);
-          transformedGrammar.addProduction(transformedProduction);
-        }
-
-        return transformedGrammar;
-      }
-
-      @Override
-      public final LexerProduction visit(final LexerProduction lexerProduction,
-          final Void parameter) {
-        // we do not have to do anything for lexer productions
-        final LexerProduction lexerProductionClone = lexerProduction.clone(false);
-        return lexerProductionClone;
-      }
-
       @Override
       public final ParserProduction visit(final ParserProduction parserProduction,
           final Void parameter) {
@@ -77,7 +57,7 @@ public final class RemoveUnitProductions implements GrammarTransformation {
         }
 
         return new Alternatives(
-            SourcePosition.UNKNOWN, null, transformedSequences);
+            SourcePosition.UNKNOWN, alternatives.getQuantifier(), transformedSequences);
       }
 
       @Override
@@ -99,7 +79,11 @@ public final class RemoveUnitProductions implements GrammarTransformation {
           }
         }
 
-        return new Sequence(SourcePosition.UNKNOWN, transformedElements);
+        final Sequence transformedSequence =
+            new Sequence(SourcePosition.UNKNOWN, transformedElements);
+        transformedSequence.setWeight(sequence.getWeight());
+
+        return transformedSequence;
       }
 
       @Override
@@ -114,27 +98,26 @@ public final class RemoveUnitProductions implements GrammarTransformation {
         return parserIdentifier.clone(false);
       }
 
-    }, null);
+    };
 
-    // perform name analysis on transformed grammar to annotate all identifiers with symbols
-    // TODO should we keep the symbols of the original grammar?
-    NameAnalysis.analyze(transformedGrammar);
-
-    return transformedGrammar;
+    // unit productions are only inlined into the productions that use them
+    for (final Entry entry : grammar.getEntries(0, unitProductions.keySet())) {
+      final ParserProduction transformedProduction =
+          (ParserProduction) entry.getProduction().accept(visitor, null);
+      grammar.replaceProduction(entry, transformedProduction);
+    }
   }
 
-  private final Map<ParserSymbol, Sequence> gatherUnitProductions(final Grammar originalGrammar) {
+  private final Map<ParserSymbol, Sequence> gatherUnitProductions(final WorkingGrammar grammar) {
     final Map<ParserSymbol, Sequence> unitProductions = new HashMap<>();
 
-    for (final Production production : originalGrammar) {
-      if (production instanceof ParserProduction) {
-        final ParserProduction parserProduction = (ParserProduction) production;
-        final Alternatives rightHandSide = parserProduction.getRightHandSide();
+    for (final Entry entry : grammar.getEntries(WorkingGrammar.SINGLE_ALTERNATIVE)) {
+      final ParserProduction parserProduction = entry.getProduction();
+      final Alternatives rightHandSide = parserProduction.getRightHandSide();
 
-        if (isUnit(rightHandSide)) {
-          final ParserSymbol parserSymbol = parserProduction.getSymbol();
-          unitProductions.put(parserSymbol, rightHandSide.getAlternative(0));
-        }
+      if (isUnit(rightHandSide)) {
+        final ParserSymbol parserSymbol = parserProduction.getSymbol();
+        unitProductions.put(parserSymbol, rightHandSide.getAlternative(0));
       }
     }
 
@@ -2,21 +2,21 @@ package i2.act.peg.transformations;
 
 import i2.act.peg.ast.Grammar;
 
-public final class ToBNF implements GrammarTransformation {
+public final class ToBNF implements InPlaceGrammarTransformation {
 
   public static final Grammar transform(final Grammar originalGrammar) {
     return (new ToBNF()).apply(originalGrammar);
   }
 
   @Override
-  public final Grammar apply(final Grammar originalGrammar) {
-    final Grammar transformedGrammar =
-        RemoveDuplicateProductions.transform(
-        RemoveSubAlternatives.transform(
-        HoistSubAlternatives.transform(
-        RemoveQuantifiers.transform(originalGrammar))));
+  public final void rewrite(final WorkingGrammar grammar) {
+    final TransformationPipeline pipeline = new TransformationPipeline(
+        new RemoveQuantifiers(),
+        new HoistSubAlternatives(),
+        new RemoveSubAlternatives(),
+        new RemoveDuplicateProductions());
 
-    return transformedGrammar;
+    pipeline.rewrite(grammar);
   }
 
 }
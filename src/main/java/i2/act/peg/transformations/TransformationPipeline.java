@@ -0,0 +1,42 @@
+package i2.act.peg.transformations;
+
+import i2.act.peg.ast.Grammar;
+
+import java.util.Arrays;
+import java.util.List;
+
+// applies a sequence of transformations to a single working grammar, i.e., the grammar is copied
+// at most once and each in-place transformation only rewrites the productions it changes;
+// transformations that do not work in place are applied to the materialized grammar
+public final class TransformationPipeline implements InPlaceGrammarTransformation {
+
+  private final List<GrammarTransformation> transformations;
+
+  public TransformationPipeline(final GrammarTransformation... transformations) {
+    this(Arrays.asList(transformations));
+  }
+
+  public TransformationPipeline(final List<GrammarTransformation> transformations) {
+    this.transformations = transformations;
+  }
+
+  @Override
+  public final Grammar apply(final Grammar originalGrammar) {
+    final WorkingGrammar grammar = new WorkingGrammar(originalGrammar);
+    rewrite(grammar);
+
+    return grammar.toGrammar();
+  }
+
+  @Override
+  public final void rewrite(final WorkingGrammar grammar) {
+    for (final GrammarTransformation transformation : this.transformations) {
+      if (transformation instanceof InPlaceGrammarTransformation) {
+        ((InPlaceGrammarTransformation) transformation).rewrite(grammar);
+      } else {
+        grammar.apply(transformation);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,576 @@
+package i2.act.peg.transformations;
+
+import i2.act.peg.ast.*;
+import i2.act.peg.ast.visitors.ImplicitQuantifierSymbolsVisitor;
+import i2.act.peg.ast.visitors.NameAnalysis;
+import i2.act.peg.ast.visitors.NameAnalysis.SymbolTable;
+import i2.act.peg.ast.visitors.SymbolIdAssignment;
+import i2.act.peg.info.SourcePosition;
+import i2.act.peg.symbols.LexerSymbol;
+import i2.act.peg.symbols.ParserSymbol;
+import i2.act.peg.symbols.Symbol;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// a mutable copy of a grammar that the transformations of a pipeline rewrite in place
+//
+// the productions are kept in a linked list, such that productions can be replaced, inserted and
+// removed without copying the remaining grammar; changed productions are re-analyzed lazily (i.e.,
+// before the next query): only their identifiers are resolved and only their entries of the
+// indexes (structural properties and users of symbols) are updated
+//
+// the grammar is only copied once the first in-place transformation accesses it; if the
+// productions are not changed, 'toGrammar()' returns the original grammar
+public final class WorkingGrammar {
+
+  // structural properties of the right-hand side of a parser production
+  public static final int QUANTIFIED_ALTERNATIVES = 1 << 0;
+  public static final int WEIGHTED_SEQUENCES = 1 << 1;
+  public static final int QUANTIFIED_IDENTIFIERS = 1 << 2;
+  public static final int SUB_ALTERNATIVES = 1 << 3;
+  public static final int HOISTABLE_SUB_ALTERNATIVES = 1 << 4;
+  public static final int SINGLE_ALTERNATIVE = 1 << 5;
+
+  private static final int NUMBER_OF_PROPERTIES = 6;
+
+  // distance between the order keys of neighboring entries after (re-)numbering
+  private static final long ORDER_SPACING = 1L << 40;
+
+  public static final class Entry {
+
+    private Production production;
+
+    private Entry previous;
+    private Entry next;
+
+    // entries are ordered by their keys like they are ordered in the list
+    private long order;
+
+    private boolean dirty;
+    private boolean removed;
+
+    private int properties;
+    private List<ParserSymbol> references = Collections.emptyList();
+
+    private Entry(final Production production) {
+      this.production = production;
+    }
+
+    public final ParserProduction getProduction() {
+      assert (this.production instanceof ParserProduction);
+      return (ParserProduction) this.production;
+    }
+
+    public final ParserSymbol getSymbol() {
+      return getProduction().getSymbol();
+    }
+
+    public final boolean hasProperty(final int properties) {
+      return (this.properties & properties) != 0;
+    }
+
+    // the parser symbols used in the right-hand side of the production (in order of their usages,
+    // i.e., a symbol may occur more than once)
+    public final List<ParserSymbol> getReferences() {
+      return Collections.unmodifiableList(this.references);
+    }
+
+  }
+
+  // ===============================================================================================
+
+  // the grammar as it has been passed in or as it has been materialized last
+  private Grammar grammar;
+
+  // 'grammar' reflects the current state of the working grammar
+  private boolean upToDate;
+
+  // 'grammar' may be modified (i.e., it has not been passed in from outside)
+  private boolean owned;
+
+  // the following fields are only set once the grammar has been imported
+
+  private Entry head;
+  private Entry tail;
+
+  private SymbolTable symbolTable;
+  private Map<ParserSymbol, Entry> entries;
+
+  // the id for the next new symbol (see 'SymbolIdAssignment')
+  private int nextSymbolId;
+
+  private List<Set<Entry>> entriesWithProperty;
+  private Map<ParserSymbol, Set<Entry>> users;
+
+  private List<Entry> dirtyEntries;
+
+  public WorkingGrammar(final Grammar grammar) {
+    this.grammar = grammar;
+    this.upToDate = true;
+    this.owned = false;
+  }
+
+  public final Grammar toGrammar() {
+    if (!this.upToDate) {
+      resolve();
+
+      final List<Production> productions = new ArrayList<>();
+      for (Entry entry = this.head; entry != null; entry = entry.next) {
+        productions.add(entry.production);
+      }
+
+      this.grammar = new Grammar(SourcePosition.UNKNOWN, productions);
+      this.upToDate = true;
+      this.owned = true;
+    }
+
+    return this.grammar;
+  }
+
+  // applies a transformation that does not work in place: the transformation gets the
+  // materialized grammar and its result replaces the productions of the working grammar
+  public final void apply(final GrammarTransformation transformation) {
+    final Grammar originalGrammar = toGrammar();
+    final Grammar transformedGrammar = transformation.apply(originalGrammar);
+
+    if (transformedGrammar != originalGrammar) {
+      this.grammar = transformedGrammar;
+      this.upToDate = true;
+      this.owned = true;
+
+      // the grammar is re-imported on the next access
+      this.head = null;
+      this.tail = null;
+      this.symbolTable = null;
+    }
+  }
+
+  // ===============================================================================================
+  // queries
+
+  public final ParserProduction getRootProduction() {
+    ensureResolved();
+
+    for (Entry entry = this.head; entry != null; entry = entry.next) {
+      if (entry.production instanceof ParserProduction) {
+        return (ParserProduction) entry.production;
+      }
+    }
+
+    return null;
+  }
+
+  public final Entry getEntry(final ParserSymbol symbol) {
+    ensureResolved();
+    return this.entries.get(symbol);
+  }
+
+  // returns the entries of all parser productions (in grammar order)
+  public final List<Entry> getEntries() {
+    ensureResolved();
+
+    final List<Entry> parserEntries = new ArrayList<>();
+    for (Entry entry = this.head; entry != null; entry = entry.next) {
+      if (entry.production instanceof ParserProduction) {
+        parserEntries.add(entry);
+      }
+    }
+
+    return parserEntries;
+  }
+
+  // returns the entries of the parser productions that have at least one of the given properties
+  // (in grammar order)
+  public final List<Entry> getEntries(final int properties) {
+    return getEntries(properties, Collections.<ParserSymbol>emptySet());
+  }
+
+  // returns the entries of the parser productions that have at least one of the given properties or
+  // that use at least one of the given symbols (in grammar order)
+  public final List<Entry> getEntries(final int properties,
+      final Collection<ParserSymbol> usedSymbols) {
+    ensureResolved();
+
+    final Set<Entry> selectedEntries = new HashSet<>();
+    {
+      for (int property = 0; property < NUMBER_OF_PROPERTIES; ++property) {
+        if ((properties & (1 << property)) != 0) {
+          selectedEntries.addAll(this.entriesWithProperty.get(property));
+        }
+      }
+
+      for (final ParserSymbol usedSymbol : usedSymbols) {
+        final Set<Entry> users = getUsers().get(usedSymbol);
+
+        if (users != null) {
+          selectedEntries.addAll(users);
+        }
+      }
+    }
+
+    final List<Entry> sortedEntries = new ArrayList<>(selectedEntries);
+    sortedEntries.sort(Comparator.comparingLong(entry -> entry.order));
+
+    return sortedEntries;
+  }
+
+  // ===============================================================================================
+  // modifications
+
+  // replaces the production of the given entry; the new production keeps the symbol of the old one
+  public final void replaceProduction(final Entry entry, final ParserProduction production) {
+    ensureImported();
+    assert (!entry.removed);
+
+    final ParserSymbol symbol = entry.getSymbol();
+    assert (symbol.getName().equals(production.getLeftHandSide().getName()));
+
+    production.getLeftHandSide().setSymbol(symbol);
+    symbol.setProduction(production);
+
+    entry.production = production;
+    markDirty(entry);
+  }
+
+  // inserts a new production after the given entry and returns the entry of the new production
+  public final Entry insertProductionAfter(final Entry entry, final ParserProduction production) {
+    ensureImported();
+    assert (!entry.removed);
+
+    final Entry newEntry = new Entry(production);
+    {
+      if (entry.next == null) {
+        newEntry.order = entry.order + ORDER_SPACING;
+      } else {
+        if (entry.next.order - entry.order < 2) {
+          renumber();
+        }
+
+        newEntry.order = entry.order + (entry.next.order - entry.order) / 2;
+      }
+
+      newEntry.previous = entry;
+      newEntry.next = entry.next;
+
+      if (entry.next == null) {
+        this.tail = newEntry;
+      } else {
+        entry.next.previous = newEntry;
+      }
+
+      entry.next = newEntry;
+    }
+
+    // the symbol of the production is created when the working grammar is resolved
+    production.getLeftHandSide().setSymbol(null);
+    markDirty(newEntry);
+
+    return newEntry;
+  }
+
+  public final void removeProduction(final Entry entry) {
+    ensureImported();
+    assert (!entry.removed);
+
+    if (entry.previous == null) {
+      this.head = entry.next;
+    } else {
+      entry.previous.next = entry.next;
+    }
+
+    if (entry.next == null) {
+      this.tail = entry.previous;
+    } else {
+      entry.next.previous = entry.previous;
+    }
+
+    entry.removed = true;
+    this.upToDate = false;
+
+    final ParserSymbol symbol = entry.getSymbol();
+    if (symbol != null) {
+      this.symbolTable.removeSymbol(symbol.getName());
+      this.entries.remove(symbol);
+    }
+
+    unindex(entry);
+  }
+
+  private final void markDirty(final Entry entry) {
+    if (!entry.dirty) {
+      entry.dirty = true;
+      this.dirtyEntries.add(entry);
+    }
+
+    this.upToDate = false;
+  }
+
+  private final void renumber() {
+    long order = 0;
+    for (Entry entry = this.head; entry != null; entry = entry.next) {
+      entry.order = order;
+      order += ORDER_SPACING;
+    }
+  }
+
+  // ===============================================================================================
+  // import and incremental analysis
+
+  private final void ensureResolved() {
+    ensureImported();
+    resolve();
+  }
+
+  private final void ensureImported() {
+    if (this.symbolTable != null) {
+      return;
+    }
+
+    final Grammar grammar = (this.owned) ? (this.grammar) : (this.grammar.clone(false));
+    this.symbolTable = NameAnalysis.analyze(grammar);
+    this.nextSymbolId = SymbolIdAssignment.assignIds(grammar);
+
+    this.head = null;
+    this.tail = null;
+    this.entries = new HashMap<>();
+
+    this.entriesWithProperty = new ArrayList<>();
+    for (int property = 0; property < NUMBER_OF_PROPERTIES; ++property) {
+      this.entriesWithProperty.add(new HashSet<>());
+    }
+
+    this.users = null;
+    this.dirtyEntries = new ArrayList<>();
+
+    for (final Production production : grammar) {
+      final Entry entry = new Entry(production);
+
+      if (this.tail == null) {
+        this.head = entry;
+      } else {
+        this.tail.next = entry;
+        entry.previous = this.tail;
+      }
+
+      this.tail = entry;
+
+      if (production instanceof ParserProduction) {
+        this.entries.put(entry.getSymbol(), entry);
+        index(entry, false);
+      }
+    }
+
+    renumber();
+  }
+
+  // re-analyzes the changed productions
+  private final void resolve() {
+    if (this.dirtyEntries.isEmpty()) {
+      return;
+    }
+
+    // declare the symbols of new productions before resolving any usage
+    for (final Entry entry : this.dirtyEntries) {
+      if (!entry.removed && entry.getSymbol() == null) {
+        final ParserProduction production = entry.getProduction();
+        final ParserSymbol symbol =
+            new ParserSymbol(production.getLeftHandSide().getName(), production);
+
+        this.symbolTable.putSymbol(symbol);
+        production.getLeftHandSide().setSymbol(symbol);
+
+        this.entries.put(symbol, entry);
+      }
+    }
+
+    ImplicitQuantifierSymbolsVisitor implicitQuantifierSymbolsVisitor = null;
+
+    for (final Entry entry : this.dirtyEntries) {
+      entry.dirty = false;
+
+      if (!entry.removed) {
+        index(entry, true);
+
+        if (entry.hasProperty(QUANTIFIED_ALTERNATIVES)) {
+          if (implicitQuantifierSymbolsVisitor == null) {
+            implicitQuantifierSymbolsVisitor = new ImplicitQuantifierSymbolsVisitor();
+          }
+
+          entry.getProduction().accept(implicitQuantifierSymbolsVisitor, null);
+        }
+
+        this.nextSymbolId =
+            SymbolIdAssignment.assignIds(entry.getProduction(), this.nextSymbolId);
+      }
+    }
+
+    this.dirtyEntries.clear();
+  }
+
+  // computes the properties and references of the production and updates the indexes accordingly;
+  // if 'resolve' is set, identifiers without a symbol are resolved on the way
+  private final void index(final Entry entry, final boolean resolve) {
+    final Alternatives rightHandSide = entry.getProduction().getRightHandSide();
+
+    int properties = 0;
+    final List<ParserSymbol> references = new ArrayList<>();
+
+    if (rightHandSide.getNumberOfAlternatives() == 1) {
+      properties |= SINGLE_ALTERNATIVE;
+    }
+
+    // the alternatives are traversed iteratively since they may be nested deeply
+    final Deque<Alternatives> worklist = new ArrayDeque<>();
+
+    worklist.add(rightHandSide);
+
+    while (!worklist.isEmpty()) {
+      final Alternatives alternatives = worklist.remove();
+
+      if (alternatives.hasQuantifier()) {
+        properties |= QUANTIFIED_ALTERNATIVES;
+      }
+
+      if (alternatives != rightHandSide) {
+        properties |= SUB_ALTERNATIVES;
+
+        if (!alternatives.hasQuantifier() && alternatives.getNumberOfAlternatives() == 1) {
+          properties |= HOISTABLE_SUB_ALTERNATIVES;
+        }
+      }
+
+      for (final Sequence sequence : alternatives) {
+        if (sequence.getWeight() != 1) {
+          properties |= WEIGHTED_SEQUENCES;
+        }
+
+        for (final Atom element : sequence) {
+          if (element instanceof Alternatives) {
+            worklist.add((Alternatives) element);
+          } else {
+            assert (element instanceof Identifier<?>);
+
+            if (element.hasQuantifier()) {
+              properties |= QUANTIFIED_IDENTIFIERS;
+            }
+
+            if (resolve) {
+              resolve((Identifier<?>) element);
+            }
+
+            if (element instanceof ParserIdentifier) {
+              references.add(((ParserIdentifier) element).getSymbol());
+            }
+          }
+        }
+      }
+    }
+
+    // only the changed properties are updated
+    final int changedProperties = entry.properties ^ properties;
+    for (int property = 0; property < NUMBER_OF_PROPERTIES; ++property) {
+      if ((changedProperties & (1 << property)) != 0) {
+        if ((properties & (1 << property)) != 0) {
+          this.entriesWithProperty.get(property).add(entry);
+        } else {
+          this.entriesWithProperty.get(property).remove(entry);
+        }
+      }
+    }
+
+    if (this.users != null) {
+      removeUser(entry);
+    }
+
+    entry.properties = properties;
+    entry.references = references;
+
+    if (this.users != null) {
+      addUser(entry);
+    }
+  }
+
+  private final void resolve(final Identifier<?> identifier) {
+    if (identifier.getSymbol() != null) {
+      return;
+    }
+
+    final Symbol<?> symbol =
+        this.symbolTable.lookupSymbol(identifier.getName(), identifier.getPosition());
+
+    if (identifier instanceof ParserIdentifier) {
+      assert (symbol instanceof ParserSymbol) : symbol;
+      ((ParserIdentifier) identifier).setSymbol((ParserSymbol) symbol);
+    } else {
+      assert (identifier instanceof LexerIdentifier);
+      assert (symbol instanceof LexerSymbol) : symbol;
+      ((LexerIdentifier) identifier).setSymbol((LexerSymbol) symbol);
+    }
+  }
+
+  private final void unindex(final Entry entry) {
+    for (int property = 0; property < NUMBER_OF_PROPERTIES; ++property) {
+      if ((entry.properties & (1 << property)) != 0) {
+        this.entriesWithProperty.get(property).remove(entry);
+      }
+    }
+
+    if (this.users != null) {
+      removeUser(entry);
+    }
+
+    entry.properties = 0;
+    entry.references = Collections.emptyList();
+  }
+
+  // the users of the symbols are only indexed once they are queried for the first time
+  private final Map<ParserSymbol, Set<Entry>> getUsers() {
+    if (this.users == null) {
+      this.users = new HashMap<>();
+
+      for (final Entry entry : this.entries.values()) {
+        addUser(entry);
+      }
+    }
+
+    return this.users;
+  }
+
+  private final void addUser(final Entry entry) {
+    for (final ParserSymbol reference : entry.references) {
+      Set<Entry> users = this.users.get(reference);
+
+      if (users == null) {
+        users = new HashSet<>();
+        this.users.put(reference, users);
+      }
+
+      users.add(entry);
+    }
+  }
+
+  private final void removeUser(final Entry entry) {
+    for (final ParserSymbol reference : entry.references) {
+      final Set<Entry> users = this.users.get(reference);
+
+      if (users != null) {
+        users.remove(entry);
+
+        if (users.isEmpty()) {
+          this.users.remove(reference);
+        }
+      }
+    }
+  }
+
+}
@@ -23,6 +23,15 @@ public final class SafeWriter {
     }
   }
 
+  public static final SafeWriter openStdErr() {
+    try {
+      final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(System.err));
+      return new SafeWriter(writer);
+    } catch (final Exception exception) {
+      throw new RuntimeException(exception);
+    }
+  }
+
   public static final SafeWriter openFile(final String fileName) {
     if ("-".equals(fileName)) {
       return openStdOut();
@@ -1,5 +1,6 @@
 package i2.act.util.graph;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -96,6 +97,120 @@ public final class Kosaraju {
     return kernelDAG;
   }
 
+  // computes the strongly connected components of a graph with the nodes 0 to n-1 (where
+  // 'successors[i]' holds the successors of node i); returns the component of each node, where the
+  // components are numbered in topological order (i.e., all edges between different components
+  // lead from a lower to a higher number)
+  //
+  // NOTE: in contrast to 'computeKernelDAG', this variant does not use recursion and can therefore
+  // handle large graphs with long paths
+  public static final int[] computeComponents(final int[][] successors) {
+    final int numberOfNodes = successors.length;
+
+    // compute post order
+    final int[] postOrder = new int[numberOfNodes];
+    {
+      final boolean[] visited = new boolean[numberOfNodes];
+
+      // explicit DFS stack of nodes and the index of their next successor
+      final int[] stackNodes = new int[numberOfNodes];
+      final int[] stackSuccessorIndexes = new int[numberOfNodes];
+
+      int nextNumber = 0;
+
+      for (int root = 0; root < numberOfNodes; ++root) {
+        if (visited[root]) {
+          continue;
+        }
+
+        int stackSize = 0;
+
+        visited[root] = true;
+        stackNodes[stackSize] = root;
+        stackSuccessorIndexes[stackSize] = 0;
+        ++stackSize;
+
+        while (stackSize > 0) {
+          final int node = stackNodes[stackSize - 1];
+          final int[] nodeSuccessors = successors[node];
+
+          if (stackSuccessorIndexes[stackSize - 1] < nodeSuccessors.length) {
+            final int successor = nodeSuccessors[stackSuccessorIndexes[stackSize - 1]++];
+
+            if (!visited[successor]) {
+              visited[successor] = true;
+              stackNodes[stackSize] = successor;
+              stackSuccessorIndexes[stackSize] = 0;
+              ++stackSize;
+            }
+          } else {
+            postOrder[nextNumber++] = node;
+            --stackSize;
+          }
+        }
+      }
+    }
+
+    // compute predecessors
+    final int[][] predecessors = new int[numberOfNodes][];
+    {
+      final int[] numberOfPredecessors = new int[numberOfNodes];
+      for (final int[] nodeSuccessors : successors) {
+        for (final int successor : nodeSuccessors) {
+          ++numberOfPredecessors[successor];
+        }
+      }
+
+      for (int node = 0; node < numberOfNodes; ++node) {
+        predecessors[node] = new int[numberOfPredecessors[node]];
+        numberOfPredecessors[node] = 0;
+      }
+
+      for (int node = 0; node < numberOfNodes; ++node) {
+        for (final int successor : successors[node]) {
+          predecessors[successor][numberOfPredecessors[successor]++] = node;
+        }
+      }
+    }
+
+    // compute strongly connected components (in decreasing post order, following the
+    // predecessors)
+    final int[] components = new int[numberOfNodes];
+    {
+      Arrays.fill(components, -1);
+
+      final int[] stack = new int[numberOfNodes];
+      int nextComponent = 0;
+
+      for (int index = numberOfNodes - 1; index >= 0; --index) {
+        final int start = postOrder[index];
+
+        if (components[start] != -1) {
+          continue;
+        }
+
+        final int component = nextComponent++;
+
+        int stackSize = 0;
+        components[start] = component;
+        stack[stackSize++] = start;
+
+        while (stackSize > 0) {
+          final int node = stack[--stackSize];
+
+          for (final int predecessor : predecessors[node]) {
+            if (components[predecessor] == -1) {
+              components[predecessor] = component;
+              stack[stackSize++] = predecessor;
+            }
+          }
+        }
+      }
+    }
+
+    return components;
+  }
+
   private static final <V> int computePostOrderNumbers(final GraphNode<V> node,
       final Map<GraphNode<V>, Integer> nodeToNumber, final Map<Integer, GraphNode<V>> numberToNode,
       int nextNumber) {